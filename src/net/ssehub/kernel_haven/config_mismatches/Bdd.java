@@ -0,0 +1,437 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A minimal reduced ordered binary decision diagram (BDD) manager. Variables are identified by their level in the
+ * variable order (0 is the top-most level). Nodes are never freed individually, but all nodes created after a given
+ * point can be dropped with {@link #truncate(int)}.
+ *
+ * @author agent
+ */
+final class Bdd {
+
+    /**
+     * Thrown if an operation would exceed the configured maximum number of nodes.
+     */
+    static final class NodeLimitExceededException extends Exception {
+
+        private static final long serialVersionUID = 1942346466733427614L;
+
+        /**
+         * Creates a new exception.
+         *
+         * @param limit The exceeded node limit.
+         */
+        NodeLimitExceededException(int limit) {
+            super("BDD exceeds " + limit + " nodes");
+        }
+
+    }
+
+    static final int FALSE = 0;
+
+    static final int TRUE = 1;
+
+    private static final int TERMINAL_LEVEL = Integer.MAX_VALUE;
+
+    private final int maxNodes;
+
+    private int[] level;
+
+    private int[] low;
+
+    private int[] high;
+
+    private int size;
+
+    /**
+     * Open addressing hash table of the nodes (excluding terminals); 0 marks an empty slot.
+     */
+    private int[] uniqueTable;
+
+    /**
+     * Creates an empty manager, containing only the two terminal nodes.
+     *
+     * @param maxNodes The maximum number of nodes.
+     */
+    Bdd(int maxNodes) {
+        this.maxNodes = maxNodes;
+        level = new int[1024];
+        low = new int[1024];
+        high = new int[1024];
+        uniqueTable = new int[2048];
+        for (int terminal = FALSE; terminal <= TRUE; terminal++) {
+            level[terminal] = TERMINAL_LEVEL;
+            low[terminal] = terminal;
+            high[terminal] = terminal;
+        }
+        size = 2;
+    }
+
+    /**
+     * Returns the number of nodes, including the terminals.
+     *
+     * @return The number of nodes.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the triple of a node.
+     *
+     * @param node The node.
+     *
+     * @return The level, the low child and the high child of the node.
+     */
+    int @NonNull [] getNode(int node) {
+        return new int[] {level[node], low[node], high[node]};
+    }
+
+    /**
+     * Hashes a node triple.
+     *
+     * @param nodeLevel The level of the node.
+     * @param nodeLow The low child.
+     * @param nodeHigh The high child.
+     *
+     * @return The hash value (not yet reduced to the table size).
+     */
+    private static int hash(int nodeLevel, int nodeLow, int nodeHigh) {
+        int result = nodeLevel * 0x9E3779B1;
+        result = (result ^ nodeLow) * 0x85EBCA6B;
+        result = (result ^ nodeHigh) * 0xC2B2AE35;
+        return result ^ (result >>> 16);
+    }
+
+    /**
+     * Inserts an existing node into the unique table.
+     *
+     * @param node The node to insert.
+     */
+    private void insert(int node) {
+        int mask = uniqueTable.length - 1;
+        int slot = hash(level[node], low[node], high[node]) & mask;
+        while (uniqueTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        uniqueTable[slot] = node;
+    }
+
+    /**
+     * Rebuilds the unique table with the given capacity.
+     *
+     * @param capacity The new capacity, must be a power of two.
+     */
+    private void rehash(int capacity) {
+        uniqueTable = new int[capacity];
+        for (int node = 2; node < size; node++) {
+            insert(node);
+        }
+    }
+
+    /**
+     * Returns the (unique) node for the given triple.
+     *
+     * @param nodeLevel The level of the node.
+     * @param nodeLow The low (else) child.
+     * @param nodeHigh The high (then) child.
+     *
+     * @return The node.
+     *
+     * @throws NodeLimitExceededException If a new node would exceed the node limit.
+     */
+    int mk(int nodeLevel, int nodeLow, int nodeHigh) throws NodeLimitExceededException {
+        if (nodeLow == nodeHigh) {
+            return nodeLow;
+        }
+        int mask = uniqueTable.length - 1;
+        int slot = hash(nodeLevel, nodeLow, nodeHigh) & mask;
+        int node;
+        while ((node = uniqueTable[slot]) != 0) {
+            if (level[node] == nodeLevel && low[node] == nodeLow && high[node] == nodeHigh) {
+                return node;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size >= maxNodes) {
+            throw new NodeLimitExceededException(maxNodes);
+        }
+        if (size == level.length) {
+            int capacity = level.length * 2;
+            level = Arrays.copyOf(level, capacity);
+            low = Arrays.copyOf(low, capacity);
+            high = Arrays.copyOf(high, capacity);
+        }
+        node = size++;
+        level[node] = nodeLevel;
+        low[node] = nodeLow;
+        high[node] = nodeHigh;
+        uniqueTable[slot] = node;
+        if (2 * size > uniqueTable.length) {
+            rehash(uniqueTable.length * 2);
+        }
+        return node;
+    }
+
+    /**
+     * Drops all nodes, which were created after the manager had the given size. The caller must ensure that no
+     * remaining node references a dropped one.
+     *
+     * @param newSize The number of nodes to keep.
+     */
+    void truncate(int newSize) {
+        if (newSize < size) {
+            size = newSize;
+            int capacity = 2048;
+            while (capacity < 2 * size) {
+                capacity *= 2;
+            }
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Returns the BDD of a single literal.
+     *
+     * @param variableLevel The level of the variable.
+     * @param positive <code>false</code> for the negated literal.
+     *
+     * @return The BDD of the literal.
+     *
+     * @throws NodeLimitExceededException If the node limit is exceeded.
+     */
+    int literal(int variableLevel, boolean positive) throws NodeLimitExceededException {
+        return positive ? mk(variableLevel, FALSE, TRUE) : mk(variableLevel, TRUE, FALSE);
+    }
+
+    /**
+     * Computes the negation of a BDD.
+     *
+     * @param node The BDD to negate.
+     *
+     * @return The negated BDD.
+     *
+     * @throws NodeLimitExceededException If the node limit is exceeded.
+     */
+    int not(int node) throws NodeLimitExceededException {
+        return not(node, new HashMap<>());
+    }
+
+    /**
+     * Recursive part of {@link #not(int)}.
+     *
+     * @param node The BDD to negate.
+     * @param cache The computed results.
+     *
+     * @return The negated BDD.
+     *
+     * @throws NodeLimitExceededException If the node limit is exceeded.
+     */
+    private int not(int node, @NonNull Map<Integer, Integer> cache) throws NodeLimitExceededException {
+        if (node == FALSE || node == TRUE) {
+            return node ^ 1;
+        }
+        Integer cached = cache.get(node);
+        if (cached == null) {
+            cached = mk(level[node], not(low[node], cache), not(high[node], cache));
+            cache.put(node, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Computes the conjunction or disjunction of two BDDs.
+     *
+     * @param left The left operand.
+     * @param right The right operand.
+     * @param conjunction <code>true</code> for AND, <code>false</code> for OR.
+     *
+     * @return The resulting BDD.
+     *
+     * @throws NodeLimitExceededException If the node limit is exceeded.
+     */
+    int apply(int left, int right, boolean conjunction) throws NodeLimitExceededException {
+        return apply(left, right, conjunction, new HashMap<>());
+    }
+
+    /**
+     * Recursive part of {@link #apply(int, int, boolean)}.
+     *
+     * @param left The left operand.
+     * @param right The right operand.
+     * @param conjunction <code>true</code> for AND, <code>false</code> for OR.
+     * @param cache The computed results.
+     *
+     * @return The resulting BDD.
+     *
+     * @throws NodeLimitExceededException If the node limit is exceeded.
+     */
+    private int apply(int left, int right, boolean conjunction, @NonNull Map<Long, Integer> cache)
+            throws NodeLimitExceededException {
+
+        // the dominating terminal is FALSE for AND and TRUE for OR
+        int dominating = conjunction ? FALSE : TRUE;
+        if (left == dominating || right == dominating) {
+            return dominating;
+        }
+        if (left == (dominating ^ 1) || left == right) {
+            return right;
+        }
+        if (right == (dominating ^ 1)) {
+            return left;
+        }
+        if (left > right) {
+            int tmp = left;
+            left = right;
+            right = tmp;
+        }
+
+        long key = ((long) left << 32) | right;
+        Integer cached = cache.get(key);
+        if (cached == null) {
+            int top = Math.min(level[left], level[right]);
+            int leftLow = level[left] == top ? low[left] : left;
+            int leftHigh = level[left] == top ? high[left] : left;
+            int rightLow = level[right] == top ? low[right] : right;
+            int rightHigh = level[right] == top ? high[right] : right;
+            cached = mk(top, apply(leftLow, rightLow, conjunction, cache),
+                    apply(leftHigh, rightHigh, conjunction, cache));
+            cache.put(key, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Checks whether the conjunction of two BDDs is satisfiable, without building the conjunction. Works
+     * iteratively, so that deep BDDs do not exhaust the call stack.
+     *
+     * @param model The first BDD.
+     * @param negateModel Whether the first BDD should be negated.
+     * @param query The second BDD.
+     *
+     * @return <code>true</code> if <code>(negateModel ? NOT model : model) AND query</code> is satisfiable.
+     */
+    boolean intersects(int model, boolean negateModel, int query) {
+        Set<Long> visited = new HashSet<>();
+        long[] stack = new long[64];
+        int stackSize = 0;
+        stack[stackSize++] = ((long) model << 32) | query;
+
+        while (stackSize > 0) {
+            long pair = stack[--stackSize];
+            if (!visited.add(pair)) {
+                continue;
+            }
+            int u = (int) (pair >>> 32);
+            int v = (int) pair;
+
+            if (v == FALSE) {
+                continue;
+            }
+            if (u == FALSE || u == TRUE) {
+                if ((u == TRUE) != negateModel) {
+                    return true;
+                }
+                continue;
+            }
+            if (v == TRUE) {
+                // reduced BDDs: every non-terminal node has a satisfying and a falsifying path
+                return true;
+            }
+
+            int top = Math.min(level[u], level[v]);
+            int uLow = level[u] == top ? low[u] : u;
+            int uHigh = level[u] == top ? high[u] : u;
+            int vLow = level[v] == top ? low[v] : v;
+            int vHigh = level[v] == top ? high[v] : v;
+
+            if (stackSize + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[stackSize++] = ((long) uLow << 32) | vLow;
+            stack[stackSize++] = ((long) uHigh << 32) | vHigh;
+        }
+        return false;
+    }
+
+    /**
+     * Writes all nodes of this manager.
+     *
+     * @param out The output to write to.
+     *
+     * @throws IOException If writing fails.
+     */
+    void write(@NonNull DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int node = 2; node < size; node++) {
+            out.writeInt(level[node]);
+            out.writeInt(low[node]);
+            out.writeInt(high[node]);
+        }
+    }
+
+    /**
+     * Reads the nodes written by {@link #write(DataOutput)} into a new manager.
+     *
+     * @param in The input to read from.
+     * @param maxNodes The maximum number of nodes of the new manager.
+     *
+     * @return The new manager.
+     *
+     * @throws IOException If reading fails or the data is malformed.
+     */
+    static @NonNull Bdd read(@NonNull DataInput in, int maxNodes) throws IOException {
+        int nodes = in.readInt();
+        if (nodes < 2 || nodes > maxNodes) {
+            throw new IOException("Invalid number of BDD nodes: " + nodes);
+        }
+        Bdd result = new Bdd(maxNodes);
+        result.level = Arrays.copyOf(result.level, nodes);
+        result.low = Arrays.copyOf(result.low, nodes);
+        result.high = Arrays.copyOf(result.high, nodes);
+        for (int node = 2; node < nodes; node++) {
+            result.level[node] = in.readInt();
+            result.low[node] = in.readInt();
+            result.high[node] = in.readInt();
+            if (result.low[node] >= node || result.high[node] >= node || result.low[node] < 0
+                    || result.high[node] < 0) {
+                throw new IOException("Malformed BDD node " + node);
+            }
+        }
+        result.size = nodes;
+        int capacity = 2048;
+        while (capacity < 2 * nodes) {
+            capacity *= 2;
+        }
+        result.rehash(capacity);
+        return result;
+    }
+
+}
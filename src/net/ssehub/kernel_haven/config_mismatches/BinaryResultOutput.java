@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.config.DefaultSettings;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Writes the results of one of the mismatch detectors with the {@link BinaryResultWriter} instead of passing them
+ * to the (string based) table output of the pipeline. Use this as the last component of the pipeline; its only
+ * result is the written file.
+ *
+ * @author agent
+ */
+public class BinaryResultOutput extends AnalysisComponent<File> {
+
+    private @NonNull AnalysisComponent<? extends VariableWithFeatureEffect> detector;
+
+    private @NonNull File outputFile;
+
+    /**
+     * Creates a new {@link BinaryResultOutput} for the given detector.
+     *
+     * @param config The global configuration.
+     * @param detector The detector, which results shall be written. Must produce {@link ConfigMismatchResult}s,
+     *      {@link DetailedConfigMismatchResult}s, or {@link CombinedConfigMismatchResult}s.
+     *
+     * @throws SetUpException If the settings can't be registered.
+     */
+    public BinaryResultOutput(@NonNull Configuration config,
+            @NonNull AnalysisComponent<? extends VariableWithFeatureEffect> detector) throws SetUpException {
+
+        super(config);
+        this.detector = detector;
+
+        MismatchSettings.registerAllSettings(config);
+        File file = config.getValue(MismatchSettings.BINARY_OUTPUT_FILE);
+        if (file == null) {
+            file = new File(config.getValue(DefaultSettings.OUTPUT_DIR), "config_mismatches.khcm");
+        }
+        this.outputFile = file;
+    }
+
+    @Override
+    protected void execute() {
+        BinaryResultWriter writer = null;
+        try {
+            VariableWithFeatureEffect result;
+            while ((result = detector.getNextResult()) != null) {
+                if (writer == null) {
+                    writer = BinaryResultWriter.forResult(new FileOutputStream(outputFile), result);
+                }
+                writer.write(result);
+            }
+            if (writer == null) {
+                // no results: still write an (empty) file, so that downstream tools find it
+                writer = BinaryResultWriter.forBasicResults(new FileOutputStream(outputFile));
+            }
+            writer.close();
+            LOGGER.logInfo("Wrote " + writer.getRowCount() + " mismatch results to " + outputFile.getAbsolutePath());
+            addResult(outputFile);
+
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.logException("Could not write mismatch results to " + outputFile.getAbsolutePath(), e);
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e1) {
+                    // ignore, already reported the first error
+                }
+            }
+            // drain the detector, so that it is not blocked
+            while (detector.getNextResult() != null) {
+                // skip remaining results
+            }
+        }
+    }
+
+    @Override
+    public @NonNull String getResultName() {
+        return "Configuration Mismatches (binary)";
+    }
+
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.io.csv.CsvWriter;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Reads the files written by the {@link BinaryResultWriter} row by row and converts them into CSV. Can also be
+ * started from the command line to convert a file:
+ * <pre>
+ * java -cp &lt;KernelHaven and plug-in jars&gt; net.ssehub.kernel_haven.config_mismatches.BinaryResultReader
+ *     &lt;input file&gt; &lt;output CSV file&gt;
+ * </pre>
+ *
+ * @author agent
+ */
+public class BinaryResultReader implements Closeable {
+
+    /**
+     * A single row of a result file.
+     */
+    public static final class Row {
+
+        private final @NonNull String variable;
+
+        private final @NonNull String featureEffect;
+
+        private final @NonNull String @NonNull [] results;
+
+        /**
+         * Creates a row.
+         *
+         * @param variable The name of the variable.
+         * @param featureEffect The feature effect as string.
+         * @param results The descriptions of the results.
+         */
+        private Row(@NonNull String variable, @NonNull String featureEffect, @NonNull String @NonNull [] results) {
+            this.variable = variable;
+            this.featureEffect = featureEffect;
+            this.results = results;
+        }
+
+        /**
+         * Returns the name of the variable.
+         *
+         * @return The variable name.
+         */
+        public @NonNull String getVariable() {
+            return variable;
+        }
+
+        /**
+         * Returns the feature effect as string.
+         *
+         * @return The feature effect.
+         */
+        public @NonNull String getFeatureEffect() {
+            return featureEffect;
+        }
+
+        /**
+         * Returns the description of the given result column.
+         *
+         * @param column The index of the result column.
+         *
+         * @return The description of the result.
+         */
+        public @NonNull String getResult(int column) {
+            return results[column];
+        }
+
+    }
+
+    private final @NonNull DataInputStream in;
+
+    private final @NonNull String @NonNull [] columnNames;
+
+    private final @NonNull String @NonNull [] @NonNull [] descriptions;
+
+    private final @NonNull List<@NonNull String> variables = new ArrayList<>();
+
+    private final @NonNull List<@NonNull String> formulas = new ArrayList<>();
+
+    private int @NonNull [] variableColumn = new int[0];
+
+    private int @NonNull [] formulaColumn = new int[0];
+
+    private byte @NonNull [][] resultColumns;
+
+    private int rows;
+
+    private int position;
+
+    private boolean finished;
+
+    /**
+     * Opens a result file and reads its header.
+     *
+     * @param in The stream to read from, will be closed by {@link #close()}.
+     *
+     * @throws IOException If reading the header fails.
+     * @throws FormatException If the stream is not a result file of a supported version.
+     */
+    public BinaryResultReader(@NonNull InputStream in) throws IOException, FormatException {
+        this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        if (this.in.readInt() != BinaryResultWriter.MAGIC) {
+            throw new FormatException("Not a mismatch result file");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != BinaryResultWriter.VERSION) {
+            throw new FormatException("Unsupported version of mismatch result file: " + version);
+        }
+        int columns = readNumber(this.in);
+        columnNames = new @NonNull String[columns];
+        descriptions = new @NonNull String[columns][];
+        for (int i = 0; i < columns; i++) {
+            columnNames[i] = readString(this.in);
+            descriptions[i] = new @NonNull String[readNumber(this.in)];
+            for (int j = 0; j < descriptions[i].length; j++) {
+                descriptions[i][j] = readString(this.in);
+            }
+        }
+        resultColumns = new byte[columns][0];
+    }
+
+    /**
+     * Returns the names of the result columns.
+     *
+     * @return The names of the result columns (without variable and feature effect).
+     */
+    public @NonNull String @NonNull [] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    /**
+     * Reads the next row.
+     *
+     * @return The next row or <code>null</code> if all rows were read.
+     *
+     * @throws IOException If reading fails.
+     * @throws FormatException If the file is malformed.
+     */
+    public @Nullable Row next() throws IOException, FormatException {
+        if (position == rows && !finished) {
+            readBlock();
+        }
+        Row result = null;
+        if (position < rows) {
+            @NonNull String[] results = new @NonNull String[columnNames.length];
+            for (int i = 0; i < results.length; i++) {
+                int value = resultColumns[i][position] & 0xFF;
+                if (value >= descriptions[i].length) {
+                    throw new FormatException("Invalid value " + value + " in column " + columnNames[i]);
+                }
+                results[i] = descriptions[i][value];
+            }
+            result = new Row(variables.get(variableColumn[position]), formulas.get(formulaColumn[position]),
+                    results);
+            position++;
+        }
+        return result;
+    }
+
+    /**
+     * Reads the next block into the column buffers.
+     *
+     * @throws IOException If reading fails.
+     * @throws FormatException If the file is malformed.
+     */
+    private void readBlock() throws IOException, FormatException {
+        position = 0;
+        try {
+            rows = readNumber(in);
+            if (rows == 0) {
+                finished = true;
+                return;
+            }
+            if (rows > BinaryResultWriter.BLOCK_SIZE) {
+                throw new FormatException("Invalid block size: " + rows);
+            }
+            readStrings(variables);
+            readStrings(formulas);
+            if (variableColumn.length < rows) {
+                variableColumn = new int[rows];
+                formulaColumn = new int[rows];
+                for (int i = 0; i < resultColumns.length; i++) {
+                    resultColumns[i] = new byte[rows];
+                }
+            }
+            readIds(variableColumn, variables.size());
+            readIds(formulaColumn, formulas.size());
+            for (int i = 0; i < resultColumns.length; i++) {
+                in.readFully(resultColumns[i], 0, rows);
+            }
+        } catch (EOFException e) {
+            throw new FormatException("Unexpected end of mismatch result file");
+        }
+    }
+
+    /**
+     * Reads the new dictionary entries of a block.
+     *
+     * @param dictionary The dictionary to add the entries to.
+     *
+     * @throws IOException If reading fails.
+     */
+    private void readStrings(@NonNull List<@NonNull String> dictionary) throws IOException {
+        int count = readNumber(in);
+        for (int i = 0; i < count; i++) {
+            dictionary.add(readString(in));
+        }
+    }
+
+    /**
+     * Reads an id column of a block.
+     *
+     * @param column The array to read the ids into.
+     * @param dictionarySize The size of the referenced dictionary.
+     *
+     * @throws IOException If reading fails.
+     * @throws FormatException If an id is not in the dictionary.
+     */
+    private void readIds(int @NonNull [] column, int dictionarySize) throws IOException, FormatException {
+        for (int i = 0; i < rows; i++) {
+            column[i] = readNumber(in);
+            if (column[i] >= dictionarySize) {
+                throw new FormatException("Invalid dictionary id: " + column[i]);
+            }
+        }
+    }
+
+    /**
+     * Converts all remaining rows into a CSV table with the same columns as the CSV output of the detectors.
+     *
+     * @param out The stream to write the CSV to.
+     *
+     * @return The number of converted rows.
+     *
+     * @throws IOException If reading or writing fails.
+     * @throws FormatException If the file is malformed.
+     */
+    public long toCsv(@NonNull OutputStream out) throws IOException, FormatException {
+        long count = 0;
+        try (CsvWriter csv = new CsvWriter(out)) {
+            Object[] header = new Object[columnNames.length + 2];
+            header[0] = "Variable";
+            header[1] = "Feature Effect";
+            System.arraycopy(columnNames, 0, header, 2, columnNames.length);
+            csv.writeHeader(header);
+
+            Object[] fields = new Object[header.length];
+            Row row;
+            while ((row = next()) != null) {
+                fields[0] = row.getVariable();
+                fields[1] = row.getFeatureEffect();
+                for (int i = 0; i < columnNames.length; i++) {
+                    fields[i + 2] = row.getResult(i);
+                }
+                csv.writeRow(fields);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads a variable length integer as written by {@link BinaryResultWriter#writeNumber(java.io.DataOutputStream,
+     * int)}.
+     *
+     * @param in The stream to read from.
+     *
+     * @return The read number.
+     *
+     * @throws IOException If reading fails or the number is malformed.
+     */
+    static int readNumber(@NonNull DataInputStream in) throws IOException {
+        int result = 0;
+        int shift = 0;
+        int current;
+        do {
+            if (shift > 28) {
+                throw new IOException("Malformed number");
+            }
+            current = in.readUnsignedByte();
+            result |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return result;
+    }
+
+    /**
+     * Reads a string as written by {@link BinaryResultWriter#writeString(java.io.DataOutputStream, String)}.
+     *
+     * @param in The stream to read from.
+     *
+     * @return The read string.
+     *
+     * @throws IOException If reading fails.
+     */
+    static @NonNull String readString(@NonNull DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readNumber(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Converts a result file into CSV.
+     *
+     * @param args The input file and the output CSV file.
+     *
+     * @throws IOException If reading or writing fails.
+     * @throws FormatException If the input file is malformed.
+     */
+    public static void main(String[] args) throws IOException, FormatException {
+        if (args.length != 2) {
+            System.err.println("Usage: " + BinaryResultReader.class.getName() + " <input file> <output CSV file>");
+            System.exit(1);
+            return;
+        }
+
+        long start = System.nanoTime();
+        long rows;
+        try (BinaryResultReader reader = new BinaryResultReader(new FileInputStream(new File(args[0])))) {
+            rows = reader.toCsv(new FileOutputStream(new File(args[1])));
+        }
+        System.out.printf("Converted %d rows in %.1f ms%n", rows, (System.nanoTime() - start) / 1e6);
+    }
+
+}
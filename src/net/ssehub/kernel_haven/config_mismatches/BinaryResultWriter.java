@@ -0,0 +1,368 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Streaming writer for a compact, columnar file format of mismatch results. Compared to the CSV tables, variable
+ * names and feature effect formulas are dictionary encoded (each distinct string is written only once) and each
+ * result is stored as one byte.
+ * <p>
+ * Layout (all numbers as unsigned variable length integers, strings as length + UTF-8 bytes):
+ * </p>
+ * <ul>
+ *   <li>Header: {@link #MAGIC} (4 bytes), {@link #VERSION} (1 byte), number of result columns, and for each column
+ *       its name, the number of possible values and the description of each value</li>
+ *   <li>Blocks of up to {@link #BLOCK_SIZE} rows: number of rows, new variable names, new formulas, the variable
+ *       ids of all rows, the formula ids of all rows, and for each result column one byte per row</li>
+ *   <li>A block with 0 rows marks the end of the file</li>
+ * </ul>
+ * Files are read by the {@link BinaryResultReader}.
+ *
+ * @author agent
+ */
+public class BinaryResultWriter implements Closeable {
+
+    static final int MAGIC = 0x4B48434D; // "KHCM"
+
+    static final int VERSION = 1;
+
+    static final int BLOCK_SIZE = 4096;
+
+    private final @NonNull DataOutputStream out;
+
+    private final int columns;
+
+    private final @NonNull Map<String, Integer> variableIds = new HashMap<>();
+
+    private final @NonNull Map<String, Integer> formulaIds = new HashMap<>();
+
+    private final @NonNull List<String> newVariables = new ArrayList<>();
+
+    private final @NonNull List<String> newFormulas = new ArrayList<>();
+
+    private final int @NonNull [] variableColumn = new int[BLOCK_SIZE];
+
+    private final int @NonNull [] formulaColumn = new int[BLOCK_SIZE];
+
+    private final byte @NonNull [][] resultColumns;
+
+    private int rows;
+
+    private long totalRows;
+
+    /**
+     * Creates a writer and writes the header.
+     *
+     * @param out The stream to write to, will be closed by {@link #close()}.
+     * @param columnNames The names of the result columns.
+     * @param descriptions For each result column, the descriptions of its values (at most 256).
+     *
+     * @throws IOException If writing the header fails.
+     */
+    public BinaryResultWriter(@NonNull OutputStream out, @NonNull String @NonNull [] columnNames,
+            @NonNull String @NonNull [] @NonNull [] descriptions) throws IOException {
+
+        if (columnNames.length != descriptions.length) {
+            throw new IllegalArgumentException("Need descriptions for each of the " + columnNames.length
+                    + " columns");
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.columns = columnNames.length;
+        this.resultColumns = new byte[columns][BLOCK_SIZE];
+
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        writeNumber(this.out, columns);
+        for (int i = 0; i < columns; i++) {
+            if (descriptions[i].length > 256) {
+                throw new IllegalArgumentException("Column " + columnNames[i] + " has more than 256 values");
+            }
+            writeString(this.out, columnNames[i]);
+            writeNumber(this.out, descriptions[i].length);
+            for (String description : descriptions[i]) {
+                writeString(this.out, description);
+            }
+        }
+    }
+
+    /**
+     * Creates a writer for results of the {@link ConfigMismatchDetector}.
+     *
+     * @param out The stream to write to, will be closed by {@link #close()}.
+     *
+     * @return The writer.
+     *
+     * @throws IOException If writing the header fails.
+     */
+    public static @NonNull BinaryResultWriter forBasicResults(@NonNull OutputStream out) throws IOException {
+        return new BinaryResultWriter(out, new @NonNull String[] {"Resolution"},
+                new @NonNull String[][] {basicDescriptions()});
+    }
+
+    /**
+     * Creates a writer for results of the {@link DetailedConfigMismatchDetector}.
+     *
+     * @param out The stream to write to, will be closed by {@link #close()}.
+     *
+     * @return The writer.
+     *
+     * @throws IOException If writing the header fails.
+     */
+    public static @NonNull BinaryResultWriter forDetailedResults(@NonNull OutputStream out) throws IOException {
+        return new BinaryResultWriter(out, new @NonNull String[] {"Resolution"},
+                new @NonNull String[][] {detailedDescriptions()});
+    }
+
+    /**
+     * Creates a writer for results of the {@link CombinedConfigMismatchDetector}.
+     *
+     * @param out The stream to write to, will be closed by {@link #close()}.
+     *
+     * @return The writer.
+     *
+     * @throws IOException If writing the header fails.
+     */
+    public static @NonNull BinaryResultWriter forCombinedResults(@NonNull OutputStream out) throws IOException {
+        return new BinaryResultWriter(out, new @NonNull String[] {"Resolution", "Detailed Resolution"},
+                new @NonNull String[][] {basicDescriptions(), detailedDescriptions()});
+    }
+
+    /**
+     * Creates a writer, which fits to the type of the given result.
+     *
+     * @param out The stream to write to, will be closed by {@link #close()}.
+     * @param firstResult The first result, which will be written.
+     *
+     * @return The writer.
+     *
+     * @throws IOException If writing the header fails.
+     * @throws IllegalArgumentException If the result is not a mismatch result.
+     */
+    public static @NonNull BinaryResultWriter forResult(@NonNull OutputStream out,
+            @NonNull VariableWithFeatureEffect firstResult) throws IOException {
+
+        BinaryResultWriter result;
+        if (firstResult instanceof CombinedConfigMismatchResult) {
+            result = forCombinedResults(out);
+        } else if (firstResult instanceof DetailedConfigMismatchResult) {
+            result = forDetailedResults(out);
+        } else if (firstResult instanceof ConfigMismatchResult) {
+            result = forBasicResults(out);
+        } else {
+            throw new IllegalArgumentException("Not a mismatch result: " + firstResult.getClass().getName());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the descriptions of all {@link MismatchResultType}s.
+     *
+     * @return The descriptions, in ordinal order.
+     */
+    private static @NonNull String @NonNull [] basicDescriptions() {
+        MismatchResultType[] values = MismatchResultType.values();
+        @NonNull String[] result = new @NonNull String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i].getDescription();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the descriptions of all {@link DetailedMismatchResultType}s.
+     *
+     * @return The descriptions, in ordinal order.
+     */
+    private static @NonNull String @NonNull [] detailedDescriptions() {
+        DetailedMismatchResultType[] values = DetailedMismatchResultType.values();
+        @NonNull String[] result = new @NonNull String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i].getDescription();
+        }
+        return result;
+    }
+
+    /**
+     * Writes a mismatch result. The type of the result must fit to the columns of this writer.
+     *
+     * @param result The result to write.
+     *
+     * @throws IOException If writing fails.
+     * @throws IllegalArgumentException If the result is not a mismatch result or has the wrong number of columns.
+     */
+    public void write(@NonNull VariableWithFeatureEffect result) throws IOException {
+        String formula = result.getFeatureEffect().toString();
+        if (result instanceof CombinedConfigMismatchResult) {
+            CombinedConfigMismatchResult combined = (CombinedConfigMismatchResult) result;
+            writeRow(result.getVariable(), formula, combined.getResultType().ordinal(),
+                    combined.getDetailedResultType().ordinal());
+        } else if (result instanceof DetailedConfigMismatchResult) {
+            writeRow(result.getVariable(), formula,
+                    ((DetailedConfigMismatchResult) result).getResultType().ordinal());
+        } else if (result instanceof ConfigMismatchResult) {
+            writeRow(result.getVariable(), formula, ((ConfigMismatchResult) result).getResultType().ordinal());
+        } else {
+            throw new IllegalArgumentException("Not a mismatch result: " + result.getClass().getName());
+        }
+    }
+
+    /**
+     * Writes a single row.
+     *
+     * @param variable The name of the variable.
+     * @param formula The feature effect as string.
+     * @param results The value of each result column.
+     *
+     * @throws IOException If writing fails.
+     * @throws IllegalArgumentException If the number of results does not match the number of columns.
+     */
+    public void writeRow(@NonNull String variable, @NonNull String formula, int... results) throws IOException {
+        if (results.length != columns) {
+            throw new IllegalArgumentException("Expected " + columns + " results, got " + results.length);
+        }
+        variableColumn[rows] = id(variableIds, newVariables, variable);
+        formulaColumn[rows] = id(formulaIds, newFormulas, formula);
+        for (int i = 0; i < columns; i++) {
+            resultColumns[i][rows] = (byte) results[i];
+        }
+        rows++;
+        totalRows++;
+        if (rows == BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Looks up the dictionary id of the given string, new strings are added to the dictionary.
+     *
+     * @param ids The dictionary.
+     * @param newStrings The strings, which are added to the dictionary in the current block.
+     * @param value The string to look up.
+     *
+     * @return The id of the string.
+     */
+    private static int id(@NonNull Map<String, Integer> ids, @NonNull List<String> newStrings,
+            @NonNull String value) {
+
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = ids.size();
+            ids.put(value, id);
+            newStrings.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * Writes the current block, if it contains any rows.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void flushBlock() throws IOException {
+        if (rows > 0) {
+            writeNumber(out, rows);
+            writeNumber(out, newVariables.size());
+            for (String variable : newVariables) {
+                writeString(out, variable);
+            }
+            writeNumber(out, newFormulas.size());
+            for (String formula : newFormulas) {
+                writeString(out, formula);
+            }
+            for (int i = 0; i < rows; i++) {
+                writeNumber(out, variableColumn[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                writeNumber(out, formulaColumn[i]);
+            }
+            for (int i = 0; i < columns; i++) {
+                out.write(resultColumns[i], 0, rows);
+            }
+            newVariables.clear();
+            newFormulas.clear();
+            rows = 0;
+        }
+    }
+
+    /**
+     * Returns the number of rows written so far.
+     *
+     * @return The number of rows.
+     */
+    public long getRowCount() {
+        return totalRows;
+    }
+
+    /**
+     * Writes the remaining rows and the end marker and closes the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            writeNumber(out, 0);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes a non-negative number as variable length integer (7 bits per byte, least significant first).
+     *
+     * @param out The stream to write to.
+     * @param value The value to write.
+     *
+     * @throws IOException If writing fails.
+     */
+    static void writeNumber(@NonNull DataOutputStream out, int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.writeByte(remaining);
+    }
+
+    /**
+     * Writes a string as length and UTF-8 bytes. In contrast to {@link DataOutputStream#writeUTF(String)}, this
+     * supports arbitrarily long formulas.
+     *
+     * @param out The stream to write to.
+     * @param value The string to write.
+     *
+     * @throws IOException If writing fails.
+     */
+    static void writeString(@NonNull DataOutputStream out, @NonNull String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeNumber(out, bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A compact, immutable copy of a CNF: variables are mapped to dense ids (in the order of their first occurrence),
+ * literals are encoded as <code>2 * id</code> (positive) and <code>2 * id + 1</code> (negated), and all clauses are
+ * stored consecutively in one int buffer with an offset array. The literal buffer can optionally be allocated
+ * off-heap, to keep large models out of the garbage collected heap.
+ *
+ * @author agent
+ */
+public final class ClauseStore {
+
+    private final @NonNull Map<String, Integer> ids;
+
+    private final @NonNull String @NonNull [] names;
+
+    private final @NonNull IntBuffer literals;
+
+    private final int @NonNull [] offsets;
+
+    private final @NonNull BitSet negatedOccurrences;
+
+    /**
+     * Creates a store.
+     *
+     * @param ids Variable name -&gt; id.
+     * @param names Id -&gt; variable name.
+     * @param literals The literals of all clauses.
+     * @param offsets Clause -&gt; index of its first literal; has one additional entry for the end of the last clause.
+     */
+    private ClauseStore(@NonNull Map<String, Integer> ids, @NonNull String @NonNull [] names,
+            @NonNull IntBuffer literals, int @NonNull [] offsets) {
+
+        this.ids = ids;
+        this.names = names;
+        this.literals = literals;
+        this.offsets = offsets;
+
+        negatedOccurrences = new BitSet(names.length);
+        for (int i = 0; i < literals.limit(); i++) {
+            int literal = literals.get(i);
+            if ((literal & 1) != 0) {
+                negatedOccurrences.set(literal / 2);
+            }
+        }
+    }
+
+    /**
+     * Converts the given CNF into a clause store.
+     *
+     * @param cnf The CNF to convert.
+     * @param offHeap Whether the literals shall be stored in a direct (off-heap) buffer.
+     *
+     * @return The clause store.
+     */
+    public static @NonNull ClauseStore of(@NonNull Cnf cnf, boolean offHeap) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] offsets = new int[cnf.getRowCount() + 1];
+        int[] literals = new int[Math.max(16, 3 * cnf.getRowCount())];
+        int size = 0;
+        for (int i = 0; i < cnf.getRowCount(); i++) {
+            offsets[i] = size;
+            for (CnfVariable variable : cnf.getRow(i)) {
+                Integer id = ids.get(variable.getName());
+                if (id == null) {
+                    id = names.size();
+                    ids.put(variable.getName(), id);
+                    names.add(variable.getName());
+                }
+                if (size == literals.length) {
+                    int[] grown = new int[2 * literals.length];
+                    System.arraycopy(literals, 0, grown, 0, size);
+                    literals = grown;
+                }
+                literals[size++] = 2 * id + (variable.isNegation() ? 1 : 0);
+            }
+        }
+        offsets[cnf.getRowCount()] = size;
+
+        IntBuffer buffer;
+        if (offHeap) {
+            buffer = ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder()).asIntBuffer();
+            buffer.put(literals, 0, size);
+            buffer.flip();
+        } else {
+            int[] trimmed = new int[size];
+            System.arraycopy(literals, 0, trimmed, 0, size);
+            buffer = IntBuffer.wrap(trimmed);
+        }
+        return new ClauseStore(ids, names.toArray(new @NonNull String[names.size()]), buffer, offsets);
+    }
+
+    /**
+     * Returns the number of variables.
+     *
+     * @return The number of distinct variables of the clauses.
+     */
+    public int getVariableCount() {
+        return names.length;
+    }
+
+    /**
+     * Returns the number of clauses.
+     *
+     * @return The number of clauses.
+     */
+    public int getClauseCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the total number of literals of all clauses.
+     *
+     * @return The number of literals.
+     */
+    public int getLiteralCount() {
+        return literals.limit();
+    }
+
+    /**
+     * Returns the number of literals of a clause.
+     *
+     * @param clause The index of the clause.
+     *
+     * @return The length of the clause.
+     */
+    public int getClauseLength(int clause) {
+        return offsets[clause + 1] - offsets[clause];
+    }
+
+    /**
+     * Returns a literal of a clause.
+     *
+     * @param clause The index of the clause.
+     * @param index The index of the literal within the clause.
+     *
+     * @return The encoded literal.
+     */
+    public int getLiteral(int clause, int index) {
+        return literals.get(offsets[clause] + index);
+    }
+
+    /**
+     * Copies the literals of a clause into a new array.
+     *
+     * @param clause The index of the clause.
+     *
+     * @return The encoded literals of the clause.
+     */
+    public int @NonNull [] getClause(int clause) {
+        int[] result = new int[getClauseLength(clause)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = literals.get(offsets[clause] + i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the id of a variable.
+     *
+     * @param name The name of the variable.
+     *
+     * @return The id of the variable or -1 if the variable does not occur in the clauses.
+     */
+    public int getId(@NonNull String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Returns the name of a variable.
+     *
+     * @param id The id of the variable.
+     *
+     * @return The name of the variable.
+     */
+    public @NonNull String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Checks whether the variable occurs negated in any clause, i.e., whether it is on the left side of an
+     * implication.
+     *
+     * @param name The name of the variable.
+     *
+     * @return <code>true</code> if the variable occurs as negated literal.
+     */
+    public boolean occursNegated(@NonNull String name) {
+        int id = getId(name);
+        return id != -1 && negatedOccurrences.get(id);
+    }
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
+import net.ssehub.kernel_haven.cnf.IFormulaToCnfConverter;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.cnf.VmToCnfConverter;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.ProgressLogger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+
+/**
+ * Computes the results of the {@link ConfigMismatchDetector} and the {@link DetailedConfigMismatchDetector} in a
+ * single pass: the variability model is converted only once, the feature effects are read only once and the basic
+ * result is derived from the detailed classification instead of issuing its SAT query again.
+ * <p>
+ * The combined rows are the output of this component. The basic and detailed tables are available as separate
+ * components via {@link #getBasicResults()} and {@link #getDetailedResults()}. Each of the three components can be
+ * read on its own: reading any of them starts the detection, which passes the results to all three.
+ * </p>
+ * 
+ * @author agent
+ */
+public class CombinedConfigMismatchDetector extends AnalysisComponent<CombinedConfigMismatchResult> {
+
+    private @NonNull Configuration config;
+    private @NonNull AnalysisComponent<VariableWithFeatureEffect> feFinder;
+    private @NonNull AnalysisComponent<VariabilityModel> vmProvider;
+    private @NonNull IFormulaToCnfConverter converter;
+    private @Nullable File slowQueryLogFile;
+    private int slowQueryLogSize;
+    
+    private @NonNull DetectionRun detection;
+    
+    private @NonNull ResultStream<ConfigMismatchResult> basicResults;
+    private @NonNull ResultStream<DetailedConfigMismatchResult> detailedResults;
+
+    /**
+     * Creates a new {@link CombinedConfigMismatchDetector} for the given feature effect finder.
+     * @param config The global configuration.
+     * @param vmProvider The variability model, usually <tt>PipelineAnalysis.getVmComponent()</tt>.
+     * @param feFinder The component to get the feature effects (constraints extracted from code).
+     * 
+     * @throws SetUpException If no variability model is passed or it could not be translated into CNF representation.
+     */
+    public CombinedConfigMismatchDetector(@NonNull Configuration config,
+            @NonNull AnalysisComponent<VariabilityModel> vmProvider,
+            @NonNull AnalysisComponent<VariableWithFeatureEffect> feFinder) throws SetUpException {
+        
+        super(config);
+        this.config = config;
+        this.feFinder = feFinder;
+        this.vmProvider = vmProvider;
+        converter = FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING);
+        
+        MismatchSettings.registerAllSettings(config);
+        slowQueryLogFile = config.getValue(MismatchSettings.SLOW_QUERY_LOG_FILE);
+        slowQueryLogSize = config.getValue(MismatchSettings.SLOW_QUERY_LOG_SIZE);
+        
+        detection = new DetectionRun(this::detect);
+        basicResults = new ResultStream<>(config, detection, "Configuration Mismatches");
+        detailedResults = new ResultStream<>(config, detection, "Detailed Configuration Mismatches");
+    }
+    
+    /**
+     * Returns the component, which provides the results as computed by the {@link ConfigMismatchDetector}.
+     * 
+     * @return The basic results of this detector.
+     */
+    public @NonNull AnalysisComponent<ConfigMismatchResult> getBasicResults() {
+        return basicResults;
+    }
+    
+    /**
+     * Returns the component, which provides the results as computed by the {@link DetailedConfigMismatchDetector}.
+     * 
+     * @return The detailed results of this detector.
+     */
+    public @NonNull AnalysisComponent<DetailedConfigMismatchResult> getDetailedResults() {
+        return detailedResults;
+    }
+
+    @Override
+    protected void execute() {
+        detection.run();
+    }
+    
+    /**
+     * Classifies all feature effects and adds the results to this component and the basic and detailed tables.
+     */
+    private void detect() {
+        Cnf varModel = null;
+        VarModelSolver solver = null;
+        Set<String> variables = null;
+        try {
+            VariabilityModel vm = vmProvider.getNextResult();
+            if (vm != null) {
+                variables = Collections.unmodifiableSet(vm.getVariableMap().keySet());
+                varModel = new VmToCnfConverter().convertVmToCnf(vm);
+            }
+        } catch (FormatException e) {
+            LOGGER.logException("Can't convert variability model to CNF", e);
+        }
+        
+        //compute the negated feature model as Cnf, not needed if the compiled model answers the queries
+        if (varModel != null) {
+            try {
+                solver = VarModelSolver.create(config, varModel, converter);
+                if (!solver.hasCompiledModel()) {
+                    solver.getNegatedVarModel();
+                }
+            } catch (ConverterException e1) {
+                solver = null;
+                LOGGER.logException("Could not convert negated variability model to CNF", e1);
+            }
+        }
+        
+        if (varModel == null || variables == null || solver == null) {
+            LOGGER.logError("Couldn't get or convert variability model.");
+            return;
+        }
+        
+        // the basic detector reports contradictions as conflicts, unless no configuration is valid at all
+        boolean modelSatisfiable = true;
+        try {
+            modelSatisfiable = solver.isSatisfiable(new Cnf());
+        } catch (SolverException e) {
+            LOGGER.logException("Could not check satisfiability of variability model", e);
+        }
+        
+        VersionDelta delta = VersionDelta.create(config, solver);
+        ShadowVerifier<DetailedMismatchResultType> shadow = ShadowVerifier.create(config, varModel,
+                DetailedConfigMismatchDetector::checkWithSat);
+        
+        File slowQueryLogFile = this.slowQueryLogFile;
+        SlowQueryLog slowQueryLog = slowQueryLogFile != null ? new SlowQueryLog(slowQueryLogSize) : null;
+        solver.setQueryStatistics(slowQueryLog != null);
+        
+        ProgressLogger progress = new ProgressLogger(notNull(getClass().getSimpleName()));
+        
+        VariableSelection selection = new VariableSelection(config, feFinder);
+        VariableWithFeatureEffect variable;
+        while ((variable = selection.next()) != null) {
+            long start = slowQueryLog != null ? System.nanoTime() : 0;
+            solver.startVariable(variable.getVariable());
+            String varName = variable.getVariable();
+            Formula feConstraint = variable.getFeatureEffect();
+            
+            DetailedMismatchResultType detailedType = DetailedConfigMismatchDetector.checkVariablesDefined(variables,
+                    varName, feConstraint);
+            if (null == detailedType && delta != null) {
+                detailedType = delta.reuseDetailed(varName, feConstraint);
+            }
+            if (null == detailedType) {
+                detailedType = DetailedConfigMismatchDetector.checkWithSat(solver, varName, feConstraint);
+            }
+            if (shadow != null && detailedType != DetailedMismatchResultType.VARIABLE_NOT_DEFINED
+                    && detailedType != DetailedMismatchResultType.FORMULA_NOT_SUPPORTED) {
+                shadow.submit(varName, feConstraint, detailedType);
+            }
+            CombinedConfigMismatchResult mismatchResult = new CombinedConfigMismatchResult(varName, feConstraint,
+                    toBasicType(detailedType, modelSatisfiable), detailedType);
+            
+            if (slowQueryLog != null) {
+                slowQueryLog.record(varName, feConstraint, System.nanoTime() - start, solver,
+                        mismatchResult.getDetailedResult());
+            }
+            basicResults.publish(mismatchResult.toBasicResult());
+            detailedResults.publish(mismatchResult.toDetailedResult());
+            addResult(mismatchResult);
+            progress.processedOne();
+        }
+        
+        progress.close();
+        LOGGER.logInfo(solver.getSummary());
+        solver.saveLearnedClauses();
+        if (selection.getSkippedCount() > 0) {
+            LOGGER.logInfo("Skipped " + selection.getSkippedCount() + " variables not selected for the analysis");
+        }
+        if (delta != null) {
+            LOGGER.logInfo("Reused " + delta.getReusedCount() + " results of the previous version");
+        }
+        if (shadow != null) {
+            shadow.close();
+        }
+        
+        if (slowQueryLog != null && slowQueryLogFile != null) {
+            try {
+                slowQueryLog.write(slowQueryLogFile);
+            } catch (IOException e) {
+                LOGGER.logException("Could not write slow query log to " + slowQueryLogFile.getAbsolutePath(), e);
+            }
+        }
+    }
+    
+    /**
+     * Derives the result of the {@link ConfigMismatchDetector} from the result of the
+     * {@link DetailedConfigMismatchDetector}. The basic detector checks SAT(M AND var AND NOT E), which is exactly
+     * the "VarModel is more general" part of the detailed classification.
+     * 
+     * @param detailedType The detailed classification of a variable.
+     * @param modelSatisfiable Whether the variability model is satisfiable; for an unsatisfiable model all variables
+     *      are classified as contradictions by the detailed detector, but as consistent by the basic detector.
+     * 
+     * @return The corresponding basic classification.
+     */
+    static @NonNull MismatchResultType toBasicType(@NonNull DetailedMismatchResultType detailedType,
+            boolean modelSatisfiable) {
+        
+        MismatchResultType result;
+        switch (detailedType) {
+        case CONSISTENT:
+        case FORMULA_MORE_GENERAL:
+            result = MismatchResultType.CONSISTENT;
+            break;
+        case CONTRADICTION:
+            result = modelSatisfiable ? MismatchResultType.CONFLICT_WITH_VARMODEL : MismatchResultType.CONSISTENT;
+            break;
+        case VM_MORE_GENERAL:
+        case PARTIAL_OVERLAP:
+        case PARTIAL_OVERLAP_DEAD:
+            result = MismatchResultType.CONFLICT_WITH_VARMODEL;
+            break;
+        case VARIABLE_NOT_DEFINED:
+            result = MismatchResultType.VARIABLE_NOT_DEFINED;
+            break;
+        case FORMULA_NOT_SUPPORTED:
+            result = MismatchResultType.FORMULA_NOT_SUPPORTED;
+            break;
+        case ERROR:
+        default:
+            result = MismatchResultType.ERROR;
+            break;
+        }
+        return result;
+    }
+
+    @Override
+    public @NonNull String getResultName() {
+        return "Combined Configuration Mismatches";
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.util.io.TableElement;
+import net.ssehub.kernel_haven.util.io.TableRow;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * A single result of the {@link CombinedConfigMismatchDetector}. This consist of:
+ * <ul>
+ *   <li>A {@link VariableWithFeatureEffect}</li>
+ *   <li>The result of the basic analysis, a {@link MismatchResultType}</li>
+ *   <li>The result of the detailed analysis, a {@link DetailedMismatchResultType}</li>
+ * </ul>
+ * @author agent
+ *
+ */
+@TableRow
+public class CombinedConfigMismatchResult extends VariableWithFeatureEffect {
+
+    private @NonNull MismatchResultType result;
+    
+    private @NonNull DetailedMismatchResultType detailedResult;
+    
+    /**
+     * Creates a new, single mismatch result.
+     * @param variable The variable name.
+     * @param featureEffect The feature effect of the given variable. Must not be <code>null</code>.
+     * @param result The result of the basic config mismatch analysis.
+     * @param detailedResult The result of the detailed config mismatch analysis.
+     */
+    public CombinedConfigMismatchResult(@NonNull String variable, @NonNull Formula featureEffect,
+        @NonNull MismatchResultType result, @NonNull DetailedMismatchResultType detailedResult) {
+        
+        super(variable, featureEffect);
+        this.result = result;
+        this.detailedResult = detailedResult;
+    }
+
+    /**
+     * Returns the description of the basic result.
+     * 
+     * @return The result as computed by the {@link ConfigMismatchDetector}.
+     */
+    @TableElement(name = "Resolution", index = 2)
+    public @NonNull String getResult() {
+        return result.getDescription();
+    }
+    
+    /**
+     * Returns the description of the detailed result.
+     * 
+     * @return The result as computed by the {@link DetailedConfigMismatchDetector}.
+     */
+    @TableElement(name = "Detailed Resolution", index = 3)
+    public @NonNull String getDetailedResult() {
+        return detailedResult.getDescription();
+    }
+    
+    /**
+     * Returns the result of the basic analysis.
+     * 
+     * @return The basic result type.
+     */
+    public @NonNull MismatchResultType getResultType() {
+        return result;
+    }
+    
+    /**
+     * Returns the result of the detailed analysis.
+     * 
+     * @return The detailed result type.
+     */
+    public @NonNull DetailedMismatchResultType getDetailedResultType() {
+        return detailedResult;
+    }
+    
+    /**
+     * Converts this result into a row of the {@link ConfigMismatchDetector}.
+     * 
+     * @return The basic part of this result.
+     */
+    public @NonNull ConfigMismatchResult toBasicResult() {
+        return new ConfigMismatchResult(getVariable(), getFeatureEffect(), result);
+    }
+    
+    /**
+     * Converts this result into a row of the {@link DetailedConfigMismatchDetector}.
+     * 
+     * @return The detailed part of this result.
+     */
+    public @NonNull DetailedConfigMismatchResult toDetailedResult() {
+        return new DetailedConfigMismatchResult(getVariable(), getFeatureEffect(), detailedResult);
+    }
+}
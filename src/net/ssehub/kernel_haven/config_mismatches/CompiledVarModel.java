@@ -0,0 +1,423 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.config_mismatches.Bdd.NodeLimitExceededException;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * The variability model compiled into a {@link Bdd}. Each query of the mismatch detectors is an entailment or
+ * consistency check against the same fixed model; on the compiled form, these are answered by a linear walk over the
+ * model and the (usually small) BDD of the query. The negated model comes for free, so it never has to be converted
+ * into CNF. Compiled models can be cached on disk, identified by a fingerprint of the model CNF.
+ *
+ * @author agent
+ */
+public class CompiledVarModel implements QueryBackend {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * Stack size of the thread compiling the model, as the recursive BDD operations may be as deep as the number of
+     * variables.
+     */
+    private static final long COMPILER_STACK_SIZE = 512L * 1024 * 1024;
+
+    private final @NonNull Bdd bdd;
+
+    private final int root;
+
+    private final @NonNull Map<String, Integer> levels;
+
+    /**
+     * Number of nodes belonging to the model; all nodes above are created by queries and may be dropped.
+     */
+    private final int modelSize;
+
+    /**
+     * Creates a compiled model.
+     *
+     * @param bdd The BDD manager containing the model.
+     * @param root The root node of the model.
+     * @param levels The variable order, variable name -&gt; level.
+     */
+    private CompiledVarModel(@NonNull Bdd bdd, int root, @NonNull Map<String, Integer> levels) {
+        this.bdd = bdd;
+        this.root = root;
+        this.levels = levels;
+        this.modelSize = bdd.size();
+    }
+
+    /**
+     * Compiles the given variability model, or loads a previously compiled version from the cache directory.
+     *
+     * @param varModel The variability model to compile.
+     * @param maxNodes The maximum number of BDD nodes.
+     * @param cacheDir The directory for caching compiled models, may be <code>null</code>.
+     *
+     * @return The compiled model or <code>null</code> if the model could not be compiled within the node limit.
+     */
+    public static @Nullable CompiledVarModel compile(@NonNull Cnf varModel, int maxNodes, @Nullable File cacheDir) {
+        return compile(varModel, ClauseStore.of(varModel, false), maxNodes, cacheDir);
+    }
+
+    /**
+     * Compiles the given variability model, or loads a previously compiled version from the cache directory.
+     *
+     * @param varModel The variability model to compile, used for identifying cached versions.
+     * @param store The same variability model as clause store, from which the model is compiled.
+     * @param maxNodes The maximum number of BDD nodes.
+     * @param cacheDir The directory for caching compiled models, may be <code>null</code>.
+     *
+     * @return The compiled model or <code>null</code> if the model could not be compiled within the node limit.
+     */
+    public static @Nullable CompiledVarModel compile(@NonNull Cnf varModel, @NonNull ClauseStore store, int maxNodes,
+            @Nullable File cacheDir) {
+
+        File cacheFile = null;
+        if (cacheDir != null) {
+            cacheFile = new File(cacheDir, fingerprint(varModel) + ".bdd");
+            if (cacheFile.isFile()) {
+                try {
+                    CompiledVarModel result = read(cacheFile, maxNodes);
+                    LOGGER.logInfo("Loaded compiled variability model from " + cacheFile.getAbsolutePath());
+                    return result;
+                } catch (IOException e) {
+                    LOGGER.logException("Could not read compiled variability model, compiling it again", e);
+                }
+            }
+        }
+
+        CompiledVarModel[] result = new CompiledVarModel[1];
+        Thread compiler = new Thread(null, () -> {
+            try {
+                result[0] = doCompile(store, maxNodes);
+            } catch (NodeLimitExceededException e) {
+                LOGGER.logWarning("Could not compile variability model: " + e.getMessage());
+            } catch (StackOverflowError e) {
+                LOGGER.logWarning("Could not compile variability model: too deep");
+            }
+        }, "CompiledVarModel", COMPILER_STACK_SIZE);
+        compiler.start();
+        try {
+            compiler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        CompiledVarModel compiled = result[0];
+        if (compiled != null && cacheFile != null) {
+            try {
+                compiled.write(cacheFile);
+            } catch (IOException e) {
+                LOGGER.logException("Could not cache compiled variability model", e);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Compiles the given model by conjoining the BDDs of all clauses. The variables are ordered by their first
+     * occurrence, which keeps related Kconfig variables close to each other.
+     *
+     * @param varModel The variability model to compile as clause store.
+     * @param maxNodes The maximum number of BDD nodes.
+     *
+     * @return The compiled model.
+     *
+     * @throws NodeLimitExceededException If the model can't be compiled within the node limit.
+     */
+    private static @NonNull CompiledVarModel doCompile(@NonNull ClauseStore varModel, int maxNodes)
+            throws NodeLimitExceededException {
+
+        // the store numbers the variables by their first occurrence already
+        Map<String, Integer> levels = new HashMap<>();
+        for (int id = 0; id < varModel.getVariableCount(); id++) {
+            levels.put(varModel.getName(id), id);
+        }
+
+        Bdd bdd = new Bdd(maxNodes);
+        List<Integer> clauses = new ArrayList<>(varModel.getClauseCount());
+        for (int i = 0; i < varModel.getClauseCount(); i++) {
+            int clause = Bdd.FALSE;
+            for (int j = 0; j < varModel.getClauseLength(i); j++) {
+                int literal = varModel.getLiteral(i, j);
+                clause = bdd.apply(clause, bdd.literal(literal / 2, (literal & 1) == 0), false);
+            }
+            clauses.add(clause);
+        }
+
+        // balanced conjunction of the clauses keeps the intermediate results smaller than a linear chain
+        while (clauses.size() > 1) {
+            List<Integer> next = new ArrayList<>((clauses.size() + 1) / 2);
+            for (int i = 0; i + 1 < clauses.size(); i += 2) {
+                next.add(bdd.apply(clauses.get(i), clauses.get(i + 1), true));
+            }
+            if (clauses.size() % 2 == 1) {
+                next.add(clauses.get(clauses.size() - 1));
+            }
+            clauses = next;
+        }
+        int root = clauses.isEmpty() ? Bdd.TRUE : clauses.get(0);
+
+        // drop the intermediate results
+        Bdd compact = new Bdd(maxNodes);
+        int compactRoot = copy(bdd, root, compact, new HashMap<>());
+        return new CompiledVarModel(compact, compactRoot, levels);
+    }
+
+    /**
+     * Copies a BDD into another manager.
+     *
+     * @param from The source manager.
+     * @param node The node to copy.
+     * @param to The destination manager.
+     * @param copied Already copied nodes.
+     *
+     * @return The node in the destination manager.
+     *
+     * @throws NodeLimitExceededException If the destination exceeds its node limit.
+     */
+    private static int copy(@NonNull Bdd from, int node, @NonNull Bdd to, @NonNull Map<Integer, Integer> copied)
+            throws NodeLimitExceededException {
+
+        if (node == Bdd.FALSE || node == Bdd.TRUE) {
+            return node;
+        }
+        Integer result = copied.get(node);
+        if (result == null) {
+            int[] triple = from.getNode(node);
+            result = to.mk(triple[0], copy(from, triple[1], to, copied), copy(from, triple[2], to, copied));
+            copied.put(node, result);
+        }
+        return result;
+    }
+
+    /**
+     * Computes a fingerprint of the given CNF, which identifies cached compiled models.
+     *
+     * @param varModel The variability model.
+     *
+     * @return A hex string identifying the model.
+     */
+    static @NonNull String fingerprint(@NonNull Cnf varModel) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required to be supported by every JVM
+            throw new IllegalStateException(e);
+        }
+        for (int i = 0; i < varModel.getRowCount(); i++) {
+            for (CnfVariable literal : varModel.getRow(i)) {
+                digest.update((literal.isNegation() ? "-" : "+").getBytes(StandardCharsets.UTF_8));
+                digest.update(literal.getName().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            digest.update((byte) '\n');
+        }
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Writes this compiled model into a file.
+     *
+     * @param file The file to write.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void write(@NonNull File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent.getAbsolutePath());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(levels.size());
+            for (Map.Entry<String, Integer> level : levels.entrySet()) {
+                out.writeUTF(level.getKey());
+                out.writeInt(level.getValue());
+            }
+            out.writeInt(root);
+            bdd.write(out);
+        }
+    }
+
+    /**
+     * Reads a compiled model written by {@link #write(File)}.
+     *
+     * @param file The file to read.
+     * @param maxNodes The maximum number of BDD nodes.
+     *
+     * @return The compiled model.
+     *
+     * @throws IOException If reading fails or the file is malformed.
+     */
+    private static @NonNull CompiledVarModel read(@NonNull File file, int maxNodes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) {
+                throw new IOException("Unsupported version of " + file.getAbsolutePath());
+            }
+            int nVars = in.readInt();
+            Map<String, Integer> levels = new HashMap<>();
+            for (int i = 0; i < nVars; i++) {
+                String name = in.readUTF();
+                levels.put(name, in.readInt());
+            }
+            int root = in.readInt();
+            Bdd bdd = Bdd.read(in, maxNodes);
+            if (root < 0 || root >= bdd.size()) {
+                throw new IOException("Invalid root node in " + file.getAbsolutePath());
+            }
+            return new CompiledVarModel(bdd, root, levels);
+        }
+    }
+
+    /**
+     * Returns the number of BDD nodes of the compiled model.
+     *
+     * @return The size of the compiled model.
+     */
+    public int getNodeCount() {
+        return modelSize;
+    }
+
+    /**
+     * Builds the BDD of a query formula. Variables, which are not part of the model, are appended to the variable
+     * order.
+     *
+     * @param formula The formula to build the BDD for.
+     *
+     * @return The BDD of the formula.
+     *
+     * @throws NodeLimitExceededException If the node limit is exceeded.
+     */
+    private int build(@NonNull Formula formula) throws NodeLimitExceededException {
+        int result;
+        if (formula instanceof Variable) {
+            String name = ((Variable) formula).getName();
+            Integer level = levels.get(name);
+            if (level == null) {
+                level = levels.size();
+                levels.put(name, level);
+            }
+            result = bdd.literal(level, true);
+        } else if (formula instanceof True) {
+            result = Bdd.TRUE;
+        } else if (formula instanceof False) {
+            result = Bdd.FALSE;
+        } else if (formula instanceof Negation) {
+            result = bdd.not(build(((Negation) formula).getFormula()));
+        } else if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction) formula;
+            result = bdd.apply(build(conjunction.getLeft()), build(conjunction.getRight()), true);
+        } else if (formula instanceof Disjunction) {
+            Disjunction disjunction = (Disjunction) formula;
+            result = bdd.apply(build(disjunction.getLeft()), build(disjunction.getRight()), false);
+        } else {
+            throw new IllegalArgumentException("Unsupported formula: " + formula);
+        }
+        return result;
+    }
+
+    /**
+     * Checks the query against the model or its negation.
+     *
+     * @param query The query to check.
+     * @param negated Whether the query is checked against the negated model.
+     *
+     * @return The result, or <code>null</code> if the query could not be built within the node limit.
+     */
+    private synchronized @Nullable Boolean check(@NonNull Formula query, boolean negated) {
+        Boolean result;
+        try {
+            result = bdd.intersects(root, negated, build(query));
+        } catch (NodeLimitExceededException | StackOverflowError e) {
+            result = null;
+        }
+        // query nodes are never referenced by the model, so drop them if they start to dominate the manager
+        if (bdd.size() - modelSize > Math.max(modelSize, 100000)) {
+            bdd.truncate(modelSize);
+        }
+        return result;
+    }
+
+    /**
+     * Checks if <code>varModel AND query</code> is satisfiable.
+     *
+     * @param query The query to check.
+     *
+     * @return The result, or <code>null</code> if the query could not be built within the node limit.
+     */
+    public @Nullable Boolean isSatisfiable(@NonNull Formula query) {
+        return check(query, false);
+    }
+
+    /**
+     * Checks if <code>NOT(varModel) AND query</code> is satisfiable.
+     *
+     * @param query The query to check.
+     *
+     * @return The result, or <code>null</code> if the query could not be built within the node limit.
+     */
+    public @Nullable Boolean isSatisfiableWithNegatedModel(@NonNull Formula query) {
+        return check(query, true);
+    }
+
+    @Override
+    public @Nullable Boolean check(@NonNull Formula query) {
+        return isSatisfiable(query);
+    }
+
+    @Override
+    public @Nullable Boolean checkNegated(@NonNull Formula query) {
+        return isSatisfiableWithNegatedModel(query);
+    }
+
+}
@@ -19,6 +19,8 @@ import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
 import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
 import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Set;
 
@@ -29,8 +31,6 @@ import net.ssehub.kernel_haven.cnf.ConverterException;
 import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
 import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
 import net.ssehub.kernel_haven.cnf.IFormulaToCnfConverter;
-import net.ssehub.kernel_haven.cnf.ISatSolver;
-import net.ssehub.kernel_haven.cnf.SatSolverFactory;
 import net.ssehub.kernel_haven.cnf.SolverException;
 import net.ssehub.kernel_haven.cnf.VmToCnfConverter;
 import net.ssehub.kernel_haven.config.Configuration;
@@ -40,6 +40,7 @@ import net.ssehub.kernel_haven.util.ProgressLogger;
 import net.ssehub.kernel_haven.util.logic.Formula;
 import net.ssehub.kernel_haven.util.logic.VariableFinder;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
 
 /**
@@ -49,9 +50,20 @@ import net.ssehub.kernel_haven.variability_model.VariabilityModel;
  */
 public class ConfigMismatchDetector extends AnalysisComponent<ConfigMismatchResult> {
 
+    private @NonNull Configuration config;
     private @NonNull AnalysisComponent<VariableWithFeatureEffect> feFinder;
     private @NonNull AnalysisComponent<VariabilityModel> vmProvider;
     private @NonNull IFormulaToCnfConverter converter;
+    private @Nullable File slowQueryLogFile;
+    private int slowQueryLogSize;
+    private boolean explainConflicts;
+    private int explanationBudget;
+    
+    private @NonNull DetectionRun detection;
+    
+    private @NonNull ResultStream<ConflictExplanation> explanations;
+    
+    private @NonNull ResultStream<SampleEstimate> estimates;
 
     /**
      * Creates a new {@link ConfigMismatchDetector} for the given feature effect finder.
@@ -66,13 +78,51 @@ public class ConfigMismatchDetector extends AnalysisComponent<ConfigMismatchResu
             @NonNull AnalysisComponent<VariableWithFeatureEffect> feFinder) throws SetUpException {
         
         super(config);
+        this.config = config;
         this.feFinder = feFinder;
         this.vmProvider = vmProvider;
         converter = FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING);
+        
+        MismatchSettings.registerAllSettings(config);
+        slowQueryLogFile = config.getValue(MismatchSettings.SLOW_QUERY_LOG_FILE);
+        slowQueryLogSize = config.getValue(MismatchSettings.SLOW_QUERY_LOG_SIZE);
+        explainConflicts = config.getValue(MismatchSettings.EXPLAIN_CONFLICTS);
+        explanationBudget = config.getValue(MismatchSettings.EXPLANATION_BUDGET_MS);
+        
+        detection = new DetectionRun(this::detect);
+        explanations = new ResultStream<>(config, detection, "Conflict Explanations");
+        estimates = new ResultStream<>(config, detection, "Configuration Mismatch Estimates");
+    }
+    
+    /**
+     * Returns the component, which provides the explanations of the {@link MismatchResultType#CONFLICT_WITH_VARMODEL}
+     * results (see {@link MismatchSettings#EXPLAIN_CONFLICTS}). Empty if the explanations are disabled.
+     * 
+     * @return The conflict explanations of this detector.
+     */
+    public @NonNull AnalysisComponent<ConflictExplanation> getExplanations() {
+        return explanations;
+    }
+    
+    /**
+     * Returns the component, which provides the estimated number of results of each {@link MismatchResultType} in
+     * the sampling mode (see {@link MismatchSettings#SAMPLING_RATE}). Empty if the sampling mode is disabled.
+     * 
+     * @return The estimates of this detector.
+     */
+    public @NonNull AnalysisComponent<SampleEstimate> getEstimates() {
+        return estimates;
     }
 
     @Override
     protected void execute() {
+        detection.run();
+    }
+    
+    /**
+     * Classifies all feature effects and adds the results.
+     */
+    private void detect() {
         Cnf varModel = null;
         Set<String> variables = null;
         try {
@@ -90,10 +140,24 @@ public class ConfigMismatchDetector extends AnalysisComponent<ConfigMismatchResu
             return;
         }
         
+        VarModelSolver solver = VarModelSolver.create(config, varModel, converter);
+        VersionDelta delta = VersionDelta.create(config, solver);
+        ShadowVerifier<MismatchResultType> shadow = ShadowVerifier.create(config, varModel,
+                ConfigMismatchDetector::checkWithSat);
+        ConflictExplainer explainer = explainConflicts
+                ? new ConflictExplainer(solver.getModelStore(), converter, explanationBudget) : null;
+        File slowQueryLogFile = this.slowQueryLogFile;
+        SlowQueryLog slowQueryLog = slowQueryLogFile != null ? new SlowQueryLog(slowQueryLogSize) : null;
+        solver.setQueryStatistics(slowQueryLog != null);
+        
         ProgressLogger progress = new ProgressLogger(notNull(getClass().getSimpleName()));
         
+        VariableSelection selection = new VariableSelection(config, feFinder);
+        StratifiedSample sample = StratifiedSample.create(config);
         VariableWithFeatureEffect variable;
-        while ((variable = feFinder.getNextResult()) != null) {
+        while ((variable = sample != null ? sample.next(selection) : selection.next()) != null) {
+            long start = slowQueryLog != null ? System.nanoTime() : 0;
+            solver.startVariable(variable.getVariable());
             ConfigMismatchResult mismatchResult = null;
             String varName = variable.getVariable();
             Formula feConstraint = variable.getFeatureEffect();
@@ -117,30 +181,113 @@ public class ConfigMismatchDetector extends AnalysisComponent<ConfigMismatchResu
                 }
             }
             
-            if (null == mismatchResult) {
-                try {
-                    Cnf feViolationAsCnf = converter.convert(and(varName, not(feConstraint)));
-                    
-                    // check if sat(VarModel AND Variable is selected AND feature effect is violated)
-                    ISatSolver solver = SatSolverFactory.createSolver(varModel, false);
-                    boolean isMissing = solver.isSatisfiable(feViolationAsCnf);
-                    
-                    mismatchResult = new ConfigMismatchResult(varName, feConstraint,
-                        isMissing ? MismatchResultType.CONFLICT_WITH_VARMODEL : MismatchResultType.CONSISTENT);
-                } catch (ConverterException e) {
-                    mismatchResult = new ConfigMismatchResult(varName, feConstraint, MismatchResultType.ERROR);
-                    LOGGER.logError("Could not translate feature effect constraint for variable: "
-                        + variable.getVariable() + ", reason: " + e.getMessage());
-                } catch (SolverException e) {
-                    mismatchResult = new ConfigMismatchResult(varName, feConstraint, MismatchResultType.ERROR);
-                    LOGGER.logError("Could not solve feature effect constraint for variable: "
-                            + variable.getVariable() + ", reason: " + e.getMessage());
+            if (null == mismatchResult && delta != null) {
+                MismatchResultType previous = delta.reuseBasic(varName, feConstraint);
+                if (previous != null) {
+                    mismatchResult = new ConfigMismatchResult(varName, feConstraint, previous);
                 }
             }
+            
+            if (null == mismatchResult) {
+                mismatchResult = new ConfigMismatchResult(varName, feConstraint,
+                        checkWithSat(solver, varName, feConstraint));
+            }
+            if (shadow != null && mismatchResult.getResultType() != MismatchResultType.VARIABLE_NOT_DEFINED
+                    && mismatchResult.getResultType() != MismatchResultType.FORMULA_NOT_SUPPORTED) {
+                shadow.submit(varName, feConstraint, mismatchResult.getResultType());
+            }
+            if (slowQueryLog != null) {
+                slowQueryLog.record(varName, feConstraint, System.nanoTime() - start, solver,
+                        mismatchResult.getResult());
+            }
             addResult(mismatchResult);
+            if (sample != null) {
+                sample.record(feConstraint, mismatchResult.getResult());
+            }
+            if (explainer != null && mismatchResult.getResultType() == MismatchResultType.CONFLICT_WITH_VARMODEL) {
+                explain(explainer, varName, feConstraint);
+            }
             progress.processedOne();
         }
         progress.close();
+        LOGGER.logInfo(solver.getSummary());
+        solver.saveLearnedClauses();
+        if (selection.getSkippedCount() > 0) {
+            LOGGER.logInfo("Skipped " + selection.getSkippedCount() + " variables not selected for the analysis");
+        }
+        if (sample != null) {
+            MismatchResultType[] types = MismatchResultType.values();
+            String[] results = new String[types.length];
+            for (int i = 0; i < types.length; i++) {
+                results[i] = types[i].getDescription();
+            }
+            sample.report(estimates, results);
+        }
+        if (delta != null) {
+            LOGGER.logInfo("Reused " + delta.getReusedCount() + " results of the previous version");
+        }
+        if (shadow != null) {
+            shadow.close();
+        }
+        
+        if (slowQueryLog != null && slowQueryLogFile != null) {
+            try {
+                slowQueryLog.write(slowQueryLogFile);
+            } catch (IOException e) {
+                LOGGER.logException("Could not write slow query log to " + slowQueryLogFile.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the feature effect can be violated while the variable is selected.
+     * 
+     * @param solver The solver for the variability model.
+     * @param varName The name of the variable to check the FE for.
+     * @param feConstraint The feature effect.
+     * 
+     * @return The result of the SAT analysis.
+     */
+    static @NonNull MismatchResultType checkWithSat(@NonNull VarModelSolver solver, @NonNull String varName,
+            @NonNull Formula feConstraint) {
+        
+        MismatchResultType result;
+        try {
+            // check if sat(VarModel AND Variable is selected AND feature effect is violated)
+            boolean isMissing = solver.isSatisfiable(and(varName, not(feConstraint)));
+            
+            result = isMissing ? MismatchResultType.CONFLICT_WITH_VARMODEL : MismatchResultType.CONSISTENT;
+        } catch (ConverterException e) {
+            result = MismatchResultType.ERROR;
+            LOGGER.logError("Could not translate feature effect constraint for variable: "
+                + varName + ", reason: " + e.getMessage());
+        } catch (SolverException e) {
+            result = MismatchResultType.ERROR;
+            LOGGER.logError("Could not solve feature effect constraint for variable: "
+                    + varName + ", reason: " + e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Publishes the explanation of a {@link MismatchResultType#CONFLICT_WITH_VARMODEL} result.
+     * 
+     * @param explainer The explainer for the variability model.
+     * @param varName The name of the conflicting variable.
+     * @param feConstraint The feature effect of the variable.
+     */
+    private void explain(@NonNull ConflictExplainer explainer, @NonNull String varName,
+            @NonNull Formula feConstraint) {
+        
+        try {
+            String explanation = explainer.explainConflict(varName, feConstraint);
+            if (explanation != null) {
+                explanations.publish(new ConflictExplanation(varName, feConstraint,
+                        MismatchResultType.CONFLICT_WITH_VARMODEL.getDescription(), explanation));
+            }
+        } catch (SolverException e) {
+            LOGGER.logError("Could not explain conflict of variable: " + varName + ", reason: " + e.getMessage());
+        }
     }
 
     @Override
@@ -0,0 +1,503 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.IFormulaToCnfConverter;
+import net.ssehub.kernel_haven.cnf.ISatSolver;
+import net.ssehub.kernel_haven.cnf.SatSolverFactory;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.logic.VariableFinder;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Computes {@link ConflictExplanation}s for the results of the detectors:
+ * <ul>
+ *   <li>A contradiction (the feature effect can't be satisfied together with the variable) is explained by an
+ *   unsatisfiable subset of the model clauses and the parts (top-level conjuncts) of the feature effect.</li>
+ *   <li>A conflict with the variability model (the variable can be selected while the feature effect is violated)
+ *   is explained by a partial configuration, which is valid in the model and shows the violation.</li>
+ * </ul>
+ * The SAT solver does not report the final conflict of an unsatisfiable query, so the unsatisfiable subsets are
+ * extracted by deletion: starting from the clauses connected to the variables of the query, chunks of constraints
+ * are removed as long as the remaining ones are still unsatisfiable. This is an anytime algorithm; once the time
+ * budget is used up, the (possibly not minimal) remaining subset is reported. Each constraint gets a selector
+ * variable, so that one solver answers all subsets of the candidates.
+ * <p>
+ * The explainer uses solvers of its own, so its queries don't show up in the statistics, query dumps and learned
+ * clauses of the {@link VarModelSolver} of the detector.
+ * </p>
+ *
+ * @author agent
+ */
+class ConflictExplainer {
+    
+    /**
+     * The maximum number of cubes of the violation, which are tried as configuration for a conflict.
+     */
+    static final int MAX_WITNESS_CUBES = 64;
+    
+    /**
+     * The prefix of the selector variables, which switch the constraints of a candidate list on.
+     */
+    private static final @NonNull String SELECTOR_PREFIX = "__constraint_";
+    
+    /**
+     * A constraint of an explanation: a clause of the model or a part of the query.
+     */
+    private static final class Constraint {
+        
+        private final @NonNull String description;
+        
+        private final @NonNull Cnf cnf;
+        
+        private final boolean fromModel;
+        
+        /**
+         * Creates a constraint.
+         * 
+         * @param description The human readable form of the constraint.
+         * @param cnf The constraint in CNF.
+         * @param fromModel Whether this is a clause of the variability model.
+         */
+        private Constraint(@NonNull String description, @NonNull Cnf cnf, boolean fromModel) {
+            this.description = description;
+            this.cnf = cnf;
+            this.fromModel = fromModel;
+        }
+        
+    }
+    
+    /**
+     * One solver for all subsets of a list of candidate constraints: every clause of constraint <tt>i</tt> is extended
+     * by the negated selector <tt>i</tt>, a subset is switched on by unit clauses of its selectors. Constraints
+     * without their selector are satisfied by setting the selector to false.
+     */
+    private static final class SubsetSolver {
+        
+        private final @NonNull Map<Constraint, Integer> selectors = new IdentityHashMap<>();
+        
+        private final @NonNull ISatSolver solver;
+        
+        /**
+         * Creates the solver for the given candidates.
+         * 
+         * @param candidates All constraints, of which subsets are checked.
+         */
+        private SubsetSolver(@NonNull List<@NonNull Constraint> candidates) {
+            Cnf cnf = new Cnf();
+            for (Constraint constraint : candidates) {
+                int selector = selectors.size();
+                selectors.put(constraint, selector);
+                for (int i = 0; i < constraint.cnf.getRowCount(); i++) {
+                    List<CnfVariable> row = new ArrayList<>();
+                    for (CnfVariable variable : constraint.cnf.getRow(i)) {
+                        row.add(variable);
+                    }
+                    row.add(new CnfVariable(true, SELECTOR_PREFIX + selector));
+                    cnf.addRow(row.toArray(new CnfVariable[row.size()]));
+                }
+            }
+            this.solver = SatSolverFactory.createSolver(cnf, false);
+        }
+        
+        /**
+         * Checks whether the conjunction of the given constraints is satisfiable.
+         * 
+         * @param constraints The constraints to check, a subset of the candidates.
+         * 
+         * @return Whether all constraints can be satisfied together.
+         * 
+         * @throws SolverException If the solver fails.
+         */
+        private boolean isSatisfiable(@NonNull List<@NonNull Constraint> constraints) throws SolverException {
+            Cnf query = new Cnf();
+            for (Constraint constraint : constraints) {
+                query.addRow(new CnfVariable(SELECTOR_PREFIX + selectors.get(constraint)));
+            }
+            return solver.isSatisfiable(query);
+        }
+        
+    }
+    
+    private final @NonNull ClauseStore model;
+    
+    private final @NonNull IFormulaToCnfConverter converter;
+    
+    private final long budgetMillis;
+    
+    private int @Nullable [][] clausesOfVariable;
+    
+    private @Nullable ISatSolver modelSolver;
+    
+    /**
+     * Creates an explainer for the given variability model.
+     * 
+     * @param model The clauses of the variability model.
+     * @param converter The converter for the parts of the queries.
+     * @param budgetMillis The time budget for minimizing the explanation of one result, in milliseconds.
+     */
+    ConflictExplainer(@NonNull ClauseStore model, @NonNull IFormulaToCnfConverter converter, long budgetMillis) {
+        this.model = model;
+        this.converter = converter;
+        this.budgetMillis = budgetMillis;
+    }
+    
+    /**
+     * Explains why the feature effect contradicts the variability model, i.e., why
+     * <code>M AND (NOT var OR E)</code> is unsatisfiable: the variable can't be deselected and the feature effect
+     * can't be satisfied.
+     * 
+     * @param varName The name of the variable.
+     * @param feConstraint The feature effect of the variable.
+     * 
+     * @return The unsatisfiable constraints or <code>null</code> if the feature effect does not contradict the
+     *      model.
+     * 
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If a part of the feature effect could not be converted into CNF.
+     */
+    @Nullable String explainContradiction(@NonNull String varName, @NonNull Formula feConstraint)
+            throws SolverException, ConverterException {
+        
+        long deadline = System.currentTimeMillis() + budgetMillis;
+        
+        List<@NonNull Formula> deselected = new ArrayList<>();
+        deselected.add(not(new Variable(varName)));
+        List<@NonNull Constraint> variableCore = findCore(deselected, deadline);
+        
+        List<@NonNull Formula> parts = new ArrayList<>();
+        splitConjunction(feConstraint, parts);
+        List<@NonNull Constraint> effectCore = findCore(parts, deadline);
+        
+        String result = null;
+        if (variableCore != null && effectCore != null) {
+            result = describe(variableCore) + "; " + describe(effectCore);
+        }
+        return result;
+    }
+    
+    /**
+     * Explains why the feature effect conflicts with the variability model, i.e., why
+     * <code>M AND var AND NOT E</code> is satisfiable.
+     * 
+     * @param varName The name of the variable.
+     * @param feConstraint The feature effect of the variable.
+     * 
+     * @return A partial configuration, which is valid in the model and selects the variable without satisfying the
+     *      feature effect, or <code>null</code> if the violation is too large to be split into configurations.
+     * 
+     * @throws SolverException If the solver fails.
+     */
+    @Nullable String explainConflict(@NonNull String varName, @NonNull Formula feConstraint)
+            throws SolverException {
+        
+        long deadline = System.currentTimeMillis() + budgetMillis;
+        String result = null;
+        List<@NonNull Map<String, Boolean>> cubes = FormulaUtils.toCubes(and(varName, not(feConstraint)),
+                MAX_WITNESS_CUBES);
+        if (cubes != null) {
+            for (int i = 0; result == null && i < cubes.size() && System.currentTimeMillis() < deadline; i++) {
+                Cnf configuration = new Cnf();
+                StringBuilder description = new StringBuilder();
+                for (Map.Entry<String, Boolean> literal : new TreeMap<>(cubes.get(i)).entrySet()) {
+                    configuration.addRow(new CnfVariable(!literal.getValue(), literal.getKey()));
+                    if (description.length() > 0) {
+                        description.append(" && ");
+                    }
+                    description.append(literal.getValue() ? "" : "!").append(literal.getKey());
+                }
+                if (configuration.getRowCount() > 0 && getModelSolver().isSatisfiable(configuration)) {
+                    result = "valid configuration: " + description;
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the solver for the whole variability model. Created once on first use.
+     * 
+     * @return The solver for the model clauses.
+     */
+    private @NonNull ISatSolver getModelSolver() {
+        ISatSolver result = modelSolver;
+        if (result == null) {
+            Cnf cnf = new Cnf();
+            for (int clause = 0; clause < model.getClauseCount(); clause++) {
+                cnf.addRow(getRow(clause));
+            }
+            result = SatSolverFactory.createSolver(cnf, false);
+            modelSolver = result;
+        }
+        return result;
+    }
+    
+    /**
+     * Finds an unsatisfiable subset of the model clauses and the given parts of a query.
+     * 
+     * @param parts The parts of the query, which are conjuncted with the model.
+     * @param deadline The time (in milliseconds since the epoch), at which the minimization stops.
+     * 
+     * @return The unsatisfiable constraints or <code>null</code> if the model and the parts are satisfiable.
+     * 
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If a part could not be converted into CNF.
+     */
+    private @Nullable List<@NonNull Constraint> findCore(@NonNull List<@NonNull Formula> parts, long deadline)
+            throws SolverException, ConverterException {
+        
+        List<@NonNull Constraint> partConstraints = new ArrayList<>();
+        VariableFinder finder = new VariableFinder();
+        for (Formula part : parts) {
+            partConstraints.add(new Constraint(part.toString(), converter.convert(part), false));
+            part.accept(finder);
+        }
+        
+        // the clauses connected to the query are usually enough, otherwise all clauses are needed
+        BitSet slice = getConnectedClauses(finder.getVariableNames());
+        List<@NonNull Constraint> candidates = withClauses(partConstraints, slice);
+        SubsetSolver solver = new SubsetSolver(candidates);
+        boolean satisfiable = solver.isSatisfiable(candidates);
+        if (satisfiable && slice.cardinality() < model.getClauseCount()) {
+            BitSet all = new BitSet();
+            all.set(0, model.getClauseCount());
+            candidates = withClauses(partConstraints, all);
+            solver = new SubsetSolver(candidates);
+            satisfiable = solver.isSatisfiable(candidates);
+        }
+        
+        List<@NonNull Constraint> result = null;
+        if (!satisfiable) {
+            result = minimize(candidates, solver, deadline);
+        }
+        return result;
+    }
+    
+    /**
+     * Removes constraints from an unsatisfiable list, as long as it stays unsatisfiable. Chunks of half the list are
+     * tried first, the chunk size is halved after each pass. A completed pass with single constraints yields a
+     * minimal unsatisfiable subset.
+     * 
+     * @param constraints The unsatisfiable constraints.
+     * @param solver The solver for subsets of the constraints.
+     * @param deadline The time (in milliseconds since the epoch), at which the minimization stops.
+     * 
+     * @return The remaining, still unsatisfiable constraints.
+     * 
+     * @throws SolverException If the solver fails.
+     */
+    private static @NonNull List<@NonNull Constraint> minimize(@NonNull List<@NonNull Constraint> constraints,
+            @NonNull SubsetSolver solver, long deadline) throws SolverException {
+        
+        List<@NonNull Constraint> result = constraints;
+        int chunk = Math.max(1, result.size() / 2);
+        boolean done = false;
+        while (!done && System.currentTimeMillis() < deadline) {
+            int start = 0;
+            while (start < result.size() && System.currentTimeMillis() < deadline) {
+                List<@NonNull Constraint> candidate = new ArrayList<>(result.subList(0, start));
+                candidate.addAll(result.subList(Math.min(result.size(), start + chunk), result.size()));
+                if (solver.isSatisfiable(candidate)) {
+                    // the chunk is needed for the conflict
+                    start += chunk;
+                } else {
+                    result = candidate;
+                }
+            }
+            done = chunk == 1 && start >= result.size();
+            chunk = Math.max(1, chunk / 2);
+        }
+        return result;
+    }
+    
+    /**
+     * Collects the clauses of the model, which are (transitively) connected to the given variables by shared
+     * variables.
+     * 
+     * @param variables The variables to start from.
+     * 
+     * @return The indices of the connected clauses.
+     */
+    private @NonNull BitSet getConnectedClauses(@NonNull Iterable<String> variables) {
+        int[][] occurrences = getClausesOfVariable();
+        BitSet clauses = new BitSet();
+        BitSet visited = new BitSet();
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (String name : variables) {
+            int id = model.getId(name);
+            if (id >= 0 && !visited.get(id)) {
+                visited.set(id);
+                queue.add(id);
+            }
+        }
+        
+        while (!queue.isEmpty()) {
+            int id = queue.poll();
+            for (int clause : occurrences[id]) {
+                if (!clauses.get(clause)) {
+                    clauses.set(clause);
+                    for (int i = 0; i < model.getClauseLength(clause); i++) {
+                        int other = model.getLiteral(clause, i) >> 1;
+                        if (!visited.get(other)) {
+                            visited.set(other);
+                            queue.add(other);
+                        }
+                    }
+                }
+            }
+        }
+        return clauses;
+    }
+    
+    /**
+     * Returns the clauses, in which each variable occurs. Computed once on first use.
+     * 
+     * @return The indices of the clauses per variable id.
+     */
+    private int @NonNull [][] getClausesOfVariable() {
+        int[][] result = clausesOfVariable;
+        if (result == null) {
+            int[] counts = new int[model.getVariableCount()];
+            for (int clause = 0; clause < model.getClauseCount(); clause++) {
+                for (int i = 0; i < model.getClauseLength(clause); i++) {
+                    counts[model.getLiteral(clause, i) >> 1]++;
+                }
+            }
+            result = new int[counts.length][];
+            for (int id = 0; id < counts.length; id++) {
+                result[id] = new int[counts[id]];
+                counts[id] = 0;
+            }
+            for (int clause = 0; clause < model.getClauseCount(); clause++) {
+                for (int i = 0; i < model.getClauseLength(clause); i++) {
+                    int id = model.getLiteral(clause, i) >> 1;
+                    result[id][counts[id]++] = clause;
+                }
+            }
+            clausesOfVariable = result;
+        }
+        return result;
+    }
+    
+    /**
+     * Creates the list of the given part constraints and model clauses.
+     * 
+     * @param parts The constraints of the query parts.
+     * @param clauses The indices of the model clauses to add.
+     * 
+     * @return The parts followed by the clauses.
+     */
+    private @NonNull List<@NonNull Constraint> withClauses(@NonNull List<@NonNull Constraint> parts,
+            @NonNull BitSet clauses) {
+        
+        List<@NonNull Constraint> result = new ArrayList<>(parts);
+        for (int clause = clauses.nextSetBit(0); clause >= 0; clause = clauses.nextSetBit(clause + 1)) {
+            CnfVariable[] row = getRow(clause);
+            StringBuilder description = new StringBuilder("(");
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    description.append(" || ");
+                }
+                description.append(row[i].isNegation() ? "!" : "").append(row[i].getName());
+            }
+            description.append(')');
+            Cnf cnf = new Cnf();
+            cnf.addRow(row);
+            result.add(new Constraint(description.toString(), cnf, true));
+        }
+        return result;
+    }
+    
+    /**
+     * Returns a clause of the model as row of a CNF.
+     * 
+     * @param clause The index of the clause.
+     * 
+     * @return The literals of the clause.
+     */
+    private @NonNull CnfVariable @NonNull [] getRow(int clause) {
+        @NonNull CnfVariable[] row = new @NonNull CnfVariable[model.getClauseLength(clause)];
+        for (int i = 0; i < row.length; i++) {
+            int literal = model.getLiteral(clause, i);
+            row[i] = new CnfVariable((literal & 1) != 0, model.getName(literal >> 1));
+        }
+        return row;
+    }
+    
+    /**
+     * Adds the top-level conjuncts of the given formula to the list.
+     * 
+     * @param formula The formula to split.
+     * @param parts The list to add the conjuncts to.
+     */
+    private static void splitConjunction(@NonNull Formula formula, @NonNull List<@NonNull Formula> parts) {
+        if (formula instanceof Conjunction) {
+            splitConjunction(((Conjunction) formula).getLeft(), parts);
+            splitConjunction(((Conjunction) formula).getRight(), parts);
+        } else {
+            parts.add(formula);
+        }
+    }
+    
+    /**
+     * Describes an unsatisfiable subset: the query parts contradict the model clauses.
+     * 
+     * @param core The unsatisfiable constraints.
+     * 
+     * @return The human readable form of the subset.
+     */
+    private static @NonNull String describe(@NonNull List<@NonNull Constraint> core) {
+        StringBuilder parts = new StringBuilder();
+        StringBuilder clauses = new StringBuilder();
+        for (Constraint constraint : core) {
+            StringBuilder target = constraint.fromModel ? clauses : parts;
+            if (target.length() > 0) {
+                target.append(" && ");
+            }
+            target.append(constraint.description);
+        }
+        
+        String result;
+        if (parts.length() == 0) {
+            result = "the variability model is unsatisfiable: " + clauses;
+        } else if (clauses.length() == 0) {
+            result = parts + " is unsatisfiable";
+        } else {
+            result = parts + " contradicts " + clauses;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.util.io.TableElement;
+import net.ssehub.kernel_haven.util.io.TableRow;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * The explanation of a conflict found by one of the detectors (see {@link ConflictExplainer}). This consist of:
+ * <ul>
+ *   <li>A {@link VariableWithFeatureEffect}</li>
+ *   <li>The description of the result, which is explained</li>
+ *   <li>And the explanation</li>
+ * </ul>
+ * @author agent
+ *
+ */
+@TableRow
+public class ConflictExplanation extends VariableWithFeatureEffect {
+
+    private @NonNull String result;
+    
+    private @NonNull String explanation;
+    
+    /**
+     * Creates a new explanation.
+     * @param variable The variable name.
+     * @param featureEffect The feature effect of the given variable. Must not be <code>null</code>.
+     * @param result The description of the explained result.
+     * @param explanation The explanation.
+     */
+    public ConflictExplanation(@NonNull String variable, @NonNull Formula featureEffect, @NonNull String result,
+        @NonNull String explanation) {
+        
+        super(variable, featureEffect);
+        this.result = result;
+        this.explanation = explanation;
+    }
+
+    /**
+     * Returns the description of the explained result.
+     * 
+     * @return The result of the detector.
+     */
+    @TableElement(name = "Resolution", index = 2)
+    public @NonNull String getResult() {
+        return result;
+    }
+    
+    /**
+     * Returns the explanation.
+     * 
+     * @return The constraints causing the conflict or a configuration showing it.
+     */
+    @TableElement(name = "Explanation", index = 3)
+    public @NonNull String getExplanation() {
+        return explanation;
+    }
+}
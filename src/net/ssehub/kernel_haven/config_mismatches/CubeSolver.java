@@ -0,0 +1,298 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ISatSolver;
+import net.ssehub.kernel_haven.cnf.SatSolverFactory;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Solves single hard queries against a model with cube-and-conquer: the query is split into <tt>2^depth</tt> cubes
+ * by fixing the model variables around the query with the most occurrences, and the cubes are solved in parallel. The query is satisfiable iff any cube is satisfiable. Each worker thread uses its own solver instance,
+ * which is kept for the following queries.
+ * <p>
+ * Once the result is known, cubes which did not start yet are not solved anymore and running cubes are interrupted.
+ * This does not stop a solver, which ignores interrupts: such a cube runs to its end in the background, its result
+ * is ignored and it occupies its slot of {@link #setMaxSolvers(int)} until then. Solvers of interrupted or failed
+ * cubes are discarded instead of being reused.
+ * </p>
+ *
+ * @author agent
+ */
+class CubeSolver {
+
+    private final @NonNull Cnf model;
+
+    private final @NonNull ClauseStore store;
+
+    /**
+     * Variable id -&gt; number of occurrences in the model.
+     */
+    private final int @NonNull [] modelOccurrences;
+
+    /**
+     * Variable id -&gt; indices of the clauses containing it.
+     */
+    private final int @NonNull [] @NonNull [] variableClauses;
+
+    private final int depth;
+
+    private final @NonNull ExecutorService executor;
+
+    /**
+     * Idle solvers for the model; each running cube takes one solver and puts it back afterwards, unless the cube
+     * was interrupted or failed.
+     */
+    private final @NonNull BlockingQueue<ISatSolver> solvers = new LinkedBlockingQueue<>();
+
+    /**
+     * The maximum number of cubes solved at the same time, i.e., also the maximum number of solver instances.
+     */
+    private int maxSolvers = Integer.MAX_VALUE;
+
+    private int busySolvers;
+
+    /**
+     * Creates a cube solver for the given model.
+     *
+     * @param model The model, which is conjoined with all queries.
+     * @param store The same model as clause store, used for selecting the variables to split on.
+     * @param depth The number of variables to fix per cube.
+     * @param executor The executor for solving the cubes; may be shared with other cube solvers.
+     */
+    CubeSolver(@NonNull Cnf model, @NonNull ClauseStore store, int depth, @NonNull ExecutorService executor) {
+        this.model = model;
+        this.store = store;
+        this.depth = depth;
+        this.executor = executor;
+
+        int[] counts = new int[store.getVariableCount()];
+        for (int c = 0; c < store.getClauseCount(); c++) {
+            for (int i = 0; i < store.getClauseLength(c); i++) {
+                counts[store.getLiteral(c, i) / 2]++;
+            }
+        }
+        int[][] clauses = new int[counts.length][];
+        for (int id = 0; id < counts.length; id++) {
+            clauses[id] = new int[counts[id]];
+        }
+        int[] filled = new int[counts.length];
+        for (int c = 0; c < store.getClauseCount(); c++) {
+            for (int i = 0; i < store.getClauseLength(c); i++) {
+                int id = store.getLiteral(c, i) / 2;
+                clauses[id][filled[id]++] = c;
+            }
+        }
+        this.modelOccurrences = counts;
+        this.variableClauses = clauses;
+    }
+
+    /**
+     * Selects the variables to split on: the model variables of the query and the model variables sharing a clause
+     * with them, ranked by their occurrences in the model and the query. Variables fixed by a unit clause of the
+     * query are skipped, as half of their cubes would be trivially unsatisfiable; so are variables, which are not
+     * part of the model, like the auxiliary variables of the {@link SelectorEncoding}. Ties are broken by name, so
+     * that the split is reproducible.
+     *
+     * @param query The query.
+     *
+     * @return At most <code>depth</code> variable names; empty if the query has no free variables in the model.
+     */
+    @NonNull List<String> selectVariables(@NonNull Cnf query) {
+        Set<String> fixed = new HashSet<>();
+        Map<String, Integer> queryOccurrences = new HashMap<>();
+        for (int i = 0; i < query.getRowCount(); i++) {
+            String unit = null;
+            int length = 0;
+            for (CnfVariable variable : query.getRow(i)) {
+                queryOccurrences.merge(variable.getName(), 1, Integer::sum);
+                unit = variable.getName();
+                length++;
+            }
+            if (length == 1) {
+                fixed.add(unit);
+            }
+        }
+
+        Map<String, Integer> scores = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : queryOccurrences.entrySet()) {
+            int id = store.getId(entry.getKey());
+            if (id != -1) {
+                addCandidate(scores, fixed, id, entry.getValue());
+                for (int clause : variableClauses[id]) {
+                    for (int i = 0; i < store.getClauseLength(clause); i++) {
+                        addCandidate(scores, fixed, store.getLiteral(clause, i) / 2, 0);
+                    }
+                }
+            }
+        }
+
+        List<String> result = new ArrayList<>(scores.keySet());
+        result.sort((first, second) -> {
+            int cmp = Integer.compare(scores.get(second), scores.get(first));
+            return cmp != 0 ? cmp : first.compareTo(second);
+        });
+        return result.subList(0, Math.min(depth, result.size()));
+    }
+
+    /**
+     * Adds a model variable to the candidates for splitting, unless it is fixed by the query or auxiliary.
+     *
+     * @param scores Variable name -&gt; occurrences in the model and the query, for the candidates so far.
+     * @param fixed The variables fixed by unit clauses of the query.
+     * @param id The id of the variable in the model.
+     * @param queryOccurrences The number of occurrences of the variable in the query; only added once per variable.
+     */
+    private void addCandidate(@NonNull Map<String, Integer> scores, @NonNull Set<String> fixed, int id,
+            int queryOccurrences) {
+
+        String name = store.getName(id);
+        if (!fixed.contains(name) && !name.startsWith(SelectorEncoding.SELECTOR_PREFIX)) {
+            Integer score = scores.get(name);
+            scores.put(name, (score != null ? score : modelOccurrences[id]) + queryOccurrences);
+        }
+    }
+
+    /**
+     * Checks whether <code>model AND query</code> is satisfiable by solving all cubes in parallel. Returns as soon as
+     * one cube is satisfiable; the remaining cubes are not started anymore or interrupted, see the class comment.
+     *
+     * @param query The query to check.
+     *
+     * @return Whether the model and the query are satisfiable.
+     *
+     * @throws SolverException If solving a cube fails.
+     */
+    boolean isSatisfiable(@NonNull Cnf query) throws SolverException {
+        List<String> variables = selectVariables(query);
+        List<List<CnfVariable>> rows = new ArrayList<>(query.getRowCount());
+        for (int i = 0; i < query.getRowCount(); i++) {
+            List<CnfVariable> row = new ArrayList<>();
+            for (CnfVariable variable : query.getRow(i)) {
+                row.add(variable);
+            }
+            rows.add(row);
+        }
+
+        CompletionService<Boolean> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int cube = 0; cube < (1 << variables.size()); cube++) {
+            Cnf cubeQuery = new Cnf();
+            for (List<CnfVariable> row : rows) {
+                cubeQuery.addRow(row.toArray(new CnfVariable[row.size()]));
+            }
+            for (int i = 0; i < variables.size(); i++) {
+                cubeQuery.addRow(new CnfVariable((cube & (1 << i)) != 0, variables.get(i)));
+            }
+            futures.add(completion.submit(() -> solve(cubeQuery)));
+        }
+
+        boolean result = false;
+        try {
+            for (int i = 0; i < futures.size() && !result; i++) {
+                result = completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolverException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof SolverException ? (SolverException) cause : new SolverException(cause);
+        } finally {
+            for (Future<Boolean> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Limits the number of cubes solved at the same time. Idle solvers above the limit are discarded, so that their
+     * memory can be reclaimed; cubes above the limit wait for a running cube to finish.
+     *
+     * @param maxSolvers The maximum number of solver instances, at least 1.
+     */
+    synchronized void setMaxSolvers(int maxSolvers) {
+        this.maxSolvers = Math.max(1, maxSolvers);
+        while (solvers.size() + busySolvers > this.maxSolvers && solvers.poll() != null) {
+            // discard idle solver
+        }
+        notifyAll();
+    }
+
+    /**
+     * Solves a single cube with an idle solver, or a new one if all solvers are busy and the maximum number of
+     * solvers is not reached yet. The solver is only kept for the following cubes, if it completed without being
+     * interrupted.
+     *
+     * @param cubeQuery The query together with the cube literals.
+     *
+     * @return Whether the model and the cube query are satisfiable.
+     *
+     * @throws SolverException If the solver fails or the thread is interrupted while waiting for a solver.
+     */
+    private boolean solve(@NonNull Cnf cubeQuery) throws SolverException {
+        synchronized (this) {
+            while (busySolvers >= maxSolvers) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SolverException(e);
+                }
+            }
+            busySolvers++;
+        }
+
+        ISatSolver solver = solvers.poll();
+        boolean reusable = false;
+        try {
+            if (solver == null) {
+                solver = SatSolverFactory.createSolver(model, false);
+            }
+            boolean result = solver.isSatisfiable(cubeQuery);
+            // the state of an interrupted solver is unknown, even if it returned a result
+            reusable = !Thread.currentThread().isInterrupted();
+            return result;
+        } finally {
+            synchronized (this) {
+                busySolvers--;
+                if (reusable && solver != null && solvers.size() + busySolvers < maxSolvers) {
+                    solvers.add(solver);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+}
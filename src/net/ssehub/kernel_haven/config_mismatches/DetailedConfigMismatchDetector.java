@@ -20,19 +20,21 @@ import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
 import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
 import static net.ssehub.kernel_haven.util.null_checks.NullHelpers.notNull;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import net.ssehub.kernel_haven.SetUpException;
 import net.ssehub.kernel_haven.analysis.AnalysisComponent;
 import net.ssehub.kernel_haven.cnf.Cnf;
-import net.ssehub.kernel_haven.cnf.CnfVariable;
 import net.ssehub.kernel_haven.cnf.ConverterException;
 import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
 import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
 import net.ssehub.kernel_haven.cnf.IFormulaToCnfConverter;
-import net.ssehub.kernel_haven.cnf.ISatSolver;
-import net.ssehub.kernel_haven.cnf.SatSolverFactory;
 import net.ssehub.kernel_haven.cnf.SolverException;
 import net.ssehub.kernel_haven.cnf.VmToCnfConverter;
 import net.ssehub.kernel_haven.config.Configuration;
@@ -43,6 +45,7 @@ import net.ssehub.kernel_haven.util.logic.Formula;
 import net.ssehub.kernel_haven.util.logic.Variable;
 import net.ssehub.kernel_haven.util.logic.VariableFinder;
 import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
 import net.ssehub.kernel_haven.variability_model.VariabilityModel;
 
 /**
@@ -53,9 +56,167 @@ import net.ssehub.kernel_haven.variability_model.VariabilityModel;
  */
 public class DetailedConfigMismatchDetector extends AnalysisComponent<DetailedConfigMismatchResult> {
 
+    /**
+     * The maximum number of variables, which wait for the second phase of the two-phase mode. If this number is
+     * reached, the first phase waits until the second phase catches up.
+     */
+    static final int MAX_PENDING = 4096;
+
+    private @NonNull Configuration config;
     private @NonNull AnalysisComponent<VariableWithFeatureEffect> feFinder;
     private @NonNull AnalysisComponent<VariabilityModel> vmProvider;
     private @NonNull IFormulaToCnfConverter converter;
+    private @Nullable File slowQueryLogFile;
+    private int slowQueryLogSize;
+    private boolean twoPhase;
+    private boolean explainConflicts;
+    private int explanationBudget;
+    
+    private @NonNull DetectionRun detection;
+    
+    private @NonNull ResultStream<ConfigMismatchResult> provisionalResults;
+    
+    private @NonNull ResultStream<ConflictExplanation> explanations;
+    
+    private @NonNull ResultStream<SampleEstimate> estimates;
+    
+    /**
+     * A variable, whose classification is refined in the second phase of the two-phase mode.
+     */
+    private static final class PendingCheck {
+        
+        private final @NonNull String varName;
+        
+        private final @NonNull Formula feConstraint;
+        
+        private final boolean vmMoreGeneral;
+        
+        private final long phaseOneNanos;
+        
+        /**
+         * Creates a pending check.
+         * 
+         * @param varName The name of the variable.
+         * @param feConstraint The feature effect of the variable.
+         * @param vmMoreGeneral The result of the first phase: whether the variability model is more general.
+         * @param phaseOneNanos The time spent for the variable in the first phase.
+         */
+        private PendingCheck(@NonNull String varName, @NonNull Formula feConstraint, boolean vmMoreGeneral,
+                long phaseOneNanos) {
+            this.varName = varName;
+            this.feConstraint = feConstraint;
+            this.vmMoreGeneral = vmMoreGeneral;
+            this.phaseOneNanos = phaseOneNanos;
+        }
+        
+    }
+    
+    /**
+     * The second phase of the two-phase mode: refines the variables kept by the first phase on a solver of its own in
+     * a background thread, so that the first phase and its provisional results are not blocked by it. At most
+     * {@link #MAX_PENDING} variables wait for the refinement; if the first phase gets further ahead, it waits.
+     */
+    private final class Refinement {
+        
+        private final @NonNull VarModelSolver solver;
+        
+        private final @NonNull ThreadPoolExecutor executor;
+        
+        private final @Nullable ShadowVerifier<DetailedMismatchResultType> shadow;
+        
+        private final @Nullable SlowQueryLog slowQueryLog;
+        
+        private final @Nullable ConflictExplainer explainer;
+        
+        private final @Nullable StratifiedSample sample;
+        
+        private final @NonNull ProgressLogger progress;
+        
+        /**
+         * Creates the second phase and starts its thread.
+         * 
+         * @param varModel The variability model.
+         * @param shadow The shadow verifier to submit the results to, may be <code>null</code>.
+         * @param slowQueryLog The slow query log to record the variables in, may be <code>null</code>.
+         * @param explainer The explainer for contradictions, may be <code>null</code>.
+         * @param sample The sample to record the results in, may be <code>null</code>.
+         * @param progress The progress logger.
+         */
+        private Refinement(@NonNull Cnf varModel, @Nullable ShadowVerifier<DetailedMismatchResultType> shadow,
+                @Nullable SlowQueryLog slowQueryLog, @Nullable ConflictExplainer explainer,
+                @Nullable StratifiedSample sample, @NonNull ProgressLogger progress) {
+            
+            // own solver and converter, as the background thread must not share state with the first phase
+            this.solver = new VarModelSolver(varModel,
+                    FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING));
+            this.solver.setQueryStatistics(slowQueryLog != null);
+            this.shadow = shadow;
+            this.slowQueryLog = slowQueryLog;
+            this.explainer = explainer;
+            this.sample = sample;
+            this.progress = progress;
+            this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(MAX_PENDING), (runnable) -> {
+                        Thread thread = new Thread(runnable, "DetailedConfigMismatchRefinement");
+                        thread.setDaemon(true);
+                        return thread;
+                    }, (runnable, pool) -> {
+                        // the queue is full: let the first phase wait instead of dropping the variable
+                        try {
+                            pool.getQueue().put(runnable);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            LOGGER.logWarning("Interrupted while waiting for the second phase, a variable is lost");
+                        }
+                    });
+        }
+        
+        /**
+         * Passes a variable kept by the first phase to the second phase. Blocks, if {@link #MAX_PENDING} variables
+         * are already waiting.
+         * 
+         * @param check The variable to refine.
+         */
+        private void submit(@NonNull PendingCheck check) {
+            executor.execute(() -> refine(check));
+        }
+        
+        /**
+         * Refines a single variable and adds its final result. Runs in the background thread.
+         * 
+         * @param check The variable to refine.
+         */
+        private void refine(@NonNull PendingCheck check) {
+            long start = slowQueryLog != null ? System.nanoTime() : 0;
+            solver.startVariable(check.varName);
+            DetailedMismatchResultType resultType;
+            try {
+                resultType = DetailedConfigMismatchDetector.refine(solver, check.varName, check.feConstraint,
+                        check.vmMoreGeneral);
+            } catch (ConverterException | SolverException e) {
+                resultType = logError(check.varName, e);
+            }
+            long nanos = slowQueryLog != null ? check.phaseOneNanos + System.nanoTime() - start : 0;
+            publish(check.varName, check.feConstraint, resultType, nanos, solver, shadow, slowQueryLog, explainer,
+                    sample, progress);
+        }
+        
+        /**
+         * Waits until all submitted variables are refined and stops the background thread.
+         */
+        private void close() {
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    LOGGER.logInfo("Waiting for the second phase to finish");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LOGGER.logInfo("Second phase: " + solver.getSummary());
+        }
+        
+    }
 
     /**
      * Creates a new {@link DetailedConfigMismatchDetector} for the given feature effect finder.
@@ -70,15 +231,67 @@ public class DetailedConfigMismatchDetector extends AnalysisComponent<DetailedCo
             @NonNull AnalysisComponent<VariableWithFeatureEffect> feFinder) throws SetUpException {
         
         super(config);
+        this.config = config;
         this.feFinder = feFinder;
         this.vmProvider = vmProvider;
         converter = FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING);
+        
+        MismatchSettings.registerAllSettings(config);
+        slowQueryLogFile = config.getValue(MismatchSettings.SLOW_QUERY_LOG_FILE);
+        slowQueryLogSize = config.getValue(MismatchSettings.SLOW_QUERY_LOG_SIZE);
+        twoPhase = config.getValue(MismatchSettings.DETAILED_TWO_PHASE);
+        explainConflicts = config.getValue(MismatchSettings.EXPLAIN_CONFLICTS);
+        explanationBudget = config.getValue(MismatchSettings.EXPLANATION_BUDGET_MS);
+        
+        detection = new DetectionRun(this::detect);
+        provisionalResults = new ResultStream<>(config, detection, "Provisional Configuration Mismatches");
+        explanations = new ResultStream<>(config, detection, "Conflict Explanations");
+        estimates = new ResultStream<>(config, detection, "Configuration Mismatch Estimates");
+    }
+    
+    /**
+     * Returns the component, which provides the provisional results of the two-phase mode (see
+     * {@link MismatchSettings#DETAILED_TWO_PHASE}): the classification of the {@link ConfigMismatchDetector} for each
+     * variable, which is available after the first phase. Empty if the two-phase mode is disabled.
+     * 
+     * @return The provisional results of this detector.
+     */
+    public @NonNull AnalysisComponent<ConfigMismatchResult> getProvisionalResults() {
+        return provisionalResults;
+    }
+    
+    /**
+     * Returns the component, which provides the explanations of the {@link DetailedMismatchResultType#CONTRADICTION}
+     * results (see {@link MismatchSettings#EXPLAIN_CONFLICTS}). Empty if the explanations are disabled.
+     * 
+     * @return The conflict explanations of this detector.
+     */
+    public @NonNull AnalysisComponent<ConflictExplanation> getExplanations() {
+        return explanations;
+    }
+    
+    /**
+     * Returns the component, which provides the estimated number of results of each
+     * {@link DetailedMismatchResultType} in the sampling mode (see {@link MismatchSettings#SAMPLING_RATE}). Empty if
+     * the sampling mode is disabled.
+     * 
+     * @return The estimates of this detector.
+     */
+    public @NonNull AnalysisComponent<SampleEstimate> getEstimates() {
+        return estimates;
     }
 
     @Override
     protected void execute() {
+        detection.run();
+    }
+    
+    /**
+     * Classifies all feature effects and adds the results.
+     */
+    private void detect() {
         Cnf varModel = null;
-        Cnf varModelNegated = null;
+        VarModelSolver solver = null;
         Set<String> variables = null;
         try {
             VariabilityModel vm = vmProvider.getNextResult();
@@ -90,164 +303,366 @@ public class DetailedConfigMismatchDetector extends AnalysisComponent<DetailedCo
             LOGGER.logException("Can't convert variability model to CNF", e);
         }
         
-        //compute the negated feature model as Cnf
+        //compute the negated feature model as Cnf, not needed if the compiled model answers the queries
         if (varModel != null) {
             try {
-                varModelNegated = converter.convert(not(varModel.asFormula()));
+                solver = VarModelSolver.create(config, varModel, converter);
+                if (!solver.hasCompiledModel()) {
+                    solver.getNegatedVarModel();
+                }
             } catch (ConverterException e1) {
+                solver = null;
                 LOGGER.logException("Could not convert negated variability model to CNF", e1);
             }
         }
         
-        if (varModel == null || variables == null || varModelNegated == null) {
+        if (varModel == null || variables == null || solver == null) {
             LOGGER.logError("Couldn't get or convert variability model.");
             return;
         }
         
+        VersionDelta delta = VersionDelta.create(config, solver);
+        ShadowVerifier<DetailedMismatchResultType> shadow = ShadowVerifier.create(config, varModel,
+                DetailedConfigMismatchDetector::checkWithSat);
+        ConflictExplainer explainer = explainConflicts
+                ? new ConflictExplainer(solver.getModelStore(), converter, explanationBudget) : null;
+        
+        File slowQueryLogFile = this.slowQueryLogFile;
+        SlowQueryLog slowQueryLog = slowQueryLogFile != null ? new SlowQueryLog(slowQueryLogSize) : null;
+        solver.setQueryStatistics(slowQueryLog != null);
+        
         ProgressLogger progress = new ProgressLogger(notNull(getClass().getSimpleName()));
+        StratifiedSample sample = StratifiedSample.create(config);
         
+        // the basic classification reports contradictions as conflicts, unless no configuration is valid at all
+        boolean modelSatisfiable = true;
+        if (twoPhase) {
+            try {
+                modelSatisfiable = solver.isSatisfiable(new Cnf());
+            } catch (SolverException e) {
+                LOGGER.logException("Could not check satisfiability of variability model", e);
+            }
+        }
+        Refinement refinement = twoPhase
+                ? new Refinement(varModel, shadow, slowQueryLog, explainer, sample, progress) : null;
+        
+        VariableSelection selection = new VariableSelection(config, feFinder);
         VariableWithFeatureEffect variable;
-        while ((variable = feFinder.getNextResult()) != null) {
-            DetailedConfigMismatchResult mismatchResult = null;
+        while ((variable = sample != null ? sample.next(selection) : selection.next()) != null) {
+            long start = slowQueryLog != null ? System.nanoTime() : 0;
+            solver.startVariable(variable.getVariable());
             String varName = variable.getVariable();
             Formula feConstraint = variable.getFeatureEffect();
             
-            if (!variables.contains(varName)) {
-                mismatchResult = new DetailedConfigMismatchResult(varName, feConstraint,
-                    DetailedMismatchResultType.VARIABLE_NOT_DEFINED);
-            } else {
-                VariableFinder varFinder = new VariableFinder();
-                feConstraint.accept(varFinder);
-                boolean allVarsKnown = true;
-                for (String var : varFinder.getVariableNames()) {
-                    if (!variables.contains(var)) {
-                        allVarsKnown = false;
-                        break;
-                    }
+            DetailedMismatchResultType resultType = checkVariablesDefined(variables, varName, feConstraint);
+            if (null == resultType && delta != null) {
+                resultType = delta.reuseDetailed(varName, feConstraint);
+            }
+            if (null == resultType && refinement != null) {
+                // first phase: only the queries against the model, refine the satisfiable cases later
+                Boolean vmMoreGeneral = null;
+                try {
+                    vmMoreGeneral = checkModel(solver, varName, feConstraint);
+                    resultType = vmMoreGeneral == null ? DetailedMismatchResultType.CONTRADICTION : null;
+                } catch (ConverterException | SolverException e) {
+                    resultType = logError(varName, e);
                 }
-                if (!allVarsKnown) {
-                    mismatchResult = new DetailedConfigMismatchResult(varName, feConstraint,
-                        DetailedMismatchResultType.FORMULA_NOT_SUPPORTED);
+                if (vmMoreGeneral != null) {
+                    provisionalResults.publish(new ConfigMismatchResult(varName, feConstraint, vmMoreGeneral
+                            ? MismatchResultType.CONFLICT_WITH_VARMODEL : MismatchResultType.CONSISTENT));
+                    refinement.submit(new PendingCheck(varName, feConstraint, vmMoreGeneral,
+                            slowQueryLog != null ? System.nanoTime() - start : 0));
                 }
+            } else if (null == resultType) {
+                resultType = checkWithSat(solver, varName, feConstraint);
             }
             
-            if (null == mismatchResult) {
-                mismatchResult = checkWithSat(varModel, varModelNegated, varName, feConstraint);
+            if (resultType != null) {
+                if (twoPhase) {
+                    provisionalResults.publish(new ConfigMismatchResult(varName, feConstraint,
+                            CombinedConfigMismatchDetector.toBasicType(resultType, modelSatisfiable)));
+                }
+                publish(varName, feConstraint, resultType, slowQueryLog != null ? System.nanoTime() - start : 0,
+                        solver, shadow, slowQueryLog, explainer, sample, progress);
             }
-            addResult(mismatchResult);
-            progress.processedOne();
+        }
+        
+        // wait for the second phase to refine the remaining variables, which are consistent with the model
+        if (refinement != null) {
+            refinement.close();
         }
         
         progress.close();
+        LOGGER.logInfo(solver.getSummary());
+        solver.saveLearnedClauses();
+        if (selection.getSkippedCount() > 0) {
+            LOGGER.logInfo("Skipped " + selection.getSkippedCount() + " variables not selected for the analysis");
+        }
+        if (sample != null) {
+            DetailedMismatchResultType[] types = DetailedMismatchResultType.values();
+            String[] results = new String[types.length];
+            for (int i = 0; i < types.length; i++) {
+                results[i] = types[i].getDescription();
+            }
+            sample.report(estimates, results);
+        }
+        if (delta != null) {
+            LOGGER.logInfo("Reused " + delta.getReusedCount() + " results of the previous version");
+        }
+        if (shadow != null) {
+            shadow.close();
+        }
+        
+        if (slowQueryLog != null && slowQueryLogFile != null) {
+            try {
+                slowQueryLog.write(slowQueryLogFile);
+            } catch (IOException e) {
+                LOGGER.logException("Could not write slow query log to " + slowQueryLogFile.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Adds the final result for a variable. Synchronized, as the second phase of the two-phase mode adds its results
+     * from a background thread.
+     * 
+     * @param varName The name of the variable.
+     * @param feConstraint The feature effect of the variable.
+     * @param resultType The classification of the variable.
+     * @param nanos The time spent for classifying the variable.
+     * @param solver The solver, which classified the variable.
+     * @param shadow The shadow verifier to submit the result to, may be <code>null</code>.
+     * @param slowQueryLog The slow query log to record the variable in, may be <code>null</code>.
+     * @param explainer The explainer for contradictions, may be <code>null</code>.
+     * @param sample The sample to record the result in, may be <code>null</code>.
+     * @param progress The progress logger.
+     */
+    private synchronized void publish(@NonNull String varName, @NonNull Formula feConstraint,
+            @NonNull DetailedMismatchResultType resultType, long nanos, @NonNull VarModelSolver solver,
+            @Nullable ShadowVerifier<DetailedMismatchResultType> shadow, @Nullable SlowQueryLog slowQueryLog,
+            @Nullable ConflictExplainer explainer, @Nullable StratifiedSample sample,
+            @NonNull ProgressLogger progress) {
+        
+        if (shadow != null && resultType != DetailedMismatchResultType.VARIABLE_NOT_DEFINED
+                && resultType != DetailedMismatchResultType.FORMULA_NOT_SUPPORTED) {
+            shadow.submit(varName, feConstraint, resultType);
+        }
+        DetailedConfigMismatchResult mismatchResult
+            = new DetailedConfigMismatchResult(varName, feConstraint, resultType);
+        if (slowQueryLog != null) {
+            slowQueryLog.record(varName, feConstraint, nanos, solver, mismatchResult.getResult());
+        }
+        addResult(mismatchResult);
+        
+        if (explainer != null && resultType == DetailedMismatchResultType.CONTRADICTION) {
+            try {
+                String explanation = explainer.explainContradiction(varName, feConstraint);
+                if (explanation != null) {
+                    explanations.publish(new ConflictExplanation(varName, feConstraint, mismatchResult.getResult(),
+                            explanation));
+                }
+            } catch (ConverterException | SolverException e) {
+                LOGGER.logError("Could not explain contradiction of variable: " + varName + ", reason: "
+                        + e.getMessage());
+            }
+        }
+        if (sample != null) {
+            sample.record(feConstraint, resultType.getDescription());
+        }
+        progress.processedOne();
+    }
+
+    /**
+     * Checks whether the variable and all variables of its feature effect are defined in the variability model.
+     * 
+     * @param variables The variables of the variability model.
+     * @param varName The name of the variable to check the FE for.
+     * @param feConstraint The feature effect.
+     * 
+     * @return {@link DetailedMismatchResultType#VARIABLE_NOT_DEFINED} or
+     *      {@link DetailedMismatchResultType#FORMULA_NOT_SUPPORTED} if a variable is not defined, <code>null</code>
+     *      if the feature effect can be checked with the SAT solver.
+     */
+    static @Nullable DetailedMismatchResultType checkVariablesDefined(@NonNull Set<String> variables,
+            @NonNull String varName, @NonNull Formula feConstraint) {
+        
+        DetailedMismatchResultType result = null;
+        if (!variables.contains(varName)) {
+            result = DetailedMismatchResultType.VARIABLE_NOT_DEFINED;
+        } else {
+            VariableFinder varFinder = new VariableFinder();
+            feConstraint.accept(varFinder);
+            for (String var : varFinder.getVariableNames()) {
+                if (!variables.contains(var)) {
+                    result = DetailedMismatchResultType.FORMULA_NOT_SUPPORTED;
+                    break;
+                }
+            }
+        }
+        return result;
     }
 
     /**
      * Checks the given feature effect formula for contradictions using a SAT-solver. This is the "main" part of
      * the ConfigMismatchDetection.
      * 
-     * @param varModel The variability model.
-     * @param varModelNegated The negated variability model.
+     * @param solver The solver for the variability model and its negation.
      * @param varName The name of the variable to check the FE for.
      * @param feConstraint The feature effect.
      * 
      * @return The result of the SAT analysis.
      */
-    private @NonNull DetailedConfigMismatchResult checkWithSat(@NonNull Cnf varModel, @NonNull Cnf varModelNegated,
+    static @NonNull DetailedMismatchResultType checkWithSat(@NonNull VarModelSolver solver,
             @NonNull String varName, @NonNull Formula feConstraint) {
         
-        DetailedConfigMismatchResult mismatchResult;
-        
+        DetailedMismatchResultType mismatchResult;
         try {
-            Formula featureEffect = or(not(new Variable(varName)), feConstraint); // Variable => feConstraint
-            Cnf featureEffectAsCnf = converter.convert(featureEffect);
-            
-            // NOT (Variable => feConstraint)
-            Cnf feViolationAsCnf = converter.convert(and(varName, not(feConstraint)));
-                                
-            ISatSolver solver = SatSolverFactory.createSolver(varModel, false);
-            
-            boolean isCommonPart = solver.isSatisfiable(featureEffectAsCnf);
-            
-            if (!isCommonPart) {
-                mismatchResult = new DetailedConfigMismatchResult(varName, feConstraint,
-                        DetailedMismatchResultType.CONTRADICTION);
+            Boolean isVmMoreGeneral = checkModel(solver, varName, feConstraint);
+            if (isVmMoreGeneral == null) {
+                mismatchResult = DetailedMismatchResultType.CONTRADICTION;
             } else {
-                boolean isVmMoreGeneral = solver.isSatisfiable(feViolationAsCnf);
-                
-                ISatSolver negatedSolver = SatSolverFactory.createSolver(varModelNegated, false);
-                boolean isEffectMoreGeneral = negatedSolver.isSatisfiable(featureEffectAsCnf);
+                mismatchResult = refine(solver, varName, feConstraint, isVmMoreGeneral);
+            }
+        } catch (ConverterException | SolverException e) {
+            mismatchResult = logError(varName, e);
+        }
+        return mismatchResult;
+    }
+    
+    /**
+     * Runs the queries against the (non-negated) variability model, which are needed for every variable. This is the
+     * first phase of the two-phase mode.
+     * 
+     * @param solver The solver for the variability model.
+     * @param varName The name of the variable to check the FE for.
+     * @param feConstraint The feature effect.
+     * 
+     * @return <code>null</code> if the feature effect contradicts the variability model, otherwise whether the
+     *      variability model is more general than the feature effect (<code>SAT(M AND var AND NOT E)</code>).
+     * 
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If a query could not be converted into CNF.
+     */
+    static @Nullable Boolean checkModel(@NonNull VarModelSolver solver, @NonNull String varName,
+            @NonNull Formula feConstraint) throws SolverException, ConverterException {
+        
+        Formula featureEffect = or(not(new Variable(varName)), feConstraint); // Variable => feConstraint
+        
+        // NOT (Variable => feConstraint)
+        Formula feViolation = and(varName, not(feConstraint));
+        
+        Boolean result = null;
+        boolean isCommonPart;
+        if (solver.hasEffectClasses()) {
+            // SAT(M AND (NOT Variable OR E)) == SAT(M AND E) OR SAT(M AND NOT Variable), the first part is shared by
+            // all equivalent feature effects
+            isCommonPart = solver.isEffectSatisfiable(feConstraint)
+                    || solver.isSatisfiable(not(new Variable(varName)));
+        } else {
+            isCommonPart = solver.isSatisfiable(featureEffect);
+        }
+        if (isCommonPart) {
+            result = solver.isSatisfiable(feViolation);
+        }
+        return result;
+    }
+    
+    /**
+     * Classifies a feature effect, which does not contradict the variability model, with the query against the
+     * negated variability model. This is the second phase of the two-phase mode.
+     * 
+     * @param solver The solver for the variability model and its negation.
+     * @param varName The name of the variable to check the FE for.
+     * @param feConstraint The feature effect.
+     * @param isVmMoreGeneral The result of {@link #checkModel(VarModelSolver, String, Formula)}.
+     * 
+     * @return The result of the SAT analysis.
+     * 
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If a query could not be converted into CNF.
+     */
+    static @NonNull DetailedMismatchResultType refine(@NonNull VarModelSolver solver, @NonNull String varName,
+            @NonNull Formula feConstraint, boolean isVmMoreGeneral) throws SolverException, ConverterException {
+        
+        DetailedMismatchResultType mismatchResult;
+        Formula featureEffect = or(not(new Variable(varName)), feConstraint); // Variable => feConstraint
+        boolean isEffectMoreGeneral;
+        if (solver.hasEffectClasses()) {
+            // same split as in checkModel(), for the negated model
+            isEffectMoreGeneral = solver.isEffectSatisfiableWithNegatedModel(feConstraint)
+                    || solver.isSatisfiableWithNegatedModel(not(new Variable(varName)));
+        } else {
+            isEffectMoreGeneral = solver.isSatisfiableWithNegatedModel(featureEffect);
+        }
+        
+        if (isVmMoreGeneral) {
+            mismatchResult = isEffectMoreGeneral ? DetailedMismatchResultType.PARTIAL_OVERLAP
+                    : DetailedMismatchResultType.VM_MORE_GENERAL;
+            
+            if (isEffectMoreGeneral) {
+                // special case: check if the partial overlap is only possible when the feature is
+                // deselected; if so, change the status
                 
-                if (isVmMoreGeneral) {
-                    mismatchResult = new DetailedConfigMismatchResult(varName, feConstraint,
-                            isEffectMoreGeneral ? DetailedMismatchResultType.PARTIAL_OVERLAP
-                                    : DetailedMismatchResultType.VM_MORE_GENERAL);
-                    
-                    if (isEffectMoreGeneral) {
-                        // special case: check if the partial overlap is only possible when the feature is
-                        // deselected; if so, change the status
-                        
-                        // Variable AND featureEffect
-                        Cnf featureActive = converter.convert(and(new Variable(varName), featureEffect));
-                    
-                        if (!solver.isSatisfiable(featureActive)) {
-                            //only possible to satisfy with the varName negated
-                            mismatchResult = new DetailedConfigMismatchResult(varName, feConstraint,
-                                    DetailedMismatchResultType.PARTIAL_OVERLAP_DEAD);
-                        }
-                    }
+                // Variable AND featureEffect
+                Formula featureActive = and(new Variable(varName), featureEffect);
+            
+                boolean canBeActive;
+                if (solver.hasEffectClasses() && !solver.isEffectSatisfiable(feConstraint)) {
+                    // not satisfiable without SAT(M AND E), which is shared by equivalent feature effects
+                    canBeActive = false;
                 } else {
-                    mismatchResult = new DetailedConfigMismatchResult(varName, feConstraint,
-                            isEffectMoreGeneral ? DetailedMismatchResultType.FORMULA_MORE_GENERAL
-                                    : DetailedMismatchResultType.CONSISTENT);
-                    
-                    if (isEffectMoreGeneral && feConstraint.toString().equals("1")) {
-                        // special case: the SAT checks do not properly detect equivalence with a feature effect
-                        // of TRUE
-                        // find if the variable is not implying anything in the FM, and if so, return a
-                        // CONSISTENT finding
-                        if (!checkVariableHasImplications(varModel, varName)) {
-                            mismatchResult = new DetailedConfigMismatchResult(varName, feConstraint,
-                                    DetailedMismatchResultType.CONSISTENT);
-                        }
-                    }
+                    canBeActive = solver.isSatisfiable(featureActive);
+                }
+                if (!canBeActive) {
+                    //only possible to satisfy with the varName negated
+                    mismatchResult = DetailedMismatchResultType.PARTIAL_OVERLAP_DEAD;
+                }
+            }
+        } else {
+            mismatchResult = isEffectMoreGeneral ? DetailedMismatchResultType.FORMULA_MORE_GENERAL
+                    : DetailedMismatchResultType.CONSISTENT;
+            
+            if (isEffectMoreGeneral && feConstraint.toString().equals("1")) {
+                // special case: the SAT checks do not properly detect equivalence with a feature effect
+                // of TRUE
+                // find if the variable is not implying anything in the FM, and if so, return a
+                // CONSISTENT finding
+                if (!checkVariableHasImplications(solver.getModelStore(), varName)) {
+                    mismatchResult = DetailedMismatchResultType.CONSISTENT;
                 }
-                
             }
-        
-        } catch (ConverterException | SolverException e) {
-            mismatchResult = new DetailedConfigMismatchResult(varName, feConstraint, DetailedMismatchResultType.ERROR);
-            LOGGER.logError("Could not translate feature effect constraint for variable: "
-                    + varName + ", reason: " + e.getMessage());
         }
-        
         return mismatchResult;
     }
+    
+    /**
+     * Logs a failed check of a variable.
+     * 
+     * @param varName The name of the variable.
+     * @param exception The exception, which occurred during the check.
+     * 
+     * @return {@link DetailedMismatchResultType#ERROR}.
+     */
+    private static @NonNull DetailedMismatchResultType logError(@NonNull String varName,
+            @NonNull Exception exception) {
+        
+        LOGGER.logError("Could not translate feature effect constraint for variable: "
+                + varName + ", reason: " + exception.getMessage());
+        return DetailedMismatchResultType.ERROR;
+    }
 
     /**
      * Test if the given variable implies anything in the variability model.
      * 
-     * @param varModel The variability model.
+     * @param varModel The variability model as clause store.
      * @param varName The name of the variable to check the implication for.
      * 
      * @return <code>true</code> if the variable implies anything in the varModel.
      */
-    private boolean checkVariableHasImplications(Cnf varModel, String varName) {
-        boolean result = false;
-        
-        if (varModel.getAllVarNames().contains(varName)) {
-            // if the variable is only occurring as non-negated in the CNF then it is not on the left side
-            // of any implication
-            outer: for (int i = 0; i < varModel.getRowCount(); i++) {
-                for (CnfVariable v:varModel.getRow(i)) {
-                    if (v.isNegation() && v.getName().equals(varName)) {
-                        result = true;
-                        break outer;
-                    }
-                }
-            }
-        }
-        
-        return result;
+    private static boolean checkVariableHasImplications(@NonNull ClauseStore varModel, @NonNull String varName) {
+        // if the variable is only occurring as non-negated in the CNF then it is not on the left side
+        // of any implication
+        return varModel.occursNegated(varName);
     }
 
     @Override
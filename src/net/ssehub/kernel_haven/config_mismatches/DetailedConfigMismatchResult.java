@@ -57,4 +57,13 @@ public class DetailedConfigMismatchResult extends VariableWithFeatureEffect {
     public @NonNull String getResult() {
         return result.getDescription();
     }
+    
+    /**
+     * Returns the result of the analysis.
+     * 
+     * @return The result type.
+     */
+    public @NonNull DetailedMismatchResultType getResultType() {
+        return result;
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Runs the detection of a detector exactly once: in the thread of the detector or in the thread of one of its
+ * additional result tables ({@link ResultStream}), whichever is read first. Thus, the additional result tables can be
+ * consumed without reading the results of the detector itself. Later callers wait until the detection is done.
+ *
+ * @author agent
+ */
+class DetectionRun implements Runnable {
+
+    private final @NonNull Runnable detection;
+
+    private boolean started;
+
+    private boolean done;
+
+    /**
+     * Creates a detection run.
+     *
+     * @param detection The detection, which adds the results to the detector and its result tables.
+     */
+    DetectionRun(@NonNull Runnable detection) {
+        this.detection = detection;
+    }
+
+    /**
+     * Runs the detection, if it was not started yet. Otherwise waits until the detection is done.
+     */
+    @Override
+    public void run() {
+        boolean runHere;
+        synchronized (this) {
+            runHere = !started;
+            started = true;
+        }
+        
+        if (runHere) {
+            try {
+                detection.run();
+            } finally {
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+            }
+        } else {
+            synchronized (this) {
+                while (!done) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Reads and writes {@link Cnf}s in the DIMACS format, as used by the files in <code>testdata/</code>. Variable names
+ * are stored in comment lines (<code>c &lt;id&gt; &lt;name&gt;</code>). Additional properties are stored in comment
+ * lines of the form <code>c @&lt;key&gt; &lt;value&gt;</code>.
+ *
+ * @author agent
+ */
+final class DimacsIO {
+
+    /**
+     * A {@link Cnf} read from a DIMACS file, together with the properties stored in its comments.
+     */
+    static final class DimacsFile {
+
+        private final @NonNull Cnf cnf;
+
+        private final @NonNull Map<String, String> properties;
+
+        private final @NonNull Set<String> variables;
+
+        /**
+         * Creates a new {@link DimacsFile}.
+         *
+         * @param cnf The read CNF.
+         * @param properties The properties stored in the comments.
+         * @param variables All variable names, including named variables, which don't occur in any clause.
+         */
+        DimacsFile(@NonNull Cnf cnf, @NonNull Map<String, String> properties, @NonNull Set<String> variables) {
+            this.cnf = cnf;
+            this.properties = properties;
+            this.variables = variables;
+        }
+
+        /**
+         * Returns the read CNF.
+         *
+         * @return The CNF.
+         */
+        @NonNull Cnf getCnf() {
+            return cnf;
+        }
+
+        /**
+         * Returns the value of a property stored in the comments.
+         *
+         * @param key The key of the property.
+         *
+         * @return The value of the property or <code>null</code> if the file does not contain the property.
+         */
+        @Nullable String getProperty(@NonNull String key) {
+            return properties.get(key);
+        }
+
+        /**
+         * Returns the names of all variables of the file. In contrast to {@link Cnf#getAllVarNames()}, this also
+         * contains variables, which only have a name comment but don't occur in any clause.
+         *
+         * @return The variable names.
+         */
+        @NonNull Set<String> getVariables() {
+            return variables;
+        }
+
+    }
+
+    /**
+     * Don't allow any instances.
+     */
+    private DimacsIO() {
+    }
+
+    /**
+     * Writes the given {@link Cnf} as DIMACS file.
+     *
+     * @param cnf The CNF to write.
+     * @param properties Additional properties to store in the comments, may be empty.
+     * @param file The destination file.
+     *
+     * @throws IOException If writing the file fails.
+     */
+    static void write(@NonNull Cnf cnf, @NonNull Map<String, String> properties, @NonNull File file)
+            throws IOException {
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8))) {
+            write(cnf, properties, out);
+        }
+    }
+
+    /**
+     * Writes the given {@link Cnf} in DIMACS format.
+     *
+     * @param cnf The CNF to write.
+     * @param properties Additional properties to store in the comments, may be empty.
+     * @param out The writer to write to, will not be closed.
+     *
+     * @throws IOException If writing fails.
+     */
+    static void write(@NonNull Cnf cnf, @NonNull Map<String, String> properties, @NonNull Writer out)
+            throws IOException {
+
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            out.write("c @" + property.getKey() + " " + property.getValue() + "\n");
+        }
+
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        for (int i = 0; i < cnf.getRowCount(); i++) {
+            for (CnfVariable literal : cnf.getRow(i)) {
+                ids.putIfAbsent(literal.getName(), ids.size() + 1);
+            }
+        }
+        for (Map.Entry<String, Integer> id : ids.entrySet()) {
+            out.write("c " + id.getValue() + " " + id.getKey() + "\n");
+        }
+
+        out.write("p cnf " + ids.size() + " " + cnf.getRowCount() + "\n");
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < cnf.getRowCount(); i++) {
+            line.setLength(0);
+            for (CnfVariable literal : cnf.getRow(i)) {
+                if (literal.isNegation()) {
+                    line.append('-');
+                }
+                line.append(ids.get(literal.getName())).append(' ');
+            }
+            line.append("0\n");
+            out.write(line.toString());
+        }
+    }
+
+    /**
+     * Reads a DIMACS file. Variables without a name comment are named after their number.
+     *
+     * @param file The file to read.
+     *
+     * @return The read CNF and its properties.
+     *
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is not a valid DIMACS file.
+     */
+    static @NonNull DimacsFile read(@NonNull File file) throws IOException, FormatException {
+        Map<Integer, String> names = new HashMap<>();
+        Map<String, String> properties = new HashMap<>();
+        List<int[]> clauses = new ArrayList<>();
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                StandardCharsets.UTF_8))) {
+
+            List<Integer> clause = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("p ")) {
+                    continue;
+                }
+                if (line.startsWith("c")) {
+                    parseComment(line, names, properties);
+                    continue;
+                }
+                for (String token : line.split("\\s+")) {
+                    int literal;
+                    try {
+                        literal = Integer.parseInt(token);
+                    } catch (NumberFormatException e) {
+                        throw new FormatException("Invalid literal \"" + token + "\" in " + file);
+                    }
+                    if (literal == 0) {
+                        int[] row = new int[clause.size()];
+                        for (int i = 0; i < row.length; i++) {
+                            row[i] = clause.get(i);
+                        }
+                        clauses.add(row);
+                        clause.clear();
+                    } else {
+                        clause.add(literal);
+                    }
+                }
+            }
+        }
+
+        Cnf cnf = new Cnf();
+        Set<String> variables = new HashSet<>(names.values());
+        for (int[] row : clauses) {
+            @NonNull CnfVariable[] literals = new @NonNull CnfVariable[row.length];
+            for (int i = 0; i < row.length; i++) {
+                int id = Math.abs(row[i]);
+                String name = names.get(id);
+                literals[i] = new CnfVariable(row[i] < 0, name != null ? name : String.valueOf(id));
+                variables.add(literals[i].getName());
+            }
+            cnf.addRow(literals);
+        }
+        return new DimacsFile(cnf, properties, variables);
+    }
+
+    /**
+     * Parses a comment line, which may either contain a variable name or a property.
+     *
+     * @param line The comment line.
+     * @param names The variable names to add to.
+     * @param properties The properties to add to.
+     */
+    private static void parseComment(@NonNull String line, @NonNull Map<Integer, String> names,
+            @NonNull Map<String, String> properties) {
+
+        String[] parts = line.split("\\s+", 3);
+        if (parts.length == 3 && parts[1].startsWith("@")) {
+            properties.put(parts[1].substring(1), parts[2]);
+        } else if (parts.length == 3) {
+            try {
+                names.put(Integer.parseInt(parts[1]), parts[2]);
+            } catch (NumberFormatException e) {
+                // ordinary comment
+            }
+        }
+    }
+
+}
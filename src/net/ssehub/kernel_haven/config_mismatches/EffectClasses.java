@@ -0,0 +1,341 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.IFormulaToCnfConverter;
+import net.ssehub.kernel_haven.cnf.SatSolverFactory;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Groups feature effects into classes of logically equivalent formulas, so that the results of queries, which only
+ * depend on the feature effect (e.g., <code>SAT(M AND E)</code>), are computed once per class. Different
+ * <code>#ifdef</code> nestings often produce syntactically different, but equivalent feature effects.
+ * <p>
+ * Each formula is evaluated bit-parallel on a fixed set of pseudo-random assignments (64 per long word); the values
+ * of a variable only depend on its name. Formulas with the same signature are equivalence candidates; a candidate is
+ * only accepted after a SAT check proved <code>E1 XOR E2</code> unsatisfiable.
+ * </p>
+ *
+ * @author agent
+ */
+class EffectClasses {
+
+    /**
+     * The maximum number of classes with the same signature, which are checked for equivalence with a new formula.
+     */
+    static final int MAX_CANDIDATES = 4;
+
+    /**
+     * The maximum number of stored classes. Further formulas can still join existing classes.
+     */
+    static final int MAX_CLASSES = 100000;
+
+    private static final long SIGNATURE_SEED = 0x4B48L;
+
+    /**
+     * A class of equivalent feature effects and the cached results of the queries, which only depend on the feature
+     * effect.
+     */
+    static final class EffectClass {
+
+        private final @NonNull Formula representative;
+
+        private @Nullable Boolean withModel;
+
+        private @Nullable Boolean withNegatedModel;
+
+        /**
+         * Creates a class.
+         *
+         * @param representative The first feature effect of this class.
+         */
+        private EffectClass(@NonNull Formula representative) {
+            this.representative = representative;
+        }
+
+        /**
+         * Returns the cached result of <code>SAT(M AND E)</code>.
+         *
+         * @return The result or <code>null</code> if it was not computed yet.
+         */
+        @Nullable Boolean getWithModel() {
+            return withModel;
+        }
+
+        /**
+         * Caches the result of <code>SAT(M AND E)</code>.
+         *
+         * @param withModel The result.
+         */
+        void setWithModel(boolean withModel) {
+            this.withModel = withModel;
+        }
+
+        /**
+         * Returns the cached result of <code>SAT(NOT(M) AND E)</code>.
+         *
+         * @return The result or <code>null</code> if it was not computed yet.
+         */
+        @Nullable Boolean getWithNegatedModel() {
+            return withNegatedModel;
+        }
+
+        /**
+         * Caches the result of <code>SAT(NOT(M) AND E)</code>.
+         *
+         * @param withNegatedModel The result.
+         */
+        void setWithNegatedModel(boolean withNegatedModel) {
+            this.withNegatedModel = withNegatedModel;
+        }
+
+    }
+
+    /**
+     * The simulation signature of a formula as map key.
+     */
+    private static final class Signature {
+
+        private final long @NonNull [] words;
+
+        /**
+         * Creates a signature.
+         *
+         * @param words The values of the formula for all assignments.
+         */
+        private Signature(long @NonNull [] words) {
+            this.words = words;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(words);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            return obj instanceof Signature && Arrays.equals(words, ((Signature) obj).words);
+        }
+
+    }
+
+    private final int words;
+
+    private final @NonNull IFormulaToCnfConverter converter;
+
+    private final @NonNull Map<String, long[]> assignments = new HashMap<>();
+
+    private final @NonNull Map<Signature, List<EffectClass>> classes = new HashMap<>();
+
+    private int classCount;
+
+    private long equivalenceChecks;
+
+    private long matches;
+
+    /**
+     * Creates an empty set of classes.
+     *
+     * @param words The number of long words of the signatures, i.e., the number of assignments divided by 64.
+     * @param converter The converter for the equivalence checks.
+     */
+    EffectClasses(int words, @NonNull IFormulaToCnfConverter converter) {
+        this.words = Math.max(1, words);
+        this.converter = converter;
+    }
+
+    /**
+     * Returns the class of the given feature effect. If no equivalent feature effect was seen before, a new class is
+     * created.
+     *
+     * @param effect The feature effect.
+     *
+     * @return The class of the feature effect or <code>null</code> if the formula contains unknown operators.
+     *
+     * @throws SolverException If an equivalence check fails.
+     * @throws ConverterException If an equivalence check could not be converted into CNF.
+     */
+    @Nullable EffectClass lookup(@NonNull Formula effect) throws SolverException, ConverterException {
+        long[] values = evaluate(effect);
+        EffectClass result = null;
+        if (values != null) {
+            Signature signature = new Signature(values);
+            List<EffectClass> candidates = classes.get(signature);
+            for (int i = 0; result == null && candidates != null && i < Math.min(candidates.size(), MAX_CANDIDATES);
+                    i++) {
+                EffectClass candidate = candidates.get(i);
+                if (candidate.representative.equals(effect) || isEquivalent(candidate.representative, effect)) {
+                    result = candidate;
+                    matches++;
+                }
+            }
+            if (result == null) {
+                result = new EffectClass(effect);
+                if (classCount < MAX_CLASSES) {
+                    classes.computeIfAbsent(signature, s -> new ArrayList<>()).add(result);
+                    classCount++;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks with a SAT solver whether two formulas are equivalent.
+     *
+     * @param first The first formula.
+     * @param second The second formula.
+     *
+     * @return Whether <code>first XOR second</code> is unsatisfiable.
+     *
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If the check could not be converted into CNF.
+     */
+    private boolean isEquivalent(@NonNull Formula first, @NonNull Formula second)
+            throws SolverException, ConverterException {
+
+        equivalenceChecks++;
+        Cnf difference = converter.convert(or(and(first, not(second)), and(not(first), second)));
+        return !SatSolverFactory.createSolver(difference, false).isSatisfiable(new Cnf());
+    }
+
+    /**
+     * Evaluates a formula on all assignments at once.
+     *
+     * @param formula The formula to evaluate.
+     *
+     * @return The values of the formula, one bit per assignment, or <code>null</code> for unknown operators.
+     */
+    private long @Nullable [] evaluate(@NonNull Formula formula) {
+        long[] result;
+        if (formula instanceof Variable) {
+            // shared, must not be modified
+            result = getAssignment(((Variable) formula).getName());
+        } else if (formula instanceof True || formula instanceof False) {
+            result = new long[words];
+            Arrays.fill(result, formula instanceof True ? -1L : 0L);
+        } else if (formula instanceof Negation) {
+            long[] nested = evaluate(((Negation) formula).getFormula());
+            result = null;
+            if (nested != null) {
+                result = new long[words];
+                for (int i = 0; i < words; i++) {
+                    result[i] = ~nested[i];
+                }
+            }
+        } else if (formula instanceof Conjunction || formula instanceof Disjunction) {
+            boolean isConjunction = formula instanceof Conjunction;
+            long[] left = evaluate(isConjunction ? ((Conjunction) formula).getLeft()
+                    : ((Disjunction) formula).getLeft());
+            long[] right = left == null ? null : evaluate(isConjunction ? ((Conjunction) formula).getRight()
+                    : ((Disjunction) formula).getRight());
+            result = null;
+            if (left != null && right != null) {
+                result = new long[words];
+                for (int i = 0; i < words; i++) {
+                    result[i] = isConjunction ? left[i] & right[i] : left[i] | right[i];
+                }
+            }
+        } else {
+            // unknown formula type
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of a variable in all assignments. They only depend on the name of the variable.
+     *
+     * @param name The name of the variable.
+     *
+     * @return The values of the variable, one bit per assignment.
+     */
+    private long @NonNull [] getAssignment(@NonNull String name) {
+        long[] result = assignments.get(name);
+        if (result == null) {
+            result = new long[words];
+            long seed = SIGNATURE_SEED ^ ((long) name.hashCode() << 32) ^ name.length();
+            for (int i = 0; i < words; i++) {
+                result[i] = mix(seed + (i + 1) * 0x9E3779B97F4A7C15L);
+            }
+            assignments.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * The finalizer of the SplitMix64 generator, which maps consecutive seeds to well distributed bits.
+     *
+     * @param value The value to mix.
+     *
+     * @return The mixed value.
+     */
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the number of stored classes.
+     *
+     * @return The number of classes of non-equivalent feature effects.
+     */
+    int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Returns the number of lookups, which found an equivalent feature effect.
+     *
+     * @return The number of matches.
+     */
+    long getMatches() {
+        return matches;
+    }
+
+    /**
+     * Returns the number of SAT calls for confirming equivalences.
+     *
+     * @return The number of equivalence checks.
+     */
+    long getEquivalenceChecks() {
+        return equivalenceChecks;
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Replaces variables, which are forced to be equivalent by the variability model, by one representative per class
+ * of equivalent variables. The classes are computed once from the strongly connected components of the
+ * {@link ImplicationGraph}.
+ * <p>
+ * For a model <tt>M</tt>, which implies the equivalences <tt>E</tt>, and its reduced version <tt>M'</tt>:
+ * <tt>SAT(M AND q) == SAT(M' AND q')</tt>, where <tt>q'</tt> is the reduced query. This does not hold for the
+ * negated model, as <tt>NOT(M)</tt> also contains all assignments violating <tt>E</tt>:
+ * <tt>SAT(NOT(M) AND q) == SAT(NOT(M') AND q') OR SAT(NOT(E) AND q)</tt>.
+ * </p>
+ *
+ * @author agent
+ */
+class EquivalenceReduction {
+
+    private final @NonNull Map<String, CnfVariable> replacements;
+
+    /**
+     * Creates a reduction for the given equivalences.
+     *
+     * @param replacements Variable -&gt; representative literal, see {@link ImplicationGraph#getEquivalentVariables()}.
+     */
+    EquivalenceReduction(@NonNull Map<String, CnfVariable> replacements) {
+        this.replacements = replacements;
+    }
+
+    /**
+     * Computes the classes of equivalent variables of the given model.
+     *
+     * @param varModel The variability model.
+     *
+     * @return The reduction or <code>null</code> if the model does not force any variables to be equivalent.
+     */
+    static @Nullable EquivalenceReduction compute(@NonNull Cnf varModel) {
+        return compute(ClauseStore.of(varModel, false));
+    }
+
+    /**
+     * Computes the classes of equivalent variables of the given model.
+     *
+     * @param varModel The variability model as clause store.
+     *
+     * @return The reduction or <code>null</code> if the model does not force any variables to be equivalent.
+     */
+    static @Nullable EquivalenceReduction compute(@NonNull ClauseStore varModel) {
+        Map<String, CnfVariable> replacements = new ImplicationGraph(varModel).getEquivalentVariables();
+        return replacements.isEmpty() ? null : new EquivalenceReduction(replacements);
+    }
+
+    /**
+     * Returns the number of variables, which are replaced by a representative.
+     *
+     * @return The number of replaced variables.
+     */
+    int getReplacedCount() {
+        return replacements.size();
+    }
+
+    /**
+     * Replaces all variables of the given model by their representatives. Clauses, which become tautologies (like
+     * the equivalences themselves), and duplicate clauses are removed.
+     *
+     * @param cnf The model to reduce.
+     *
+     * @return The reduced model.
+     */
+    @NonNull Cnf reduce(@NonNull Cnf cnf) {
+        Cnf result = new Cnf();
+        Set<String> clauses = new HashSet<>();
+        for (int i = 0; i < cnf.getRowCount(); i++) {
+            // literal name -> negation; sorted, so that duplicate clauses are detected
+            Map<String, Boolean> literals = new TreeMap<>();
+            boolean tautology = false;
+            for (CnfVariable variable : cnf.getRow(i)) {
+                CnfVariable literal = reduce(variable);
+                Boolean previous = literals.put(literal.getName(), literal.isNegation());
+                if (previous != null && previous != literal.isNegation()) {
+                    tautology = true;
+                    break;
+                }
+            }
+            if (!tautology && clauses.add(literals.toString())) {
+                List<CnfVariable> row = new ArrayList<>(literals.size());
+                for (Map.Entry<String, Boolean> literal : literals.entrySet()) {
+                    row.add(new CnfVariable(literal.getValue(), literal.getKey()));
+                }
+                result.addRow(row.toArray(new CnfVariable[row.size()]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces a literal by the literal of its representative.
+     *
+     * @param literal The literal to replace.
+     *
+     * @return The replaced literal, or the given literal if its variable is a representative.
+     */
+    private @NonNull CnfVariable reduce(@NonNull CnfVariable literal) {
+        CnfVariable result = literal;
+        CnfVariable representative = replacements.get(literal.getName());
+        if (representative != null) {
+            result = new CnfVariable(literal.isNegation() != representative.isNegation(), representative.getName());
+        }
+        return result;
+    }
+
+    /**
+     * Replaces all variables of the given formula by their representatives.
+     *
+     * @param formula The formula to reduce.
+     *
+     * @return The reduced formula; the given instance if it contains no replaced variables.
+     */
+    @NonNull Formula reduce(@NonNull Formula formula) {
+        return reduce(formula, new IdentityHashMap<>());
+    }
+
+    /**
+     * Replaces all variables of the given formula by their representatives. Sub-formulas, which were already reduced
+     * before, are taken from the given cache, so that shared sub-formulas stay shared in the reduced formulas.
+     *
+     * @param formula The formula to reduce.
+     * @param cache Sub-formula -&gt; reduced sub-formula (by identity); filled with all reduced sub-formulas.
+     *
+     * @return The reduced formula; the given instance if it contains no replaced variables.
+     */
+    @NonNull Formula reduce(@NonNull Formula formula, @NonNull Map<Formula, Formula> cache) {
+        Formula cached = cache.get(formula);
+        if (cached != null) {
+            return cached;
+        }
+
+        Formula result = formula;
+        if (formula instanceof Variable) {
+            CnfVariable representative = replacements.get(((Variable) formula).getName());
+            if (representative != null) {
+                Variable variable = new Variable(representative.getName());
+                result = representative.isNegation() ? not(variable) : variable;
+            }
+        } else if (formula instanceof Negation) {
+            Formula nested = ((Negation) formula).getFormula();
+            Formula reduced = reduce(nested, cache);
+            if (reduced != nested) {
+                result = not(reduced);
+            }
+        } else if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction) formula;
+            Formula left = reduce(conjunction.getLeft(), cache);
+            Formula right = reduce(conjunction.getRight(), cache);
+            if (left != conjunction.getLeft() || right != conjunction.getRight()) {
+                result = and(left, right);
+            }
+        } else if (formula instanceof Disjunction) {
+            Disjunction disjunction = (Disjunction) formula;
+            Formula left = reduce(disjunction.getLeft(), cache);
+            Formula right = reduce(disjunction.getRight(), cache);
+            if (left != disjunction.getLeft() || right != disjunction.getRight()) {
+                result = or(left, right);
+            }
+        }
+        // True, False: nothing to replace
+        cache.put(formula, result);
+        return result;
+    }
+
+    /**
+     * Checks whether the equivalences can be violated without touching the given variables, i.e., whether a
+     * replaced variable does not occur in the given set. In this case <tt>NOT(M) AND q</tt> is satisfiable iff
+     * <tt>q</tt> alone is satisfiable, if <tt>q</tt> only contains the given variables: any solution of <tt>q</tt>
+     * violates <tt>M</tt> after flipping the free variable.
+     *
+     * @param variables The variables of a query.
+     *
+     * @return <code>true</code> if at least one replaced variable is not in the given set.
+     */
+    boolean hasFreeReplacedVariable(@NonNull Set<String> variables) {
+        int contained = 0;
+        for (String variable : variables) {
+            if (replacements.containsKey(variable)) {
+                contained++;
+            }
+        }
+        return contained < replacements.size();
+    }
+
+    /**
+     * Returns a formula, which is satisfied by all assignments violating at least one of the equivalences.
+     *
+     * @return The disjunction of <tt>variable XOR representative</tt> over all replaced variables.
+     */
+    @NonNull Formula getViolation() {
+        Formula result = False.INSTANCE;
+        // sorted, so that the formula does not depend on hash order
+        for (Map.Entry<String, CnfVariable> entry : new TreeMap<>(replacements).entrySet()) {
+            String name = entry.getKey();
+            CnfVariable representative = entry.getValue();
+            Formula literal = representative.isNegation() ? not(representative.getName())
+                    : new Variable(representative.getName());
+            Formula xor = or(and(name, not(literal)), and(not(name), literal));
+            result = result == False.INSTANCE ? xor : or(result, xor);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.parser.CStyleBooleanGrammar;
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.logic.parser.Parser;
+import net.ssehub.kernel_haven.util.logic.parser.VariableCache;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Reads the feature effects of a previous run from its CSV output, so that the mismatch detectors can be re-run (e.g.
+ * against a new variability model) without the extractors and the <tt>FeatureEffectFinder</tt>. Can be used as the
+ * <tt>feFinder</tt> of the detectors.
+ * <p>
+ * The file is memory-mapped and split into rows on demand; each formula is parsed exactly once, when its row is
+ * read. Rows waiting for a slow detector can be kept off the heap with {@link MismatchSettings#SPILL_THRESHOLD}, which
+ * drains this reader into a {@link SpillingBuffer}. The columns are identified by the header (<tt>Variable</tt> and
+ * <tt>Feature Effect</tt>), both <tt>;</tt> and <tt>,</tt> are supported as separators.
+ * </p>
+ *
+ * @author agent
+ */
+public class FeatureEffectReader extends AnalysisComponent<VariableWithFeatureEffect> {
+
+    /**
+     * The size of the mapped part of the file; rows must be shorter than this.
+     */
+    static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final char QUOTE = '"';
+
+    private final @NonNull File file;
+
+    private final int windowSize;
+
+    /**
+     * Creates a reader for the file configured in {@link MismatchSettings#FEATURE_EFFECT_FILE}.
+     *
+     * @param config The global configuration.
+     *
+     * @throws SetUpException If no file is configured.
+     */
+    public FeatureEffectReader(@NonNull Configuration config) throws SetUpException {
+        super(config);
+        MismatchSettings.registerAllSettings(config);
+        File file = config.getValue(MismatchSettings.FEATURE_EFFECT_FILE);
+        if (file == null) {
+            throw new SetUpException(MismatchSettings.FEATURE_EFFECT_FILE.getKey() + " must be specified for "
+                    + getClass().getSimpleName());
+        }
+        this.file = file;
+        this.windowSize = WINDOW_SIZE;
+    }
+
+    /**
+     * Creates a reader for the given file.
+     *
+     * @param config The global configuration.
+     * @param file The CSV file with the feature effects.
+     * @param windowSize The size of the mapped part of the file.
+     */
+    FeatureEffectReader(@NonNull Configuration config, @NonNull File file, int windowSize) {
+        super(config);
+        this.file = file;
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    protected void execute() {
+        VariableCache cache = new VariableCache();
+        Parser<@NonNull Formula> parser = new Parser<>(new CStyleBooleanGrammar(cache));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            RowReader rows = new RowReader(channel, windowSize);
+            List<String> header = rows.next();
+            if (header == null) {
+                LOGGER.logWarning("Feature effect file " + file.getAbsolutePath() + " is empty");
+                return;
+            }
+            int variableColumn = header.indexOf("Variable");
+            int formulaColumn = header.indexOf("Feature Effect");
+            if (variableColumn == -1 || formulaColumn == -1) {
+                throw new FormatException("Missing column Variable or Feature Effect in header: " + header);
+            }
+
+            List<String> row;
+            int line = 1;
+            while ((row = rows.next()) != null) {
+                line++;
+                if (row.size() <= Math.max(variableColumn, formulaColumn)) {
+                    LOGGER.logWarning("Skipping malformed row " + line + " of " + file.getName() + ": " + row);
+                    continue;
+                }
+                String variable = row.get(variableColumn);
+                try {
+                    Formula featureEffect = parser.parse(row.get(formulaColumn));
+                    addResult(new VariableWithFeatureEffect(variable, featureEffect));
+                } catch (ExpressionFormatException e) {
+                    LOGGER.logWarning("Skipping feature effect of " + variable + " in row " + line + ": "
+                            + e.getMessage());
+                }
+            }
+
+        } catch (IOException | FormatException e) {
+            LOGGER.logException("Could not read feature effects from " + file.getAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public @NonNull String getResultName() {
+        return "Feature Effects";
+    }
+
+    /**
+     * Splits a memory-mapped CSV file into rows. The file is mapped in windows, a new window starts at the
+     * beginning of the row that crosses the end of the current window.
+     */
+    static class RowReader {
+
+        private final @NonNull FileChannel channel;
+
+        private final long fileSize;
+
+        private final int windowSize;
+
+        private @Nullable MappedByteBuffer window;
+
+        /**
+         * File offset of the start of the current window.
+         */
+        private long windowStart;
+
+        /**
+         * File offset of the next row.
+         */
+        private long position;
+
+        private char separator;
+
+        /**
+         * Creates a reader for the given file.
+         *
+         * @param channel The opened file.
+         * @param windowSize The size of the mapped windows.
+         *
+         * @throws IOException If the size of the file can't be determined.
+         */
+        RowReader(@NonNull FileChannel channel, int windowSize) throws IOException {
+            this.channel = channel;
+            this.fileSize = channel.size();
+            this.windowSize = windowSize;
+        }
+
+        /**
+         * Reads the next row. The separator is detected in the first row.
+         *
+         * @return The fields of the next row or <code>null</code> if the end of the file was reached.
+         *
+         * @throws IOException If mapping the file fails.
+         * @throws FormatException If a row is longer than the window size.
+         */
+        @Nullable List<String> next() throws IOException, FormatException {
+            List<String> result = null;
+            // skip empty lines
+            while (result == null && position < fileSize) {
+                MappedByteBuffer buffer = this.window;
+                if (buffer == null || position - windowStart >= buffer.limit()) {
+                    buffer = map(position);
+                }
+                int start = (int) (position - windowStart);
+                int end = findRowEnd(buffer, start);
+                if (end == -1) {
+                    if (windowStart + buffer.limit() >= fileSize) {
+                        // last row without line break
+                        end = buffer.limit();
+                    } else if (start == 0) {
+                        throw new FormatException("Row at offset " + position + " is longer than " + windowSize
+                                + " bytes");
+                    } else {
+                        buffer = map(position);
+                        start = 0;
+                        end = findRowEnd(buffer, start);
+                        if (end == -1) {
+                            if (buffer.limit() < windowSize) {
+                                end = buffer.limit();
+                            } else {
+                                throw new FormatException("Row at offset " + position + " is longer than "
+                                        + windowSize + " bytes");
+                            }
+                        }
+                    }
+                }
+
+                // end points to the line break (or the end of the file)
+                int next = end < buffer.limit() ? end + 1 : end;
+                int contentEnd = end;
+                if (contentEnd > start && buffer.get(contentEnd - 1) == '\r') {
+                    contentEnd--;
+                }
+                if (contentEnd > start) {
+                    result = split(buffer, start, contentEnd);
+                }
+                position = windowStart + next;
+            }
+            return result;
+        }
+
+        /**
+         * Maps the window starting at the given file offset.
+         *
+         * @param offset The start of the window.
+         *
+         * @return The mapped window.
+         *
+         * @throws IOException If mapping fails.
+         */
+        private @NonNull MappedByteBuffer map(long offset) throws IOException {
+            long size = Math.min(windowSize, fileSize - offset);
+            MappedByteBuffer result = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            window = result;
+            windowStart = offset;
+            return result;
+        }
+
+        /**
+         * Finds the line break ending the row, which starts at the given index. Line breaks in quoted fields are
+         * skipped.
+         *
+         * @param buffer The mapped window.
+         * @param start The start of the row.
+         *
+         * @return The index of the line break, or -1 if the window ends before the row.
+         */
+        private static int findRowEnd(@NonNull MappedByteBuffer buffer, int start) {
+            boolean quoted = false;
+            for (int i = start; i < buffer.limit(); i++) {
+                byte current = buffer.get(i);
+                if (current == QUOTE) {
+                    quoted = !quoted;
+                } else if (current == '\n' && !quoted) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Splits a row into its fields and removes the quotes.
+         *
+         * @param buffer The mapped window.
+         * @param start The start of the row.
+         * @param end The end of the row (exclusive, without line break).
+         *
+         * @return The fields of the row.
+         */
+        private @NonNull List<String> split(@NonNull MappedByteBuffer buffer, int start, int end) {
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            String row = new String(bytes, StandardCharsets.UTF_8);
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < row.length(); i++) {
+                char current = row.charAt(i);
+                if (quoted) {
+                    if (current == QUOTE && i + 1 < row.length() && row.charAt(i + 1) == QUOTE) {
+                        field.append(QUOTE);
+                        i++;
+                    } else if (current == QUOTE) {
+                        quoted = false;
+                    } else {
+                        field.append(current);
+                    }
+                } else if (current == QUOTE) {
+                    quoted = true;
+                } else if (separator == 0 && (current == ';' || current == ',')) {
+                    separator = current;
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (current == separator) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(current);
+                }
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+
+    }
+
+}
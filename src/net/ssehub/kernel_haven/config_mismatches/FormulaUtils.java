@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Utility functions on {@link Formula}s, which are needed by the different mismatch detectors.
+ *
+ * @author agent
+ */
+class FormulaUtils {
+
+    /**
+     * Don't allow any instances.
+     */
+    private FormulaUtils() {
+    }
+
+    /**
+     * Counts the nodes (operators, variables and constants) of the given formula.
+     *
+     * @param formula The formula to count the nodes for.
+     *
+     * @return The number of nodes of the formula tree.
+     */
+    static int countNodes(@NonNull Formula formula) {
+        int result;
+        if (formula instanceof Negation) {
+            result = 1 + countNodes(((Negation) formula).getFormula());
+        } else if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction) formula;
+            result = 1 + countNodes(conjunction.getLeft()) + countNodes(conjunction.getRight());
+        } else if (formula instanceof Disjunction) {
+            Disjunction disjunction = (Disjunction) formula;
+            result = 1 + countNodes(disjunction.getLeft()) + countNodes(disjunction.getRight());
+        } else {
+            // Variable, True, False
+            result = 1;
+        }
+        return result;
+    }
+
+    /**
+     * Converts the given formula into disjunctive normal form, i.e., into a disjunction of cubes (conjunctions of
+     * literals). Contradictory cubes are dropped, so an empty list represents <code>false</code> and a list with an
+     * empty cube represents <code>true</code>.
+     *
+     * @param formula The formula to convert.
+     * @param maxCubes The maximum number of cubes; larger (intermediate) results are not computed.
+     *
+     * @return The cubes, each as variable name -&gt; polarity, or <code>null</code> if the formula has more than
+     *      <code>maxCubes</code> cubes.
+     */
+    static @Nullable List<@NonNull Map<String, Boolean>> toCubes(@NonNull Formula formula, int maxCubes) {
+        return toCubes(formula, false, maxCubes);
+    }
+
+    /**
+     * Recursive part of {@link #toCubes(Formula, int)}, which pushes negations down to the variables.
+     *
+     * @param formula The formula to convert.
+     * @param negated Whether the formula is negated.
+     * @param maxCubes The maximum number of cubes.
+     *
+     * @return The cubes or <code>null</code> if there are too many cubes.
+     */
+    private static @Nullable List<@NonNull Map<String, Boolean>> toCubes(@NonNull Formula formula, boolean negated,
+            int maxCubes) {
+
+        List<@NonNull Map<String, Boolean>> result;
+        if (formula instanceof Variable) {
+            Map<String, Boolean> cube = new HashMap<>();
+            cube.put(((Variable) formula).getName(), !negated);
+            result = new ArrayList<>();
+            result.add(cube);
+
+        } else if (formula instanceof True || formula instanceof False) {
+            result = new ArrayList<>();
+            if ((formula instanceof True) != negated) {
+                result.add(new HashMap<>());
+            }
+
+        } else if (formula instanceof Negation) {
+            result = toCubes(((Negation) formula).getFormula(), !negated, maxCubes);
+
+        } else if (formula instanceof Conjunction || formula instanceof Disjunction) {
+            Formula left;
+            Formula right;
+            boolean isConjunction;
+            if (formula instanceof Conjunction) {
+                left = ((Conjunction) formula).getLeft();
+                right = ((Conjunction) formula).getRight();
+                isConjunction = !negated;
+            } else {
+                left = ((Disjunction) formula).getLeft();
+                right = ((Disjunction) formula).getRight();
+                isConjunction = negated;
+            }
+
+            List<@NonNull Map<String, Boolean>> leftCubes = toCubes(left, negated, maxCubes);
+            List<@NonNull Map<String, Boolean>> rightCubes = leftCubes != null
+                    ? toCubes(right, negated, maxCubes) : null;
+
+            if (leftCubes == null || rightCubes == null) {
+                result = null;
+            } else if (isConjunction) {
+                result = multiply(leftCubes, rightCubes, maxCubes);
+            } else {
+                result = leftCubes;
+                result.addAll(rightCubes);
+            }
+
+        } else {
+            // unknown formula type
+            result = null;
+        }
+
+        if (result != null && result.size() > maxCubes) {
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Computes the conjunction of two disjunctions of cubes.
+     *
+     * @param left The cubes of the left operand.
+     * @param right The cubes of the right operand.
+     * @param maxCubes The maximum number of cubes.
+     *
+     * @return The pairwise merged, non-contradictory cubes or <code>null</code> if there are too many cubes.
+     */
+    private static @Nullable List<@NonNull Map<String, Boolean>> multiply(
+            @NonNull List<@NonNull Map<String, Boolean>> left, @NonNull List<@NonNull Map<String, Boolean>> right,
+            int maxCubes) {
+
+        List<@NonNull Map<String, Boolean>> result = new ArrayList<>();
+        for (Map<String, Boolean> leftCube : left) {
+            for (Map<String, Boolean> rightCube : right) {
+                Map<String, Boolean> merged = new HashMap<>(leftCube);
+                boolean contradiction = false;
+                for (Map.Entry<String, Boolean> literal : rightCube.entrySet()) {
+                    Boolean previous = merged.put(literal.getKey(), literal.getValue());
+                    if (previous != null && !previous.equals(literal.getValue())) {
+                        contradiction = true;
+                        break;
+                    }
+                }
+                if (!contradiction) {
+                    result.add(merged);
+                    if (result.size() > maxCubes) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+}
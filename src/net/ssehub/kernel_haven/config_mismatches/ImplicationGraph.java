@@ -0,0 +1,529 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * The binary implication graph of a variability model. Most clauses of Kconfig-derived models are binary
+ * (<tt>depends on</tt> / <tt>select</tt>); these are turned into implications between literals. The graph is
+ * condensed into its strongly connected components once, reachability is computed on demand and cached per
+ * component.
+ * <p>
+ * Queries are passed as disjunctions of cubes (conjunctions of literals, see
+ * {@link FormulaUtils#toCubes(Formula, int)}). A cube is consistent with the
+ * model, if the literals implied by it contain no complementary pair and none of them is part of a non-binary clause.
+ * If non-binary clauses are involved, the graph cannot decide the query and the caller has to fall back to a SAT
+ * solver. Queries against the negated model are decided exactly for any model, as <tt>NOT(model) AND cube</tt> is
+ * satisfiable iff the cube does not satisfy every clause of the model.
+ * </p>
+ *
+ * @author agent
+ */
+public class ImplicationGraph implements QueryBackend {
+
+    static final int CLOSURE_CACHE_SIZE = 1024;
+
+    /**
+     * The maximum number of cubes of a query, which is still answered on the graph.
+     */
+    static final int MAX_CUBES = 64;
+
+    /**
+     * The clauses of the model; provides the variable ids and literal encoding.
+     */
+    private final @NonNull ClauseStore store;
+
+    /**
+     * Literal -&gt; strongly connected component.
+     */
+    private final int @NonNull [] component;
+
+    /**
+     * Component -&gt; component of the complementary literals.
+     */
+    private final int @NonNull [] complementComponent;
+
+    /**
+     * Component -&gt; direct successor components in the condensed graph.
+     */
+    private final int @NonNull [] @NonNull [] componentSuccessors;
+
+    /**
+     * Components, which contain a literal that appears in a non-binary clause.
+     */
+    private final @NonNull BitSet wideComponents;
+
+    /**
+     * Literal -&gt; indices of the (non-tautological) clauses containing it.
+     */
+    private final int @NonNull [] @NonNull [] occurrences;
+
+    private final int violableClauses;
+
+    private final boolean hasWideClauses;
+
+    private final boolean binaryConsistent;
+
+    private @Nullable Boolean modelSatisfiable;
+
+    private final @NonNull Map<Integer, BitSet> closureCache;
+
+    private int closureCacheLimit = CLOSURE_CACHE_SIZE;
+
+    /**
+     * Builds the implication graph for the given variability model.
+     *
+     * @param varModel The variability model as CNF.
+     */
+    public ImplicationGraph(@NonNull Cnf varModel) {
+        this(ClauseStore.of(varModel, false));
+    }
+
+    /**
+     * Builds the implication graph for the given variability model.
+     *
+     * @param store The variability model as clause store.
+     */
+    public ImplicationGraph(@NonNull ClauseStore store) {
+        this.store = store;
+        List<int[]> clauses = new ArrayList<>(store.getClauseCount());
+        boolean emptyClause = false;
+        for (int i = 0; i < store.getClauseCount(); i++) {
+            int[] clause = normalize(store.getClause(i));
+            if (clause == null) {
+                // tautology, can't be violated
+                continue;
+            }
+            emptyClause |= clause.length == 0;
+            clauses.add(clause);
+        }
+        violableClauses = clauses.size();
+
+        int nLiterals = 2 * store.getVariableCount();
+        List<List<Integer>> successors = new ArrayList<>(nLiterals);
+        List<List<Integer>> occurrenceLists = new ArrayList<>(nLiterals);
+        for (int i = 0; i < nLiterals; i++) {
+            successors.add(new ArrayList<>(2));
+            occurrenceLists.add(new ArrayList<>(2));
+        }
+        BitSet wideLiterals = new BitSet(nLiterals);
+        boolean wide = false;
+        for (int c = 0; c < clauses.size(); c++) {
+            int[] clause = clauses.get(c);
+            for (int literal : clause) {
+                occurrenceLists.get(literal).add(c);
+            }
+            if (clause.length == 1) {
+                // (a) == (NOT a => a)
+                successors.get(clause[0] ^ 1).add(clause[0]);
+            } else if (clause.length == 2) {
+                // (a OR b) == (NOT a => b) AND (NOT b => a)
+                successors.get(clause[0] ^ 1).add(clause[1]);
+                successors.get(clause[1] ^ 1).add(clause[0]);
+            } else if (clause.length > 2) {
+                wide = true;
+                for (int literal : clause) {
+                    wideLiterals.set(literal);
+                    wideLiterals.set(literal ^ 1);
+                }
+            }
+        }
+        hasWideClauses = wide;
+        occurrences = toArrays(occurrenceLists);
+
+        int[][] literalSuccessors = toArrays(successors);
+        component = computeComponents(literalSuccessors);
+        int nComponents = 0;
+        for (int c : component) {
+            nComponents = Math.max(nComponents, c + 1);
+        }
+
+        complementComponent = new int[nComponents];
+        wideComponents = new BitSet(nComponents);
+        boolean consistent = !emptyClause;
+        List<List<Integer>> condensed = new ArrayList<>(nComponents);
+        for (int i = 0; i < nComponents; i++) {
+            condensed.add(new ArrayList<>(2));
+        }
+        for (int literal = 0; literal < nLiterals; literal++) {
+            int c = component[literal];
+            complementComponent[c] = component[literal ^ 1];
+            consistent &= c != component[literal ^ 1];
+            if (wideLiterals.get(literal)) {
+                wideComponents.set(c);
+            }
+            for (int successor : literalSuccessors[literal]) {
+                if (component[successor] != c) {
+                    condensed.get(c).add(component[successor]);
+                }
+            }
+        }
+        binaryConsistent = consistent;
+        componentSuccessors = toArrays(condensed);
+
+        if (!hasWideClauses) {
+            modelSatisfiable = binaryConsistent;
+        }
+        closureCache = new LinkedHashMap<Integer, BitSet>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -3540938346413212474L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, BitSet> eldest) {
+                return size() > closureCacheLimit;
+            }
+
+        };
+    }
+
+    /**
+     * Changes the maximum number of cached transitive closures. Shrinking the limit evicts the least recently used
+     * closures immediately.
+     *
+     * @param limit The new maximum number of cached closures, at least 1.
+     */
+    synchronized void setClosureCacheLimit(int limit) {
+        closureCacheLimit = Math.max(1, limit);
+        Iterator<Integer> it = closureCache.keySet().iterator();
+        while (closureCache.size() > closureCacheLimit && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Sorts and de-duplicates the literals of a clause.
+     *
+     * @param literals The literals of the clause; sorted in place.
+     *
+     * @return The normalized clause, or <code>null</code> if the clause is a tautology.
+     */
+    private static int @Nullable [] normalize(int @NonNull [] literals) {
+        int[] result = literals;
+        Arrays.sort(result);
+        int size = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (size > 0 && result[size - 1] == result[i]) {
+                continue;
+            }
+            if (size > 0 && result[size - 1] == (result[i] ^ 1)) {
+                return null;
+            }
+            result[size++] = result[i];
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Converts adjacency lists into arrays.
+     *
+     * @param lists The adjacency lists.
+     *
+     * @return The adjacency arrays.
+     */
+    private static int @NonNull [] @NonNull [] toArrays(@NonNull List<List<Integer>> lists) {
+        int[][] result = new int[lists.size()][];
+        for (int i = 0; i < result.length; i++) {
+            List<Integer> list = lists.get(i);
+            result[i] = new int[list.size()];
+            for (int j = 0; j < result[i].length; j++) {
+                result[i][j] = list.get(j);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the strongly connected components with an iterative version of Tarjan's algorithm.
+     *
+     * @param successors The graph as adjacency arrays.
+     *
+     * @return Node -&gt; component number.
+     */
+    static int @NonNull [] computeComponents(int @NonNull [] @NonNull [] successors) {
+        int n = successors.length;
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        int[] result = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+
+        int[] stack = new int[n];
+        int stackSize = 0;
+        int[] callStack = new int[n];
+        int[] nextChild = new int[n];
+        int nextIndex = 0;
+        int nextComponent = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth] = root;
+            nextChild[root] = 0;
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int node = callStack[depth];
+                if (nextChild[node] < successors[node].length) {
+                    int child = successors[node][nextChild[node]++];
+                    if (index[child] == -1) {
+                        index[child] = lowLink[child] = nextIndex++;
+                        stack[stackSize++] = child;
+                        onStack[child] = true;
+                        nextChild[child] = 0;
+                        callStack[++depth] = child;
+                    } else if (onStack[child]) {
+                        lowLink[node] = Math.min(lowLink[node], index[child]);
+                    }
+                } else {
+                    if (lowLink[node] == index[node]) {
+                        int member;
+                        do {
+                            member = stack[--stackSize];
+                            onStack[member] = false;
+                            result[member] = nextComponent;
+                        } while (member != node);
+                        nextComponent++;
+                    }
+                    depth--;
+                    if (depth >= 0) {
+                        int parent = callStack[depth];
+                        lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the model contains clauses with more than two literals. In this case
+     * {@link #setModelSatisfiable(boolean)} must be called before queries can be decided as satisfiable.
+     *
+     * @return <code>true</code> if the model has non-binary clauses.
+     */
+    public boolean hasWideClauses() {
+        return hasWideClauses;
+    }
+
+    /**
+     * Sets whether the whole model is satisfiable. Only needed if the model has non-binary clauses, otherwise this
+     * is computed from the graph.
+     *
+     * @param modelSatisfiable Whether the variability model is satisfiable.
+     */
+    public void setModelSatisfiable(boolean modelSatisfiable) {
+        this.modelSatisfiable = modelSatisfiable;
+    }
+
+    /**
+     * Returns the number of strongly connected components of the graph.
+     *
+     * @return The number of components.
+     */
+    public int getComponentCount() {
+        return complementComponent.length;
+    }
+
+    /**
+     * Returns the variables, which are forced to be equivalent by the binary clauses of the model. For each class of
+     * equivalent variables, the variable with the lowest id (first occurrence in the model) is the representative.
+     *
+     * @return Variable -&gt; representative literal for all variables, which are not representatives themselves. The
+     *      literal is negated, if the variable is equivalent to the negation of the representative. Empty, if the
+     *      binary part of the model is unsatisfiable.
+     */
+    public @NonNull Map<String, CnfVariable> getEquivalentVariables() {
+        Map<String, CnfVariable> result = new HashMap<>();
+        if (binaryConsistent) {
+            int[] representative = new int[complementComponent.length];
+            Arrays.fill(representative, -1);
+            for (int id = 0; id < store.getVariableCount(); id++) {
+                int c = component[2 * id];
+                if (representative[c] == -1) {
+                    representative[c] = 2 * id;
+                    representative[complementComponent[c]] = 2 * id + 1;
+                } else {
+                    int literal = representative[c];
+                    result.put(store.getName(id), new CnfVariable((literal & 1) != 0, store.getName(literal / 2)));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the components reachable from the given component (including itself).
+     *
+     * @param start The component to start from.
+     *
+     * @return The reachable components, must not be modified.
+     */
+    private synchronized @NonNull BitSet getClosure(int start) {
+        BitSet result = closureCache.get(start);
+        if (result == null) {
+            result = new BitSet(complementComponent.length);
+            int[] queue = new int[complementComponent.length];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            result.set(start);
+            while (head < tail) {
+                for (int successor : componentSuccessors[queue[head++]]) {
+                    if (!result.get(successor)) {
+                        result.set(successor);
+                        queue[tail++] = successor;
+                    }
+                }
+            }
+            closureCache.put(start, result);
+        }
+        return result;
+    }
+
+    /**
+     * Checks a single cube against the model.
+     *
+     * @param cube The cube to check.
+     *
+     * @return {@link Boolean#TRUE} if <code>model AND cube</code> is satisfiable, {@link Boolean#FALSE} if not,
+     *      <code>null</code> if this can't be decided by the graph.
+     */
+    private @Nullable Boolean checkCube(@NonNull Map<String, Boolean> cube) {
+        BitSet reached = new BitSet(complementComponent.length);
+        for (Map.Entry<String, Boolean> literal : cube.entrySet()) {
+            int id = store.getId(literal.getKey());
+            if (id != -1) {
+                // variables not in the graph are unconstrained, the cube itself is consistent
+                reached.or(getClosure(component[2 * id + (literal.getValue() ? 0 : 1)]));
+            }
+        }
+
+        Boolean result = modelSatisfiable;
+        for (int c = reached.nextSetBit(0); c >= 0; c = reached.nextSetBit(c + 1)) {
+            if (reached.get(complementComponent[c])) {
+                return Boolean.FALSE;
+            }
+            if (wideComponents.get(c)) {
+                // implied literals are constrained by non-binary clauses: unknown, unless a conflict is found
+                result = null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether <code>model AND (cube_1 OR ... OR cube_n)</code> is satisfiable.
+     *
+     * @param cubes The query in disjunctive normal form.
+     *
+     * @return {@link Boolean#TRUE} if the query is satisfiable, {@link Boolean#FALSE} if not, <code>null</code> if
+     *      this can't be decided by the graph.
+     */
+    public @Nullable Boolean isSatisfiable(@NonNull List<@NonNull Map<String, Boolean>> cubes) {
+        if (!binaryConsistent) {
+            // the binary part of the model is already unsatisfiable
+            return Boolean.FALSE;
+        }
+        Boolean result = Boolean.FALSE;
+        for (Map<String, Boolean> cube : cubes) {
+            Boolean cubeResult = checkCube(cube);
+            if (cubeResult == null) {
+                result = null;
+            } else if (cubeResult) {
+                result = Boolean.TRUE;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether <code>NOT(model) AND (cube_1 OR ... OR cube_n)</code> is satisfiable. This is exact for every
+     * model: a cube is satisfiable together with the negated model, iff at least one clause of the model is not
+     * satisfied by the literals of the cube.
+     *
+     * @param cubes The query in disjunctive normal form.
+     *
+     * @return Whether the query is satisfiable together with the negated model.
+     */
+    public boolean isSatisfiableWithNegatedModel(@NonNull List<@NonNull Map<String, Boolean>> cubes) {
+        boolean result = false;
+        for (Map<String, Boolean> cube : cubes) {
+            BitSet satisfiedClauses = new BitSet(violableClauses);
+            for (Map.Entry<String, Boolean> literal : cube.entrySet()) {
+                int id = store.getId(literal.getKey());
+                if (id != -1) {
+                    for (int clause : occurrences[2 * id + (literal.getValue() ? 0 : 1)]) {
+                        satisfiedClauses.set(clause);
+                    }
+                }
+            }
+            if (satisfiedClauses.cardinality() < violableClauses) {
+                result = true;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks a formula query against the model, if it can be converted into at most {@link #MAX_CUBES} cubes.
+     *
+     * @param query The query to check.
+     *
+     * @return The result of {@link #isSatisfiable(List)}, or <code>null</code> if the query has too many cubes.
+     */
+    @Override
+    public @Nullable Boolean check(@NonNull Formula query) {
+        List<@NonNull Map<String, Boolean>> cubes = FormulaUtils.toCubes(query, MAX_CUBES);
+        return cubes != null ? isSatisfiable(cubes) : null;
+    }
+
+    /**
+     * Checks a formula query against the negated model, if it can be converted into at most {@link #MAX_CUBES}
+     * cubes.
+     *
+     * @param query The query to check.
+     *
+     * @return The result of {@link #isSatisfiableWithNegatedModel(List)}, or <code>null</code> if the query has too
+     *      many cubes.
+     */
+    @Override
+    public @Nullable Boolean checkNegated(@NonNull Formula query) {
+        List<@NonNull Map<String, Boolean>> cubes = FormulaUtils.toCubes(query, MAX_CUBES);
+        return cubes != null ? isSatisfiableWithNegatedModel(cubes) : null;
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.config_mismatches.DimacsIO.DimacsFile;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Short clauses, which are implied by the variability model alone, collected from the queries of a run and stored
+ * for later runs on the same model. Whenever <code>model AND l1 AND ... AND lk</code> is found unsatisfiable for a
+ * query, which is a single cube of literals (with <code>k &lt;= </code>{@link #MAX_LENGTH}), the model implies the
+ * clause <code>!l1 OR ... OR !lk</code>. The {@link VarModelSolver} passes the formula queries before they are
+ * answered or converted into CNF, as encodings like the {@link SelectorEncoding} hide the cube structure. These are exactly the facts a SAT solver has to rediscover in every run;
+ * adding them as redundant clauses to the solvers of later runs lets them start warm. Results are not affected, as
+ * the clauses are implied by the model.
+ * <p>
+ * The clauses are stored as DIMACS file named after the fingerprint of the model, like the cached
+ * {@link CompiledVarModel}s.
+ * </p>
+ *
+ * @author agent
+ */
+class LearnedClauses {
+
+    /**
+     * The maximum number of literals of a learned clause.
+     */
+    static final int MAX_LENGTH = 3;
+
+    /**
+     * The maximum number of stored clauses.
+     */
+    static final int MAX_CLAUSES = 100000;
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    private static final @NonNull String PROPERTY_FINGERPRINT = "fingerprint";
+
+    private final @NonNull File file;
+
+    private final @NonNull String fingerprint;
+
+    private final @NonNull Set<String> variables;
+
+    /**
+     * The keys of the clauses of the model and of all learned clauses, for avoiding duplicates.
+     */
+    private final @NonNull Set<String> known = new HashSet<>();
+
+    private final @NonNull Cnf loaded = new Cnf();
+
+    private final @NonNull List<@NonNull CnfVariable @NonNull []> learned = new ArrayList<>();
+
+    /**
+     * Creates the learned clauses for the given model and loads the clauses of previous runs on the same model.
+     *
+     * @param model The model, which is solved (i.e., after collapsing equivalences).
+     * @param directory The directory, in which the learned clauses are stored.
+     */
+    LearnedClauses(@NonNull Cnf model, @NonNull File directory) {
+        this.fingerprint = CompiledVarModel.fingerprint(model);
+        this.file = new File(directory, fingerprint + ".learned");
+        this.variables = model.getAllVarNames();
+        for (int i = 0; i < model.getRowCount(); i++) {
+            Map<String, Boolean> clause = new TreeMap<>();
+            for (CnfVariable literal : model.getRow(i)) {
+                clause.put(literal.getName(), literal.isNegation());
+            }
+            if (clause.size() <= MAX_LENGTH) {
+                known.add(clause.toString());
+            }
+        }
+
+        if (file.isFile()) {
+            try {
+                DimacsFile previous = DimacsIO.read(file);
+                if (fingerprint.equals(previous.getProperty(PROPERTY_FINGERPRINT))) {
+                    Cnf cnf = previous.getCnf();
+                    for (int i = 0; i < cnf.getRowCount(); i++) {
+                        List<CnfVariable> clause = new ArrayList<>();
+                        for (CnfVariable literal : cnf.getRow(i)) {
+                            clause.add(literal);
+                        }
+                        add(clause);
+                    }
+                    for (CnfVariable[] clause : learned) {
+                        loaded.addRow(clause);
+                    }
+                    LOGGER.logInfo("Loaded " + loaded.getRowCount() + " learned clauses from "
+                            + file.getAbsolutePath());
+                }
+            } catch (IOException | FormatException e) {
+                LOGGER.logException("Could not read learned clauses, starting without them", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the clauses learned by previous runs on the same model.
+     *
+     * @return The loaded clauses, which can be added to the model as redundant clauses; may be empty.
+     */
+    @NonNull Cnf getLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Returns the number of known learned clauses, including the loaded ones.
+     *
+     * @return The number of learned clauses.
+     */
+    int getCount() {
+        return learned.size();
+    }
+
+    /**
+     * Learns from a query, for which <code>model AND query</code> was found unsatisfiable. Only cubes of at most
+     * {@link #MAX_LENGTH} literals over model variables are used.
+     *
+     * @param cube The unsatisfiable query as cube: variable -&gt; value.
+     */
+    synchronized void learnFromUnsatisfiable(@NonNull Map<String, Boolean> cube) {
+        if (cube.isEmpty() || cube.size() > MAX_LENGTH) {
+            return;
+        }
+        List<CnfVariable> clause = new ArrayList<>();
+        for (Map.Entry<String, Boolean> literal : cube.entrySet()) {
+            // the clause contains the complement of each literal of the cube
+            clause.add(new CnfVariable(literal.getValue(), literal.getKey()));
+        }
+        add(clause);
+    }
+
+    /**
+     * Learns from a CNF query, for which <code>model AND query</code> was found unsatisfiable. Only queries
+     * consisting of at most {@link #MAX_LENGTH} unit clauses over model variables are used.
+     *
+     * @param query The unsatisfiable query.
+     */
+    synchronized void learnFromUnsatisfiable(@NonNull Cnf query) {
+        if (query.getRowCount() == 0 || query.getRowCount() > MAX_LENGTH) {
+            return;
+        }
+        List<CnfVariable> clause = new ArrayList<>();
+        for (int i = 0; i < query.getRowCount(); i++) {
+            CnfVariable unit = null;
+            int length = 0;
+            for (CnfVariable literal : query.getRow(i)) {
+                unit = literal;
+                length++;
+            }
+            if (unit == null || length != 1) {
+                return;
+            }
+            clause.add(new CnfVariable(!unit.isNegation(), unit.getName()));
+        }
+        add(clause);
+    }
+
+    /**
+     * Adds a clause, if it is not a tautology, only contains model variables and is not known yet.
+     *
+     * @param clause The literals of the clause.
+     */
+    private void add(@NonNull List<CnfVariable> clause) {
+        Map<String, Boolean> literals = new TreeMap<>();
+        for (CnfVariable literal : clause) {
+            Boolean previous = literals.put(literal.getName(), literal.isNegation());
+            if (!variables.contains(literal.getName()) || previous != null && previous != literal.isNegation()) {
+                return;
+            }
+        }
+        if (learned.size() < MAX_CLAUSES && known.add(literals.toString())) {
+            @NonNull CnfVariable[] row = new @NonNull CnfVariable[literals.size()];
+            int i = 0;
+            for (Map.Entry<String, Boolean> literal : literals.entrySet()) {
+                row[i++] = new CnfVariable(literal.getValue(), literal.getKey());
+            }
+            learned.add(row);
+        }
+    }
+
+    /**
+     * Writes all learned clauses, including the loaded ones, for later runs on the same model.
+     *
+     * @throws IOException If writing the file fails.
+     */
+    synchronized void save() throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent.getAbsolutePath());
+        }
+        Cnf cnf = new Cnf();
+        for (CnfVariable[] clause : learned) {
+            cnf.addRow(clause);
+        }
+        Map<String, String> properties = new HashMap<>();
+        properties.put(PROPERTY_FINGERPRINT, fingerprint);
+        DimacsIO.write(cnf, properties, file);
+    }
+
+}
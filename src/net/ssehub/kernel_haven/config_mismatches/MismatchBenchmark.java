@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.config_mismatches.WorkloadGenerator.Workload;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * End-to-end benchmark of the {@link ConfigMismatchDetector} and the {@link DetailedConfigMismatchDetector} on
+ * synthetic workloads of the {@link WorkloadGenerator}. For each model size, a workload is generated and written,
+ * and both detectors are run on it like in a pipeline (the model is read from the DIMACS file, the feature effects by
+ * the {@link FeatureEffectReader}). Usage:
+ * <pre>
+ * java -cp ... net.ssehub.kernel_haven.config_mismatches.MismatchBenchmark &lt;work directory&gt;
+ *     [--sizes 1000,5000,20000] [--seed N] [--config &lt;properties file&gt;]
+ * </pre>
+ * <p>
+ * For each size and detector, the time until the first result (<i>setup</i>: converting the model and building the
+ * solvers), the time for the remaining results (<i>check</i>), the throughput in feature effects per second and the
+ * peak heap usage are reported. The settings of the given configuration (e.g., the {@link MismatchSettings}) are
+ * used for all runs, so different solver configurations can be compared.
+ * </p>
+ *
+ * @author agent
+ */
+public class MismatchBenchmark {
+
+    /**
+     * Returns a variability model for the detectors, like the variability model extractor in a pipeline.
+     */
+    private static final class ModelProvider extends AnalysisComponent<VariabilityModel> {
+
+        private final @NonNull VariabilityModel model;
+
+        /**
+         * Creates the provider.
+         *
+         * @param config The global configuration.
+         * @param model The model to return.
+         */
+        private ModelProvider(@NonNull Configuration config, @NonNull VariabilityModel model) {
+            super(config);
+            this.model = model;
+        }
+
+        @Override
+        protected void execute() {
+            addResult(model);
+        }
+
+        @Override
+        public @NonNull String getResultName() {
+            return "Variability Model";
+        }
+
+    }
+
+    private final @NonNull Configuration config;
+
+    private final @NonNull PrintStream out;
+
+    /**
+     * Creates a benchmark.
+     *
+     * @param config The configuration for the detectors.
+     * @param out The stream to report the measurements to.
+     */
+    public MismatchBenchmark(@NonNull Configuration config, @NonNull PrintStream out) {
+        this.config = config;
+        this.out = out;
+    }
+
+    /**
+     * Generates a workload of the given size and runs both detectors on it.
+     *
+     * @param nVariables The number of variables of the generated model.
+     * @param seed The seed for the {@link WorkloadGenerator}.
+     * @param directory The directory to write the workload to.
+     *
+     * @throws IOException If writing the workload fails.
+     * @throws SetUpException If creating the detectors fails.
+     */
+    public void run(int nVariables, long seed, @NonNull File directory) throws IOException, SetUpException {
+        long start = System.nanoTime();
+        Workload workload = new WorkloadGenerator(seed).generate(nVariables,
+                WorkloadGenerator.defaultFeatureEffectCount(nVariables));
+        directory.mkdirs();
+        File modelFile = new File(directory, WorkloadGenerator.MODEL_FILE);
+        File feFile = new File(directory, WorkloadGenerator.FEATURE_EFFECT_FILE);
+        WorkloadGenerator.writeModel(workload, modelFile);
+        WorkloadGenerator.writeFeatureEffects(workload, feFile);
+        long generation = System.nanoTime() - start;
+
+        int nFeatureEffects = workload.getFeatureEffects().size();
+        out.printf("%d variables, %d clauses, %d feature effects (generated in %.1f ms)%n", nVariables,
+                workload.getModel().getRowCount(), nFeatureEffects, generation / 1e6);
+        out.printf("  %-10s %12s %12s %12s %14s%n", "detector", "setup [ms]", "check [ms]", "FE/s", "peak heap [MB]");
+
+        for (boolean detailed : new boolean[] {false, true}) {
+            VariabilityModel model = createModel(workload, modelFile);
+            AnalysisComponent<VariableWithFeatureEffect> feReader = new FeatureEffectReader(config, feFile,
+                    FeatureEffectReader.WINDOW_SIZE);
+            AnalysisComponent<?> detector = detailed
+                    ? new DetailedConfigMismatchDetector(config, new ModelProvider(config, model), feReader)
+                    : new ConfigMismatchDetector(config, new ModelProvider(config, model), feReader);
+
+            System.gc();
+            resetPeakHeap();
+            start = System.nanoTime();
+            long setup = -1;
+            while (detector.getNextResult() != null) {
+                if (setup < 0) {
+                    setup = System.nanoTime() - start;
+                }
+            }
+            long total = System.nanoTime() - start;
+            setup = Math.max(0, setup);
+
+            out.printf("  %-10s %12.1f %12.1f %12.1f %14.1f%n", detailed ? "detailed" : "basic", setup / 1e6,
+                    (total - setup) / 1e6, nFeatureEffects / (total / 1e9), getPeakHeap() / (1024.0 * 1024.0));
+        }
+    }
+
+    /**
+     * Creates the variability model for the written DIMACS file.
+     *
+     * @param workload The generated workload.
+     * @param modelFile The DIMACS file of the workload.
+     *
+     * @return The variability model.
+     */
+    private static @NonNull VariabilityModel createModel(@NonNull Workload workload, @NonNull File modelFile) {
+        Set<VariabilityVariable> variables = new HashSet<>();
+        List<String> names = workload.getVariables();
+        for (int i = 0; i < names.size(); i++) {
+            variables.add(new VariabilityVariable(names.get(i), "bool", i + 1));
+        }
+        VariabilityModel model = new VariabilityModel(modelFile, variables);
+        model.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+        return model;
+    }
+
+    /**
+     * Resets the peak usage of all heap memory pools.
+     */
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Returns the peak heap usage since the last {@link #resetPeakHeap()}, summed over all heap memory pools.
+     *
+     * @return The peak heap usage in bytes.
+     */
+    private static long getPeakHeap() {
+        long result = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                result += pool.getPeakUsage().getUsed();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Main method for running the benchmark from the command line.
+     *
+     * @param args The command line arguments, see class comment.
+     *
+     * @throws Exception If generating the workloads or running the detectors fails.
+     */
+    public static void main(String[] args) throws Exception {
+        File directory = null;
+        File configFile = null;
+        List<Integer> sizes = new ArrayList<>();
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--sizes") && i + 1 < args.length) {
+                for (String size : args[++i].split(",")) {
+                    sizes.add(Integer.parseInt(size.trim()));
+                }
+            } else if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--config") && i + 1 < args.length) {
+                configFile = new File(args[++i]);
+            } else {
+                directory = new File(args[i]);
+            }
+        }
+        if (directory == null) {
+            System.err.println("Usage: " + MismatchBenchmark.class.getName()
+                    + " <work directory> [--sizes 1000,5000,20000] [--seed N] [--config <properties file>]");
+            System.exit(1);
+            return;
+        }
+        if (sizes.isEmpty()) {
+            sizes.add(1000);
+            sizes.add(5000);
+            sizes.add(20000);
+        }
+
+        directory.mkdirs();
+        if (configFile == null) {
+            configFile = new File(directory, "benchmark.properties");
+            Files.write(configFile.toPath(), new byte[0]);
+        }
+        MismatchBenchmark benchmark = new MismatchBenchmark(new Configuration(configFile), System.out);
+        for (int size : sizes) {
+            benchmark.run(size, seed, new File(directory, "workload_" + size));
+        }
+    }
+
+}
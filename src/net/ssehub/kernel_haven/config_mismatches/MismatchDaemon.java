@@ -0,0 +1,317 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
+import net.ssehub.kernel_haven.cnf.IFormulaToCnfConverter;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.config_mismatches.DimacsIO.DimacsFile;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.parser.CStyleBooleanGrammar;
+import net.ssehub.kernel_haven.util.logic.parser.ExpressionFormatException;
+import net.ssehub.kernel_haven.util.logic.parser.Parser;
+import net.ssehub.kernel_haven.util.logic.parser.VariableCache;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Long-running process, which keeps a variability model (its CNF, its negation and the solvers) loaded and checks
+ * batches of feature effects sent over stdin or a local socket. Usage:
+ * <pre>
+ * java -cp ... net.ssehub.kernel_haven.config_mismatches.MismatchDaemon &lt;model.dimacs&gt; [--port N]
+ *     [--config &lt;properties file&gt;]
+ * </pre>
+ * <ul>
+ *     <li><code>--port N</code>: Accepts connections on the loopback interface instead of reading stdin. Clients are
+ *         served one after another.</li>
+ *     <li><code>--config</code>: Sets up the solver with the {@link MismatchSettings} of the given configuration.</li>
+ * </ul>
+ * <p>
+ * Each request line has the form <code>VARIABLE&lt;TAB&gt;feature effect</code>, with the feature effect in C-style
+ * syntax (like in the files read by the {@link FeatureEffectReader}). Each request is answered by one line
+ * <code>VARIABLE&lt;TAB&gt;result&lt;TAB&gt;detailed result</code> with the descriptions of the
+ * {@link MismatchResultType} and the {@link DetailedMismatchResultType}. Answers are flushed as soon as no further
+ * request of the batch is pending. Before each batch, the model is reloaded if the model file has changed. The line
+ * <code>!reload</code> forces a reload, <code>!quit</code> ends the connection. Malformed requests are answered with
+ * a line starting with <code>!error</code>.
+ * </p>
+ *
+ * @author agent
+ */
+public class MismatchDaemon {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    private final @NonNull File modelFile;
+
+    private final @Nullable Configuration config;
+
+    private final @NonNull IFormulaToCnfConverter converter;
+
+    private final @NonNull Parser<@NonNull Formula> parser;
+
+    /**
+     * A loaded variability model together with its warmed up solver.
+     */
+    private static final class LoadedModel {
+
+        private final long timestamp;
+
+        private final @NonNull Set<String> variables;
+
+        private final @NonNull VarModelSolver solver;
+
+        private final boolean satisfiable;
+
+        /**
+         * Creates a loaded model.
+         *
+         * @param timestamp The modification time of the model file, when it was read.
+         * @param variables The variables of the model.
+         * @param solver The solver for the model.
+         * @param satisfiable Whether the model is satisfiable.
+         */
+        private LoadedModel(long timestamp, @NonNull Set<String> variables, @NonNull VarModelSolver solver,
+                boolean satisfiable) {
+            this.timestamp = timestamp;
+            this.variables = variables;
+            this.solver = solver;
+            this.satisfiable = satisfiable;
+        }
+
+    }
+
+    private @NonNull LoadedModel model;
+
+    /**
+     * Creates a daemon and loads the variability model.
+     *
+     * @param modelFile The variability model as DIMACS file.
+     * @param config The configuration for setting up the solver, may be <code>null</code> for a plain SAT solver.
+     *
+     * @throws IOException If reading the model fails.
+     * @throws FormatException If the model file is malformed.
+     * @throws SetUpException If the settings of the configuration are invalid.
+     */
+    public MismatchDaemon(@NonNull File modelFile, @Nullable Configuration config)
+            throws IOException, FormatException, SetUpException {
+
+        this.modelFile = modelFile;
+        this.config = config;
+        this.converter = FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING);
+        this.parser = new Parser<>(new CStyleBooleanGrammar(new VariableCache()));
+        if (config != null) {
+            MismatchSettings.registerAllSettings(config);
+        }
+        this.model = load();
+    }
+
+    /**
+     * Reloads the variability model from the model file. The previous model is kept, if reading the file fails.
+     *
+     * @throws IOException If reading the model fails.
+     * @throws FormatException If the model file is malformed.
+     */
+    public void reload() throws IOException, FormatException {
+        this.model = load();
+    }
+
+    /**
+     * Loads the variability model from the model file and warms up the solvers for the model and its negation.
+     *
+     * @return The loaded model.
+     *
+     * @throws IOException If reading the model fails.
+     * @throws FormatException If the model file is malformed.
+     */
+    private @NonNull LoadedModel load() throws IOException, FormatException {
+        long start = System.currentTimeMillis();
+        long timestamp = modelFile.lastModified();
+        DimacsFile dimacs = DimacsIO.read(modelFile);
+        Cnf varModel = dimacs.getCnf();
+
+        Configuration config = this.config;
+        VarModelSolver newSolver = config != null ? VarModelSolver.create(config, varModel, converter)
+                : new VarModelSolver(varModel, converter);
+        boolean satisfiable = true;
+        try {
+            satisfiable = newSolver.isSatisfiable(new Cnf());
+            if (!newSolver.hasCompiledModel()) {
+                newSolver.isSatisfiableWithNegatedModel(new Cnf());
+            }
+        } catch (SolverException | ConverterException e) {
+            LOGGER.logException("Could not warm up the solvers, continuing with lazily created solvers", e);
+        }
+
+        LOGGER.logInfo("Loaded variability model " + modelFile.getAbsolutePath() + " with " + varModel.getRowCount()
+                + " clauses in " + (System.currentTimeMillis() - start) + " ms");
+        return new LoadedModel(timestamp, dimacs.getVariables(), newSolver, satisfiable);
+    }
+
+    /**
+     * Reloads the variability model, if the model file has changed since it was loaded. If reading the changed file
+     * fails, the previous model is kept.
+     */
+    public void reloadIfChanged() {
+        if (modelFile.lastModified() != model.timestamp) {
+            try {
+                reload();
+            } catch (IOException | FormatException e) {
+                LOGGER.logException("Could not reload changed variability model, keeping the previous one", e);
+            }
+        }
+    }
+
+    /**
+     * Answers a single request line.
+     *
+     * @param request The request <code>VARIABLE&lt;TAB&gt;feature effect</code>.
+     *
+     * @return The answer line (without line break).
+     */
+    public @NonNull String answer(@NonNull String request) {
+        int separator = request.indexOf('\t');
+        if (separator <= 0) {
+            return "!error Expected VARIABLE<TAB>feature effect: " + request;
+        }
+        String varName = request.substring(0, separator).trim();
+
+        Formula featureEffect;
+        try {
+            featureEffect = parser.parse(request.substring(separator + 1).trim());
+        } catch (ExpressionFormatException e) {
+            return "!error Could not parse feature effect of " + varName + ": " + e.getMessage();
+        }
+
+        LoadedModel model = this.model;
+        model.solver.startVariable(varName);
+        DetailedMismatchResultType detailedType = DetailedConfigMismatchDetector.checkVariablesDefined(
+                model.variables, varName, featureEffect);
+        if (null == detailedType) {
+            detailedType = DetailedConfigMismatchDetector.checkWithSat(model.solver, varName, featureEffect);
+        }
+        MismatchResultType basicType = CombinedConfigMismatchDetector.toBasicType(detailedType, model.satisfiable);
+        return varName + "\t" + basicType.getDescription() + "\t" + detailedType.getDescription();
+    }
+
+    /**
+     * Reads requests until the end of the input or a <code>!quit</code> line and writes the answers.
+     *
+     * @param in The reader for the requests.
+     * @param out The writer for the answers; not closed by this method.
+     *
+     * @throws IOException If reading or writing fails.
+     */
+    public void serve(@NonNull Reader in, @NonNull Writer out) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        boolean batchStart = true;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (batchStart) {
+                reloadIfChanged();
+                batchStart = false;
+            }
+
+            if (line.equals("!quit")) {
+                break;
+            } else if (line.equals("!reload")) {
+                try {
+                    reload();
+                    out.write("!reloaded\n");
+                } catch (IOException | FormatException e) {
+                    out.write("!error Could not reload variability model: " + e.getMessage() + "\n");
+                }
+            } else if (!line.trim().isEmpty()) {
+                out.write(answer(line) + "\n");
+            }
+
+            if (!reader.ready()) {
+                // end of the current batch
+                out.flush();
+                batchStart = true;
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Main method for running the daemon from the command line.
+     *
+     * @param args The command line arguments, see class comment.
+     *
+     * @throws Exception If loading the model or serving the requests fails.
+     */
+    public static void main(String[] args) throws Exception {
+        File modelFile = null;
+        File configFile = null;
+        int port = -1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--config") && i + 1 < args.length) {
+                configFile = new File(args[++i]);
+            } else {
+                modelFile = new File(args[i]);
+            }
+        }
+        if (modelFile == null || !modelFile.isFile()) {
+            System.err.println("Usage: " + MismatchDaemon.class.getName()
+                    + " <model.dimacs> [--port N] [--config <properties file>]");
+            System.exit(1);
+            return;
+        }
+
+        MismatchDaemon daemon = new MismatchDaemon(modelFile, configFile != null ? new Configuration(configFile)
+                : null);
+        if (port < 0) {
+            Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            daemon.serve(new InputStreamReader(System.in, StandardCharsets.UTF_8), out);
+        } else {
+            try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+                LOGGER.logInfo("Waiting for requests on port " + server.getLocalPort());
+                while (true) {
+                    try (Socket client = server.accept()) {
+                        daemon.serve(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8),
+                                new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        LOGGER.logException("Connection failed", e);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.config.Setting.Type.BOOLEAN;
+import static net.ssehub.kernel_haven.config.Setting.Type.INTEGER;
+import static net.ssehub.kernel_haven.config.Setting.Type.PATH;
+import static net.ssehub.kernel_haven.config.Setting.Type.REGEX;
+import static net.ssehub.kernel_haven.config.Setting.Type.STRING_LIST;
+
+import java.io.File;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.config.Setting;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Settings for the configuration mismatch analysis.
+ *
+ * @author agent
+ */
+public class MismatchSettings {
+
+    public static final @NonNull Setting<@Nullable File> SLOW_QUERY_LOG_FILE = new Setting<>(
+            "analysis.config_mismatches.slow_query_log.file", PATH, false, null,
+            "If specified, the configuration mismatch detectors record the slowest checked variables and write them "
+            + "as CSV to this file at the end of the analysis.");
+
+    public static final @NonNull Setting<@NonNull Integer> SLOW_QUERY_LOG_SIZE = new Setting<>(
+            "analysis.config_mismatches.slow_query_log.size", INTEGER, true, "20",
+            "The number of slowest variables that are kept in the slow query log (see "
+            + "analysis.config_mismatches.slow_query_log.file).");
+
+    public static final @NonNull Setting<@Nullable File> QUERY_DUMP_DIR = new Setting<>(
+            "analysis.config_mismatches.query_dump.dir", PATH, false, null,
+            "If specified, the configuration mismatch detectors write each SAT query as DIMACS file together with the "
+            + "expected result into this directory. The dumped queries can be re-run offline with "
+            + SatQueryReplay.class.getName() + ".");
+
+    public static final @NonNull Setting<@NonNull Boolean> USE_IMPLICATION_GRAPH = new Setting<>(
+            "analysis.config_mismatches.implication_graph", BOOLEAN, true, "false",
+            "If set to true, the configuration mismatch detectors build the binary implication graph of the "
+            + "variability model once and answer queries, which are small disjunctions of literal conjunctions, by "
+            + "graph lookups. Only queries involving non-binary clauses of the model are passed to the SAT solver.");
+
+    public static final @NonNull Setting<@NonNull Boolean> USE_COMPILED_MODEL = new Setting<>(
+            "analysis.config_mismatches.compiled_model", BOOLEAN, true, "false",
+            "If set to true, the configuration mismatch detectors compile the variability model once into a BDD and "
+            + "answer queries against the model and its negation on the compiled form. If the model can't be "
+            + "compiled within analysis.config_mismatches.compiled_model.max_nodes, the SAT solver is used.");
+
+    public static final @NonNull Setting<@NonNull Integer> COMPILED_MODEL_MAX_NODES = new Setting<>(
+            "analysis.config_mismatches.compiled_model.max_nodes", INTEGER, true, "5000000",
+            "The maximum number of BDD nodes for the compiled variability model (including the nodes of a query).");
+
+    public static final @NonNull Setting<@Nullable File> COMPILED_MODEL_CACHE_DIR = new Setting<>(
+            "analysis.config_mismatches.compiled_model.cache_dir", PATH, false, null,
+            "If specified, compiled variability models are stored in this directory and reused by later runs on the "
+            + "same model.");
+
+    public static final @NonNull Setting<@NonNull Boolean> USE_SELECTOR_ENCODING = new Setting<>(
+            "analysis.config_mismatches.selector_encoding", BOOLEAN, true, "false",
+            "If set to true, queries passed to the SAT solver are converted into CNF by defining one selector literal "
+            + "per sub-formula. The feature effect is then converted only once per variable and shared by all "
+            + "queries of the detailed detectors.");
+
+    public static final @NonNull Setting<@NonNull Integer> SELECTOR_CACHE_SIZE = new Setting<>(
+            "analysis.config_mismatches.selector_encoding.cache_size", INTEGER, true, "100000",
+            "The maximum number of sub-formula definitions of the selector encoding, which are shared by their "
+            + "structure across all feature effects of a run. Structurally equal sub-formulas of different feature "
+            + "effects are then only converted once. 0 shares definitions only within the queries of one variable.");
+
+    public static final @NonNull Setting<@NonNull Boolean> SEMANTIC_DEDUPLICATION = new Setting<>(
+            "analysis.config_mismatches.semantic_dedup", BOOLEAN, true, "false",
+            "If set to true, feature effects are grouped into classes of logically equivalent formulas by evaluating "
+            + "them on random assignments and confirming equal signatures with a SAT equivalence check. The detailed "
+            + "detectors then solve the queries, which only depend on the feature effect, once per class; only the "
+            + "variable specific queries are solved per variable.");
+
+    public static final @NonNull Setting<@NonNull Integer> SEMANTIC_DEDUPLICATION_WORDS = new Setting<>(
+            "analysis.config_mismatches.semantic_dedup.words", INTEGER, true, "4",
+            "The number of 64 bit words of the signatures of the semantic deduplication, i.e., the feature effects "
+            + "are evaluated on 64 times this many random assignments.");
+
+    public static final @NonNull Setting<@NonNull Integer> CUBE_MIN_QUERY_CLAUSES = new Setting<>(
+            "analysis.config_mismatches.cube.min_query_clauses", INTEGER, true, "0",
+            "If greater than 0, SAT queries with at least this many clauses are split into cubes by fixing the most "
+            + "frequent variables, and the cubes are solved in parallel (cube-and-conquer).");
+
+    public static final @NonNull Setting<@NonNull Integer> CUBE_DEPTH = new Setting<>(
+            "analysis.config_mismatches.cube.depth", INTEGER, true, "4",
+            "The number of variables fixed per cube; hard queries are split into 2^depth cubes.");
+
+    public static final @NonNull Setting<@NonNull Integer> CUBE_THREADS = new Setting<>(
+            "analysis.config_mismatches.cube.threads", INTEGER, true, "0",
+            "The number of threads solving cubes; 0 uses one thread per available processor.");
+
+    public static final @NonNull Setting<@NonNull Boolean> DETAILED_TWO_PHASE = new Setting<>(
+            "analysis.config_mismatches.detailed.two_phase", BOOLEAN, true, "false",
+            "If set to true, the DetailedConfigMismatchDetector first runs only the queries against the variability "
+            + "model for all variables and reports contradictions right away; the queries against the negated "
+            + "variability model follow in a second phase. The results of the first phase are available as "
+            + "provisional results. Changes the order of the results. The second phase runs on a solver of its own "
+            + "in a background thread; the first phase waits whenever " + DetailedConfigMismatchDetector.MAX_PENDING
+            + " variables wait for it.");
+
+    public static final @NonNull Setting<@NonNull Boolean> EXPLAIN_CONFLICTS = new Setting<>(
+            "analysis.config_mismatches.explain_conflicts", BOOLEAN, true, "false",
+            "If set to true, the ConfigMismatchDetector and the DetailedConfigMismatchDetector explain their conflicts "
+            + "as additional results: a valid configuration violating the feature effect for "
+            + "CONFLICT_WITH_VARMODEL, a small unsatisfiable subset of model clauses and feature effect parts for "
+            + "CONTRADICTION.");
+
+    public static final @NonNull Setting<@NonNull Integer> EXPLANATION_BUDGET_MS = new Setting<>(
+            "analysis.config_mismatches.explain_conflicts.budget_ms", INTEGER, true, "1000",
+            "The time (in milliseconds) spent for minimizing the explanation of one conflict. If it is used up, a "
+            + "larger, not minimal explanation is reported.");
+
+    public static final @NonNull Setting<@NonNull Boolean> MEMORY_CONTROL = new Setting<>(
+            "analysis.config_mismatches.memory_control", BOOLEAN, true, "false",
+            "If set to true, the heap occupancy and the garbage collection time are watched during the analysis. "
+            + "Under memory pressure, the solver caches and the number of concurrently solved cubes are reduced; "
+            + "they are increased again once the pressure drops.");
+
+    public static final @NonNull Setting<@NonNull Integer> MEMORY_CONTROL_MAX_HEAP = new Setting<>(
+            "analysis.config_mismatches.memory_control.max_heap_percent", INTEGER, true, "85",
+            "The heap occupancy after garbage collection (in percent of the maximum heap size), above which the "
+            + "memory pressure is considered high.");
+
+    public static final @NonNull Setting<@NonNull Integer> MEMORY_CONTROL_MAX_GC = new Setting<>(
+            "analysis.config_mismatches.memory_control.max_gc_percent", INTEGER, true, "20",
+            "The share of time spent in garbage collection (in percent), above which the memory pressure is "
+            + "considered high.");
+
+    public static final @NonNull Setting<@NonNull Integer> SHADOW_RATE = new Setting<>(
+            "analysis.config_mismatches.shadow.rate", INTEGER, true, "0",
+            "The percentage (0 - 100) of results, which are re-checked with the reference algorithm on a plain SAT "
+            + "solver in a background thread (shadow verification). Disagreements with the optimized result are "
+            + "logged as errors and counted in the summary.");
+
+    public static final @NonNull Setting<@NonNull Integer> SAMPLING_RATE = new Setting<>(
+            "analysis.config_mismatches.sampling.rate", INTEGER, true, "0",
+            "If between 1 and 99, the ConfigMismatchDetector and the DetailedConfigMismatchDetector only check this "
+            + "percentage of the feature effects (sampling mode), stratified by the size of the feature effects. "
+            + "Only the sampled results are reported, together with the estimated number of results of each type "
+            + "for all feature effects and their 95% confidence intervals.");
+
+    public static final @NonNull Setting<@NonNull Integer> SAMPLING_SIZE = new Setting<>(
+            "analysis.config_mismatches.sampling.size", INTEGER, true, "0",
+            "If greater than 0, the sampling mode checks this many feature effects instead of a percentage. The "
+            + "detectors then wait until all feature effects are computed before checking the first one.");
+
+    public static final @NonNull Setting<@NonNull Boolean> OFF_HEAP_CLAUSE_STORE = new Setting<>(
+            "analysis.config_mismatches.clause_store.off_heap", BOOLEAN, true, "false",
+            "If set to true, the flat clause store, into which the variability model is converted once for the "
+            + "model-level analyses, keeps its literals in a direct buffer outside of the Java heap.");
+
+    public static final @NonNull Setting<@Nullable File> LEARNED_CLAUSES_DIR = new Setting<>(
+            "analysis.config_mismatches.learned_clauses.dir", PATH, false, null,
+            "If specified, short clauses implied by the variability model are collected from the unsatisfiable SAT "
+            + "queries of a run and stored in this directory. Later runs on the same model add them as redundant "
+            + "clauses to the SAT solver of the model.");
+
+    public static final @NonNull Setting<@NonNull Boolean> COLLAPSE_EQUIVALENCES = new Setting<>(
+            "analysis.config_mismatches.collapse_equivalences", BOOLEAN, true, "false",
+            "If set to true, variables that the variability model forces to be equivalent are replaced by one "
+            + "representative in the model and in all queries before solving. Results are still reported for the "
+            + "original variables.");
+
+    public static final @NonNull Setting<@NonNull Integer> SAMPLE_POOL_SIZE = new Setting<>(
+            "analysis.config_mismatches.sample_pool.size", INTEGER, true, "0",
+            "If greater than 0, the configuration mismatch detectors sample this many valid configurations of the "
+            + "variability model once. Queries against the model, which are satisfied by one of these "
+            + "configurations (e.g., a configuration violating a feature effect), are answered without the SAT "
+            + "solver. Multiples of 64 are most efficient.");
+
+    public static final @NonNull Setting<@NonNull Integer> SPILL_THRESHOLD = new Setting<>(
+            "analysis.config_mismatches.spill.threshold", INTEGER, true, "0",
+            "If greater than 0, the configuration mismatch detectors read the feature effects through a buffer, "
+            + "which keeps at most this many feature effects in memory. If the detector falls behind, further feature "
+            + "effects are written to segment files on disk and read back in order.");
+
+    public static final @NonNull Setting<@Nullable File> SPILL_DIR = new Setting<>(
+            "analysis.config_mismatches.spill.dir", PATH, false, null,
+            "The directory, in which the segment files of the spilling buffer are created. If not specified, the "
+            + "default temporary directory is used.");
+
+    public static final @NonNull Setting<@Nullable File> FEATURE_EFFECT_FILE = new Setting<>(
+            "analysis.config_mismatches.fe_input.file", PATH, false, null,
+            "The CSV file with the feature effects of a previous run, which is read by "
+            + FeatureEffectReader.class.getName() + ".");
+
+    public static final @NonNull Setting<@Nullable File> BINARY_OUTPUT_FILE = new Setting<>(
+            "analysis.config_mismatches.binary_output.file", PATH, false, null,
+            "The file, which is written by " + BinaryResultOutput.class.getName() + ". If not specified, the file "
+            + "config_mismatches.khcm in the output directory is used. It can be converted into CSV with "
+            + BinaryResultReader.class.getName() + ".");
+
+    public static final @NonNull Setting<@Nullable File> DELTA_PREVIOUS_MODEL = new Setting<>(
+            "analysis.config_mismatches.delta.previous_model", PATH, false, null,
+            "Enables the version-delta mode together with analysis.config_mismatches.delta.previous_results: the "
+            + "variability model of the previous version as DIMACS file. Feature effects, which the changed clauses "
+            + "can't affect, are not checked again, their previous results are reported instead.");
+
+    public static final @NonNull Setting<@Nullable File> DELTA_PREVIOUS_RESULTS = new Setting<>(
+            "analysis.config_mismatches.delta.previous_results", PATH, false, null,
+            "The results of the previous version for the version-delta mode, as written by "
+            + BinaryResultOutput.class.getName() + ". The detailed detectors need the file of a detailed or combined "
+            + "detector.");
+
+    public static final @NonNull Setting<@Nullable Pattern> INCLUDE_VARIABLES = new Setting<>(
+            "analysis.config_mismatches.include", REGEX, false, null,
+            "If specified, the configuration mismatch detectors only check variables, which names match this regular "
+            + "expression (e.g., DRIVERS_.*). Other variables are skipped and not reported.");
+
+    public static final @NonNull Setting<@Nullable Pattern> EXCLUDE_VARIABLES = new Setting<>(
+            "analysis.config_mismatches.exclude", REGEX, false, null,
+            "If specified, the configuration mismatch detectors skip variables, which names match this regular "
+            + "expression. Skipped variables are not reported.");
+
+    public static final @NonNull Setting<@Nullable List<String>> PRIORITY_VARIABLES = new Setting<>(
+            "analysis.config_mismatches.priority", STRING_LIST, false, null,
+            "A comma separated list of variables, which are checked (and reported) first, in the order of this list. "
+            + "If specified, the detectors wait until all feature effects are computed before checking the first "
+            + "variable.");
+
+    /**
+     * Don't allow any instances.
+     */
+    private MismatchSettings() {
+    }
+
+    /**
+     * Registers all settings of this plug-in in the given configuration.
+     *
+     * @param config The configuration to register the settings in.
+     *
+     * @throws SetUpException If registering or validating a setting fails.
+     */
+    static void registerAllSettings(@NonNull Configuration config) throws SetUpException {
+        config.registerSetting(SLOW_QUERY_LOG_FILE);
+        config.registerSetting(SLOW_QUERY_LOG_SIZE);
+        config.registerSetting(QUERY_DUMP_DIR);
+        config.registerSetting(USE_IMPLICATION_GRAPH);
+        config.registerSetting(USE_COMPILED_MODEL);
+        config.registerSetting(COMPILED_MODEL_MAX_NODES);
+        config.registerSetting(COMPILED_MODEL_CACHE_DIR);
+        config.registerSetting(COLLAPSE_EQUIVALENCES);
+        config.registerSetting(LEARNED_CLAUSES_DIR);
+        config.registerSetting(OFF_HEAP_CLAUSE_STORE);
+        config.registerSetting(USE_SELECTOR_ENCODING);
+        config.registerSetting(SELECTOR_CACHE_SIZE);
+        config.registerSetting(SEMANTIC_DEDUPLICATION);
+        config.registerSetting(SEMANTIC_DEDUPLICATION_WORDS);
+        config.registerSetting(CUBE_MIN_QUERY_CLAUSES);
+        config.registerSetting(CUBE_DEPTH);
+        config.registerSetting(CUBE_THREADS);
+        config.registerSetting(DETAILED_TWO_PHASE);
+        config.registerSetting(EXPLAIN_CONFLICTS);
+        config.registerSetting(EXPLANATION_BUDGET_MS);
+        config.registerSetting(MEMORY_CONTROL);
+        config.registerSetting(MEMORY_CONTROL_MAX_HEAP);
+        config.registerSetting(MEMORY_CONTROL_MAX_GC);
+        config.registerSetting(SHADOW_RATE);
+        config.registerSetting(SAMPLING_RATE);
+        config.registerSetting(SAMPLING_SIZE);
+        config.registerSetting(SAMPLE_POOL_SIZE);
+        config.registerSetting(SPILL_THRESHOLD);
+        config.registerSetting(SPILL_DIR);
+        config.registerSetting(FEATURE_EFFECT_FILE);
+        config.registerSetting(BINARY_OUTPUT_FILE);
+        config.registerSetting(DELTA_PREVIOUS_MODEL);
+        config.registerSetting(DELTA_PREVIOUS_RESULTS);
+        config.registerSetting(INCLUDE_VARIABLES);
+        config.registerSetting(EXCLUDE_VARIABLES);
+        config.registerSetting(PRIORITY_VARIABLES);
+    }
+
+}
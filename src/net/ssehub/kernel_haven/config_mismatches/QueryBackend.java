@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * One way of answering the queries of the {@link VarModelSolver} against its model. The solver asks its backends in
+ * a fixed order (cheapest first) and stops at the first one, which can decide the query.
+ *
+ * @author agent
+ */
+interface QueryBackend {
+
+    /**
+     * Checks if <code>model AND query</code> is satisfiable.
+     *
+     * @param query The query to check together with the model.
+     *
+     * @return The result, or <code>null</code> if this backend can't decide the query.
+     *
+     * @throws SolverException If a solver fails.
+     * @throws ConverterException If the query could not be converted into CNF.
+     */
+    public @Nullable Boolean check(@NonNull Formula query) throws SolverException, ConverterException;
+
+    /**
+     * Checks if <code>NOT(model) AND query</code> is satisfiable.
+     *
+     * @param query The query to check together with the negated model.
+     *
+     * @return The result, or <code>null</code> if this backend can't decide the query.
+     *
+     * @throws SolverException If a solver fails.
+     * @throws ConverterException If the query or the negated model could not be converted into CNF.
+     */
+    public @Nullable Boolean checkNegated(@NonNull Formula query) throws SolverException, ConverterException;
+
+}
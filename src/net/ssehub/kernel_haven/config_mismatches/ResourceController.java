@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Watches the heap occupancy and the time spent in garbage collection through the platform MXBeans and derives a
+ * scale factor for the concurrency and the in-memory caches of the {@link VarModelSolver}. Under high memory
+ * pressure, the scale is halved (down to {@link #MIN_SCALE}); when the pressure drops clearly below the limits, it
+ * is doubled again (up to 1).
+ * <p>
+ * The controller does not use a thread of its own; {@link #update()} is called once per checked variable and before
+ * each query, which is split into cubes, and only samples the MXBeans after {@link #SAMPLE_INTERVAL_MS} have passed.
+ * The heap occupancy is measured on the tenured pool only, as the young pools are full or empty depending on the
+ * last collection and say nothing about the live data.
+ * </p>
+ *
+ * @author agent
+ */
+class ResourceController {
+
+    static final double MIN_SCALE = 1.0 / 64;
+
+    static final long SAMPLE_INTERVAL_MS = 1000;
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    private final int maxHeapPercent;
+
+    private final int maxGcPercent;
+
+    private final @Nullable MemoryPoolMXBean tenuredPool;
+
+    private volatile double scale = 1;
+
+    private long lastSample;
+
+    private long lastGcTime;
+
+    /**
+     * Creates a resource controller.
+     *
+     * @param maxHeapPercent The heap occupancy after garbage collection (in percent of the maximum heap size), above
+     *      which the memory pressure is considered high.
+     * @param maxGcPercent The share of wall-clock time spent in garbage collection (in percent), above which the
+     *      memory pressure is considered high.
+     */
+    ResourceController(int maxHeapPercent, int maxGcPercent) {
+        this.maxHeapPercent = maxHeapPercent;
+        this.maxGcPercent = maxGcPercent;
+        this.lastSample = System.currentTimeMillis();
+        this.lastGcTime = getGcTime();
+        this.tenuredPool = findTenuredPool();
+    }
+
+    /**
+     * Creates a resource controller as configured in the {@link MismatchSettings}.
+     *
+     * @param config The configuration, {@link MismatchSettings} must already be registered.
+     *
+     * @return The controller or <code>null</code> if memory control is disabled.
+     */
+    static @Nullable ResourceController create(@NonNull Configuration config) {
+        ResourceController result = null;
+        if (config.getValue(MismatchSettings.MEMORY_CONTROL)) {
+            result = new ResourceController(config.getValue(MismatchSettings.MEMORY_CONTROL_MAX_HEAP),
+                    config.getValue(MismatchSettings.MEMORY_CONTROL_MAX_GC));
+        }
+        return result;
+    }
+
+    /**
+     * Samples the MXBeans, if the sample interval has passed, and adapts the scale.
+     *
+     * @return <code>true</code> if the scale has changed.
+     */
+    synchronized boolean update() {
+        long now = System.currentTimeMillis();
+        if (now - lastSample < SAMPLE_INTERVAL_MS) {
+            return false;
+        }
+        long gcTime = getGcTime();
+        int gcPercent = (int) (100 * (gcTime - lastGcTime) / (now - lastSample));
+        lastSample = now;
+        lastGcTime = gcTime;
+        return adapt(getHeapPercent(), gcPercent);
+    }
+
+    /**
+     * Adapts the scale to the given measurements. High pressure halves the scale; pressure below half of the GC limit
+     * and 15 points below the heap limit doubles it.
+     *
+     * @param heapPercent The heap occupancy in percent.
+     * @param gcPercent The share of time spent in garbage collection in percent.
+     *
+     * @return <code>true</code> if the scale has changed.
+     */
+    synchronized boolean adapt(int heapPercent, int gcPercent) {
+        double previous = scale;
+        if (heapPercent > maxHeapPercent || gcPercent > maxGcPercent) {
+            scale = Math.max(MIN_SCALE, scale / 2);
+        } else if (heapPercent < maxHeapPercent - 15 && gcPercent < maxGcPercent / 2) {
+            scale = Math.min(1, scale * 2);
+        }
+
+        boolean changed = scale != previous;
+        if (changed) {
+            LOGGER.logInfo("Memory pressure (heap " + heapPercent + "%, GC " + gcPercent + "%): scaling caches and "
+                    + "concurrency to " + scale);
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the current scale for caches and concurrency.
+     *
+     * @return The scale factor between {@link #MIN_SCALE} and 1.
+     */
+    double getScale() {
+        return scale;
+    }
+
+    /**
+     * Scales the given size by the current scale.
+     *
+     * @param size The size for no memory pressure.
+     *
+     * @return The scaled size, at least 1 (or 0, if the given size is 0).
+     */
+    int scale(int size) {
+        return size > 0 ? Math.max(1, (int) (size * scale)) : 0;
+    }
+
+    /**
+     * Finds the tenured (old generation) pool: the heap pool with the largest maximum size among the pools, which
+     * support collection usage thresholds (the survivor spaces of most collectors don't).
+     *
+     * @return The tenured pool or <code>null</code> if no heap pool qualifies.
+     */
+    private static @Nullable MemoryPoolMXBean findTenuredPool() {
+        MemoryPoolMXBean result = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+                    && (result == null || pool.getUsage().getMax() > result.getUsage().getMax())) {
+                result = pool;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the heap occupancy. Uses the usage of the tenured pool after its last collection, as the current usage
+     * also contains garbage; falls back to the current heap usage, if there is no tenured pool or it reports no
+     * collection usage.
+     *
+     * @return The heap occupancy in percent of the maximum heap size.
+     */
+    private int getHeapPercent() {
+        int result = -1;
+        MemoryPoolMXBean pool = this.tenuredPool;
+        MemoryUsage usage = pool != null ? pool.getCollectionUsage() : null;
+        if (usage != null && usage.getMax() > 0) {
+            result = (int) (100 * usage.getUsed() / usage.getMax());
+        }
+        if (result < 0) {
+            MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+            result = (int) (100 * heap.getUsed() / Math.max(1, max));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the accumulated time of all garbage collectors.
+     *
+     * @return The collection time in milliseconds.
+     */
+    private static long getGcTime() {
+        long result = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, collector.getCollectionTime());
+        }
+        return result;
+    }
+
+}
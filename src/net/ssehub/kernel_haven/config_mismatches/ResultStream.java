@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * An additional result table of a detector. The results are passed in by the detector. Running this component starts
+ * the detection of the detector (if this did not happen yet) and ends when the detection is done; the results of the
+ * detector itself stay in the detector until they are read.
+ *
+ * @param <T> The type of the result rows.
+ *
+ * @author agent
+ */
+class ResultStream<T> extends AnalysisComponent<T> {
+
+    private final @NonNull DetectionRun detection;
+
+    private final @NonNull String resultName;
+
+    /**
+     * Creates a result stream.
+     *
+     * @param config The global configuration.
+     * @param detection The detection of the detector, which publishes the results.
+     * @param resultName The name of the result table.
+     */
+    ResultStream(@NonNull Configuration config, @NonNull DetectionRun detection, @NonNull String resultName) {
+        super(config);
+        this.detection = detection;
+        this.resultName = resultName;
+    }
+
+    /**
+     * Adds a result, which was computed by the detector.
+     *
+     * @param result The result to add.
+     */
+    void publish(@NonNull T result) {
+        addResult(result);
+    }
+
+    @Override
+    protected void execute() {
+        // runs the detection in this thread, or waits until it is done in the thread of the detector
+        detection.run();
+    }
+
+    @Override
+    public @NonNull String getResultName() {
+        return resultName;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import net.ssehub.kernel_haven.util.io.TableElement;
+import net.ssehub.kernel_haven.util.io.TableRow;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * The estimated number of variables with a given result in the sampling mode (see {@link StratifiedSample}). This
+ * consist of:
+ * <ul>
+ *   <li>The result</li>
+ *   <li>The number of sampled variables with this result</li>
+ *   <li>The estimated number of all variables with this result and its 95% confidence interval</li>
+ * </ul>
+ * @author agent
+ *
+ */
+@TableRow
+public class SampleEstimate {
+
+    private @NonNull String result;
+    
+    private int sampled;
+    
+    private long estimate;
+    
+    private long lower;
+    
+    private long upper;
+    
+    /**
+     * Creates a new estimate.
+     * @param result The description of the result.
+     * @param sampled The number of sampled variables with this result.
+     * @param estimate The estimated number of all variables with this result.
+     * @param lower The lower bound of the confidence interval.
+     * @param upper The upper bound of the confidence interval.
+     */
+    public SampleEstimate(@NonNull String result, int sampled, long estimate, long lower, long upper) {
+        this.result = result;
+        this.sampled = sampled;
+        this.estimate = estimate;
+        this.lower = lower;
+        this.upper = upper;
+    }
+    
+    /**
+     * Returns the description of the result.
+     * 
+     * @return The estimated result.
+     */
+    @TableElement(name = "Resolution", index = 0)
+    public @NonNull String getResult() {
+        return result;
+    }
+    
+    /**
+     * Returns the number of sampled variables with this result.
+     * 
+     * @return The number of checked variables with this result.
+     */
+    @TableElement(name = "Sampled", index = 1)
+    public int getSampled() {
+        return sampled;
+    }
+    
+    /**
+     * Returns the estimated number of all variables with this result.
+     * 
+     * @return The estimated count.
+     */
+    @TableElement(name = "Estimate", index = 2)
+    public long getEstimate() {
+        return estimate;
+    }
+    
+    /**
+     * Returns the lower bound of the 95% confidence interval of the estimate.
+     * 
+     * @return The lower bound.
+     */
+    @TableElement(name = "Lower Bound", index = 3)
+    public long getLower() {
+        return lower;
+    }
+    
+    /**
+     * Returns the upper bound of the 95% confidence interval of the estimate.
+     * 
+     * @return The upper bound.
+     */
+    @TableElement(name = "Upper Bound", index = 4)
+    public long getUpper() {
+        return upper;
+    }
+    
+    @Override
+    public @NonNull String toString() {
+        return result + ": " + estimate + " [" + lower + ", " + upper + "] (" + sampled + " sampled)";
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Writes each SAT query of the mismatch detectors as DIMACS file into a directory, so that it can be re-run with the
+ * {@link SatQueryReplay} without the whole KernelHaven pipeline. The (negated) variability model is written only
+ * once, the query files reference it and contain the expected result.
+ *
+ * @author agent
+ */
+public class SatQueryDumper {
+
+    static final @NonNull String MODEL_FILE = "model.cnf";
+
+    static final @NonNull String NEGATED_MODEL_FILE = "model_negated.cnf";
+
+    static final @NonNull String QUERY_PREFIX = "query_";
+
+    static final @NonNull String PROPERTY_MODEL = "model";
+
+    static final @NonNull String PROPERTY_EXPECTED = "expected";
+
+    static final @NonNull String PROPERTY_VARIABLE = "variable";
+
+    static final @NonNull String SAT = "SAT";
+
+    static final @NonNull String UNSAT = "UNSAT";
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    private final @NonNull File directory;
+
+    private final @NonNull AtomicInteger nextQuery = new AtomicInteger();
+
+    private boolean negatedModelWritten;
+
+    private boolean failed;
+
+    private @Nullable String currentVariable;
+
+    /**
+     * Creates a {@link SatQueryDumper} and writes the variability model into the given directory.
+     *
+     * @param directory The directory to write the queries to, will be created if it does not exist.
+     * @param varModel The variability model, against which the queries are checked.
+     *
+     * @throws IOException If the directory could not be created or the variability model could not be written.
+     */
+    public SatQueryDumper(@NonNull File directory, @NonNull Cnf varModel) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create query dump directory " + directory.getAbsolutePath());
+        }
+        DimacsIO.write(varModel, Collections.emptyMap(), new File(directory, MODEL_FILE));
+    }
+
+    /**
+     * Writes the negated variability model, if this was not done before.
+     *
+     * @param varModelNegated The negated variability model.
+     */
+    synchronized void writeNegatedModel(@NonNull Cnf varModelNegated) {
+        if (!negatedModelWritten) {
+            negatedModelWritten = true;
+            try {
+                DimacsIO.write(varModelNegated, Collections.emptyMap(), new File(directory, NEGATED_MODEL_FILE));
+            } catch (IOException e) {
+                LOGGER.logException("Could not write negated variability model to query dump", e);
+            }
+        }
+    }
+
+    /**
+     * Sets the variable, which is currently checked. It is stored in the following query files to ease the mapping
+     * back to the analysis results.
+     *
+     * @param variable The currently checked variable, may be <code>null</code>.
+     */
+    public void setCurrentVariable(@Nullable String variable) {
+        this.currentVariable = variable;
+    }
+
+    /**
+     * Writes a single query together with its result.
+     *
+     * @param query The query, which was checked together with the (negated) variability model.
+     * @param negatedModel <code>true</code> if the query was checked against the negated variability model.
+     * @param result The result of the solver.
+     */
+    public void dump(@NonNull Cnf query, boolean negatedModel, boolean result) {
+        if (failed) {
+            return;
+        }
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put(PROPERTY_MODEL, negatedModel ? NEGATED_MODEL_FILE : MODEL_FILE);
+        properties.put(PROPERTY_EXPECTED, result ? SAT : UNSAT);
+        String variable = currentVariable;
+        if (variable != null) {
+            properties.put(PROPERTY_VARIABLE, variable);
+        }
+
+        File file = new File(directory, String.format("%s%07d.cnf", QUERY_PREFIX, nextQuery.getAndIncrement()));
+        try {
+            DimacsIO.write(query, properties, file);
+        } catch (IOException e) {
+            // don't flood the log, if the disk is full
+            failed = true;
+            LOGGER.logException("Could not write query dump, stop dumping further queries", e);
+        }
+    }
+
+}
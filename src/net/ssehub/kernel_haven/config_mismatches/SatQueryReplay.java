@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.ISatSolver;
+import net.ssehub.kernel_haven.cnf.SatSolverFactory;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.config_mismatches.DimacsIO.DimacsFile;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Standalone driver, which re-runs the queries written by the {@link SatQueryDumper} and reports the throughput of
+ * the chosen solver configuration. Usage:
+ * <pre>
+ * java -cp ... net.ssehub.kernel_haven.config_mismatches.SatQueryReplay &lt;dump directory&gt; [--cache] [--repeat N]
+ * </pre>
+ * <ul>
+ *     <li><code>--cache</code>: Use the caching solver of the {@link SatSolverFactory}.</li>
+ *     <li><code>--repeat N</code>: Replays the whole corpus N times (e.g., to warm up the JVM).</li>
+ * </ul>
+ *
+ * @author agent
+ */
+public class SatQueryReplay {
+
+    /**
+     * The result of a replay run.
+     */
+    public static class ReplayResult {
+
+        private int queries;
+
+        private int wrongResults;
+
+        private long nanos;
+
+        /**
+         * Returns the number of replayed queries.
+         *
+         * @return The number of queries.
+         */
+        public int getQueries() {
+            return queries;
+        }
+
+        /**
+         * Returns the number of queries, for which the solver returned another result than in the dump.
+         *
+         * @return The number of deviating results.
+         */
+        public int getWrongResults() {
+            return wrongResults;
+        }
+
+        /**
+         * Returns the time spent for solving the queries (without reading the files).
+         *
+         * @return The solving time in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Returns the throughput of the solver.
+         *
+         * @return The number of solved queries per second.
+         */
+        public double getQueriesPerSecond() {
+            return nanos > 0 ? queries / (nanos / 1e9) : 0.0;
+        }
+
+    }
+
+    private final @NonNull File directory;
+
+    private final boolean useCache;
+
+    private final @NonNull Map<String, ISatSolver> solvers = new HashMap<>();
+
+    /**
+     * Creates a new replay driver for the given dump directory.
+     *
+     * @param directory The directory written by the {@link SatQueryDumper}.
+     * @param useCache Whether the caching solver of the {@link SatSolverFactory} should be used.
+     */
+    public SatQueryReplay(@NonNull File directory, boolean useCache) {
+        this.directory = directory;
+        this.useCache = useCache;
+    }
+
+    /**
+     * Returns the solver for the given model file, creates it on the first call.
+     *
+     * @param modelFile The name of the model file inside the dump directory.
+     *
+     * @return The solver for the model.
+     *
+     * @throws IOException If reading the model fails.
+     * @throws FormatException If the model file is malformed.
+     */
+    private @NonNull ISatSolver getSolver(@NonNull String modelFile) throws IOException, FormatException {
+        ISatSolver solver = solvers.get(modelFile);
+        if (solver == null) {
+            Cnf model = DimacsIO.read(new File(directory, modelFile)).getCnf();
+            solver = SatSolverFactory.createSolver(model, useCache);
+            solvers.put(modelFile, solver);
+        }
+        return solver;
+    }
+
+    /**
+     * Replays all queries of the dump directory once.
+     *
+     * @param out The stream to report deviating results to.
+     *
+     * @return The result of the replay.
+     *
+     * @throws IOException If reading the dump fails.
+     * @throws FormatException If a dumped file is malformed.
+     * @throws SolverException If the solver fails.
+     */
+    public @NonNull ReplayResult replay(@NonNull PrintStream out)
+            throws IOException, FormatException, SolverException {
+
+        File[] queryFiles = directory.listFiles((dir, name) -> name.startsWith(SatQueryDumper.QUERY_PREFIX));
+        if (queryFiles == null) {
+            throw new IOException("Could not list query files in " + directory.getAbsolutePath());
+        }
+        Arrays.sort(queryFiles);
+
+        ReplayResult result = new ReplayResult();
+        for (File queryFile : queryFiles) {
+            DimacsFile query = DimacsIO.read(queryFile);
+            String modelFile = query.getProperty(SatQueryDumper.PROPERTY_MODEL);
+            ISatSolver solver = getSolver(modelFile != null ? modelFile : SatQueryDumper.MODEL_FILE);
+
+            long start = System.nanoTime();
+            boolean sat = solver.isSatisfiable(query.getCnf());
+            result.nanos += System.nanoTime() - start;
+            result.queries++;
+
+            String expected = query.getProperty(SatQueryDumper.PROPERTY_EXPECTED);
+            if (expected != null && expected.equals(SatQueryDumper.SAT) != sat) {
+                result.wrongResults++;
+                out.println("Deviating result for " + queryFile.getName() + ": expected " + expected);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Main method for running the replay driver from the command line.
+     *
+     * @param args The command line arguments, see class comment.
+     *
+     * @throws Exception If replaying the queries fails.
+     */
+    public static void main(String[] args) throws Exception {
+        File directory = null;
+        boolean useCache = false;
+        int repeat = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--cache")) {
+                useCache = true;
+            } else if (args[i].equals("--repeat") && i + 1 < args.length) {
+                repeat = Integer.parseInt(args[++i]);
+            } else {
+                directory = new File(args[i]);
+            }
+        }
+        if (directory == null || !directory.isDirectory()) {
+            System.err.println("Usage: " + SatQueryReplay.class.getName()
+                    + " <dump directory> [--cache] [--repeat N]");
+            System.exit(1);
+            return;
+        }
+
+        for (int i = 1; i <= repeat; i++) {
+            ReplayResult result = new SatQueryReplay(directory, useCache).replay(System.out);
+            printResult(i, result, System.out);
+        }
+    }
+
+    /**
+     * Prints the result of one replay round.
+     *
+     * @param round The number of the round.
+     * @param result The result to print.
+     * @param out The stream to print to.
+     */
+    private static void printResult(int round, @NonNull ReplayResult result, @NonNull PrintStream out) {
+        out.printf("Round %d: %d queries in %.1f ms (%.1f queries/s), %d deviating results%n", round,
+                result.getQueries(), result.getNanos() / 1e6, result.getQueriesPerSecond(), result.getWrongResults());
+    }
+
+}
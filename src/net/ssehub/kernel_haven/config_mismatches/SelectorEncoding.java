@@ -0,0 +1,371 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Converts queries into CNF by defining a selector literal for every sub-formula, which is equivalent to the
+ * sub-formula (Tseitin encoding). The definitions are remembered by the identity of the sub-formula, so queries,
+ * which share a sub-formula (like the feature effect in all queries of
+ * {@link DetailedConfigMismatchDetector#checkWithSat(VarModelSolver, String, Formula)}), convert it only once; each
+ * further query only adds the clauses for its own operators on top of the shared selector literal.
+ * <p>
+ * The selectors are fresh variables, which are functionally determined by the variables of the sub-formula, so
+ * the encoded query is satisfiable together with the model (or its negation) iff the original query is.
+ * </p>
+ * <p>
+ * Additionally, definitions are kept in a bounded cache keyed by their structure (operator and operand literals),
+ * which survives {@link #clear()}. Structurally equal sub-formulas of different feature effects (e.g., the same
+ * <tt>depends on</tt> chain) thus get the same selector and are only defined once per run. Evicted definitions are
+ * simply defined again with a new selector, which does not change the satisfiability of any query.
+ * </p>
+ *
+ * @author agent
+ */
+class SelectorEncoding {
+
+    static final @NonNull String SELECTOR_PREFIX = "__selector_";
+
+    /**
+     * The defining literal of a sub-formula together with the clauses, which define it.
+     */
+    private static final class Definition {
+
+        private final @NonNull CnfVariable literal;
+
+        private final @NonNull CnfVariable @NonNull [] @NonNull [] clauses;
+
+        private final @NonNull Definition @NonNull [] operands;
+
+        /**
+         * Creates a definition.
+         *
+         * @param literal The literal, which is equivalent to the sub-formula.
+         * @param clauses The clauses defining the literal in terms of the operand literals.
+         * @param operands The definitions of the operands.
+         */
+        private Definition(@NonNull CnfVariable literal, @NonNull CnfVariable @NonNull [] @NonNull [] clauses,
+                @NonNull Definition @NonNull ... operands) {
+            this.literal = literal;
+            this.clauses = clauses;
+            this.operands = operands;
+        }
+
+    }
+
+    private final @NonNull Map<Formula, Definition> definitions = new IdentityHashMap<>();
+
+    /**
+     * Structure of a definition -&gt; definition; <code>null</code> if definitions are not shared by structure.
+     */
+    private final @Nullable Map<String, Definition> structuralCache;
+
+    private final int cacheSize;
+
+    private int cacheLimit;
+
+    private long nextSelector;
+
+    /**
+     * Creates an encoding, which only shares definitions of identical formula instances.
+     */
+    SelectorEncoding() {
+        this(0);
+    }
+
+    /**
+     * Creates an encoding.
+     *
+     * @param cacheSize The maximum number of definitions, which are shared by their structure across
+     *      {@link #clear()}; 0 to only share definitions of identical formula instances.
+     */
+    SelectorEncoding(int cacheSize) {
+        this.cacheSize = cacheSize;
+        this.cacheLimit = cacheSize;
+        if (cacheSize > 0) {
+            structuralCache = new LinkedHashMap<String, Definition>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Definition> eldest) {
+                    return size() > cacheLimit;
+                }
+
+            };
+        } else {
+            structuralCache = null;
+        }
+    }
+
+    /**
+     * Converts the given query into CNF, reusing the definitions of previously converted sub-formulas.
+     *
+     * @param query The query to convert.
+     *
+     * @return The definitions of all sub-formulas of the query and a unit clause for the query's literal.
+     *
+     * @throws ConverterException If the query contains an unsupported formula type.
+     */
+    @NonNull Cnf encode(@NonNull Formula query) throws ConverterException {
+        Definition definition = define(query);
+        Cnf result = new Cnf();
+        Set<Definition> added = Collections.newSetFromMap(new IdentityHashMap<>());
+        addClauses(definition, result, added);
+        result.addRow(definition.literal);
+        return result;
+    }
+
+    /**
+     * Forgets the definitions of formula instances. Should be called, if the following queries don't share
+     * sub-formula instances with the previous ones anymore. Definitions in the structural cache are kept.
+     */
+    void clear() {
+        definitions.clear();
+    }
+
+    /**
+     * Scales the maximum size of the structural cache relative to the configured size. Shrinking the cache evicts
+     * the least recently used definitions immediately.
+     *
+     * @param scale The scale factor between 0 (exclusive) and 1.
+     */
+    void scaleCache(double scale) {
+        Map<String, Definition> cache = this.structuralCache;
+        if (cache != null) {
+            cacheLimit = Math.max(1, (int) (cacheSize * scale));
+            Iterator<String> it = cache.keySet().iterator();
+            while (cache.size() > cacheLimit && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of remembered definitions of formula instances (including variables and negations).
+     *
+     * @return The number of defined sub-formula instances.
+     */
+    int getDefinitionCount() {
+        return definitions.size();
+    }
+
+    /**
+     * Returns the number of definitions in the structural cache.
+     *
+     * @return The number of cached definitions.
+     */
+    int getCachedCount() {
+        Map<String, Definition> cache = this.structuralCache;
+        return cache != null ? cache.size() : 0;
+    }
+
+    /**
+     * Returns the number of selector variables created so far.
+     *
+     * @return The number of selectors.
+     */
+    long getSelectorCount() {
+        return nextSelector;
+    }
+
+    /**
+     * Adds the clauses of a definition and all its operands to the given CNF, each definition only once.
+     *
+     * @param definition The definition to add.
+     * @param cnf The CNF to add the clauses to.
+     * @param added The definitions, which are already part of the CNF.
+     */
+    private static void addClauses(@NonNull Definition definition, @NonNull Cnf cnf, @NonNull Set<Definition> added) {
+        if (added.add(definition)) {
+            for (CnfVariable[] clause : definition.clauses) {
+                cnf.addRow(clause);
+            }
+            for (Definition operand : definition.operands) {
+                addClauses(operand, cnf, added);
+            }
+        }
+    }
+
+    /**
+     * Returns the definition of a sub-formula, creating it (and the definitions of its operands) if needed.
+     *
+     * @param formula The sub-formula.
+     *
+     * @return The definition of the sub-formula.
+     *
+     * @throws ConverterException If the formula contains an unsupported formula type.
+     */
+    private @NonNull Definition define(@NonNull Formula formula) throws ConverterException {
+        Definition result = definitions.get(formula);
+        if (result != null) {
+            return result;
+        }
+
+        if (formula instanceof Variable) {
+            result = new Definition(new CnfVariable(((Variable) formula).getName()), new CnfVariable[0][]);
+
+        } else if (formula instanceof Negation) {
+            Definition operand = define(((Negation) formula).getFormula());
+            result = new Definition(negate(operand.literal), new CnfVariable[0][], operand);
+
+        } else if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction) formula;
+            Definition left = define(conjunction.getLeft());
+            Definition right = define(conjunction.getRight());
+            String key = structureKey('&', left, right);
+            result = getCached(key);
+            if (result == null) {
+                CnfVariable selector = newSelector();
+                // s <-> (a AND b)
+                result = new Definition(selector, new CnfVariable[][] {
+                    {negate(selector), left.literal},
+                    {negate(selector), right.literal},
+                    {selector, negate(left.literal), negate(right.literal)},
+                }, left, right);
+                putCached(key, result);
+            }
+
+        } else if (formula instanceof Disjunction) {
+            Disjunction disjunction = (Disjunction) formula;
+            Definition left = define(disjunction.getLeft());
+            Definition right = define(disjunction.getRight());
+            String key = structureKey('|', left, right);
+            result = getCached(key);
+            if (result == null) {
+                CnfVariable selector = newSelector();
+                // s <-> (a OR b)
+                result = new Definition(selector, new CnfVariable[][] {
+                    {negate(selector), left.literal, right.literal},
+                    {selector, negate(left.literal)},
+                    {selector, negate(right.literal)},
+                }, left, right);
+                putCached(key, result);
+            }
+
+        } else if (formula instanceof True || formula instanceof False) {
+            String key = formula instanceof True ? "1" : "0";
+            result = getCached(key);
+            if (result == null) {
+                CnfVariable selector = newSelector();
+                result = new Definition(selector, new CnfVariable[][] {
+                    {formula instanceof True ? selector : negate(selector)},
+                });
+                putCached(key, result);
+            }
+
+        } else {
+            throw new ConverterException("Unsupported formula type: " + formula.getClass().getName());
+        }
+
+        definitions.put(formula, result);
+        return result;
+    }
+
+    /**
+     * Builds the structural key of a binary operator. The operands are ordered, so that commuted operands get the
+     * same key.
+     *
+     * @param operator The operator character.
+     * @param left The definition of the left operand.
+     * @param right The definition of the right operand.
+     *
+     * @return The key for the structural cache.
+     */
+    private static @NonNull String structureKey(char operator, @NonNull Definition left, @NonNull Definition right) {
+        String leftKey = literalKey(left.literal);
+        String rightKey = literalKey(right.literal);
+        return leftKey.compareTo(rightKey) <= 0 ? operator + leftKey + " " + rightKey
+                : operator + rightKey + " " + leftKey;
+    }
+
+    /**
+     * Returns a unique string for a literal.
+     *
+     * @param literal The literal.
+     *
+     * @return The name of the literal's variable, prefixed with <tt>-</tt> if it is negated.
+     */
+    private static @NonNull String literalKey(@NonNull CnfVariable literal) {
+        return literal.isNegation() ? "-" + literal.getName() : literal.getName();
+    }
+
+    /**
+     * Looks up a definition in the structural cache.
+     *
+     * @param key The structural key.
+     *
+     * @return The cached definition or <code>null</code> if it is not cached (or no cache is used).
+     */
+    private @Nullable Definition getCached(@NonNull String key) {
+        Map<String, Definition> cache = this.structuralCache;
+        return cache != null ? cache.get(key) : null;
+    }
+
+    /**
+     * Adds a definition to the structural cache, if a cache is used.
+     *
+     * @param key The structural key.
+     * @param definition The definition.
+     */
+    private void putCached(@NonNull String key, @NonNull Definition definition) {
+        Map<String, Definition> cache = this.structuralCache;
+        if (cache != null) {
+            cache.put(key, definition);
+        }
+    }
+
+    /**
+     * Creates a fresh selector variable.
+     *
+     * @return The positive literal of the new selector.
+     */
+    private @NonNull CnfVariable newSelector() {
+        return new CnfVariable(SELECTOR_PREFIX + nextSelector++);
+    }
+
+    /**
+     * Negates a literal.
+     *
+     * @param literal The literal to negate.
+     *
+     * @return The complementary literal.
+     */
+    private static @NonNull CnfVariable negate(@NonNull CnfVariable literal) {
+        return new CnfVariable(!literal.isNegation(), literal.getName());
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Re-checks a random sample of the results of a detector with the reference algorithm on a plain
+ * {@link VarModelSolver} (no acceleration structures, no reduction, no reuse of previous results) on a background
+ * thread. Disagreements are counted and logged together with the offending variable and feature effect, so that
+ * optimized checking paths can be verified in production runs. At most {@link #QUEUE_CAPACITY} sampled results wait
+ * for the reference algorithm; if it falls further behind, further samples are dropped and counted, so that neither
+ * the memory nor the time needed for {@link #close()} grows with the run.
+ *
+ * @param <T> The type of the results.
+ *
+ * @author agent
+ */
+class ShadowVerifier<T> {
+
+    /**
+     * The reference algorithm of a detector.
+     *
+     * @param <T> The type of the results.
+     */
+    interface ReferenceCheck<T> {
+
+        /**
+         * Checks a single feature effect.
+         *
+         * @param solver The solver for the variability model.
+         * @param varName The name of the variable.
+         * @param featureEffect The feature effect of the variable.
+         *
+         * @return The result of the check.
+         */
+        @NonNull T check(@NonNull VarModelSolver solver, @NonNull String varName, @NonNull Formula featureEffect);
+
+    }
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * The maximum number of sampled results waiting for the reference algorithm.
+     */
+    static final int QUEUE_CAPACITY = 1024;
+
+    private static final long SAMPLE_SEED = 0x4B48L;
+
+    private final @NonNull VarModelSolver referenceSolver;
+
+    private final @NonNull ReferenceCheck<T> reference;
+
+    private final int percent;
+
+    private final @NonNull Random random = new Random(SAMPLE_SEED);
+
+    private final @NonNull ExecutorService executor;
+
+    private final @NonNull AtomicLong checked = new AtomicLong();
+
+    private final @NonNull AtomicLong disagreements = new AtomicLong();
+
+    private final @NonNull AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates a shadow verifier.
+     *
+     * @param varModel The variability model.
+     * @param reference The reference algorithm.
+     * @param percent The percentage (0 - 100) of submitted results, which are re-checked.
+     */
+    ShadowVerifier(@NonNull Cnf varModel, @NonNull ReferenceCheck<T> reference, int percent) {
+        this(varModel, reference, percent, QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a shadow verifier.
+     *
+     * @param varModel The variability model.
+     * @param reference The reference algorithm.
+     * @param percent The percentage (0 - 100) of submitted results, which are re-checked.
+     * @param capacity The maximum number of sampled results waiting for the reference algorithm.
+     */
+    ShadowVerifier(@NonNull Cnf varModel, @NonNull ReferenceCheck<T> reference, int percent, int capacity) {
+        // own converter, as the background thread must not share state with the detector
+        this.referenceSolver = new VarModelSolver(varModel,
+                FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING));
+        this.reference = reference;
+        this.percent = percent;
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, capacity)), (runnable) -> {
+                    Thread thread = new Thread(runnable, "ShadowVerifier");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, pool) -> dropped.incrementAndGet());
+    }
+
+    /**
+     * Creates a shadow verifier as configured in the {@link MismatchSettings}.
+     *
+     * @param config The configuration, {@link MismatchSettings} must already be registered.
+     * @param varModel The variability model.
+     * @param reference The reference algorithm.
+     *
+     * @param <T> The type of the results.
+     *
+     * @return The shadow verifier or <code>null</code> if shadow verification is disabled.
+     */
+    static <T> @Nullable ShadowVerifier<T> create(@NonNull Configuration config, @NonNull Cnf varModel,
+            @NonNull ReferenceCheck<T> reference) {
+
+        int percent = config.getValue(MismatchSettings.SHADOW_RATE);
+        ShadowVerifier<T> result = null;
+        if (percent > 0) {
+            result = new ShadowVerifier<>(varModel, reference, Math.min(percent, 100));
+            LOGGER.logInfo("Shadow verification re-checks " + result.percent + "% of the results");
+        }
+        return result;
+    }
+
+    /**
+     * Submits a result of the optimized detector. With the configured probability, it is re-checked in the
+     * background. The sample is dropped, if {@link #QUEUE_CAPACITY} samples are already waiting.
+     *
+     * @param varName The name of the variable.
+     * @param featureEffect The feature effect of the variable.
+     * @param result The result computed by the optimized detector.
+     */
+    void submit(@NonNull String varName, @NonNull Formula featureEffect, @NonNull T result) {
+        if (random.nextInt(100) < percent) {
+            executor.execute(() -> verify(varName, featureEffect, result));
+        }
+    }
+
+    /**
+     * Re-checks a single result with the reference algorithm. Runs on the background thread.
+     *
+     * @param varName The name of the variable.
+     * @param featureEffect The feature effect of the variable.
+     * @param result The result computed by the optimized detector.
+     */
+    private void verify(@NonNull String varName, @NonNull Formula featureEffect, @NonNull T result) {
+        referenceSolver.startVariable(varName);
+        T expected = reference.check(referenceSolver, varName, featureEffect);
+        checked.incrementAndGet();
+        if (!expected.equals(result)) {
+            disagreements.incrementAndGet();
+            LOGGER.logError("Shadow verification failed for variable " + varName + ": optimized result " + result
+                    + ", reference result " + expected + ", feature effect " + featureEffect);
+        }
+    }
+
+    /**
+     * Waits until all submitted results are re-checked, stops the background thread and logs the summary.
+     */
+    void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.logInfo("Waiting for shadow verification to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.logInfo("Shadow verification re-checked " + checked.get() + " results, " + disagreements.get()
+                + " disagreements, " + dropped.get() + " samples dropped because the re-check fell behind");
+    }
+
+    /**
+     * Returns the number of re-checked results.
+     *
+     * @return The number of results checked with the reference algorithm.
+     */
+    long getCheckedCount() {
+        return checked.get();
+    }
+
+    /**
+     * Returns the number of results, for which the reference algorithm computed a different result.
+     *
+     * @return The number of disagreements.
+     */
+    long getDisagreementCount() {
+        return disagreements.get();
+    }
+
+    /**
+     * Returns the number of sampled results, which were not re-checked because too many samples were waiting.
+     *
+     * @return The number of dropped samples.
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import net.ssehub.kernel_haven.util.io.csv.CsvWriter;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Records the N slowest checked variables of a mismatch analysis, together with statistics about their feature
+ * effects. Only variables, which are slower than the currently recorded ones, are analyzed in detail.
+ *
+ * @author agent
+ */
+public class SlowQueryLog {
+
+    /**
+     * A single entry of the {@link SlowQueryLog}.
+     */
+    public static class SlowQuery {
+
+        private @NonNull String variable;
+
+        private long nanos;
+
+        private int satCalls;
+
+        private int featureEffectNodes;
+
+        private int cnfClauses;
+
+        private int cnfVariables;
+
+        private @NonNull String result;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param variable The name of the checked variable.
+         * @param nanos The total time spent for checking the variable in nanoseconds.
+         * @param satCalls The number of SAT calls needed to check the variable.
+         * @param featureEffectNodes The number of nodes of the feature effect formula.
+         * @param cnfClauses The number of clauses of the largest query passed to the solver.
+         * @param cnfVariables The number of variables of the largest query passed to the solver.
+         * @param result The description of the final result type.
+         */
+        public SlowQuery(@NonNull String variable, long nanos, int satCalls, int featureEffectNodes, int cnfClauses,
+                int cnfVariables, @NonNull String result) {
+
+            this.variable = variable;
+            this.nanos = nanos;
+            this.satCalls = satCalls;
+            this.featureEffectNodes = featureEffectNodes;
+            this.cnfClauses = cnfClauses;
+            this.cnfVariables = cnfVariables;
+            this.result = result;
+        }
+
+        /**
+         * Returns the name of the checked variable.
+         *
+         * @return The variable name.
+         */
+        public @NonNull String getVariable() {
+            return variable;
+        }
+
+        /**
+         * Returns the total time spent for checking the variable.
+         *
+         * @return The time in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Returns the number of SAT calls needed to check the variable.
+         *
+         * @return The number of SAT calls.
+         */
+        public int getSatCalls() {
+            return satCalls;
+        }
+
+        /**
+         * Returns the average time per SAT call.
+         *
+         * @return The time per SAT call in nanoseconds, or the total time if no SAT call was made.
+         */
+        public long getNanosPerSatCall() {
+            return satCalls > 0 ? nanos / satCalls : nanos;
+        }
+
+        /**
+         * Returns the description of the final result type.
+         *
+         * @return The result of the mismatch analysis.
+         */
+        public @NonNull String getResult() {
+            return result;
+        }
+
+    }
+
+    private final int capacity;
+
+    private final @NonNull PriorityQueue<SlowQuery> fastestFirst;
+
+    /**
+     * Creates an empty {@link SlowQueryLog}.
+     *
+     * @param capacity The number of slowest variables to keep (N).
+     */
+    public SlowQueryLog(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.fastestFirst = new PriorityQueue<>(this.capacity, Comparator.comparingLong(SlowQuery::getNanos));
+    }
+
+    /**
+     * Checks whether a variable that needed the given time would be recorded. Can be used to avoid computing
+     * statistics for variables, which are not among the slowest ones.
+     *
+     * @param nanos The time needed for checking a variable in nanoseconds.
+     *
+     * @return <code>true</code> if {@link #record(SlowQuery)} would keep an entry with the given time.
+     */
+    public synchronized boolean isCandidate(long nanos) {
+        SlowQuery fastest = fastestFirst.peek();
+        return fastestFirst.size() < capacity || (fastest != null && fastest.getNanos() < nanos);
+    }
+
+    /**
+     * Records the given entry, if it is among the N slowest ones.
+     *
+     * @param query The entry to record.
+     */
+    public synchronized void record(@NonNull SlowQuery query) {
+        if (fastestFirst.size() < capacity) {
+            fastestFirst.add(query);
+        } else if (isCandidate(query.getNanos())) {
+            fastestFirst.poll();
+            fastestFirst.add(query);
+        }
+    }
+
+    /**
+     * Convenience method to record a checked variable, if it is among the N slowest ones.
+     *
+     * @param variable The name of the checked variable.
+     * @param featureEffect The feature effect of the checked variable.
+     * @param nanos The total time spent for checking the variable in nanoseconds.
+     * @param solver The solver used for checking, its statistics must belong to the checked variable.
+     * @param result The description of the final result type.
+     */
+    public void record(@NonNull String variable, @NonNull Formula featureEffect, long nanos,
+            @NonNull VarModelSolver solver, @NonNull String result) {
+
+        if (isCandidate(nanos)) {
+            record(new SlowQuery(variable, nanos, solver.getSatCalls(), FormulaUtils.countNodes(featureEffect),
+                    solver.getMaxQueryClauses(), solver.getMaxQueryVariables(), result));
+        }
+    }
+
+    /**
+     * Returns the recorded entries, the slowest first.
+     *
+     * @return The slowest checked variables.
+     */
+    public synchronized @NonNull List<@NonNull SlowQuery> getSlowestQueries() {
+        List<@NonNull SlowQuery> result = new ArrayList<>(fastestFirst);
+        Collections.sort(result, Comparator.comparingLong(SlowQuery::getNanos).reversed());
+        return result;
+    }
+
+    /**
+     * Writes the recorded entries as CSV into the given file, the slowest first.
+     *
+     * @param file The file to write to.
+     *
+     * @throws IOException If writing the file fails.
+     */
+    public void write(@NonNull File file) throws IOException {
+        try (CsvWriter out = new CsvWriter(new FileOutputStream(file))) {
+            out.writeHeader("Variable", "Total Time (ms)", "SAT Calls", "Time per SAT Call (ms)",
+                    "Feature Effect Nodes", "CNF Clauses", "CNF Variables", "Resolution");
+            for (SlowQuery query : getSlowestQueries()) {
+                out.writeRow(query.variable, query.nanos / 1000000.0, query.satCalls,
+                        query.getNanosPerSatCall() / 1000000.0, query.featureEffectNodes, query.cnfClauses,
+                        query.cnfVariables, query.result);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A pool of valid configurations (satisfying assignments) of a variability model, sampled once per model with
+ * WalkSAT from random starting points. The configurations are stored column-wise as bit sets: for each variable, bit
+ * <tt>i</tt> holds its value in configuration <tt>i</tt>. This way, a query is evaluated against 64 configurations
+ * per machine word.
+ * <p>
+ * If a sampled configuration satisfies a query, <tt>model AND query</tt> is satisfiable. If none does, nothing is
+ * known and the query has to be passed to a SAT solver.
+ * </p>
+ *
+ * @author agent
+ */
+class SolutionPool implements QueryBackend {
+
+    private static final double NOISE = 0.5;
+
+    /**
+     * Value pattern of variables, which do not occur in the model; they are unconstrained, so any pattern is valid.
+     */
+    private static final long FREE_PATTERN = 0x5555555555555555L;
+
+    private final @NonNull Map<String, long[]> values;
+
+    private final long @NonNull [] validMask;
+
+    private final int size;
+
+    /**
+     * Creates a pool.
+     *
+     * @param values Variable -&gt; bit set of its values in the configurations.
+     * @param size The number of configurations.
+     */
+    private SolutionPool(@NonNull Map<String, long[]> values, int size) {
+        this.values = values;
+        this.size = size;
+        validMask = new long[Math.max(1, (size + 63) / 64)];
+        for (int i = 0; i < size; i++) {
+            validMask[i / 64] |= 1L << (i % 64);
+        }
+    }
+
+    /**
+     * Samples configurations of the given model. Samples, for which WalkSAT does not find a solution within the flip
+     * limit, are dropped, so the pool may be smaller than requested (or empty, e.g., for unsatisfiable models).
+     *
+     * @param varModel The variability model.
+     * @param samples The number of configurations to sample.
+     * @param maxFlips The maximum number of flips per sample.
+     * @param seed The seed for the random decisions, so that pools are reproducible.
+     *
+     * @return The sampled pool.
+     */
+    static @NonNull SolutionPool sample(@NonNull Cnf varModel, int samples, long maxFlips, long seed) {
+        return sample(ClauseStore.of(varModel, false), samples, maxFlips, seed);
+    }
+
+    /**
+     * Samples configurations of the given model. Samples, for which WalkSAT does not find a solution within the flip
+     * limit, are dropped, so the pool may be smaller than requested (or empty, e.g., for unsatisfiable models).
+     *
+     * @param varModel The variability model as clause store.
+     * @param samples The number of configurations to sample.
+     * @param maxFlips The maximum number of flips per sample.
+     * @param seed The seed for the random decisions, so that pools are reproducible.
+     *
+     * @return The sampled pool.
+     */
+    static @NonNull SolutionPool sample(@NonNull ClauseStore varModel, int samples, long maxFlips, long seed) {
+        int[][] clauses = new int[varModel.getClauseCount()][];
+        for (int i = 0; i < clauses.length; i++) {
+            clauses[i] = varModel.getClause(i);
+        }
+
+        WalkSat walkSat = new WalkSat(clauses, varModel.getVariableCount(), new Random(seed));
+        int words = Math.max(1, (samples + 63) / 64);
+        long[][] columns = new long[varModel.getVariableCount()][words];
+        int found = 0;
+        for (int s = 0; s < samples; s++) {
+            boolean[] solution = walkSat.solve(maxFlips);
+            if (solution != null) {
+                for (int v = 0; v < solution.length; v++) {
+                    if (solution[v]) {
+                        columns[v][found / 64] |= 1L << (found % 64);
+                    }
+                }
+                found++;
+            }
+        }
+
+        Map<String, long[]> values = new HashMap<>();
+        for (int v = 0; v < columns.length; v++) {
+            values.put(varModel.getName(v), columns[v]);
+        }
+        return new SolutionPool(values, found);
+    }
+
+    /**
+     * Returns the number of configurations in this pool.
+     *
+     * @return The number of sampled configurations.
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Checks whether at least one configuration of the pool satisfies the given formula.
+     *
+     * @param query The formula to evaluate.
+     *
+     * @return <code>true</code> if a configuration satisfies the query, i.e., <tt>model AND query</tt> is
+     *      satisfiable; <code>false</code> if this is unknown.
+     */
+    boolean hasWitness(@NonNull Formula query) {
+        boolean result = false;
+        if (size > 0) {
+            long[] evaluated = evaluate(query);
+            for (int i = 0; evaluated != null && i < evaluated.length && !result; i++) {
+                result = (evaluated[i] & validMask[i]) != 0;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Answers the query, if a configuration of the pool satisfies it.
+     *
+     * @param query The query to check together with the model.
+     *
+     * @return {@link Boolean#TRUE} if {@link #hasWitness(Formula)}, <code>null</code> otherwise.
+     */
+    @Override
+    public @Nullable Boolean check(@NonNull Formula query) {
+        return hasWitness(query) ? Boolean.TRUE : null;
+    }
+
+    /**
+     * Never answers queries against the negated model, as the pool only holds configurations of the model itself.
+     *
+     * @param query The query to check together with the negated model.
+     *
+     * @return Always <code>null</code>.
+     */
+    @Override
+    public @Nullable Boolean checkNegated(@NonNull Formula query) {
+        return null;
+    }
+
+    /**
+     * Evaluates the formula against all configurations.
+     *
+     * @param formula The formula to evaluate.
+     *
+     * @return The bit set of configurations satisfying the formula; must not be modified if it is the bit set of a
+     *      variable. <code>null</code> if the formula contains an unsupported formula type.
+     */
+    private long @Nullable [] evaluate(@NonNull Formula formula) {
+        long[] result;
+        if (formula instanceof Variable) {
+            result = values.get(((Variable) formula).getName());
+            if (result == null) {
+                result = filled(FREE_PATTERN);
+            }
+        } else if (formula instanceof True) {
+            result = filled(-1L);
+        } else if (formula instanceof False) {
+            result = filled(0L);
+        } else if (formula instanceof Negation) {
+            long[] nested = evaluate(((Negation) formula).getFormula());
+            result = null;
+            if (nested != null) {
+                result = new long[validMask.length];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = ~nested[i];
+                }
+            }
+        } else if (formula instanceof Conjunction) {
+            Conjunction conjunction = (Conjunction) formula;
+            long[] left = evaluate(conjunction.getLeft());
+            long[] right = left != null ? evaluate(conjunction.getRight()) : null;
+            result = null;
+            if (left != null && right != null) {
+                result = new long[validMask.length];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = left[i] & right[i];
+                }
+            }
+        } else if (formula instanceof Disjunction) {
+            Disjunction disjunction = (Disjunction) formula;
+            long[] left = evaluate(disjunction.getLeft());
+            long[] right = left != null ? evaluate(disjunction.getRight()) : null;
+            result = null;
+            if (left != null && right != null) {
+                result = new long[validMask.length];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = left[i] | right[i];
+                }
+            }
+        } else {
+            // unknown formula type: neither the formula nor its negation can be evaluated
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Creates a bit set with the given value in every word.
+     *
+     * @param value The value of each word.
+     *
+     * @return The new bit set.
+     */
+    private long @NonNull [] filled(long value) {
+        long[] result = new long[validMask.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = value;
+        }
+        return result;
+    }
+
+    /**
+     * A simple WalkSAT local search for sampling configurations. Literals are encoded as <code>2 * id</code>
+     * (positive) and <code>2 * id + 1</code> (negated).
+     */
+    private static class WalkSat {
+
+        private final int @NonNull [] @NonNull [] clauses;
+
+        private final int @NonNull [] @NonNull [] occurrences;
+
+        private final int variables;
+
+        private final @NonNull Random random;
+
+        private final boolean @NonNull [] assignment;
+
+        private final int @NonNull [] trueLiterals;
+
+        private final int @NonNull [] unsatisfied;
+
+        private final int @NonNull [] unsatisfiedIndex;
+
+        private int unsatisfiedCount;
+
+        /**
+         * Creates the search for the given clauses.
+         *
+         * @param clauses The clauses of the model.
+         * @param variables The number of variables.
+         * @param random The source of random decisions.
+         */
+        WalkSat(int @NonNull [] @NonNull [] clauses, int variables, @NonNull Random random) {
+            this.clauses = clauses;
+            this.variables = variables;
+            this.random = random;
+
+            int[] counts = new int[2 * variables];
+            for (int[] clause : clauses) {
+                for (int literal : clause) {
+                    counts[literal]++;
+                }
+            }
+            occurrences = new int[2 * variables][];
+            for (int i = 0; i < occurrences.length; i++) {
+                occurrences[i] = new int[counts[i]];
+                counts[i] = 0;
+            }
+            for (int c = 0; c < clauses.length; c++) {
+                for (int literal : clauses[c]) {
+                    occurrences[literal][counts[literal]++] = c;
+                }
+            }
+
+            assignment = new boolean[variables];
+            trueLiterals = new int[clauses.length];
+            unsatisfied = new int[clauses.length];
+            unsatisfiedIndex = new int[clauses.length];
+        }
+
+        /**
+         * Checks whether a literal is satisfied by the current assignment.
+         *
+         * @param literal The literal to check.
+         *
+         * @return Whether the literal is true.
+         */
+        private boolean isTrue(int literal) {
+            return assignment[literal / 2] == ((literal & 1) == 0);
+        }
+
+        /**
+         * Searches a solution from a random starting point.
+         *
+         * @param maxFlips The maximum number of flips.
+         *
+         * @return The solution (variable id -&gt; value) or <code>null</code> if none was found within the limit.
+         */
+        boolean @Nullable [] solve(long maxFlips) {
+            for (int v = 0; v < variables; v++) {
+                assignment[v] = random.nextBoolean();
+            }
+            unsatisfiedCount = 0;
+            for (int c = 0; c < clauses.length; c++) {
+                trueLiterals[c] = 0;
+                for (int literal : clauses[c]) {
+                    if (isTrue(literal)) {
+                        trueLiterals[c]++;
+                    }
+                }
+                if (trueLiterals[c] == 0) {
+                    addUnsatisfied(c);
+                }
+            }
+
+            for (long flip = 0; flip < maxFlips && unsatisfiedCount > 0; flip++) {
+                int[] clause = clauses[unsatisfied[random.nextInt(unsatisfiedCount)]];
+                if (clause.length == 0) {
+                    // empty clause: model is unsatisfiable
+                    return null;
+                }
+                int variable;
+                if (random.nextDouble() < NOISE) {
+                    variable = clause[random.nextInt(clause.length)] / 2;
+                } else {
+                    variable = clause[0] / 2;
+                    int bestBreaks = Integer.MAX_VALUE;
+                    for (int literal : clause) {
+                        int breaks = countBreaks(literal / 2);
+                        if (breaks < bestBreaks) {
+                            bestBreaks = breaks;
+                            variable = literal / 2;
+                        }
+                    }
+                }
+                flip(variable);
+            }
+            return unsatisfiedCount == 0 ? assignment.clone() : null;
+        }
+
+        /**
+         * Counts the clauses, which become unsatisfied by flipping the given variable.
+         *
+         * @param variable The variable to flip.
+         *
+         * @return The number of broken clauses.
+         */
+        private int countBreaks(int variable) {
+            int trueLiteral = 2 * variable + (assignment[variable] ? 0 : 1);
+            int result = 0;
+            for (int c : occurrences[trueLiteral]) {
+                if (trueLiterals[c] == 1) {
+                    result++;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Flips the given variable and updates the clause states.
+         *
+         * @param variable The variable to flip.
+         */
+        private void flip(int variable) {
+            int oldTrue = 2 * variable + (assignment[variable] ? 0 : 1);
+            assignment[variable] = !assignment[variable];
+            for (int c : occurrences[oldTrue]) {
+                trueLiterals[c]--;
+                if (trueLiterals[c] == 0) {
+                    addUnsatisfied(c);
+                }
+            }
+            for (int c : occurrences[oldTrue ^ 1]) {
+                trueLiterals[c]++;
+                if (trueLiterals[c] == 1) {
+                    removeUnsatisfied(c);
+                }
+            }
+        }
+
+        /**
+         * Adds a clause to the list of unsatisfied clauses.
+         *
+         * @param clause The clause index.
+         */
+        private void addUnsatisfied(int clause) {
+            unsatisfiedIndex[clause] = unsatisfiedCount;
+            unsatisfied[unsatisfiedCount++] = clause;
+        }
+
+        /**
+         * Removes a clause from the list of unsatisfied clauses.
+         *
+         * @param clause The clause index.
+         */
+        private void removeUnsatisfied(int clause) {
+            int index = unsatisfiedIndex[clause];
+            int last = unsatisfied[--unsatisfiedCount];
+            unsatisfied[index] = last;
+            unsatisfiedIndex[last] = index;
+        }
+
+    }
+
+}
@@ -0,0 +1,613 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Disjunction;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * A FIFO buffer between the feature effect finder and a detector, which keeps at most a fixed number of feature
+ * effects on the heap. A background thread drains the feature effect finder as fast as it produces, so that its
+ * results don't pile up in the queue of the {@link AnalysisComponent}. Once the threshold is reached, further feature
+ * effects are written to segment files on disk and read back sequentially, when the detector has consumed the
+ * feature effects in memory. Only after all spilled feature effects are read, the memory is used again; this keeps
+ * the order of the feature effect finder.
+ * <p>
+ * Segment files contain up to {@link #SEGMENT_SIZE} entries. Each entry is the variable name followed by the formula
+ * tree in prefix order (one tag byte per node); variable names are dictionary encoded per segment. Numbers and
+ * strings are written like in the {@link BinaryResultWriter}. Read segments are deleted right away.
+ * </p>
+ * <p>
+ * The lock of the buffer only guards the hand-off between the two threads; feature effects are serialized, written
+ * and read back without holding it, so that the detector and the feature effect finder don't wait for each other's
+ * disk I/O.
+ * </p>
+ * If writing to disk fails, the remaining feature effects are kept in memory.
+ *
+ * @author agent
+ */
+class SpillingBuffer {
+
+    /**
+     * The maximum number of entries per segment file.
+     */
+    static final int SEGMENT_SIZE = 16384;
+
+    private static final int TAG_FALSE = 0;
+
+    private static final int TAG_TRUE = 1;
+
+    private static final int TAG_VARIABLE = 2;
+
+    private static final int TAG_NEGATION = 3;
+
+    private static final int TAG_CONJUNCTION = 4;
+
+    private static final int TAG_DISJUNCTION = 5;
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * A segment file and the number of entries written to it.
+     */
+    private static final class Segment {
+
+        private final @NonNull File file;
+
+        private int entries;
+
+        /**
+         * Creates a segment.
+         *
+         * @param file The file of the segment.
+         */
+        private Segment(@NonNull File file) {
+            this.file = file;
+        }
+
+    }
+
+    private final @NonNull AnalysisComponent<VariableWithFeatureEffect> source;
+
+    private final int threshold;
+
+    private final @Nullable File parentDirectory;
+
+    private final @NonNull Deque<VariableWithFeatureEffect> memory = new ArrayDeque<>();
+
+    private final @NonNull Deque<VariableWithFeatureEffect> overflow = new ArrayDeque<>();
+
+    private final @NonNull Deque<Segment> segments = new ArrayDeque<>();
+
+    private long pending;
+
+    private long spilled;
+
+    private boolean spillFailed;
+
+    private boolean started;
+
+    private boolean finished;
+
+    private boolean abandoned;
+
+    /**
+     * Guards the segment file, which is currently written. Only the thread calling
+     * {@link #put(VariableWithFeatureEffect)} writes, the thread calling {@link #take()} only closes the segment when
+     * it caught up with the writer.
+     */
+    private final @NonNull Object writeLock = new Object();
+
+    private @Nullable File directory;
+
+    private int segmentCount;
+
+    private @Nullable Segment writeSegment;
+
+    private @Nullable DataOutputStream writer;
+
+    private final @NonNull Map<String, Integer> writeNames = new HashMap<>();
+
+    /**
+     * The segment file, which is currently read; only used by the thread calling {@link #take()}.
+     */
+    private @Nullable Segment readSegment;
+
+    private @Nullable DataInputStream reader;
+
+    private int readRemaining;
+
+    private final @NonNull List<String> readNames = new ArrayList<>();
+
+    /**
+     * Creates a buffer for the given feature effects.
+     *
+     * @param source The component providing the feature effects.
+     * @param threshold The maximum number of feature effects kept in memory.
+     * @param parentDirectory The directory, in which the directory for the segment files is created; <code>null</code>
+     *      for the default temporary directory.
+     */
+    SpillingBuffer(@NonNull AnalysisComponent<VariableWithFeatureEffect> source, int threshold,
+            @Nullable File parentDirectory) {
+
+        this.source = source;
+        this.threshold = Math.max(1, threshold);
+        this.parentDirectory = parentDirectory;
+    }
+
+    /**
+     * Starts the background thread, which drains the source into this buffer.
+     */
+    private void start() {
+        Thread pump = new Thread(() -> {
+            try {
+                VariableWithFeatureEffect featureEffect;
+                while ((featureEffect = source.getNextResult()) != null) {
+                    put(featureEffect);
+                }
+            } finally {
+                finish();
+            }
+        }, "SpillingBuffer");
+        // don't keep the JVM alive after the analysis
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    /**
+     * Adds a feature effect, either in memory or on disk. Must only be called by one thread at a time; the feature
+     * effect is written to disk without holding the lock of this buffer, so that {@link #take()} is not blocked by it.
+     *
+     * @param featureEffect The feature effect to add.
+     */
+    void put(@NonNull VariableWithFeatureEffect featureEffect) {
+        boolean spill = false;
+        synchronized (this) {
+            if (abandoned) {
+                // nobody takes the feature effects anymore, drop it
+                spill = false;
+            } else if (spillFailed) {
+                overflow.add(featureEffect);
+            } else if (pending == 0 && memory.size() < threshold) {
+                memory.add(featureEffect);
+            } else {
+                // only this thread adds feature effects, so the memory stays unused until this one is written
+                spill = true;
+            }
+            notifyAll();
+        }
+
+        if (spill) {
+            Segment completed = null;
+            IOException failure = null;
+            synchronized (writeLock) {
+                try {
+                    completed = write(featureEffect);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+
+            synchronized (this) {
+                if (completed != null) {
+                    segments.add(completed);
+                }
+                if (failure != null) {
+                    LOGGER.logException("Could not spill feature effects to disk, keeping them in memory", failure);
+                    spillFailed = true;
+                    overflow.add(featureEffect);
+                } else {
+                    // counted after it is written, so that the reader finds it in the segment file
+                    pending++;
+                    spilled++;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Signals that no further feature effects will be added.
+     */
+    synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Returns the next feature effect in the order, in which they were added. Waits until a feature effect is
+     * available. The first call starts draining the source. Must only be called by one thread at a time; spilled
+     * feature effects are read without holding the lock of this buffer, so that {@link #put(VariableWithFeatureEffect)}
+     * is not blocked by it.
+     * <p>
+     * If the calling thread is interrupted while waiting, the interrupt flag is kept and <code>null</code> is returned;
+     * the remaining feature effects of the source are dropped.
+     * </p>
+     *
+     * @return The next feature effect or <code>null</code> if all feature effects were returned.
+     */
+    @Nullable VariableWithFeatureEffect take() {
+        VariableWithFeatureEffect result = null;
+        boolean done = false;
+        while (result == null && !done) {
+            boolean readSpilled = false;
+            synchronized (this) {
+                if (!started) {
+                    started = true;
+                    start();
+                }
+                while (memory.isEmpty() && pending == 0 && overflow.isEmpty() && !finished) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        LOGGER.logWarning("Interrupted while waiting for feature effects, the remaining feature "
+                                + "effects are dropped");
+                        finished = true;
+                        abandoned = true;
+                    }
+                }
+                if (!memory.isEmpty()) {
+                    result = memory.poll();
+                } else if (pending > 0) {
+                    readSpilled = true;
+                } else if (!overflow.isEmpty()) {
+                    result = overflow.poll();
+                } else {
+                    done = true;
+                }
+            }
+            if (readSpilled) {
+                // null if a segment could not be read, then try the next one
+                result = readNext();
+            }
+        }
+        if (done) {
+            deleteDirectory();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of feature effects, which were written to disk so far.
+     *
+     * @return The number of spilled feature effects.
+     */
+    synchronized long getSpilledCount() {
+        return spilled;
+    }
+
+    /**
+     * Writes a feature effect to the current segment file. Must hold the {@link #writeLock}.
+     *
+     * @param featureEffect The feature effect to write.
+     *
+     * @return The segment, if it is full and was closed by this call; otherwise <code>null</code>.
+     *
+     * @throws IOException If writing fails.
+     */
+    private @Nullable Segment write(@NonNull VariableWithFeatureEffect featureEffect) throws IOException {
+        DataOutputStream writer = this.writer;
+        Segment segment = this.writeSegment;
+        if (writer == null || segment == null) {
+            File directory = this.directory;
+            if (directory == null) {
+                directory = (parentDirectory != null ? Files.createTempDirectory(parentDirectory.toPath(), "kh_spill")
+                        : Files.createTempDirectory("kh_spill")).toFile();
+                directory.deleteOnExit();
+                this.directory = directory;
+            }
+            segment = new Segment(new File(directory, "segment" + segmentCount++ + ".bin"));
+            writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment.file), 1 << 16));
+            writeNames.clear();
+            this.writeSegment = segment;
+            this.writer = writer;
+        }
+
+        writeName(writer, featureEffect.getVariable());
+        writeFormula(writer, featureEffect.getFeatureEffect());
+        segment.entries++;
+        Segment completed = null;
+        if (segment.entries >= SEGMENT_SIZE) {
+            completed = closeSegment();
+        }
+        return completed;
+    }
+
+    /**
+     * Closes the current segment file, so that it can be read. Must hold the {@link #writeLock}.
+     *
+     * @return The closed segment, <code>null</code> if no segment is currently written.
+     *
+     * @throws IOException If flushing the segment fails.
+     */
+    private @Nullable Segment closeSegment() throws IOException {
+        DataOutputStream writer = this.writer;
+        Segment segment = this.writeSegment;
+        this.writer = null;
+        this.writeSegment = null;
+        if (writer != null) {
+            writer.close();
+        }
+        return segment;
+    }
+
+    /**
+     * Writes a variable name, dictionary encoded: 0 and the name for new names, otherwise the index + 1.
+     *
+     * @param out The stream to write to.
+     * @param name The name to write.
+     *
+     * @throws IOException If writing fails.
+     */
+    private void writeName(@NonNull DataOutputStream out, @NonNull String name) throws IOException {
+        Integer index = writeNames.get(name);
+        if (index == null) {
+            writeNames.put(name, writeNames.size());
+            BinaryResultWriter.writeNumber(out, 0);
+            BinaryResultWriter.writeString(out, name);
+        } else {
+            BinaryResultWriter.writeNumber(out, index + 1);
+        }
+    }
+
+    /**
+     * Writes a formula tree in prefix order.
+     *
+     * @param out The stream to write to.
+     * @param formula The formula to write.
+     *
+     * @throws IOException If writing fails or the formula contains unknown operators.
+     */
+    private void writeFormula(@NonNull DataOutputStream out, @NonNull Formula formula) throws IOException {
+        if (formula instanceof Variable) {
+            out.writeByte(TAG_VARIABLE);
+            writeName(out, ((Variable) formula).getName());
+        } else if (formula instanceof True) {
+            out.writeByte(TAG_TRUE);
+        } else if (formula instanceof False) {
+            out.writeByte(TAG_FALSE);
+        } else if (formula instanceof Negation) {
+            out.writeByte(TAG_NEGATION);
+            writeFormula(out, ((Negation) formula).getFormula());
+        } else if (formula instanceof Conjunction) {
+            out.writeByte(TAG_CONJUNCTION);
+            writeFormula(out, ((Conjunction) formula).getLeft());
+            writeFormula(out, ((Conjunction) formula).getRight());
+        } else if (formula instanceof Disjunction) {
+            out.writeByte(TAG_DISJUNCTION);
+            writeFormula(out, ((Disjunction) formula).getLeft());
+            writeFormula(out, ((Disjunction) formula).getRight());
+        } else {
+            throw new IOException("Can't write formula of type " + formula.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads the next spilled feature effect. If the segment can't be read, the rest of the segment is dropped. Only
+     * called by the thread calling {@link #take()}, the lock of this buffer is only held for updating the counters.
+     *
+     * @return The feature effect or <code>null</code> if reading failed or the segment is not written yet.
+     */
+    private @Nullable VariableWithFeatureEffect readNext() {
+        VariableWithFeatureEffect result = null;
+        try {
+            DataInputStream reader = this.reader;
+            if (reader == null) {
+                Segment segment = nextSegment();
+                if (segment != null && segment.entries > 0) {
+                    readSegment = segment;
+                    readRemaining = segment.entries;
+                    readNames.clear();
+                    reader = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file), 1 << 16));
+                    this.reader = reader;
+                } else if (segment != null && !segment.file.delete()) {
+                    segment.file.deleteOnExit();
+                }
+            }
+            if (reader != null) {
+                String variable = readName(reader);
+                Formula featureEffect = readFormula(reader);
+                result = new VariableWithFeatureEffect(variable, featureEffect);
+                readRemaining--;
+                synchronized (this) {
+                    pending--;
+                }
+                if (readRemaining == 0) {
+                    closeReader();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.logException("Could not read spilled feature effects, " + readRemaining + " are lost", e);
+            synchronized (this) {
+                pending -= readRemaining;
+            }
+            closeReader();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the next segment to read. If the reader caught up with the writer, the segment, which is currently
+     * written, is closed.
+     *
+     * @return The next segment or <code>null</code> if no entry is written yet.
+     *
+     * @throws IOException If closing the current segment fails.
+     */
+    private @Nullable Segment nextSegment() throws IOException {
+        Segment result;
+        synchronized (this) {
+            result = segments.poll();
+        }
+        if (result == null) {
+            synchronized (writeLock) {
+                result = closeSegment();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Closes and deletes the segment file, which is currently read.
+     */
+    private void closeReader() {
+        DataInputStream reader = this.reader;
+        Segment segment = this.readSegment;
+        this.reader = null;
+        this.readSegment = null;
+        readRemaining = 0;
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // ignore, the file is deleted anyway
+            }
+        }
+        if (segment != null && !segment.file.delete()) {
+            segment.file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Reads a dictionary encoded variable name.
+     *
+     * @param in The stream to read from.
+     *
+     * @return The name.
+     *
+     * @throws IOException If reading fails or the name is not in the dictionary.
+     */
+    private @NonNull String readName(@NonNull DataInputStream in) throws IOException {
+        int index = BinaryResultReader.readNumber(in);
+        String result;
+        if (index == 0) {
+            result = BinaryResultReader.readString(in);
+            readNames.add(result);
+        } else if (index <= readNames.size()) {
+            result = readNames.get(index - 1);
+        } else {
+            throw new IOException("Invalid name index " + index);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a formula tree in prefix order.
+     *
+     * @param in The stream to read from.
+     *
+     * @return The formula.
+     *
+     * @throws IOException If reading fails or the data is corrupt.
+     */
+    private @NonNull Formula readFormula(@NonNull DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        Formula result;
+        switch (tag) {
+        case TAG_VARIABLE:
+            result = new Variable(readName(in));
+            break;
+        case TAG_TRUE:
+            result = True.INSTANCE;
+            break;
+        case TAG_FALSE:
+            result = False.INSTANCE;
+            break;
+        case TAG_NEGATION:
+            result = not(readFormula(in));
+            break;
+        case TAG_CONJUNCTION:
+            Formula left = readFormula(in);
+            result = and(left, readFormula(in));
+            break;
+        case TAG_DISJUNCTION:
+            Formula first = readFormula(in);
+            result = or(first, readFormula(in));
+            break;
+        default:
+            throw new IOException("Invalid formula tag " + tag);
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the directory of the segment files, after all feature effects were returned.
+     */
+    private void deleteDirectory() {
+        File directory;
+        List<Segment> unread;
+        synchronized (writeLock) {
+            directory = this.directory;
+            this.directory = null;
+            try {
+                Segment segment = closeSegment();
+                if (segment != null && !segment.file.delete()) {
+                    segment.file.deleteOnExit();
+                }
+            } catch (IOException e) {
+                // ignore, nothing is read anymore
+            }
+        }
+        synchronized (this) {
+            unread = new ArrayList<>(segments);
+            segments.clear();
+        }
+        if (directory != null) {
+            LOGGER.logInfo("Spilled " + getSpilledCount() + " feature effects to disk");
+            closeReader();
+            for (Segment segment : unread) {
+                if (!segment.file.delete()) {
+                    segment.file.deleteOnExit();
+                }
+            }
+            if (!directory.delete()) {
+                directory.deleteOnExit();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Selects a stratified random sample of the feature effects for the sampling mode of the detectors and estimates the
+ * number of results of all feature effects from the results of the sample. The feature effects are stratified by
+ * their size, since small feature effects are much more often consistent than large ones.
+ * <ul>
+ *   <li>With a sampling rate, each stratum is sampled systematically with a random start while the feature effects
+ *   are streamed, so that exactly the rate (rounded) of each stratum is checked.</li>
+ *   <li>With a sample size, all feature effects are read first. The sample size is allocated proportionally to the
+ *   strata (at least one per non-empty stratum) and a simple random sample is drawn from each stratum.</li>
+ * </ul>
+ * The estimates are the usual stratified estimates with 95% confidence intervals from the normal approximation,
+ * including the finite population correction. Strata with less than two sampled feature effects use the variance
+ * of the whole sample. For results, which did not occur in the sample, the upper bound is at least the rule of three.
+ * The random numbers use a fixed seed, so the same feature effects result in the same sample.
+ *
+ * @author agent
+ */
+class StratifiedSample {
+
+    /**
+     * The number of strata: trivial, small, medium and large feature effects.
+     */
+    static final int STRATA = 4;
+
+    /**
+     * The quantile of the normal distribution for a 95% confidence interval.
+     */
+    static final double Z_95 = 1.959964;
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    private static final long SAMPLE_SEED = 0x4B48L;
+
+    private final int percent;
+
+    private final int size;
+
+    private final @NonNull Random random = new Random(SAMPLE_SEED);
+
+    private final int @NonNull [] offsets = new int[STRATA];
+
+    private final int @NonNull [] population = new int[STRATA];
+
+    private final int @NonNull [] sampled = new int[STRATA];
+
+    private final @NonNull Map<String, int[]> counts = new HashMap<>();
+
+    private @Nullable Iterator<VariableWithFeatureEffect> drawn;
+
+    /**
+     * Creates a sample.
+     *
+     * @param percent The percentage (1 - 100) of feature effects to check; ignored if a sample size is given.
+     * @param size The number of feature effects to check or 0 to sample with the rate.
+     */
+    StratifiedSample(int percent, int size) {
+        this.percent = Math.max(1, Math.min(percent, 100));
+        this.size = size;
+        for (int i = 0; i < STRATA; i++) {
+            offsets[i] = random.nextInt(100);
+        }
+    }
+
+    /**
+     * Creates a sample as configured in the {@link MismatchSettings}.
+     *
+     * @param config The configuration, {@link MismatchSettings} must already be registered.
+     *
+     * @return The sample or <code>null</code> if the sampling mode is disabled.
+     */
+    static @Nullable StratifiedSample create(@NonNull Configuration config) {
+        int percent = config.getValue(MismatchSettings.SAMPLING_RATE);
+        int size = config.getValue(MismatchSettings.SAMPLING_SIZE);
+        StratifiedSample result = null;
+        if (size > 0) {
+            result = new StratifiedSample(100, size);
+            LOGGER.logInfo("Sampling mode checks " + size + " feature effects");
+        } else if (percent > 0 && percent < 100) {
+            result = new StratifiedSample(percent, 0);
+            LOGGER.logInfo("Sampling mode checks " + percent + "% of the feature effects");
+        }
+        return result;
+    }
+
+    /**
+     * Returns the stratum of a feature effect.
+     *
+     * @param featureEffect The feature effect.
+     *
+     * @return The stratum, between 0 and {@link #STRATA} - 1.
+     */
+    static int stratumOf(@NonNull Formula featureEffect) {
+        int nodes = FormulaUtils.countNodes(featureEffect);
+        int result;
+        if (nodes <= 1) {
+            result = 0;
+        } else if (nodes <= 3) {
+            result = 1;
+        } else if (nodes <= 15) {
+            result = 2;
+        } else {
+            result = 3;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the next sampled feature effect to check.
+     *
+     * @param selection The feature effects to sample from.
+     *
+     * @return The next sampled feature effect or <code>null</code> if all were returned.
+     */
+    @Nullable VariableWithFeatureEffect next(@NonNull VariableSelection selection) {
+        VariableWithFeatureEffect result = null;
+        if (size > 0) {
+            Iterator<VariableWithFeatureEffect> drawn = this.drawn;
+            if (drawn == null) {
+                drawn = draw(selection);
+                this.drawn = drawn;
+            }
+            if (drawn.hasNext()) {
+                result = drawn.next();
+            }
+        } else {
+            VariableWithFeatureEffect candidate;
+            while (result == null && (candidate = selection.next()) != null) {
+                int stratum = stratumOf(candidate.getFeatureEffect());
+                long index = population[stratum]++;
+                // systematic sampling: select whenever the scaled index passes a multiple of 100
+                if (((index + 1) * percent + offsets[stratum]) / 100 > (index * percent + offsets[stratum]) / 100) {
+                    sampled[stratum]++;
+                    result = candidate;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads all feature effects and draws the sample of the configured size. This needs to wait until the feature
+     * effect finder is done.
+     *
+     * @param selection The feature effects to sample from.
+     *
+     * @return The sampled feature effects in the order of the selection.
+     */
+    private @NonNull Iterator<VariableWithFeatureEffect> draw(@NonNull VariableSelection selection) {
+        List<VariableWithFeatureEffect> all = new ArrayList<>();
+        List<List<Integer>> strata = new ArrayList<>();
+        for (int i = 0; i < STRATA; i++) {
+            strata.add(new ArrayList<>());
+        }
+        VariableWithFeatureEffect candidate;
+        while ((candidate = selection.next()) != null) {
+            int stratum = stratumOf(candidate.getFeatureEffect());
+            population[stratum]++;
+            strata.get(stratum).add(all.size());
+            all.add(candidate);
+        }
+
+        int[] quota = allocate(population, size);
+        BitSet chosen = new BitSet(all.size());
+        for (int i = 0; i < STRATA; i++) {
+            // partial Fisher-Yates shuffle of the stratum
+            List<Integer> indices = strata.get(i);
+            for (int j = 0; j < quota[i]; j++) {
+                Collections.swap(indices, j, j + random.nextInt(indices.size() - j));
+                chosen.set(indices.get(j));
+            }
+            sampled[i] = quota[i];
+        }
+
+        List<VariableWithFeatureEffect> result = new ArrayList<>(chosen.cardinality());
+        for (int i = chosen.nextSetBit(0); i >= 0; i = chosen.nextSetBit(i + 1)) {
+            result.add(all.get(i));
+        }
+        return result.iterator();
+    }
+
+    /**
+     * Allocates the sample size proportionally to the strata, using the largest remainders. Each non-empty stratum
+     * gets at least one sampled feature effect, if the sample size allows this.
+     *
+     * @param population The number of feature effects per stratum.
+     * @param size The sample size.
+     *
+     * @return The number of feature effects to sample per stratum.
+     */
+    static int @NonNull [] allocate(int @NonNull [] population, int size) {
+        int total = 0;
+        for (int count : population) {
+            total += count;
+        }
+        int[] quota = new int[population.length];
+        if (size >= total) {
+            System.arraycopy(population, 0, quota, 0, population.length);
+        } else {
+            double[] remainders = new double[population.length];
+            int assigned = 0;
+            for (int i = 0; i < population.length; i++) {
+                double exact = (double) size * population[i] / total;
+                quota[i] = (int) exact;
+                remainders[i] = exact - quota[i];
+                assigned += quota[i];
+            }
+            for (int i = 0; i < population.length && assigned < size; i++) {
+                if (population[i] > 0 && quota[i] == 0) {
+                    quota[i] = 1;
+                    remainders[i] = -1;
+                    assigned++;
+                }
+            }
+            while (assigned < size) {
+                int best = -1;
+                for (int i = 0; i < population.length; i++) {
+                    if (quota[i] < population[i] && (best == -1 || remainders[i] > remainders[best])) {
+                        best = i;
+                    }
+                }
+                quota[best]++;
+                remainders[best] = -1;
+                assigned++;
+            }
+        }
+        return quota;
+    }
+
+    /**
+     * Records the result of a sampled feature effect.
+     *
+     * @param featureEffect The sampled feature effect.
+     * @param result The description of the result.
+     */
+    void record(@NonNull Formula featureEffect, @NonNull String result) {
+        counts.computeIfAbsent(result, r -> new int[STRATA])[stratumOf(featureEffect)]++;
+    }
+
+    /**
+     * Returns the number of feature effects, from which the sample was drawn.
+     *
+     * @return The number of all (selected) feature effects.
+     */
+    int getPopulation() {
+        int result = 0;
+        for (int count : population) {
+            result += count;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of sampled feature effects.
+     *
+     * @return The sample size.
+     */
+    int getSampledCount() {
+        int result = 0;
+        for (int count : sampled) {
+            result += count;
+        }
+        return result;
+    }
+
+    /**
+     * Estimates the number of all feature effects with the given results from the recorded results.
+     *
+     * @param results The descriptions of all possible results.
+     *
+     * @return The estimate per result; empty if no results were recorded.
+     */
+    @NonNull List<@NonNull SampleEstimate> getEstimates(@NonNull String @NonNull ... results) {
+        int[] recorded = new int[STRATA];
+        int sampleSize = 0;
+        for (int[] perStratum : counts.values()) {
+            for (int i = 0; i < STRATA; i++) {
+                recorded[i] += perStratum[i];
+                sampleSize += perStratum[i];
+            }
+        }
+        int total = getPopulation();
+
+        List<@NonNull SampleEstimate> estimates = new ArrayList<>();
+        for (int r = 0; sampleSize > 0 && r < results.length; r++) {
+            int[] perStratum = counts.get(results[r]);
+            if (perStratum == null) {
+                perStratum = new int[STRATA];
+            }
+            int occurrences = 0;
+            for (int count : perStratum) {
+                occurrences += count;
+            }
+            double pooled = (double) occurrences / sampleSize;
+
+            double estimate = 0;
+            double variance = 0;
+            for (int i = 0; i < STRATA; i++) {
+                if (population[i] > 0) {
+                    double fpc = Math.max(0, 1 - (double) recorded[i] / population[i]);
+                    if (recorded[i] >= 2) {
+                        double share = (double) perStratum[i] / recorded[i];
+                        estimate += population[i] * share;
+                        variance += (double) population[i] * population[i] * fpc * share * (1 - share)
+                                / (recorded[i] - 1);
+                    } else {
+                        double share = recorded[i] == 1 ? perStratum[i] : pooled;
+                        estimate += population[i] * share;
+                        variance += (double) population[i] * population[i] * fpc * pooled * (1 - pooled);
+                    }
+                }
+            }
+
+            double halfWidth = Z_95 * Math.sqrt(variance);
+            double upper = estimate + halfWidth;
+            if (occurrences == 0 && sampleSize < total) {
+                upper = Math.max(upper, 3.0 * total / sampleSize);
+            }
+            estimates.add(new SampleEstimate(results[r], occurrences, Math.round(estimate),
+                    Math.max(0, Math.round(estimate - halfWidth)), Math.min(total, Math.round(upper))));
+        }
+        return estimates;
+    }
+
+    /**
+     * Logs the estimates and publishes them in the given result table.
+     *
+     * @param table The result table of the estimates.
+     * @param results The descriptions of all possible results.
+     */
+    void report(@NonNull ResultStream<SampleEstimate> table, @NonNull String @NonNull ... results) {
+        LOGGER.logInfo("Sampled " + getSampledCount() + " of " + getPopulation() + " feature effects");
+        for (SampleEstimate estimate : getEstimates(results)) {
+            LOGGER.logInfo("Estimated " + estimate);
+            table.publish(estimate);
+        }
+    }
+
+}
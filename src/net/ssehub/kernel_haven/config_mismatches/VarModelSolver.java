@@ -0,0 +1,1070 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.IFormulaToCnfConverter;
+import net.ssehub.kernel_haven.cnf.ISatSolver;
+import net.ssehub.kernel_haven.cnf.SatSolverFactory;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.VariableFinder;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Answers the satisfiability queries of the mismatch detectors against one fixed variability model. The solvers for
+ * the model (and its negation) are only created once per analysis run. Also counts the issued SAT calls, so that the
+ * detectors can report statistics per checked variable.
+ * <p>
+ * Queries may be passed as {@link Formula}s. Then the {@link QueryBackend}s are asked in a fixed order: the optional
+ * {@link ImplicationGraph}, {@link SolutionPool} and {@link CompiledVarModel}, and finally the SAT solver, which
+ * converts the formula into CNF and decides every query.
+ * </p>
+ *
+ * @author agent
+ */
+public class VarModelSolver {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    private static final long POOL_SEED = 0x4B48L;
+
+    private final @NonNull Cnf varModel;
+
+    /**
+     * The model, on which the queries are solved: the variability model, or its reduced version if equivalent
+     * variables are collapsed.
+     */
+    private @NonNull Cnf solvedModel;
+
+    private @Nullable EquivalenceReduction reduction;
+
+    private boolean offHeapStore;
+
+    private @Nullable ClauseStore modelStore;
+
+    private @Nullable ClauseStore solvedStore;
+
+    private final @NonNull IFormulaToCnfConverter converter;
+
+    private @Nullable ISatSolver solver;
+
+    private @Nullable Cnf varModelNegated;
+
+    private @Nullable ISatSolver negatedSolver;
+
+    private @Nullable SatQueryDumper queryDumper;
+
+    private @Nullable ImplicationGraph implicationGraph;
+
+    private final @NonNull Map<Formula, Cnf> convertedQueries = new IdentityHashMap<>();
+
+    private final @NonNull Map<Formula, Formula> reducedQueries = new IdentityHashMap<>();
+
+    private @Nullable SelectorEncoding selectorEncoding;
+
+    private @Nullable EffectClasses effectClasses;
+
+    private final @NonNull Map<Formula, EffectClasses.EffectClass> effectLookups = new IdentityHashMap<>();
+
+    private long totalEffectDecisions;
+
+    private @Nullable ExecutorService cubeExecutor;
+
+    private int cubeMinClauses;
+
+    private int cubeDepth;
+
+    private int cubeThreads;
+
+    private @Nullable CubeSolver cubeSolver;
+
+    private @Nullable CubeSolver negatedCubeSolver;
+
+    private long totalCubeDecisions;
+
+    private @Nullable ResourceController resourceController;
+
+    private @Nullable LearnedClauses learnedClauses;
+
+    /**
+     * The solved model together with the clauses learned by previous runs; <code>null</code> if there are none.
+     */
+    private @Nullable Cnf warmModel;
+
+    private int satCalls;
+
+    private long totalSatCalls;
+
+    private final @NonNull Stage graphStage = new Stage("implication graph");
+
+    private final @NonNull Stage poolStage = new Stage("sampled configurations");
+
+    private final @NonNull Stage compiledStage = new Stage("compiled variability model");
+
+    private final @NonNull Stage satStage = new Stage("SAT solver");
+
+    /**
+     * The stages in the order, in which they are asked; unused stages have no backend.
+     */
+    private final @NonNull List<@NonNull Stage> stages = Arrays.asList(graphStage, poolStage, compiledStage, satStage);
+
+    private long totalEquivalenceDecisions;
+
+    private int maxQueryClauses;
+
+    private int maxQueryVariables;
+
+    private boolean queryStatistics;
+
+    /**
+     * Creates a {@link VarModelSolver} for the given variability model.
+     *
+     * @param varModel The variability model as CNF.
+     * @param converter The converter to use for computing the negated variability model.
+     */
+    public VarModelSolver(@NonNull Cnf varModel, @NonNull IFormulaToCnfConverter converter) {
+        this.varModel = varModel;
+        this.solvedModel = varModel;
+        this.converter = converter;
+        this.satStage.backend = new SatBackend();
+    }
+
+    /**
+     * A position in the evaluation order of the queries, together with the number of queries decided there.
+     */
+    private static final class Stage {
+
+        private final @NonNull String name;
+
+        private @Nullable QueryBackend backend;
+
+        private long decisions;
+
+        /**
+         * Creates a stage without backend.
+         *
+         * @param name The name of the stage in the {@link VarModelSolver#getSummary()}.
+         */
+        private Stage(@NonNull String name) {
+            this.name = name;
+        }
+
+    }
+
+    /**
+     * The last stage: converts the query into CNF and passes it to the SAT solvers of the model.
+     */
+    private final class SatBackend implements QueryBackend {
+
+        @Override
+        public @NonNull Boolean check(@NonNull Formula query) throws SolverException, ConverterException {
+            return isSatisfiable(convert(query));
+        }
+
+        @Override
+        public @NonNull Boolean checkNegated(@NonNull Formula query) throws SolverException, ConverterException {
+            return isSatisfiableWithNegatedModel(convert(query));
+        }
+
+    }
+
+    /**
+     * Creates a {@link VarModelSolver} for the given variability model and sets up the optional query dumping and
+     * acceleration structures as configured in the {@link MismatchSettings}. Failures of optional parts are logged,
+     * the solver then falls back to the plain SAT solver.
+     *
+     * @param config The configuration, {@link MismatchSettings} must already be registered.
+     * @param varModel The variability model as CNF.
+     * @param converter The converter to use for queries and for computing the negated variability model.
+     *
+     * @return The configured solver.
+     */
+    public static @NonNull VarModelSolver create(@NonNull Configuration config, @NonNull Cnf varModel,
+            @NonNull IFormulaToCnfConverter converter) {
+
+        VarModelSolver solver = new VarModelSolver(varModel, converter);
+        solver.setOffHeapClauseStore(config.getValue(MismatchSettings.OFF_HEAP_CLAUSE_STORE));
+        solver.useSelectorEncoding(config.getValue(MismatchSettings.USE_SELECTOR_ENCODING),
+                config.getValue(MismatchSettings.SELECTOR_CACHE_SIZE));
+        if (config.getValue(MismatchSettings.SEMANTIC_DEDUPLICATION)) {
+            solver.useEffectClasses(config.getValue(MismatchSettings.SEMANTIC_DEDUPLICATION_WORDS));
+        }
+        int cubeMinClauses = config.getValue(MismatchSettings.CUBE_MIN_QUERY_CLAUSES);
+        if (cubeMinClauses > 0) {
+            solver.useCubeAndConquer(cubeMinClauses, config.getValue(MismatchSettings.CUBE_DEPTH),
+                    config.getValue(MismatchSettings.CUBE_THREADS));
+        }
+        solver.useResourceController(ResourceController.create(config));
+
+        if (config.getValue(MismatchSettings.COLLAPSE_EQUIVALENCES)) {
+            solver.collapseEquivalences();
+        }
+
+        File learnedClausesDir = config.getValue(MismatchSettings.LEARNED_CLAUSES_DIR);
+        if (learnedClausesDir != null) {
+            solver.useLearnedClauses(learnedClausesDir);
+        }
+
+        File queryDumpDir = config.getValue(MismatchSettings.QUERY_DUMP_DIR);
+        if (queryDumpDir != null) {
+            try {
+                solver.setQueryDumper(new SatQueryDumper(queryDumpDir, solver.solvedModel));
+                LOGGER.logInfo("Writing SAT queries to " + queryDumpDir.getAbsolutePath());
+            } catch (IOException e) {
+                LOGGER.logException("Could not create SAT query dump, continuing without dumping queries", e);
+            }
+        }
+
+        if (config.getValue(MismatchSettings.USE_IMPLICATION_GRAPH)) {
+            try {
+                solver.useImplicationGraph();
+            } catch (SolverException e) {
+                LOGGER.logException("Could not build implication graph, continuing with SAT solver only", e);
+            }
+        }
+
+        int poolSize = config.getValue(MismatchSettings.SAMPLE_POOL_SIZE);
+        if (poolSize > 0) {
+            solver.useSolutionPool(poolSize);
+        }
+
+        if (config.getValue(MismatchSettings.USE_COMPILED_MODEL)) {
+            CompiledVarModel compiled = CompiledVarModel.compile(solver.solvedModel, solver.getSolvedStore(),
+                    config.getValue(MismatchSettings.COMPILED_MODEL_MAX_NODES),
+                    config.getValue(MismatchSettings.COMPILED_MODEL_CACHE_DIR));
+            if (compiled != null) {
+                LOGGER.logInfo("Using compiled variability model with " + compiled.getNodeCount() + " BDD nodes");
+            }
+            solver.setCompiledModel(compiled);
+        }
+
+        return solver;
+    }
+
+    /**
+     * Prepares the solver for checking the next variable: resets the per-variable statistics and passes the
+     * variable name to the {@link SatQueryDumper}.
+     *
+     * @param variable The name of the variable, which is checked next.
+     */
+    public void startVariable(@NonNull String variable) {
+        resetStatistics();
+        pollResources();
+        SatQueryDumper dumper = this.queryDumper;
+        if (dumper != null) {
+            dumper.setCurrentVariable(variable);
+        }
+    }
+
+    /**
+     * Collapses variables, which are forced to be equivalent by the variability model, into one representative per
+     * class (see {@link EquivalenceReduction}). Queries are then solved on the reduced model; results are not
+     * affected. Must be called before any query is issued and before the other acceleration structures are set up.
+     */
+    public void collapseEquivalences() {
+        EquivalenceReduction reduction = EquivalenceReduction.compute(getModelStore());
+        solvedStore = null;
+        if (reduction != null) {
+            solvedModel = reduction.reduce(varModel);
+            LOGGER.logInfo("Collapsed " + reduction.getReplacedCount() + " equivalent variables, reduced model from "
+                    + varModel.getRowCount() + " to " + solvedModel.getRowCount() + " clauses");
+        }
+        this.reduction = reduction;
+        solver = null;
+        varModelNegated = null;
+        negatedSolver = null;
+        cubeSolver = null;
+        negatedCubeSolver = null;
+    }
+
+    /**
+     * Sets whether the {@link ClauseStore}s of the model keep their literals off-heap. Must be called before the
+     * stores are built, i.e., before the acceleration structures are set up.
+     *
+     * @param offHeap Whether to use direct buffers for the clause stores.
+     */
+    public void setOffHeapClauseStore(boolean offHeap) {
+        this.offHeapStore = offHeap;
+    }
+
+    /**
+     * Returns the original variability model as flat {@link ClauseStore}. The store is built once on first use.
+     *
+     * @return The clause store of the variability model.
+     */
+    public @NonNull ClauseStore getModelStore() {
+        ClauseStore result = modelStore;
+        if (result == null) {
+            result = ClauseStore.of(varModel, offHeapStore);
+            modelStore = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the model, on which the queries are solved, as flat {@link ClauseStore}. This is the same store as
+     * {@link #getModelStore()}, unless equivalent variables are collapsed.
+     *
+     * @return The clause store of the solved model.
+     */
+    private @NonNull ClauseStore getSolvedStore() {
+        ClauseStore result;
+        if (solvedModel == varModel) {
+            result = getModelStore();
+        } else {
+            result = solvedStore;
+            if (result == null) {
+                result = ClauseStore.of(solvedModel, offHeapStore);
+                solvedStore = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets whether queries are converted with the {@link SelectorEncoding} instead of the converter, so that
+     * sub-formulas shared by the queries of one variable are only converted once.
+     *
+     * @param useSelectors Whether to use the selector encoding for converting queries.
+     */
+    public void useSelectorEncoding(boolean useSelectors) {
+        useSelectorEncoding(useSelectors, 0);
+    }
+
+    /**
+     * Sets whether queries are converted with the {@link SelectorEncoding} instead of the converter, so that
+     * sub-formulas shared by the queries of one variable are only converted once.
+     *
+     * @param useSelectors Whether to use the selector encoding for converting queries.
+     * @param cacheSize The number of definitions, which are shared by their structure across all variables of the
+     *      run; 0 to only share sub-formulas within the queries of one variable.
+     */
+    public void useSelectorEncoding(boolean useSelectors, int cacheSize) {
+        this.selectorEncoding = useSelectors ? new SelectorEncoding(cacheSize) : null;
+    }
+
+    /**
+     * Groups the feature effects into classes of equivalent formulas (see {@link EffectClasses}), so that
+     * {@link #isEffectSatisfiable(Formula)} and {@link #isEffectSatisfiableWithNegatedModel(Formula)} are only solved
+     * once per class.
+     *
+     * @param words The number of long words of the simulation signatures, i.e., the number of random assignments
+     *      divided by 64.
+     */
+    public void useEffectClasses(int words) {
+        this.effectClasses = new EffectClasses(words, converter);
+    }
+
+    /**
+     * Returns whether feature effects are grouped into classes of equivalent formulas.
+     *
+     * @return <code>true</code> if the results of {@link #isEffectSatisfiable(Formula)} and
+     *      {@link #isEffectSatisfiableWithNegatedModel(Formula)} are shared by equivalent feature effects.
+     */
+    public boolean hasEffectClasses() {
+        return effectClasses != null;
+    }
+
+    /**
+     * Returns the class of equivalent feature effects of the given feature effect. The lookup is cached until the
+     * next {@link #resetStatistics()}, as the detectors pass the same formula to several queries.
+     *
+     * @param effect The feature effect.
+     *
+     * @return The class or <code>null</code> if feature effects are not grouped or the formula is not supported.
+     *
+     * @throws SolverException If an equivalence check fails.
+     * @throws ConverterException If an equivalence check could not be converted into CNF.
+     */
+    private EffectClasses.@Nullable EffectClass lookupEffect(@NonNull Formula effect)
+            throws SolverException, ConverterException {
+
+        EffectClasses classes = this.effectClasses;
+        EffectClasses.EffectClass result = null;
+        if (classes != null) {
+            result = effectLookups.get(effect);
+            if (result == null && !effectLookups.containsKey(effect)) {
+                result = classes.lookup(effect);
+                effectLookups.put(effect, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if <code>varModel AND effect</code> is satisfiable. The result is shared by all equivalent feature
+     * effects, if {@link #useEffectClasses(int)} is enabled.
+     *
+     * @param effect The feature effect to check together with the variability model.
+     *
+     * @return Whether the variability model and the feature effect are satisfiable.
+     *
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If the feature effect could not be converted into CNF.
+     */
+    public boolean isEffectSatisfiable(@NonNull Formula effect) throws SolverException, ConverterException {
+        EffectClasses.EffectClass effectClass = lookupEffect(effect);
+        Boolean cached = effectClass != null ? effectClass.getWithModel() : null;
+        boolean result;
+        if (cached != null) {
+            totalEffectDecisions++;
+            result = cached;
+        } else {
+            result = isSatisfiable(effect);
+            if (effectClass != null) {
+                effectClass.setWithModel(result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if <code>NOT(varModel) AND effect</code> is satisfiable. The result is shared by all equivalent feature
+     * effects, if {@link #useEffectClasses(int)} is enabled.
+     *
+     * @param effect The feature effect to check together with the negated variability model.
+     *
+     * @return Whether the negated variability model and the feature effect are satisfiable.
+     *
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If the feature effect or the negated variability model could not be converted into
+     *      CNF.
+     */
+    public boolean isEffectSatisfiableWithNegatedModel(@NonNull Formula effect)
+            throws SolverException, ConverterException {
+
+        EffectClasses.EffectClass effectClass = lookupEffect(effect);
+        Boolean cached = effectClass != null ? effectClass.getWithNegatedModel() : null;
+        boolean result;
+        if (cached != null) {
+            totalEffectDecisions++;
+            result = cached;
+        } else {
+            result = isSatisfiableWithNegatedModel(effect);
+            if (effectClass != null) {
+                effectClass.setWithNegatedModel(result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Enables cube-and-conquer solving (see {@link CubeSolver}) for queries, which are passed to the SAT solver and
+     * have at least the given number of clauses. Smaller queries are solved by the single model solver.
+     *
+     * @param minClauses The minimum number of clauses of a query to split it into cubes.
+     * @param depth The number of variables to fix per cube, i.e., queries are split into <tt>2^depth</tt> cubes.
+     * @param threads The number of threads solving the cubes; 0 for the number of available processors.
+     */
+    public void useCubeAndConquer(int minClauses, int depth, int threads) {
+        int nThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.cubeThreads = nThreads;
+        this.cubeExecutor = Executors.newFixedThreadPool(nThreads, (runnable) -> {
+            Thread thread = new Thread(runnable, "CubeSolver");
+            // don't keep the JVM alive after the analysis
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cubeMinClauses = minClauses;
+        this.cubeDepth = depth;
+        this.cubeSolver = null;
+        this.negatedCubeSolver = null;
+    }
+
+    /**
+     * Collects short clauses implied by the model from the unsatisfiable queries of this run (see
+     * {@link LearnedClauses}) and adds the clauses learned by previous runs on the same model to the SAT solvers of
+     * the model. Must be called after {@link #collapseEquivalences()}; {@link #saveLearnedClauses()} stores the
+     * clauses for the next run.
+     *
+     * @param directory The directory, in which the learned clauses are stored.
+     */
+    public void useLearnedClauses(@NonNull File directory) {
+        LearnedClauses learned = new LearnedClauses(solvedModel, directory);
+        Cnf loaded = learned.getLoaded();
+        Cnf warm = null;
+        if (loaded.getRowCount() > 0) {
+            warm = new Cnf();
+            addRows(solvedModel, warm);
+            addRows(loaded, warm);
+        }
+        this.learnedClauses = learned;
+        this.warmModel = warm;
+        this.solver = null;
+        this.cubeSolver = null;
+    }
+
+    /**
+     * Adds all rows of a CNF to another CNF.
+     *
+     * @param from The CNF to copy the rows from.
+     * @param to The CNF to add the rows to.
+     */
+    private static void addRows(@NonNull Cnf from, @NonNull Cnf to) {
+        for (int i = 0; i < from.getRowCount(); i++) {
+            List<CnfVariable> row = new ArrayList<>();
+            for (CnfVariable literal : from.getRow(i)) {
+                row.add(literal);
+            }
+            to.addRow(row.toArray(new CnfVariable[row.size()]));
+        }
+    }
+
+    /**
+     * Stores the clauses learned in this and the previous runs, if {@link #useLearnedClauses(File)} is enabled.
+     * Failures are logged.
+     */
+    public void saveLearnedClauses() {
+        LearnedClauses learned = this.learnedClauses;
+        if (learned != null) {
+            try {
+                learned.save();
+                LOGGER.logInfo("Stored " + learned.getCount() + " learned clauses");
+            } catch (IOException e) {
+                LOGGER.logException("Could not store learned clauses", e);
+            }
+        }
+    }
+
+    /**
+     * Sets a {@link ResourceController}, which is polled before each variable and before each query, which is split
+     * into cubes. Under memory pressure, the caches of the {@link ImplicationGraph} and the {@link SelectorEncoding}
+     * as well as the number of concurrently solved cubes are scaled down; they are scaled up again once the pressure
+     * drops.
+     *
+     * @param controller The controller to use, or <code>null</code> to always use the full sizes.
+     */
+    public void useResourceController(@Nullable ResourceController controller) {
+        this.resourceController = controller;
+    }
+
+    /**
+     * Polls the {@link ResourceController}, if any, and applies its scale if it has changed.
+     */
+    private void pollResources() {
+        ResourceController controller = this.resourceController;
+        if (controller != null && controller.update()) {
+            applyResourceScale(controller);
+        }
+    }
+
+    /**
+     * Applies the current scale of the {@link ResourceController} to the caches and the cube solvers.
+     *
+     * @param controller The resource controller.
+     */
+    private void applyResourceScale(@NonNull ResourceController controller) {
+        ImplicationGraph graph = this.implicationGraph;
+        if (graph != null) {
+            graph.setClosureCacheLimit(controller.scale(ImplicationGraph.CLOSURE_CACHE_SIZE));
+        }
+        SelectorEncoding encoding = this.selectorEncoding;
+        if (encoding != null) {
+            encoding.scaleCache(controller.getScale());
+        }
+        CubeSolver cubes = this.cubeSolver;
+        if (cubes != null) {
+            cubes.setMaxSolvers(controller.scale(cubeThreads));
+        }
+        CubeSolver negatedCubes = this.negatedCubeSolver;
+        if (negatedCubes != null) {
+            negatedCubes.setMaxSolvers(controller.scale(cubeThreads));
+        }
+    }
+
+    /**
+     * Creates a {@link CubeSolver} for the given model, limited to the current number of concurrent cubes.
+     *
+     * @param model The model to solve queries against.
+     * @param store The same model as clause store.
+     * @param executor The executor for the cubes.
+     *
+     * @return The new cube solver.
+     */
+    private @NonNull CubeSolver createCubeSolver(@NonNull Cnf model, @NonNull ClauseStore store,
+            @NonNull ExecutorService executor) {
+        CubeSolver result = new CubeSolver(model, store, cubeDepth, executor);
+        ResourceController controller = this.resourceController;
+        if (controller != null) {
+            result.setMaxSolvers(controller.scale(cubeThreads));
+        }
+        return result;
+    }
+
+    /**
+     * Sets a {@link SatQueryDumper}, which writes all queries issued to the solvers.
+     *
+     * @param queryDumper The dumper to use, or <code>null</code> to disable dumping.
+     */
+    public void setQueryDumper(@Nullable SatQueryDumper queryDumper) {
+        this.queryDumper = queryDumper;
+    }
+
+    /**
+     * Builds the {@link ImplicationGraph} of the variability model, which is used to decide queries without a SAT
+     * solver, if possible.
+     *
+     * @throws SolverException If checking the satisfiability of the model fails (only needed if the model contains
+     *      non-binary clauses).
+     */
+    public void useImplicationGraph() throws SolverException {
+        ImplicationGraph graph = new ImplicationGraph(getSolvedStore());
+        if (graph.hasWideClauses()) {
+            graph.setModelSatisfiable(isSatisfiable(new Cnf()));
+        }
+        this.implicationGraph = graph;
+        this.graphStage.backend = graph;
+    }
+
+    /**
+     * Samples a {@link SolutionPool} of valid configurations of the model. Queries against the model, which are
+     * satisfied by a sampled configuration, are then answered without a solver.
+     *
+     * @param size The number of configurations to sample.
+     */
+    public void useSolutionPool(int size) {
+        long start = System.currentTimeMillis();
+        // ~10 flips per variable and clause are usually enough for Kconfig models
+        ClauseStore store = getSolvedStore();
+        long maxFlips = 10L * (store.getVariableCount() + store.getClauseCount()) + 1000;
+        SolutionPool pool = SolutionPool.sample(store, size, maxFlips, POOL_SEED);
+        LOGGER.logInfo("Sampled " + pool.getSize() + " of " + size + " configurations in "
+                + (System.currentTimeMillis() - start) + " ms");
+        this.poolStage.backend = pool.getSize() > 0 ? pool : null;
+    }
+
+    /**
+     * Sets a {@link CompiledVarModel}, which answers all queries it can build within its node limit. The negated
+     * model is then only converted into CNF, if a query has to fall back to the SAT solver.
+     *
+     * @param compiledModel The compiled variability model, or <code>null</code> to use the SAT solver only.
+     */
+    public void setCompiledModel(@Nullable CompiledVarModel compiledModel) {
+        this.compiledStage.backend = compiledModel;
+    }
+
+    /**
+     * Returns whether a {@link CompiledVarModel} is used.
+     *
+     * @return <code>true</code> if a compiled model answers the queries.
+     */
+    public boolean hasCompiledModel() {
+        return compiledStage.backend != null;
+    }
+
+    /**
+     * Returns the variability model, on which the queries are answered. This is always the original model, also if
+     * equivalent variables are collapsed internally.
+     *
+     * @return The variability model as CNF.
+     */
+    public @NonNull Cnf getVarModel() {
+        return varModel;
+    }
+
+    /**
+     * Returns the negated variability model (of the reduced model, if equivalent variables are collapsed). It is
+     * computed on the first call.
+     *
+     * @return The negated variability model as CNF.
+     *
+     * @throws ConverterException If the negated variability model could not be converted into CNF.
+     */
+    public @NonNull Cnf getNegatedVarModel() throws ConverterException {
+        Cnf result = varModelNegated;
+        if (result == null) {
+            result = converter.convert(not(solvedModel.asFormula()));
+            varModelNegated = result;
+        }
+        return result;
+    }
+
+    /**
+     * Converts the given query into CNF. The result is cached until the next {@link #resetStatistics()}, as the
+     * detectors usually check the same formula against the model and its negation.
+     *
+     * @param query The query to convert.
+     *
+     * @return The query as CNF.
+     *
+     * @throws ConverterException If the conversion fails.
+     */
+    private @NonNull Cnf convert(@NonNull Formula query) throws ConverterException {
+        Cnf result = convertedQueries.get(query);
+        if (result == null) {
+            SelectorEncoding encoding = this.selectorEncoding;
+            result = encoding != null ? encoding.encode(query) : converter.convert(query);
+            convertedQueries.put(query, result);
+        }
+        return result;
+    }
+
+    /**
+     * Replaces collapsed variables in the given query by their representatives. The result (and all reduced
+     * sub-formulas) are cached until the next {@link #resetStatistics()}, so that repeated queries and shared
+     * sub-formulas keep their identity for {@link #convert(Formula)}.
+     *
+     * @param query The query to reduce.
+     *
+     * @return The reduced query, or the query itself if no variables are collapsed.
+     */
+    private @NonNull Formula reduce(@NonNull Formula query) {
+        Formula result = query;
+        EquivalenceReduction reduction = this.reduction;
+        if (reduction != null) {
+            result = reducedQueries.get(query);
+            if (result == null) {
+                result = reduction.reduce(query, reducedQueries);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given formula is satisfiable on its own, without any model.
+     *
+     * @param formula The formula to check.
+     *
+     * @return Whether the formula is satisfiable.
+     *
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If the formula could not be converted into CNF.
+     */
+    private boolean isSatisfiableAlone(@NonNull Formula formula) throws SolverException, ConverterException {
+        boolean result;
+        List<@NonNull Map<String, Boolean>> cubes = FormulaUtils.toCubes(formula, ImplicationGraph.MAX_CUBES);
+        if (cubes != null) {
+            // contradictory cubes are already dropped, every remaining cube is a solution
+            result = !cubes.isEmpty();
+        } else {
+            Cnf cnf = convert(formula);
+            countQuery(cnf);
+            result = SatSolverFactory.createSolver(cnf, false).isSatisfiable(new Cnf());
+        }
+        return result;
+    }
+
+    /**
+     * Checks if <code>varModel AND query</code> is satisfiable.
+     *
+     * @param query The query to check together with the variability model.
+     *
+     * @return Whether the variability model and the query are satisfiable.
+     *
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If the query could not be converted into CNF.
+     */
+    public boolean isSatisfiable(@NonNull Formula query) throws SolverException, ConverterException {
+        return checkWithModel(reduce(query));
+    }
+
+    /**
+     * Checks if <code>solvedModel AND query</code> is satisfiable with the fastest available method.
+     *
+     * @param query The (reduced) query to check together with the model.
+     *
+     * @return Whether the model and the query are satisfiable.
+     *
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If the query could not be converted into CNF.
+     */
+    private boolean checkWithModel(@NonNull Formula query) throws SolverException, ConverterException {
+        boolean result = decide(query, false);
+        LearnedClauses learned = this.learnedClauses;
+        if (!result && learned != null) {
+            // learn from the query as asked, independent of the backend and the CNF encoding
+            List<@NonNull Map<String, Boolean>> cubes = FormulaUtils.toCubes(query, 1);
+            if (cubes != null && cubes.size() == 1) {
+                learned.learnFromUnsatisfiable(cubes.get(0));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks if <code>NOT(varModel) AND query</code> is satisfiable.
+     *
+     * @param query The query to check together with the negated variability model.
+     *
+     * @return Whether the negated variability model and the query are satisfiable.
+     *
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If the query or the negated variability model could not be converted into CNF.
+     */
+    public boolean isSatisfiableWithNegatedModel(@NonNull Formula query) throws SolverException, ConverterException {
+        EquivalenceReduction reduction = this.reduction;
+        if (reduction != null) {
+            // NOT(M) AND q == (NOT(M') AND q') OR (NOT(E) AND q), see EquivalenceReduction
+            VariableFinder finder = new VariableFinder();
+            query.accept(finder);
+            if (reduction.hasFreeReplacedVariable(finder.getVariableNames())) {
+                totalEquivalenceDecisions++;
+                return isSatisfiableAlone(query);
+            }
+            if (isSatisfiableAlone(and(query, reduction.getViolation()))) {
+                totalEquivalenceDecisions++;
+                return true;
+            }
+            if (solvedModel.getRowCount() == 0) {
+                // the reduced model is TRUE, its negation can't be satisfied
+                totalEquivalenceDecisions++;
+                return false;
+            }
+        }
+        return checkWithNegatedModel(reduce(query));
+    }
+
+    /**
+     * Checks if <code>NOT(solvedModel) AND query</code> is satisfiable with the fastest available method.
+     *
+     * @param query The (reduced) query to check together with the negated model.
+     *
+     * @return Whether the negated model and the query are satisfiable.
+     *
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If the query or the negated model could not be converted into CNF.
+     */
+    private boolean checkWithNegatedModel(@NonNull Formula query) throws SolverException, ConverterException {
+        return decide(query, true);
+    }
+
+    /**
+     * Asks the {@link QueryBackend}s in order, until one of them decides the query.
+     *
+     * @param query The (reduced) query to check.
+     * @param negated Whether the query is checked together with the negated model.
+     *
+     * @return Whether the (negated) model and the query are satisfiable.
+     *
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If the query or the negated model could not be converted into CNF.
+     */
+    private boolean decide(@NonNull Formula query, boolean negated) throws SolverException, ConverterException {
+        Boolean result = null;
+        for (int i = 0; result == null && i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            QueryBackend backend = stage.backend;
+            if (backend != null) {
+                result = negated ? backend.checkNegated(query) : backend.check(query);
+                if (result != null) {
+                    stage.decisions++;
+                }
+            }
+        }
+        // the SAT backend decides every query
+        return Boolean.TRUE.equals(result);
+    }
+
+    /**
+     * Checks if <code>varModel AND query</code> is satisfiable.
+     *
+     * @param query The query to check together with the variability model.
+     *
+     * @return Whether the variability model and the query are satisfiable.
+     *
+     * @throws SolverException If the solver fails.
+     */
+    public boolean isSatisfiable(@NonNull Cnf query) throws SolverException {
+        Cnf warm = this.warmModel;
+        Cnf model = warm != null ? warm : solvedModel;
+        ISatSolver modelSolver = this.solver;
+        if (modelSolver == null) {
+            modelSolver = SatSolverFactory.createSolver(model, false);
+            this.solver = modelSolver;
+        }
+        countQuery(query);
+        boolean result;
+        ExecutorService executor = this.cubeExecutor;
+        if (executor != null && query.getRowCount() >= cubeMinClauses) {
+            CubeSolver cubes = this.cubeSolver;
+            if (cubes == null) {
+                cubes = createCubeSolver(model, getSolvedStore(), executor);
+                this.cubeSolver = cubes;
+            }
+            totalCubeDecisions++;
+            pollResources();
+            result = cubes.isSatisfiable(query);
+        } else {
+            result = modelSolver.isSatisfiable(query);
+        }
+
+        LearnedClauses learned = this.learnedClauses;
+        if (!result && learned != null) {
+            learned.learnFromUnsatisfiable(query);
+        }
+
+        SatQueryDumper dumper = this.queryDumper;
+        if (dumper != null) {
+            dumper.dump(query, false, result);
+        }
+        return result;
+    }
+
+    /**
+     * Checks if <code>NOT(varModel) AND query</code> is satisfiable.
+     *
+     * @param query The query to check together with the negated variability model.
+     *
+     * @return Whether the negated variability model and the query are satisfiable.
+     *
+     * @throws SolverException If the solver fails.
+     * @throws ConverterException If the negated variability model could not be converted into CNF.
+     */
+    public boolean isSatisfiableWithNegatedModel(@NonNull Cnf query) throws SolverException, ConverterException {
+        ISatSolver modelSolver = this.negatedSolver;
+        if (modelSolver == null) {
+            modelSolver = SatSolverFactory.createSolver(getNegatedVarModel(), false);
+            this.negatedSolver = modelSolver;
+        }
+        countQuery(query);
+        boolean result;
+        ExecutorService executor = this.cubeExecutor;
+        if (executor != null && query.getRowCount() >= cubeMinClauses) {
+            CubeSolver cubes = this.negatedCubeSolver;
+            if (cubes == null) {
+                Cnf negatedModel = getNegatedVarModel();
+                cubes = createCubeSolver(negatedModel, ClauseStore.of(negatedModel, offHeapStore), executor);
+                this.negatedCubeSolver = cubes;
+            }
+            totalCubeDecisions++;
+            pollResources();
+            result = cubes.isSatisfiable(query);
+        } else {
+            result = modelSolver.isSatisfiable(query);
+        }
+
+        SatQueryDumper dumper = this.queryDumper;
+        if (dumper != null) {
+            dumper.writeNegatedModel(getNegatedVarModel());
+            dumper.dump(query, true, result);
+        }
+        return result;
+    }
+
+    /**
+     * Updates the statistics for one issued SAT call.
+     *
+     * @param query The query that is passed to the solver.
+     */
+    private void countQuery(@NonNull Cnf query) {
+        satCalls++;
+        totalSatCalls++;
+        if (queryStatistics) {
+            maxQueryClauses = Math.max(maxQueryClauses, query.getRowCount());
+            maxQueryVariables = Math.max(maxQueryVariables, query.getAllVarNames().size());
+        }
+    }
+
+    /**
+     * Sets whether the size of the queries is measured for {@link #getMaxQueryClauses()} and
+     * {@link #getMaxQueryVariables()}. Off by default, as collecting the variables of each query is not for free;
+     * only needed for the {@link SlowQueryLog}.
+     *
+     * @param queryStatistics Whether to measure the size of the queries.
+     */
+    public void setQueryStatistics(boolean queryStatistics) {
+        this.queryStatistics = queryStatistics;
+    }
+
+    /**
+     * Resets the statistics of the issued queries, usually before the next variable is checked.
+     */
+    public void resetStatistics() {
+        convertedQueries.clear();
+        reducedQueries.clear();
+        effectLookups.clear();
+        SelectorEncoding encoding = this.selectorEncoding;
+        if (encoding != null) {
+            encoding.clear();
+        }
+        satCalls = 0;
+        maxQueryClauses = 0;
+        maxQueryVariables = 0;
+    }
+
+    /**
+     * Returns the number of SAT calls since the last {@link #resetStatistics()}.
+     *
+     * @return The number of SAT calls.
+     */
+    public int getSatCalls() {
+        return satCalls;
+    }
+
+    /**
+     * Returns the number of clauses of the largest query since the last {@link #resetStatistics()}. Always 0, unless
+     * enabled via {@link #setQueryStatistics(boolean)}.
+     *
+     * @return The maximum number of clauses of a query.
+     */
+    public int getMaxQueryClauses() {
+        return maxQueryClauses;
+    }
+
+    /**
+     * Returns the number of variables of the largest query since the last {@link #resetStatistics()}. Always 0,
+     * unless enabled via {@link #setQueryStatistics(boolean)}.
+     *
+     * @return The maximum number of variables of a query.
+     */
+    public int getMaxQueryVariables() {
+        return maxQueryVariables;
+    }
+
+    /**
+     * Returns a human readable summary of all queries answered by this solver.
+     *
+     * @return A summary of the answered queries.
+     */
+    public @NonNull String getSummary() {
+        long answered = totalEquivalenceDecisions + totalEffectDecisions;
+        StringBuilder decisions = new StringBuilder();
+        for (Stage stage : stages) {
+            answered += stage.decisions;
+            decisions.append(stage.decisions).append(" by ").append(stage.name).append(", ");
+        }
+        String summary = "Answered " + answered + " queries: " + decisions + totalEquivalenceDecisions
+                + " by collapsed equivalences, " + totalEffectDecisions + " by equivalent feature effects; "
+                + totalSatCalls + " SAT calls, " + totalCubeDecisions + " of them split into cubes";
+        EffectClasses classes = this.effectClasses;
+        if (classes != null) {
+            summary += "; " + classes.getClassCount() + " classes of equivalent feature effects, "
+                    + classes.getMatches() + " matches confirmed by " + classes.getEquivalenceChecks()
+                    + " equivalence checks";
+        }
+        return summary;
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * Selects the feature effects, which are checked by the mismatch detectors. Variables can be restricted with include
+ * and exclude patterns; skipped variables are not passed to the detectors at all. Variables on the priority list are
+ * passed first, in the order of the list, followed by all other selected variables in the order of the feature effect
+ * finder.
+ * <p>
+ * Optionally, the feature effects are read through a {@link SpillingBuffer}, which keeps only a bounded number of
+ * feature effects on the heap, if the detector falls behind the feature effect finder.
+ * </p>
+ *
+ * @author agent
+ */
+class VariableSelection {
+
+    private final @NonNull AnalysisComponent<VariableWithFeatureEffect> feFinder;
+
+    private final @Nullable Pattern include;
+
+    private final @Nullable Pattern exclude;
+
+    private final @NonNull List<String> priorities;
+
+    private @Nullable Iterator<VariableWithFeatureEffect> ordered;
+
+    private @Nullable SpillingBuffer buffer;
+
+    private int skipped;
+
+    /**
+     * Creates a selection for the given feature effects as configured in the {@link MismatchSettings}.
+     *
+     * @param config The configuration, {@link MismatchSettings} must already be registered.
+     * @param feFinder The component providing the feature effects.
+     */
+    VariableSelection(@NonNull Configuration config, @NonNull AnalysisComponent<VariableWithFeatureEffect> feFinder) {
+        this(feFinder, config.getValue(MismatchSettings.INCLUDE_VARIABLES),
+                config.getValue(MismatchSettings.EXCLUDE_VARIABLES),
+                config.getValue(MismatchSettings.PRIORITY_VARIABLES));
+        int spillThreshold = config.getValue(MismatchSettings.SPILL_THRESHOLD);
+        if (spillThreshold > 0) {
+            buffer = new SpillingBuffer(feFinder, spillThreshold, config.getValue(MismatchSettings.SPILL_DIR));
+        }
+    }
+
+    /**
+     * Creates a selection for the given feature effects.
+     *
+     * @param feFinder The component providing the feature effects.
+     * @param include If not <code>null</code>, only variables matching this pattern are selected.
+     * @param exclude If not <code>null</code>, variables matching this pattern are skipped.
+     * @param priorities Variables, which shall be checked first; may be <code>null</code>.
+     */
+    VariableSelection(@NonNull AnalysisComponent<VariableWithFeatureEffect> feFinder, @Nullable Pattern include,
+            @Nullable Pattern exclude, @Nullable List<String> priorities) {
+
+        this.feFinder = feFinder;
+        this.include = include;
+        this.exclude = exclude;
+        this.priorities = priorities != null ? priorities : Collections.emptyList();
+    }
+
+    /**
+     * Checks whether the given variable is selected by the include and exclude patterns.
+     *
+     * @param variable The name of the variable.
+     *
+     * @return <code>true</code> if the variable shall be checked.
+     */
+    boolean isSelected(@NonNull String variable) {
+        Pattern include = this.include;
+        Pattern exclude = this.exclude;
+        return (include == null || include.matcher(variable).matches())
+                && (exclude == null || !exclude.matcher(variable).matches());
+    }
+
+    /**
+     * Returns the next feature effect to check.
+     *
+     * @return The next selected feature effect or <code>null</code> if all were returned.
+     */
+    @Nullable VariableWithFeatureEffect next() {
+        VariableWithFeatureEffect result = null;
+        if (priorities.isEmpty()) {
+            VariableWithFeatureEffect candidate;
+            while (result == null && (candidate = nextFeatureEffect()) != null) {
+                if (isSelected(candidate.getVariable())) {
+                    result = candidate;
+                } else {
+                    skipped++;
+                }
+            }
+        } else {
+            Iterator<VariableWithFeatureEffect> ordered = this.ordered;
+            if (ordered == null) {
+                ordered = readPrioritized();
+                this.ordered = ordered;
+            }
+            if (ordered.hasNext()) {
+                result = ordered.next();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the next feature effect of the feature effect finder, read through the {@link SpillingBuffer} if
+     * configured.
+     *
+     * @return The next feature effect or <code>null</code> if the feature effect finder is done.
+     */
+    private @Nullable VariableWithFeatureEffect nextFeatureEffect() {
+        SpillingBuffer buffer = this.buffer;
+        return buffer != null ? buffer.take() : feFinder.getNextResult();
+    }
+
+    /**
+     * Reads all selected feature effects and orders them by the priority list. This needs to wait until the
+     * feature effect finder is done.
+     *
+     * @return The selected feature effects in the order, in which they shall be checked.
+     */
+    private @NonNull Iterator<VariableWithFeatureEffect> readPrioritized() {
+        Map<String, Integer> priorityIndex = new HashMap<>();
+        for (String variable : priorities) {
+            priorityIndex.putIfAbsent(variable, priorityIndex.size());
+        }
+
+        VariableWithFeatureEffect[] prioritized = new VariableWithFeatureEffect[priorityIndex.size()];
+        List<VariableWithFeatureEffect> others = new ArrayList<>();
+        VariableWithFeatureEffect candidate;
+        while ((candidate = nextFeatureEffect()) != null) {
+            if (!isSelected(candidate.getVariable())) {
+                skipped++;
+            } else {
+                Integer index = priorityIndex.get(candidate.getVariable());
+                if (index != null && prioritized[index] == null) {
+                    prioritized[index] = candidate;
+                } else {
+                    others.add(candidate);
+                }
+            }
+        }
+
+        List<VariableWithFeatureEffect> result = new ArrayList<>(prioritized.length + others.size());
+        for (VariableWithFeatureEffect variable : prioritized) {
+            if (variable != null) {
+                result.add(variable);
+            }
+        }
+        result.addAll(others);
+        return result.iterator();
+    }
+
+    /**
+     * Returns the number of feature effects, which were skipped because of the include and exclude patterns.
+     *
+     * @return The number of skipped feature effects so far.
+     */
+    int getSkippedCount() {
+        return skipped;
+    }
+
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.SatSolverFactory;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.config.Configuration;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.Logger;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.VariableFinder;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.util.null_checks.Nullable;
+
+/**
+ * The difference between the variability model of a previous version and the current one, used to reuse the results
+ * of the previous analysis for feature effects, which the model change cannot affect.
+ * <p>
+ * The variables of both models are partitioned into components, which are connected by the clauses of either model.
+ * A component is affected, if it contains an added or removed clause; all other components have exactly the same
+ * clauses in both models. If both models are satisfiable, a query over variables of unaffected components has the
+ * same result on both models. For queries against the negated model, additionally the existence of a violable
+ * clause outside of the query variables must not change, which is checked as well.
+ * </p>
+ *
+ * @author agent
+ */
+class VersionDelta {
+
+    private static final @NonNull Logger LOGGER = Logger.get();
+
+    /**
+     * The result of the previous analysis for a single variable.
+     */
+    private static final class PreviousResult {
+
+        private final @NonNull String featureEffect;
+
+        private final @Nullable MismatchResultType basicType;
+
+        private final @Nullable DetailedMismatchResultType detailedType;
+
+        /**
+         * Creates a previous result.
+         *
+         * @param featureEffect The feature effect, which was checked.
+         * @param basicType The basic result, may be <code>null</code> if only a detailed result is known.
+         * @param detailedType The detailed result, may be <code>null</code> if only a basic result is known.
+         */
+        private PreviousResult(@NonNull String featureEffect, @Nullable MismatchResultType basicType,
+                @Nullable DetailedMismatchResultType detailedType) {
+            this.featureEffect = featureEffect;
+            this.basicType = basicType;
+            this.detailedType = detailedType;
+        }
+
+    }
+
+    /**
+     * Variable name -&gt; id in the union of both models.
+     */
+    private final @NonNull Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * Union-find forest over the variable ids.
+     */
+    private int @NonNull [] parent;
+
+    /**
+     * Roots of components, which contain an added or removed clause.
+     */
+    private final @NonNull BitSet affectedRoots = new BitSet();
+
+    /**
+     * Roots of components, which contain at least one (non-tautological) clause.
+     */
+    private final @NonNull BitSet violableRoots = new BitSet();
+
+    private int unaffectedViolableCount;
+
+    private boolean previousAffectedViolable;
+
+    private boolean currentAffectedViolable;
+
+    private boolean globalChange;
+
+    private int addedClauses;
+
+    private int removedClauses;
+
+    private final @NonNull Map<String, PreviousResult> previousResults = new HashMap<>();
+
+    private int reused;
+
+    /**
+     * Computes the difference between two versions of the variability model.
+     *
+     * @param previous The variability model of the previous version.
+     * @param current The variability model of the current version.
+     */
+    VersionDelta(@NonNull ClauseStore previous, @NonNull ClauseStore current) {
+        parent = new int[previous.getVariableCount() + current.getVariableCount()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+
+        Set<List<Integer>> previousClauses = readClauses(previous);
+        Set<List<Integer>> currentClauses = readClauses(current);
+        parent = Arrays.copyOf(parent, ids.size());
+
+        BitSet previousViolable = new BitSet();
+        for (List<Integer> clause : previousClauses) {
+            boolean removed = !currentClauses.contains(clause);
+            if (removed) {
+                removedClauses++;
+            }
+            markClause(clause, removed, previousViolable);
+        }
+        BitSet currentViolable = new BitSet();
+        for (List<Integer> clause : currentClauses) {
+            boolean added = !previousClauses.contains(clause);
+            if (added) {
+                addedClauses++;
+            }
+            markClause(clause, added, currentViolable);
+        }
+
+        violableRoots.or(previousViolable);
+        violableRoots.or(currentViolable);
+        previousAffectedViolable = previousViolable.intersects(affectedRoots);
+        currentAffectedViolable = currentViolable.intersects(affectedRoots);
+        BitSet unaffectedViolable = (BitSet) violableRoots.clone();
+        unaffectedViolable.andNot(affectedRoots);
+        unaffectedViolableCount = unaffectedViolable.cardinality();
+    }
+
+    /**
+     * Reads the clauses of a model as sorted literal lists over the joint variable ids and joins the variables of
+     * each clause into one component. Tautologies are dropped, as they don't constrain the model.
+     *
+     * @param model The model to read.
+     *
+     * @return The normalized clauses of the model.
+     */
+    private @NonNull Set<List<Integer>> readClauses(@NonNull ClauseStore model) {
+        int[] jointIds = new int[model.getVariableCount()];
+        for (int id = 0; id < jointIds.length; id++) {
+            Integer jointId = ids.get(model.getName(id));
+            if (jointId == null) {
+                jointId = ids.size();
+                ids.put(model.getName(id), jointId);
+            }
+            jointIds[id] = jointId;
+        }
+
+        Set<List<Integer>> result = new HashSet<>();
+        for (int c = 0; c < model.getClauseCount(); c++) {
+            int[] clause = model.getClause(c);
+            for (int i = 0; i < clause.length; i++) {
+                clause[i] = 2 * jointIds[clause[i] / 2] + (clause[i] & 1);
+            }
+            Arrays.sort(clause);
+            boolean tautology = false;
+            for (int i = 1; i < clause.length; i++) {
+                tautology |= clause[i] == (clause[i - 1] ^ 1);
+            }
+            if (!tautology) {
+                Integer[] literals = new Integer[clause.length];
+                for (int i = 0; i < clause.length; i++) {
+                    literals[i] = clause[i];
+                    union(clause[0] / 2, clause[i] / 2);
+                }
+                result.add(Arrays.asList(literals));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records a clause for the component of its variables. Must be called after all components are joined.
+     *
+     * @param clause The clause.
+     * @param changed Whether the clause is only part of one of the two models.
+     * @param violable The roots of the components, which contain a clause of the model.
+     */
+    private void markClause(@NonNull List<Integer> clause, boolean changed, @NonNull BitSet violable) {
+        if (clause.isEmpty()) {
+            // the empty clause makes the whole model unsatisfiable
+            globalChange |= changed;
+        } else {
+            int root = find(clause.get(0) / 2);
+            violable.set(root);
+            if (changed) {
+                affectedRoots.set(root);
+            }
+        }
+    }
+
+    /**
+     * Finds the root of the component of a variable.
+     *
+     * @param id The variable id.
+     *
+     * @return The id of the root variable.
+     */
+    private int find(int id) {
+        int root = id;
+        while (parent[root] != root) {
+            root = parent[root];
+        }
+        int current = id;
+        while (parent[current] != root) {
+            int next = parent[current];
+            parent[current] = root;
+            current = next;
+        }
+        return root;
+    }
+
+    /**
+     * Joins the components of two variables.
+     *
+     * @param first The first variable id.
+     * @param second The second variable id.
+     */
+    private void union(int first, int second) {
+        int firstRoot = find(first);
+        int secondRoot = find(second);
+        if (firstRoot != secondRoot) {
+            parent[Math.max(firstRoot, secondRoot)] = Math.min(firstRoot, secondRoot);
+        }
+    }
+
+    /**
+     * Creates the delta as configured in the {@link MismatchSettings}: reads the previous variability model and the
+     * previous results and compares the previous model with the model of the given solver. Failures are logged, the
+     * detectors then check all feature effects.
+     *
+     * @param config The configuration, {@link MismatchSettings} must already be registered.
+     * @param solver The solver for the current variability model.
+     *
+     * @return The delta or <code>null</code> if the version-delta mode is not configured or can't be used.
+     */
+    static @Nullable VersionDelta create(@NonNull Configuration config, @NonNull VarModelSolver solver) {
+        File previousModelFile = config.getValue(MismatchSettings.DELTA_PREVIOUS_MODEL);
+        File previousResultsFile = config.getValue(MismatchSettings.DELTA_PREVIOUS_RESULTS);
+        if (previousModelFile == null && previousResultsFile == null) {
+            return null;
+        }
+        if (previousModelFile == null || previousResultsFile == null) {
+            LOGGER.logWarning("Version-delta mode needs both, the previous variability model and the previous "
+                    + "results; checking all feature effects");
+            return null;
+        }
+
+        VersionDelta result = null;
+        try {
+            Cnf previousModel = DimacsIO.read(previousModelFile).getCnf();
+            if (!SatSolverFactory.createSolver(previousModel, false).isSatisfiable(new Cnf())
+                    || !solver.isSatisfiable(new Cnf())) {
+                LOGGER.logWarning("Version-delta mode needs satisfiable variability models; checking all feature "
+                        + "effects");
+            } else {
+                result = new VersionDelta(ClauseStore.of(previousModel, false), solver.getModelStore());
+                try (BinaryResultReader reader = new BinaryResultReader(new FileInputStream(previousResultsFile))) {
+                    result.readPreviousResults(reader);
+                }
+                LOGGER.logInfo("Variability model changed by " + result.getAddedCount() + " added and "
+                        + result.getRemovedCount() + " removed clauses, " + result.previousResults.size()
+                        + " previous results available");
+            }
+        } catch (IOException | FormatException | SolverException e) {
+            LOGGER.logException("Could not set up version-delta mode, checking all feature effects", e);
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Reads the results of the previous analysis. Files of the {@link CombinedConfigMismatchDetector} provide both
+     * result types. A file with a single result column is considered to contain detailed results, if at least one
+     * value is only a description of a {@link DetailedMismatchResultType}; otherwise it is read as basic results.
+     *
+     * @param reader The reader for the previous results.
+     *
+     * @throws IOException If reading fails.
+     * @throws FormatException If the file is malformed.
+     */
+    void readPreviousResults(@NonNull BinaryResultReader reader) throws IOException, FormatException {
+        String[] columns = reader.getColumnNames();
+        List<String> columnList = Arrays.asList(columns);
+        int basicColumn = columnList.indexOf("Resolution");
+        int detailedColumn = columnList.indexOf("Detailed Resolution");
+
+        Map<String, BinaryResultReader.Row> rows = new HashMap<>();
+        boolean detailedOnly = false;
+        BinaryResultReader.Row row;
+        while ((row = reader.next()) != null) {
+            rows.put(row.getVariable(), row);
+            if (detailedColumn == -1 && basicColumn != -1) {
+                String value = row.getResult(basicColumn);
+                detailedOnly |= parseBasic(value) == null && parseDetailed(value) != null;
+            }
+        }
+        if (detailedColumn == -1 && detailedOnly) {
+            detailedColumn = basicColumn;
+            basicColumn = -1;
+        }
+
+        for (BinaryResultReader.Row previous : rows.values()) {
+            MismatchResultType basicType = basicColumn != -1 ? parseBasic(previous.getResult(basicColumn)) : null;
+            DetailedMismatchResultType detailedType = detailedColumn != -1
+                    ? parseDetailed(previous.getResult(detailedColumn)) : null;
+            if (basicType == null && detailedType != null) {
+                // the delta is only used for satisfiable models
+                basicType = CombinedConfigMismatchDetector.toBasicType(detailedType, true);
+            }
+            previousResults.put(previous.getVariable(),
+                    new PreviousResult(previous.getFeatureEffect(), basicType, detailedType));
+        }
+    }
+
+    /**
+     * Parses the description of a {@link MismatchResultType}.
+     *
+     * @param description The description.
+     *
+     * @return The result type or <code>null</code> if the description does not belong to a basic result type.
+     */
+    private static @Nullable MismatchResultType parseBasic(@NonNull String description) {
+        MismatchResultType result = null;
+        for (MismatchResultType type : MismatchResultType.values()) {
+            if (type.getDescription().equals(description)) {
+                result = type;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses the description of a {@link DetailedMismatchResultType}.
+     *
+     * @param description The description.
+     *
+     * @return The result type or <code>null</code> if the description does not belong to a detailed result type.
+     */
+    private static @Nullable DetailedMismatchResultType parseDetailed(@NonNull String description) {
+        DetailedMismatchResultType result = null;
+        for (DetailedMismatchResultType type : DetailedMismatchResultType.values()) {
+            if (type.getDescription().equals(description)) {
+                result = type;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the model change may affect the result for the given variable and feature effect.
+     *
+     * @param varName The name of the variable.
+     * @param featureEffect The feature effect of the variable.
+     *
+     * @return <code>true</code> if the feature effect has to be checked again.
+     */
+    boolean isAffected(@NonNull String varName, @NonNull Formula featureEffect) {
+        if (globalChange) {
+            return true;
+        }
+
+        VariableFinder finder = new VariableFinder();
+        featureEffect.accept(finder);
+        Set<String> variables = new HashSet<>(finder.getVariableNames());
+        variables.add(varName);
+
+        BitSet touchedViolable = new BitSet();
+        for (String variable : variables) {
+            Integer id = ids.get(variable);
+            if (id != null) {
+                int root = find(id);
+                if (affectedRoots.get(root)) {
+                    return true;
+                }
+                if (violableRoots.get(root)) {
+                    touchedViolable.set(root);
+                }
+            }
+        }
+
+        // NOT(model) AND query is satisfiable on other components, iff any other component has a violable clause
+        boolean otherUnaffectedViolable = unaffectedViolableCount > touchedViolable.cardinality();
+        return !otherUnaffectedViolable && previousAffectedViolable != currentAffectedViolable;
+    }
+
+    /**
+     * Returns the previous result of the given feature effect.
+     *
+     * @param varName The name of the variable.
+     * @param featureEffect The feature effect of the variable.
+     *
+     * @return The previous result or <code>null</code> if the variable was not checked with the same feature effect
+     *      before.
+     */
+    private @Nullable PreviousResult getPrevious(@NonNull String varName, @NonNull Formula featureEffect) {
+        PreviousResult result = previousResults.get(varName);
+        if (result != null && !result.featureEffect.equals(featureEffect.toString())) {
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the previous result of the {@link ConfigMismatchDetector}, if it can be reused. Only results of SAT
+     * checks are reused, the cheap checks for undefined variables have to be done by the caller before.
+     *
+     * @param varName The name of the variable.
+     * @param featureEffect The feature effect of the variable.
+     *
+     * @return The previous result type or <code>null</code> if the feature effect has to be checked.
+     */
+    @Nullable MismatchResultType reuseBasic(@NonNull String varName, @NonNull Formula featureEffect) {
+        PreviousResult previous = getPrevious(varName, featureEffect);
+        MismatchResultType result = previous != null ? previous.basicType : null;
+        if ((result != MismatchResultType.CONSISTENT && result != MismatchResultType.CONFLICT_WITH_VARMODEL)
+                || isAffected(varName, featureEffect)) {
+            result = null;
+        } else {
+            reused++;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the previous result of the {@link DetailedConfigMismatchDetector}, if it can be reused. Only results of
+     * SAT checks are reused, the cheap checks for undefined variables have to be done by the caller before.
+     *
+     * @param varName The name of the variable.
+     * @param featureEffect The feature effect of the variable.
+     *
+     * @return The previous result type or <code>null</code> if the feature effect has to be checked.
+     */
+    @Nullable DetailedMismatchResultType reuseDetailed(@NonNull String varName, @NonNull Formula featureEffect) {
+        PreviousResult previous = getPrevious(varName, featureEffect);
+        DetailedMismatchResultType result = previous != null ? previous.detailedType : null;
+        if (result == null || result == DetailedMismatchResultType.VARIABLE_NOT_DEFINED
+                || result == DetailedMismatchResultType.FORMULA_NOT_SUPPORTED
+                || result == DetailedMismatchResultType.ERROR || isAffected(varName, featureEffect)) {
+            result = null;
+        } else {
+            reused++;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of clauses, which are only part of the current model.
+     *
+     * @return The number of added clauses.
+     */
+    int getAddedCount() {
+        return addedClauses;
+    }
+
+    /**
+     * Returns the number of clauses, which are only part of the previous model.
+     *
+     * @return The number of removed clauses.
+     */
+    int getRemovedCount() {
+        return removedClauses;
+    }
+
+    /**
+     * Returns the number of results, which were reused from the previous analysis.
+     *
+     * @return The number of reused results.
+     */
+    int getReusedCount() {
+        return reused;
+    }
+
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+
+/**
+ * Generates synthetic, Kconfig-like workloads for benchmarking the mismatch detectors. Usage:
+ * <pre>
+ * java -cp ... net.ssehub.kernel_haven.config_mismatches.WorkloadGenerator &lt;variables&gt; &lt;output directory&gt;
+ *     [--feature-effects N] [--seed N]
+ * </pre>
+ * <p>
+ * The variables form a menu tree: each variable depends on its parent (binary clause), some top-level variables are
+ * forced (unit clauses), some variables select another variable (binary clause) or depend on a disjunction of
+ * variables (wide clause), and some variables form choice groups (one wide clause plus pairwise exclusions). All
+ * clauses are satisfied by a hidden witness configuration, so the model is always satisfiable.
+ * </p>
+ * <p>
+ * The feature effects mostly consist of a few literals over the ancestors of the variable, so most of them are
+ * consistent with the model; a heavy tail contains larger formulas, unrelated variables and variables that are not
+ * defined in the model. The model is written as <tt>model.dimacs</tt> (with <code>c &lt;id&gt; &lt;name&gt;</code>
+ * comments), the feature effects as <tt>feature_effects.csv</tt> in the format of the {@link FeatureEffectReader}.
+ * </p>
+ *
+ * @author agent
+ */
+public class WorkloadGenerator {
+
+    static final @NonNull String MODEL_FILE = "model.dimacs";
+
+    static final @NonNull String FEATURE_EFFECT_FILE = "feature_effects.csv";
+
+    private static final double ROOT_SHARE = 0.01;
+
+    private static final double FORCED_ROOT_SHARE = 0.1;
+
+    private static final double ENABLED_SHARE = 0.6;
+
+    private static final double CHOICE_SHARE = 0.03;
+
+    private static final double SELECT_SHARE = 0.15;
+
+    private static final double WIDE_DEPENDENCY_SHARE = 0.05;
+
+    private static final double UNDEFINED_SHARE = 0.02;
+
+    private static final double TRUE_FEATURE_EFFECT_SHARE = 0.2;
+
+    private static final int MAX_FEATURE_EFFECT_LITERALS = 32;
+
+    /**
+     * A generated workload.
+     */
+    static final class Workload {
+
+        private final @NonNull List<String> variables;
+
+        private final @NonNull Cnf model;
+
+        private final @NonNull List<VariableWithFeatureEffect> featureEffects;
+
+        /**
+         * Creates a workload.
+         *
+         * @param variables The variables of the model; the DIMACS id of a variable is its index + 1.
+         * @param model The variability model.
+         * @param featureEffects The feature effects to check against the model.
+         */
+        private Workload(@NonNull List<String> variables, @NonNull Cnf model,
+                @NonNull List<VariableWithFeatureEffect> featureEffects) {
+            this.variables = variables;
+            this.model = model;
+            this.featureEffects = featureEffects;
+        }
+
+        /**
+         * Returns the variables of the model.
+         *
+         * @return The variables; the DIMACS id of a variable is its index + 1.
+         */
+        @NonNull List<String> getVariables() {
+            return variables;
+        }
+
+        /**
+         * Returns the variability model.
+         *
+         * @return The model as CNF.
+         */
+        @NonNull Cnf getModel() {
+            return model;
+        }
+
+        /**
+         * Returns the feature effects.
+         *
+         * @return The feature effects in the order, in which they should be checked.
+         */
+        @NonNull List<VariableWithFeatureEffect> getFeatureEffects() {
+            return featureEffects;
+        }
+
+    }
+
+    private final @NonNull Random random;
+
+    /**
+     * Variable index -&gt; index of the parent in the menu tree, -1 for top-level variables.
+     */
+    private int @NonNull [] parents = new int[0];
+
+    /**
+     * Variable index -&gt; value in the witness configuration, which satisfies all clauses.
+     */
+    private boolean @NonNull [] witness = new boolean[0];
+
+    /**
+     * Creates a generator.
+     *
+     * @param seed The seed for the random generator; the same seed and sizes produce the same workload.
+     */
+    public WorkloadGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates a workload.
+     *
+     * @param nVariables The number of variables of the model, at least 1.
+     * @param nFeatureEffects The number of feature effects; at most one per model variable plus the undefined ones.
+     *
+     * @return The generated workload.
+     */
+    @NonNull Workload generate(int nVariables, int nFeatureEffects) {
+        List<String> variables = new ArrayList<>(nVariables);
+        for (int i = 1; i <= nVariables; i++) {
+            variables.add("VAR_" + i);
+        }
+        Cnf model = generateModel(variables);
+        List<VariableWithFeatureEffect> featureEffects = generateFeatureEffects(variables, nFeatureEffects);
+        return new Workload(variables, model, featureEffects);
+    }
+
+    /**
+     * Generates the variability model and the witness configuration.
+     *
+     * @param variables The names of the variables.
+     *
+     * @return The model.
+     */
+    private @NonNull Cnf generateModel(@NonNull List<String> variables) {
+        int n = variables.size();
+        parents = new int[n];
+        witness = new boolean[n];
+        Cnf model = new Cnf();
+        int nRoots = Math.max(1, (int) (n * ROOT_SHARE));
+
+        int i = 0;
+        while (i < n) {
+            if (i < nRoots) {
+                // top-level menu entry
+                parents[i] = -1;
+                witness[i] = random.nextDouble() < ENABLED_SHARE;
+                if (witness[i] && random.nextDouble() < FORCED_ROOT_SHARE) {
+                    model.addRow(new CnfVariable(variables.get(i)));
+                }
+                i++;
+
+            } else if (random.nextDouble() < CHOICE_SHARE && n - i >= 2) {
+                i = addChoice(variables, i, Math.min(n - i, 2 + random.nextInt(5)), model);
+
+            } else {
+                int parent = random.nextInt(i);
+                parents[i] = parent;
+                witness[i] = witness[parent] && random.nextDouble() < ENABLED_SHARE;
+                model.addRow(new CnfVariable(true, variables.get(i)), new CnfVariable(variables.get(parent)));
+                i++;
+            }
+        }
+
+        for (i = nRoots; i < n; i++) {
+            if (random.nextDouble() < SELECT_SHARE) {
+                addSelect(variables, i, model);
+            }
+            if (random.nextDouble() < WIDE_DEPENDENCY_SHARE) {
+                addWideDependency(variables, i, model);
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Adds a choice group: exactly one member is selected if the parent is selected.
+     *
+     * @param variables The names of the variables.
+     * @param first The index of the first member.
+     * @param size The number of members.
+     * @param model The model to add the clauses to.
+     *
+     * @return The index of the first variable after the choice group.
+     */
+    private int addChoice(@NonNull List<String> variables, int first, int size, @NonNull Cnf model) {
+        int parent = random.nextInt(first);
+        int selected = witness[parent] ? first + random.nextInt(size) : -1;
+        @NonNull CnfVariable[] atLeastOne = new @NonNull CnfVariable[size + 1];
+        atLeastOne[0] = new CnfVariable(true, variables.get(parent));
+        for (int m = first; m < first + size; m++) {
+            parents[m] = parent;
+            witness[m] = m == selected;
+            atLeastOne[m - first + 1] = new CnfVariable(variables.get(m));
+            model.addRow(new CnfVariable(true, variables.get(m)), new CnfVariable(variables.get(parent)));
+            for (int other = first; other < m; other++) {
+                model.addRow(new CnfVariable(true, variables.get(other)), new CnfVariable(true, variables.get(m)));
+            }
+        }
+        model.addRow(atLeastOne);
+        return first + size;
+    }
+
+    /**
+     * Adds a <tt>select</tt> of a random variable, if one is found that does not contradict the witness.
+     *
+     * @param variables The names of the variables.
+     * @param index The index of the selecting variable.
+     * @param model The model to add the clause to.
+     */
+    private void addSelect(@NonNull List<String> variables, int index, @NonNull Cnf model) {
+        for (int attempt = 0; attempt < 5; attempt++) {
+            int target = random.nextInt(variables.size());
+            if (target != index && (!witness[index] || witness[target])) {
+                model.addRow(new CnfVariable(true, variables.get(index)), new CnfVariable(variables.get(target)));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Adds a dependency on a disjunction of 2 - 4 random variables, which is satisfied by the witness.
+     *
+     * @param variables The names of the variables.
+     * @param index The index of the depending variable.
+     * @param model The model to add the clause to.
+     */
+    private void addWideDependency(@NonNull List<String> variables, int index, @NonNull Cnf model) {
+        int size = 2 + random.nextInt(3);
+        @NonNull CnfVariable[] clause = new @NonNull CnfVariable[size + 1];
+        clause[0] = new CnfVariable(true, variables.get(index));
+        boolean satisfied = !witness[index];
+        for (int k = 1; k <= size; k++) {
+            int target = random.nextInt(index);
+            if (k == size && !satisfied) {
+                // the depending variable is enabled, so its parent is enabled, too
+                target = parents[index];
+            }
+            satisfied |= witness[target];
+            clause[k] = new CnfVariable(variables.get(target));
+        }
+        model.addRow(clause);
+    }
+
+    /**
+     * Generates the feature effects for random variables.
+     *
+     * @param variables The names of the model variables.
+     * @param count The number of feature effects.
+     *
+     * @return The feature effects.
+     */
+    private @NonNull List<VariableWithFeatureEffect> generateFeatureEffects(@NonNull List<String> variables,
+            int count) {
+
+        List<Integer> order = new ArrayList<>(variables.size());
+        for (int i = 0; i < variables.size(); i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, random);
+
+        List<VariableWithFeatureEffect> result = new ArrayList<>(count);
+        int undefined = 0;
+        for (int i = 0; result.size() < count; i++) {
+            if (random.nextDouble() < UNDEFINED_SHARE || i >= order.size()) {
+                // variable used in the code, but not defined in Kconfig
+                undefined++;
+                result.add(new VariableWithFeatureEffect("UNDEFINED_" + undefined,
+                        generateFeatureEffect(variables, random.nextInt(variables.size()))));
+            } else {
+                int index = order.get(i);
+                result.add(new VariableWithFeatureEffect(variables.get(index),
+                        generateFeatureEffect(variables, index)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Generates a feature effect for the given variable. The number of literals follows a geometric distribution, most
+     * literals are ancestors of the variable.
+     *
+     * @param variables The names of the model variables.
+     * @param index The index of the variable, whose ancestors are mostly used.
+     *
+     * @return The feature effect.
+     */
+    private @NonNull Formula generateFeatureEffect(@NonNull List<String> variables, int index) {
+        if (random.nextDouble() < TRUE_FEATURE_EFFECT_SHARE) {
+            return True.INSTANCE;
+        }
+        int nLiterals = 1;
+        while (nLiterals < MAX_FEATURE_EFFECT_LITERALS && random.nextDouble() < 0.55) {
+            nLiterals++;
+        }
+
+        List<Formula> literals = new ArrayList<>(nLiterals);
+        int ancestor = parents[index];
+        for (int k = 0; k < nLiterals; k++) {
+            int target;
+            if (ancestor >= 0 && random.nextDouble() < 0.6) {
+                target = ancestor;
+                ancestor = parents[ancestor];
+            } else {
+                target = random.nextInt(variables.size());
+            }
+            Formula literal = new Variable(variables.get(target));
+            literals.add(random.nextDouble() < 0.15 ? not(literal) : literal);
+        }
+
+        // mostly plain conjunctions, otherwise a disjunction of small conjunctions
+        boolean conjunction = random.nextDouble() < 0.7;
+        Formula result = null;
+        Formula term = null;
+        for (Formula literal : literals) {
+            term = term == null ? literal : and(term, literal);
+            if (!conjunction && random.nextDouble() < 0.4) {
+                result = result == null ? term : or(result, term);
+                term = null;
+            }
+        }
+        if (term != null) {
+            result = result == null ? term : or(result, term);
+        }
+        return result != null ? result : True.INSTANCE;
+    }
+
+    /**
+     * Writes the model as DIMACS file, in which the id of each variable is its index + 1 and all variables are named.
+     *
+     * @param workload The workload to write the model of.
+     * @param file The destination file.
+     *
+     * @throws IOException If writing fails.
+     */
+    static void writeModel(@NonNull Workload workload, @NonNull File file) throws IOException {
+        List<String> variables = workload.getVariables();
+        Cnf model = workload.getModel();
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8))) {
+
+            Map<String, Integer> ids = new HashMap<>();
+            for (int i = 0; i < variables.size(); i++) {
+                ids.put(variables.get(i), i + 1);
+                out.write("c " + (i + 1) + " " + variables.get(i) + "\n");
+            }
+            out.write("p cnf " + variables.size() + " " + model.getRowCount() + "\n");
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < model.getRowCount(); i++) {
+                line.setLength(0);
+                for (CnfVariable literal : model.getRow(i)) {
+                    if (literal.isNegation()) {
+                        line.append('-');
+                    }
+                    line.append(ids.get(literal.getName())).append(' ');
+                }
+                line.append("0\n");
+                out.write(line.toString());
+            }
+        }
+    }
+
+    /**
+     * Writes the feature effects as CSV file, which can be read by the {@link FeatureEffectReader}.
+     *
+     * @param workload The workload to write the feature effects of.
+     * @param file The destination file.
+     *
+     * @throws IOException If writing fails.
+     */
+    static void writeFeatureEffects(@NonNull Workload workload, @NonNull File file) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8))) {
+
+            out.write("Variable;Feature Effect\n");
+            for (VariableWithFeatureEffect featureEffect : workload.getFeatureEffects()) {
+                out.write(featureEffect.getVariable() + ";" + featureEffect.getFeatureEffect() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Main method for running the generator from the command line.
+     *
+     * @param args The command line arguments, see class comment.
+     *
+     * @throws IOException If writing the workload fails.
+     */
+    public static void main(String[] args) throws IOException {
+        int nVariables = -1;
+        File directory = null;
+        int nFeatureEffects = -1;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--feature-effects") && i + 1 < args.length) {
+                nFeatureEffects = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (nVariables < 0) {
+                nVariables = Integer.parseInt(args[i]);
+            } else {
+                directory = new File(args[i]);
+            }
+        }
+        if (nVariables < 1 || directory == null) {
+            System.err.println("Usage: " + WorkloadGenerator.class.getName()
+                    + " <variables> <output directory> [--feature-effects N] [--seed N]");
+            System.exit(1);
+            return;
+        }
+
+        Workload workload = new WorkloadGenerator(seed).generate(nVariables,
+                nFeatureEffects >= 0 ? nFeatureEffects : defaultFeatureEffectCount(nVariables));
+        directory.mkdirs();
+        writeModel(workload, new File(directory, MODEL_FILE));
+        writeFeatureEffects(workload, new File(directory, FEATURE_EFFECT_FILE));
+        System.out.printf("Generated %d variables, %d clauses and %d feature effects in %s%n", nVariables,
+                workload.getModel().getRowCount(), workload.getFeatureEffects().size(), directory.getPath());
+    }
+
+    /**
+     * Returns the default number of feature effects for a model: in Linux, about two thirds of the Kconfig variables
+     * are used in the code.
+     *
+     * @param nVariables The number of variables of the model.
+     *
+     * @return The number of feature effects to generate.
+     */
+    static int defaultFeatureEffectCount(int nVariables) {
+        return Math.max(1, nVariables * 2 / 3);
+    }
+
+}
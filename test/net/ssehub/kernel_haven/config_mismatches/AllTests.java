@@ -26,8 +26,31 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
+    BinaryResultWriterTest.class,
+    ClauseStoreTest.class,
+    CombinedConfigMismatchDetectorTest.class,
+    CompiledVarModelTest.class,
     ConfigMismatchDetectorTest.class,
+    ConflictExplainerTest.class,
+    CubeSolverTest.class,
     DetailedConfigMismatchDetectorTest.class,
+    DimacsIOTest.class,
+    EffectClassesTest.class,
+    EquivalenceReductionTest.class,
+    FeatureEffectReaderTest.class,
+    ImplicationGraphTest.class,
+    LearnedClausesTest.class,
+    MismatchDaemonTest.class,
+    ResourceControllerTest.class,
+    SelectorEncodingTest.class,
+    ShadowVerifierTest.class,
+    SlowQueryLogTest.class,
+    SolutionPoolTest.class,
+    SpillingBufferTest.class,
+    StratifiedSampleTest.class,
+    VariableSelectionTest.class,
+    VersionDeltaTest.class,
+    WorkloadGeneratorTest.class,
     })
 public class AllTests {
 
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link BinaryResultWriter} and the {@link BinaryResultReader}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class BinaryResultWriterTest {
+
+    /**
+     * Tests that rows spanning several blocks are read back as written.
+     * @throws IOException Must not happen.
+     * @throws FormatException Must not happen.
+     */
+    @Test
+    public void testRoundTrip() throws IOException, FormatException {
+        int rows = BinaryResultWriter.BLOCK_SIZE * 2 + 17;
+        Formula fe = and("ALPHA", "BETA");
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryResultWriter writer = BinaryResultWriter.forCombinedResults(out)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write(new CombinedConfigMismatchResult("VAR_" + (i % 100), i % 2 == 0 ? fe : new Variable("X"),
+                        MismatchResultType.values()[i % MismatchResultType.values().length],
+                        DetailedMismatchResultType.values()[i % DetailedMismatchResultType.values().length]));
+            }
+            Assert.assertEquals(rows, writer.getRowCount());
+        }
+        
+        try (BinaryResultReader reader = new BinaryResultReader(new ByteArrayInputStream(out.toByteArray()))) {
+            Assert.assertArrayEquals(new String[] {"Resolution", "Detailed Resolution"}, reader.getColumnNames());
+            for (int i = 0; i < rows; i++) {
+                BinaryResultReader.Row row = reader.next();
+                Assert.assertNotNull(row);
+                Assert.assertEquals("VAR_" + (i % 100), row.getVariable());
+                Assert.assertEquals(i % 2 == 0 ? fe.toString() : "X", row.getFeatureEffect());
+                Assert.assertEquals(MismatchResultType.values()[i % MismatchResultType.values().length]
+                        .getDescription(), row.getResult(0));
+                Assert.assertEquals(DetailedMismatchResultType.values()[i % DetailedMismatchResultType.values()
+                        .length].getDescription(), row.getResult(1));
+            }
+            Assert.assertNull(reader.next());
+        }
+    }
+    
+    /**
+     * Tests the conversion into CSV.
+     * @throws IOException Must not happen.
+     * @throws FormatException Must not happen.
+     */
+    @Test
+    public void testToCsv() throws IOException, FormatException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryResultWriter writer = BinaryResultWriter.forBasicResults(out)) {
+            writer.write(new ConfigMismatchResult("ALPHA", new Variable("BETA"), MismatchResultType.CONSISTENT));
+            writer.write(new ConfigMismatchResult("BETA", new Variable("ALPHA"),
+                    MismatchResultType.CONFLICT_WITH_VARMODEL));
+        }
+        
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        try (BinaryResultReader reader = new BinaryResultReader(new ByteArrayInputStream(out.toByteArray()))) {
+            Assert.assertEquals(2, reader.toCsv(csv));
+        }
+        String[] lines = new String(csv.toByteArray(), StandardCharsets.UTF_8).split("\r?\n");
+        Assert.assertEquals(3, lines.length);
+        // don't depend on the separator of the CsvWriter
+        Assert.assertArrayEquals(new String[] {"Variable", "Feature Effect", "Resolution"}, lines[0].split("[;,]"));
+        Assert.assertArrayEquals(new String[] {"ALPHA", "BETA", "Consistent"}, lines[1].split("[;,]"));
+        Assert.assertArrayEquals(new String[] {"BETA", "ALPHA", "Conflicts with VarModel"}, lines[2].split("[;,]"));
+    }
+    
+    /**
+     * Tests that other files are rejected.
+     * @throws IOException Must not happen.
+     * @throws FormatException Expected.
+     */
+    @Test(expected = FormatException.class)
+    public void testInvalidFile() throws IOException, FormatException {
+        new BinaryResultReader(new ByteArrayInputStream("Variable;Feature Effect".getBytes(StandardCharsets.UTF_8)))
+            .close();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+
+/**
+ * Tests the {@link ClauseStore}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class ClauseStoreTest {
+
+    /**
+     * Creates the test model <code>(!A || B) &amp;&amp; (B || C || !D) &amp;&amp; (A)</code>.
+     * @return The test model.
+     */
+    private static Cnf createModel() {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable(true, "A"), new CnfVariable("B"));
+        cnf.addRow(new CnfVariable("B"), new CnfVariable("C"), new CnfVariable(true, "D"));
+        cnf.addRow(new CnfVariable("A"));
+        return cnf;
+    }
+    
+    /**
+     * Tests that the clauses are stored with dense ids in the order of the first occurrence.
+     */
+    @Test
+    public void testEncoding() {
+        for (boolean offHeap : new boolean[] {false, true}) {
+            ClauseStore store = ClauseStore.of(createModel(), offHeap);
+            
+            Assert.assertEquals(4, store.getVariableCount());
+            Assert.assertEquals(3, store.getClauseCount());
+            Assert.assertEquals(6, store.getLiteralCount());
+            Assert.assertEquals(0, store.getId("A"));
+            Assert.assertEquals(1, store.getId("B"));
+            Assert.assertEquals(2, store.getId("C"));
+            Assert.assertEquals(3, store.getId("D"));
+            Assert.assertEquals(-1, store.getId("E"));
+            Assert.assertEquals("C", store.getName(2));
+            
+            Assert.assertEquals(2, store.getClauseLength(0));
+            Assert.assertEquals(1, store.getLiteral(0, 0));
+            Assert.assertEquals(2, store.getLiteral(0, 1));
+            Assert.assertArrayEquals(new int[] {2, 4, 7}, store.getClause(1));
+            Assert.assertArrayEquals(new int[] {0}, store.getClause(2));
+        }
+    }
+    
+    /**
+     * Tests the detection of variables, which occur negated (i.e., on the left side of an implication).
+     */
+    @Test
+    public void testOccursNegated() {
+        ClauseStore store = ClauseStore.of(createModel(), false);
+        Assert.assertTrue(store.occursNegated("A"));
+        Assert.assertFalse(store.occursNegated("B"));
+        Assert.assertFalse(store.occursNegated("C"));
+        Assert.assertTrue(store.occursNegated("D"));
+        Assert.assertFalse(store.occursNegated("E"));
+    }
+    
+    /**
+     * Tests an empty model.
+     */
+    @Test
+    public void testEmptyModel() {
+        ClauseStore store = ClauseStore.of(new Cnf(), true);
+        Assert.assertEquals(0, store.getVariableCount());
+        Assert.assertEquals(0, store.getClauseCount());
+        Assert.assertEquals(0, store.getLiteralCount());
+    }
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.code_model.CodeBlock;
+import net.ssehub.kernel_haven.code_model.CodeElement;
+import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.fe_analysis.Settings;
+import net.ssehub.kernel_haven.fe_analysis.Settings.SimplificationType;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder;
+import net.ssehub.kernel_haven.fe_analysis.pcs.PcFinder;
+import net.ssehub.kernel_haven.test_utils.TestAnalysisComponentProvider;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.util.logic.Variable;
+import net.ssehub.kernel_haven.util.null_checks.NonNull;
+import net.ssehub.kernel_haven.variability_model.VariabilityModel;
+import net.ssehub.kernel_haven.variability_model.VariabilityModelDescriptor.ConstraintFileType;
+import net.ssehub.kernel_haven.variability_model.VariabilityVariable;
+
+/**
+ * Tests the {@link CombinedConfigMismatchDetector}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class CombinedConfigMismatchDetectorTest extends AbstractFinderTests<CombinedConfigMismatchResult> {
+
+    private AnalysisComponent<VariabilityModel> vm;
+    
+    private CombinedConfigMismatchDetector detector;
+    
+    private final Variable varA = new Variable("ALPHA");
+    private final Variable varB = new Variable("BETA");
+    private final Variable varG = new Variable("GAMMA");
+    
+    /**
+     * Tests that a contradiction is reported as conflict by the basic part.
+     */
+    @Test
+    public void testContradiction() {
+        // Load Variability Model: not A, B
+        setVarModel(new File("testdata/NotAAndB.cnf"));
+        
+        // Mock code file: B is nested in A
+        List<CombinedConfigMismatchResult> results = detectConfigMismatches(prepareNesting(varB, varA));
+        
+        Assert.assertEquals(2, results.size());
+        assertFacts(results.get(0), varA.getName(), MismatchResultType.CONSISTENT,
+                DetailedMismatchResultType.FORMULA_MORE_GENERAL);
+        assertFacts(results.get(1), varB.getName(), MismatchResultType.CONFLICT_WITH_VARMODEL,
+                DetailedMismatchResultType.CONTRADICTION);
+    }
+    
+    /**
+     * Tests a partial overlap and undefined variables.
+     */
+    @Test
+    public void testPartialOverlapAndUndefinedVariables() {
+        // Load Variability Model: A is nested in B
+        setVarModel(new File("testdata/ANestedInB.cnf"));
+        
+        // Mock code file: G is nested in B, U is nested in G
+        Variable varU = new Variable("A_UNDEFINED_VAR");
+        CodeBlock element = new CodeBlock(varB);
+        CodeBlock nestedElement = new CodeBlock(and(varB, varG));
+        nestedElement.addNestedElement(new CodeBlock(and(and(varB, varG), varU)));
+        element.addNestedElement(nestedElement);
+        List<CombinedConfigMismatchResult> results = detectConfigMismatches(element);
+        
+        Assert.assertEquals(3, results.size());
+        assertFacts(results.get(0), varU.getName(), MismatchResultType.VARIABLE_NOT_DEFINED,
+                DetailedMismatchResultType.VARIABLE_NOT_DEFINED);
+        assertFacts(results.get(1), varB.getName(), MismatchResultType.CONSISTENT,
+                DetailedMismatchResultType.CONSISTENT);
+        assertFacts(results.get(2), varG.getName(), MismatchResultType.CONFLICT_WITH_VARMODEL,
+                DetailedMismatchResultType.PARTIAL_OVERLAP);
+    }
+    
+    /**
+     * Tests that the separate result components provide the same results as the combined rows.
+     */
+    @Test
+    public void testResultStreams() {
+        // Load Variability Model: A conflicts B
+        setVarModel(new File("testdata/AConflictsB.cnf"));
+        
+        // Mock code file: B is nested in A
+        List<CombinedConfigMismatchResult> results = detectConfigMismatches(prepareNesting(varB, varA));
+        List<ConfigMismatchResult> basic = drain(detector.getBasicResults());
+        List<DetailedConfigMismatchResult> detailed = drain(detector.getDetailedResults());
+        
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals(2, basic.size());
+        Assert.assertEquals(2, detailed.size());
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(results.get(i).getVariable(), basic.get(i).getVariable());
+            Assert.assertEquals(results.get(i).getResult(), basic.get(i).getResult());
+            Assert.assertEquals(results.get(i).getVariable(), detailed.get(i).getVariable());
+            Assert.assertEquals(results.get(i).getDetailedResult(), detailed.get(i).getResult());
+        }
+        Assert.assertEquals(DetailedMismatchResultType.PARTIAL_OVERLAP_DEAD.getDescription(),
+                detailed.get(1).getResult());
+    }
+    
+    /**
+     * Tests that all three outputs can be consumed in one pipeline without losing rows, independent of which one is
+     * read first.
+     * 
+     * @throws SetUpException If the pipeline could not be set up.
+     */
+    @Test(timeout = 10000)
+    public void testAllOutputsConsumed() throws SetUpException {
+        // Load Variability Model: A conflicts B
+        setVarModel(new File("testdata/AConflictsB.cnf"));
+        
+        Properties properties = new Properties();
+        properties.setProperty(Settings.SIMPLIFIY.getKey(), SimplificationType.NO_SIMPLIFICATION.name());
+        TestConfiguration tConfig = new TestConfiguration(properties);
+        
+        // Mock code file: B is nested in A
+        SourceFile<CodeElement<?>> sourceFile = new SourceFile<>(new File("file1.c"));
+        sourceFile.addElement(prepareNesting(varB, varA));
+        PcFinder pcFinder = new PcFinder(tConfig, new TestAnalysisComponentProvider<SourceFile<?>>(sourceFile));
+        CombinedConfigMismatchDetector combined = new CombinedConfigMismatchDetector(tConfig, vm,
+                new FeatureEffectFinder(tConfig, pcFinder));
+        
+        // the side tables are read before the combined rows, reading them starts the detection
+        List<DetailedConfigMismatchResult> detailed = drain(combined.getDetailedResults());
+        List<ConfigMismatchResult> basic = drain(combined.getBasicResults());
+        List<CombinedConfigMismatchResult> results = drain(combined);
+        
+        Assert.assertEquals(2, detailed.size());
+        Assert.assertEquals(2, basic.size());
+        Assert.assertEquals(2, results.size());
+    }
+    
+    /**
+     * Tests the derivation of the basic result from the detailed result.
+     */
+    @Test
+    public void testToBasicType() {
+        Assert.assertEquals(MismatchResultType.CONSISTENT, CombinedConfigMismatchDetector.toBasicType(
+                DetailedMismatchResultType.FORMULA_MORE_GENERAL, true));
+        Assert.assertEquals(MismatchResultType.CONFLICT_WITH_VARMODEL, CombinedConfigMismatchDetector.toBasicType(
+                DetailedMismatchResultType.VM_MORE_GENERAL, true));
+        Assert.assertEquals(MismatchResultType.CONFLICT_WITH_VARMODEL, CombinedConfigMismatchDetector.toBasicType(
+                DetailedMismatchResultType.CONTRADICTION, true));
+        // no configuration can violate the feature effect, if no configuration is valid at all
+        Assert.assertEquals(MismatchResultType.CONSISTENT, CombinedConfigMismatchDetector.toBasicType(
+                DetailedMismatchResultType.CONTRADICTION, false));
+        Assert.assertEquals(MismatchResultType.ERROR, CombinedConfigMismatchDetector.toBasicType(
+                DetailedMismatchResultType.ERROR, true));
+    }
+    
+    /**
+     * Reads all results of the given component.
+     * 
+     * @param component The component to read from.
+     * @param <T> The result type.
+     * 
+     * @return All results of the component.
+     */
+    private static <T> List<T> drain(AnalysisComponent<T> component) {
+        List<T> results = new ArrayList<>();
+        T result;
+        while ((result = component.getNextResult()) != null) {
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Loads and sets the variability model based on the given CNF file.
+     * @param cnfFile A CNF representation of the variability model (must exist).
+     */
+    private void setVarModel(File cnfFile) {
+        Assert.assertTrue("VarModel file does not exist: " + cnfFile.getAbsolutePath(), cnfFile.exists());
+        
+        Set<VariabilityVariable> variables = new HashSet<>();
+        variables.add(new VariabilityVariable("ALPHA", "bool", 1));
+        variables.add(new VariabilityVariable("BETA", "bool", 2));
+        variables.add(new VariabilityVariable("GAMMA", "bool", 3));
+        VariabilityModel varModel = new VariabilityModel(cnfFile, variables);
+        varModel.getDescriptor().setConstraintFileType(ConstraintFileType.DIMACS);
+        
+        try {
+            vm = new TestAnalysisComponentProvider<VariabilityModel>(varModel);
+        } catch (SetUpException e) {
+            e.printStackTrace();
+            Assert.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a {@link CodeBlock} structure where one variable is nested insside another.
+     * 
+     * @param varBefore The inner, nested variable.
+     * @param varAfter The outer, parent variable.
+     * 
+     * @return A {@link CodeBlock} structure that has the FE: varBefore implies varAfter. 
+     */
+    private CodeBlock prepareNesting(Variable varBefore, Variable varAfter) {
+        CodeBlock element = new CodeBlock(varAfter);
+        CodeBlock nestedElement = new CodeBlock(and(varAfter, varBefore));
+        element.addNestedElement(nestedElement);
+        return element;
+    }
+    
+    /**
+     * Checks that the result matches the expected outcome.
+     * 
+     * @param var The result to check.
+     * @param name The expected variable name.
+     * @param basic The expected basic mismatch type.
+     * @param detailed The expected detailed mismatch type.
+     */
+    private void assertFacts(CombinedConfigMismatchResult var, String name, MismatchResultType basic,
+            DetailedMismatchResultType detailed) {
+        Assert.assertEquals(name, var.getVariable());
+        Assert.assertSame(basic, var.getResultType());
+        Assert.assertSame(detailed, var.getDetailedResultType());
+    }
+    
+    /**
+     * Runs the {@link CombinedConfigMismatchDetector} on the passed element and returns the result for testing.
+     * @param element A mocked element, which should be analyzed by the {@link CombinedConfigMismatchDetector}. 
+     * @return The detected configuration mismatches.
+     */
+    private List<CombinedConfigMismatchResult> detectConfigMismatches(CodeElement<?> element) {
+        return super.runAnalysis(element, SimplificationType.NO_SIMPLIFICATION);
+    }
+    
+    @Override
+    protected AnalysisComponent<CombinedConfigMismatchResult> callAnalysor(@NonNull TestConfiguration tConfig,
+            @NonNull AnalysisComponent<SourceFile<?>> cmComponent) throws SetUpException {
+        
+        PcFinder pcFinder = new PcFinder(tConfig, cmComponent);
+        FeatureEffectFinder feFinder = new FeatureEffectFinder(tConfig, pcFinder);
+        detector = new CombinedConfigMismatchDetector(tConfig, vm, feFinder);
+        detector.execute();
+        
+        return detector;
+    }
+
+}
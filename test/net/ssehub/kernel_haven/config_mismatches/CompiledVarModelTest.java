@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.FormatException;
+
+/**
+ * Tests the {@link CompiledVarModel}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class CompiledVarModelTest {
+
+    /**
+     * Loads a variability model from the test data.
+     * @param name The name of the DIMACS file in <code>testdata/</code>.
+     * @return The model as CNF.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    private static Cnf load(String name) throws IOException, FormatException {
+        return DimacsIO.read(new File("testdata", name)).getCnf();
+    }
+
+    /**
+     * Tests queries against a model, in which ALPHA and BETA exclude each other.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    @Test
+    public void testConflict() throws IOException, FormatException {
+        CompiledVarModel model = CompiledVarModel.compile(load("AConflictsB.cnf"), 1000, null);
+        Assert.assertNotNull(model);
+
+        Assert.assertEquals(Boolean.FALSE, model.isSatisfiable(and("ALPHA", "BETA")));
+        Assert.assertEquals(Boolean.TRUE, model.isSatisfiable(or("ALPHA", "BETA")));
+        Assert.assertEquals(Boolean.TRUE, model.isSatisfiable(and("ALPHA", "GAMMA")));
+
+        // The negated model is ALPHA and BETA
+        Assert.assertEquals(Boolean.TRUE, model.isSatisfiableWithNegatedModel(and("ALPHA", "GAMMA")));
+        Assert.assertEquals(Boolean.FALSE, model.isSatisfiableWithNegatedModel(not("ALPHA")));
+        Assert.assertEquals(Boolean.FALSE, model.isSatisfiableWithNegatedModel(or(not("ALPHA"), not("BETA"))));
+    }
+
+    /**
+     * Tests that an unsatisfiable model is compiled to false.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    @Test
+    public void testUnsatisfiableModel() throws IOException, FormatException {
+        Cnf cnf = load("NotAAndB.cnf");
+        cnf.addRow(new CnfVariable("ALPHA"));
+        CompiledVarModel model = CompiledVarModel.compile(cnf, 1000, null);
+        Assert.assertNotNull(model);
+
+        Assert.assertEquals(Boolean.FALSE, model.isSatisfiable(or("ALPHA", not("ALPHA"))));
+        Assert.assertEquals(Boolean.TRUE, model.isSatisfiableWithNegatedModel(or("ALPHA", not("ALPHA"))));
+    }
+
+    /**
+     * Tests that a compiled model is stored in and loaded from the cache directory.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    @Test
+    public void testCache() throws IOException, FormatException {
+        File cacheDir = File.createTempFile("compiled_model", "");
+        Assert.assertTrue(cacheDir.delete());
+        Assert.assertTrue(cacheDir.mkdir());
+        Cnf cnf = load("AEqualsB.cnf");
+        File cacheFile = new File(cacheDir, CompiledVarModel.fingerprint(cnf) + ".bdd");
+        try {
+            CompiledVarModel compiled = CompiledVarModel.compile(cnf, 1000, cacheDir);
+            Assert.assertNotNull(compiled);
+            Assert.assertTrue(cacheFile.isFile());
+
+            CompiledVarModel loaded = CompiledVarModel.compile(cnf, 1000, cacheDir);
+            Assert.assertNotNull(loaded);
+            Assert.assertEquals(compiled.getNodeCount(), loaded.getNodeCount());
+            Assert.assertEquals(Boolean.FALSE, loaded.isSatisfiable(and("ALPHA", not("BETA"))));
+            Assert.assertEquals(Boolean.TRUE, loaded.isSatisfiableWithNegatedModel(and("ALPHA", not("BETA"))));
+        } finally {
+            cacheFile.delete();
+            cacheDir.delete();
+        }
+    }
+
+}
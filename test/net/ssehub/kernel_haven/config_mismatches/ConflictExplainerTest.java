@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
+import net.ssehub.kernel_haven.cnf.IFormulaToCnfConverter;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link ConflictExplainer}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class ConflictExplainerTest {
+    
+    private static final IFormulaToCnfConverter CONVERTER
+        = FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING);
+
+    /**
+     * Creates the test model <code>ALPHA &amp;&amp; (!BETA || !GAMMA) &amp;&amp; (!ALPHA || ZETA) &amp;&amp;
+     * (DELTA || EPSILON)</code>.
+     * @return The test model.
+     */
+    private static Cnf createModel() {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable("ALPHA"));
+        cnf.addRow(new CnfVariable(true, "BETA"), new CnfVariable(true, "GAMMA"));
+        cnf.addRow(new CnfVariable(true, "ALPHA"), new CnfVariable("ZETA"));
+        cnf.addRow(new CnfVariable("DELTA"), new CnfVariable("EPSILON"));
+        return cnf;
+    }
+    
+    /**
+     * Creates an explainer for the test model.
+     * @param budgetMillis The time budget for the minimization.
+     * @return The explainer.
+     */
+    private static ConflictExplainer createExplainer(long budgetMillis) {
+        return new ConflictExplainer(ClauseStore.of(createModel(), false), CONVERTER, budgetMillis);
+    }
+    
+    /**
+     * Tests that a contradiction is explained by the responsible clauses only.
+     * @throws SolverException Must not happen.
+     * @throws ConverterException Must not happen.
+     */
+    @Test
+    public void testExplainContradiction() throws SolverException, ConverterException {
+        String explanation = createExplainer(10000).explainContradiction("ALPHA",
+                and(new Variable("BETA"), new Variable("GAMMA")));
+        
+        Assert.assertNotNull(explanation);
+        Assert.assertTrue(explanation, explanation.contains("(ALPHA)"));
+        Assert.assertTrue(explanation, explanation.contains("(!BETA || !GAMMA)"));
+        Assert.assertFalse(explanation, explanation.contains("ZETA"));
+        Assert.assertFalse(explanation, explanation.contains("DELTA"));
+    }
+    
+    /**
+     * Tests that satisfiable feature effects are not explained.
+     * @throws SolverException Must not happen.
+     * @throws ConverterException Must not happen.
+     */
+    @Test
+    public void testNoContradiction() throws SolverException, ConverterException {
+        // ALPHA can't be deselected, but BETA is possible
+        Assert.assertNull(createExplainer(10000).explainContradiction("ALPHA", new Variable("BETA")));
+        // BETA && GAMMA is impossible, but BETA can be deselected
+        Assert.assertNull(createExplainer(10000).explainContradiction("BETA",
+                and(new Variable("BETA"), new Variable("GAMMA"))));
+    }
+    
+    /**
+     * Tests that a contradiction is still explained if the time budget is used up.
+     * @throws SolverException Must not happen.
+     * @throws ConverterException Must not happen.
+     */
+    @Test
+    public void testExplainContradictionWithoutBudget() throws SolverException, ConverterException {
+        String explanation = createExplainer(0).explainContradiction("ALPHA",
+                and(new Variable("BETA"), new Variable("GAMMA")));
+        
+        Assert.assertNotNull(explanation);
+        Assert.assertTrue(explanation, explanation.contains("(ALPHA)"));
+        Assert.assertTrue(explanation, explanation.contains("(!BETA || !GAMMA)"));
+    }
+    
+    /**
+     * Tests that a conflict with the variability model is explained by a valid configuration.
+     * @throws SolverException Must not happen.
+     */
+    @Test
+    public void testExplainConflict() throws SolverException {
+        ConflictExplainer explainer = createExplainer(10000);
+        
+        // BETA can be selected without DELTA
+        String explanation = explainer.explainConflict("BETA", new Variable("DELTA"));
+        Assert.assertNotNull(explanation);
+        Assert.assertTrue(explanation, explanation.contains("BETA"));
+        Assert.assertTrue(explanation, explanation.contains("!DELTA"));
+        
+        // BETA implies !GAMMA in the model
+        Assert.assertNull(explainer.explainConflict("BETA", not(new Variable("GAMMA"))));
+    }
+
+}
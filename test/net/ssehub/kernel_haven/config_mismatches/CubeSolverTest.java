@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link CubeSolver}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class CubeSolverTest {
+
+    /**
+     * Creates the test model <code>(!ALPHA || BETA) &amp;&amp; (!BETA || GAMMA) &amp;&amp; (BETA || DELTA)</code>.
+     * @return The test model.
+     */
+    private static Cnf createModel() {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable(true, "ALPHA"), new CnfVariable("BETA"));
+        cnf.addRow(new CnfVariable(true, "BETA"), new CnfVariable("GAMMA"));
+        cnf.addRow(new CnfVariable("BETA"), new CnfVariable("DELTA"));
+        return cnf;
+    }
+    
+    /**
+     * Tests that the most frequent free variables of model and query are selected for splitting.
+     */
+    @Test
+    public void testSelectVariables() {
+        Cnf model = createModel();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CubeSolver solver = new CubeSolver(model, ClauseStore.of(model, false), 2, executor);
+            
+            Cnf query = new Cnf();
+            query.addRow(new CnfVariable("ALPHA"), new CnfVariable("GAMMA"));
+            query.addRow(new CnfVariable("BETA"));
+            // BETA is fixed by the query; ALPHA: 1 + 1, GAMMA: 1 + 1, DELTA (next to BETA): 1
+            Assert.assertEquals(Arrays.asList("ALPHA", "GAMMA"), solver.selectVariables(query));
+            
+            // fixed and not part of the model
+            query = new Cnf();
+            query.addRow(new CnfVariable("EPSILON"));
+            Assert.assertEquals(Arrays.asList(), solver.selectVariables(query));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Tests that model variables connected to the query are selected, and auxiliary variables are not.
+     */
+    @Test
+    public void testSelectConnectedVariables() {
+        Cnf model = createModel();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CubeSolver solver = new CubeSolver(model, ClauseStore.of(model, false), 2, executor);
+            
+            Cnf query = new Cnf();
+            query.addRow(new CnfVariable("ALPHA"));
+            query.addRow(new CnfVariable(SelectorEncoding.SELECTOR_PREFIX + 0), new CnfVariable("DELTA"));
+            // BETA (next to ALPHA and DELTA): 3, DELTA: 1 + 1; ALPHA is fixed, the selector is no model variable
+            Assert.assertEquals(Arrays.asList("BETA", "DELTA"), solver.selectVariables(query));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Tests that cube-and-conquer gives the same results as the single solver.
+     * @throws SolverException Must not happen.
+     * @throws ConverterException Must not happen.
+     */
+    @Test
+    public void testSameResults() throws SolverException, ConverterException {
+        VarModelSolver plain = new VarModelSolver(createModel(),
+                FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING));
+        VarModelSolver cubes = new VarModelSolver(createModel(),
+                FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING));
+        cubes.useCubeAndConquer(1, 2, 2);
+        
+        Formula[] queries = {
+            new Variable("ALPHA"),
+            and("ALPHA", not("GAMMA")),
+            and(not("BETA"), not("DELTA")),
+            or(and("ALPHA", not("BETA")), and("GAMMA", "DELTA")),
+            and(and("ALPHA", "DELTA"), not("GAMMA")),
+        };
+        for (Formula query : queries) {
+            Assert.assertEquals(query.toString(), plain.isSatisfiable(query), cubes.isSatisfiable(query));
+            Assert.assertEquals(query.toString(), plain.isSatisfiableWithNegatedModel(query),
+                    cubes.isSatisfiableWithNegatedModel(query));
+        }
+    }
+    
+    /**
+     * Tests that limiting the number of solvers does not change the results.
+     * @throws SolverException Must not happen.
+     */
+    @Test
+    public void testMaxSolvers() throws SolverException {
+        Cnf model = createModel();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CubeSolver solver = new CubeSolver(model, ClauseStore.of(model, false), 2, executor);
+            solver.setMaxSolvers(1);
+            
+            Cnf query = new Cnf();
+            query.addRow(new CnfVariable("ALPHA"));
+            query.addRow(new CnfVariable(true, "GAMMA"));
+            Assert.assertFalse(solver.isSatisfiable(query));
+            
+            solver.setMaxSolvers(0);
+            query = new Cnf();
+            query.addRow(new CnfVariable("ALPHA"));
+            query.addRow(new CnfVariable("DELTA"));
+            Assert.assertTrue(solver.isSatisfiable(query));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -18,8 +18,11 @@ package net.ssehub.kernel_haven.config_mismatches;
 import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 
 import org.junit.Assert;
@@ -30,6 +33,7 @@ import net.ssehub.kernel_haven.analysis.AnalysisComponent;
 import net.ssehub.kernel_haven.code_model.CodeBlock;
 import net.ssehub.kernel_haven.code_model.CodeElement;
 import net.ssehub.kernel_haven.code_model.SourceFile;
+import net.ssehub.kernel_haven.fe_analysis.Settings;
 import net.ssehub.kernel_haven.fe_analysis.Settings.SimplificationType;
 import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder;
 import net.ssehub.kernel_haven.fe_analysis.pcs.PcFinder;
@@ -53,6 +57,10 @@ public class DetailedConfigMismatchDetectorTest extends AbstractFinderTests<Deta
 
     private AnalysisComponent<VariabilityModel> vm;
     
+    private boolean twoPhase;
+    
+    private DetailedConfigMismatchDetector detector;
+    
     private final Variable varA = new Variable("ALPHA");
     private final Variable varB = new Variable("BETA");
     private final Variable varG = new Variable("GAMMA");
@@ -76,6 +84,78 @@ public class DetailedConfigMismatchDetectorTest extends AbstractFinderTests<Deta
         assertFacts(results.get(1), varB.getName(), "ALPHA", DetailedMismatchResultType.CONTRADICTION);
     }
  
+    /**
+     * Tests that the two-phase mode reports contradictions first and provides the provisional results of the first
+     * phase.
+     */
+    @Test
+    public void testTwoPhase() {
+        // Load Variability Model: not A, B
+        setVarModel(new File("testdata/NotAAndB.cnf"));
+        twoPhase = true;
+        
+        // Mock code file: B is nested in A
+        CodeBlock element = prepareNesting(varB, varA);
+        List<DetailedConfigMismatchResult> results = new ArrayList<>(detectConfigMismatches(element));
+        
+        Assert.assertEquals(2, results.size());
+        // the second phase runs in the background, so the final results may come in any order
+        results.sort(Comparator.comparing(DetailedConfigMismatchResult::getVariable));
+        assertFacts(results.get(0), varA.getName(), "1", DetailedMismatchResultType.FORMULA_MORE_GENERAL);
+        assertFacts(results.get(1), varB.getName(), "ALPHA", DetailedMismatchResultType.CONTRADICTION);
+        
+        List<ConfigMismatchResult> provisional = new ArrayList<>();
+        ConfigMismatchResult result;
+        while ((result = detector.getProvisionalResults().getNextResult()) != null) {
+            provisional.add(result);
+        }
+        Assert.assertEquals(2, provisional.size());
+        Assert.assertEquals(varA.getName(), provisional.get(0).getVariable());
+        Assert.assertEquals(MismatchResultType.CONSISTENT.getDescription(), provisional.get(0).getResult());
+        Assert.assertEquals(varB.getName(), provisional.get(1).getVariable());
+        Assert.assertEquals(MismatchResultType.CONFLICT_WITH_VARMODEL.getDescription(),
+                provisional.get(1).getResult());
+    }
+ 
+    /**
+     * Tests that the provisional results can be read without reading the results of the detector, i.e., that reading
+     * them starts the detection.
+     * 
+     * @throws SetUpException If the pipeline could not be set up.
+     */
+    @Test(timeout = 10000)
+    public void testProvisionalResultsStartDetection() throws SetUpException {
+        // Load Variability Model: not A, B
+        setVarModel(new File("testdata/NotAAndB.cnf"));
+        
+        Properties properties = new Properties();
+        properties.setProperty(Settings.SIMPLIFIY.getKey(), SimplificationType.NO_SIMPLIFICATION.name());
+        TestConfiguration tConfig = new TestConfiguration(properties);
+        MismatchSettings.registerAllSettings(tConfig);
+        tConfig.setValue(MismatchSettings.DETAILED_TWO_PHASE, true);
+        
+        // Mock code file: B is nested in A
+        SourceFile<CodeElement<?>> sourceFile = new SourceFile<>(new File("file1.c"));
+        sourceFile.addElement(prepareNesting(varB, varA));
+        PcFinder pcFinder = new PcFinder(tConfig, new TestAnalysisComponentProvider<SourceFile<?>>(sourceFile));
+        DetailedConfigMismatchDetector cmDetector = new DetailedConfigMismatchDetector(tConfig, vm,
+                new FeatureEffectFinder(tConfig, pcFinder));
+        
+        List<ConfigMismatchResult> provisional = new ArrayList<>();
+        ConfigMismatchResult result;
+        while ((result = cmDetector.getProvisionalResults().getNextResult()) != null) {
+            provisional.add(result);
+        }
+        Assert.assertEquals(2, provisional.size());
+        
+        // the results of the detector were computed by the same detection
+        int count = 0;
+        while (cmDetector.getNextResult() != null) {
+            count++;
+        }
+        Assert.assertEquals(2, count);
+    }
+ 
     /**
      * Tests if a dead feature in the overlap is detected.
      */
@@ -322,7 +402,12 @@ public class DetailedConfigMismatchDetectorTest extends AbstractFinderTests<Deta
         
         PcFinder pcFinder = new PcFinder(tConfig, cmComponent);
         FeatureEffectFinder feFinder = new FeatureEffectFinder(tConfig, pcFinder);
+        if (twoPhase) {
+            MismatchSettings.registerAllSettings(tConfig);
+            tConfig.setValue(MismatchSettings.DETAILED_TWO_PHASE, true);
+        }
         DetailedConfigMismatchDetector cmDetector = new DetailedConfigMismatchDetector(tConfig, vm, feFinder);
+        detector = cmDetector;
         cmDetector.execute();
         
         return cmDetector;
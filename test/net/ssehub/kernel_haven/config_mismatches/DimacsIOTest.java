@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.config_mismatches.DimacsIO.DimacsFile;
+import net.ssehub.kernel_haven.util.FormatException;
+
+/**
+ * Tests the {@link DimacsIO}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class DimacsIOTest {
+
+    /**
+     * Tests that the files in <code>testdata/</code> are read with their variable names.
+     * 
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    @Test
+    public void testReadTestdata() throws IOException, FormatException {
+        Cnf cnf = DimacsIO.read(new File("testdata/AEqualsB.cnf")).getCnf();
+        
+        Assert.assertEquals(2, cnf.getRowCount());
+        Assert.assertTrue(cnf.getAllVarNames().contains("ALPHA"));
+        Assert.assertTrue(cnf.getAllVarNames().contains("BETA"));
+        Assert.assertFalse(cnf.getAllVarNames().contains("GAMMA"));
+    }
+    
+    /**
+     * Tests that a written CNF can be read again, including its properties.
+     * 
+     * @throws IOException If reading or writing the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    @Test
+    public void testRoundTrip() throws IOException, FormatException {
+        Cnf cnf = DimacsIO.read(new File("testdata/NotAAndB.cnf")).getCnf();
+        Map<String, String> properties = new HashMap<>();
+        properties.put("expected", "SAT");
+        
+        File tmp = File.createTempFile("dimacs", ".cnf");
+        tmp.deleteOnExit();
+        DimacsIO.write(cnf, properties, tmp);
+        DimacsFile read = DimacsIO.read(tmp);
+        
+        Assert.assertEquals("SAT", read.getProperty("expected"));
+        Assert.assertNull(read.getProperty("model"));
+        Assert.assertEquals(cnf.getRowCount(), read.getCnf().getRowCount());
+        Assert.assertEquals(cnf.getAllVarNames(), read.getCnf().getAllVarNames());
+        Assert.assertEquals(cnf.asFormula().toString(), read.getCnf().asFormula().toString());
+    }
+
+}
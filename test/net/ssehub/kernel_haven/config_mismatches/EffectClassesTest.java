@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
+import net.ssehub.kernel_haven.cnf.IFormulaToCnfConverter;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link EffectClasses}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class EffectClassesTest {
+    
+    private static final IFormulaToCnfConverter CONVERTER
+        = FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING);
+    
+    private final Variable varA = new Variable("ALPHA");
+    private final Variable varB = new Variable("BETA");
+    private final Variable varG = new Variable("GAMMA");
+    
+    /**
+     * Tests that syntactically different, but equivalent formulas are grouped into one class.
+     * @throws SolverException Must not happen.
+     * @throws ConverterException Must not happen.
+     */
+    @Test
+    public void testEquivalentFormulas() throws SolverException, ConverterException {
+        EffectClasses classes = new EffectClasses(4, CONVERTER);
+        
+        EffectClasses.EffectClass distributed = classes.lookup(or(and(varA, varB), and(varA, varG)));
+        EffectClasses.EffectClass factored = classes.lookup(and(varA, or(varB, varG)));
+        Assert.assertNotNull(distributed);
+        Assert.assertSame(distributed, factored);
+        
+        // De Morgan
+        EffectClasses.EffectClass negatedOr = classes.lookup(not(or(varA, varB)));
+        Assert.assertSame(negatedOr, classes.lookup(and(not(varA), not(varB))));
+        Assert.assertNotSame(distributed, negatedOr);
+        
+        Assert.assertEquals(2, classes.getClassCount());
+        Assert.assertEquals(2, classes.getMatches());
+    }
+    
+    /**
+     * Tests that different formulas are kept in different classes.
+     * @throws SolverException Must not happen.
+     * @throws ConverterException Must not happen.
+     */
+    @Test
+    public void testDifferentFormulas() throws SolverException, ConverterException {
+        EffectClasses classes = new EffectClasses(4, CONVERTER);
+        
+        Assert.assertNotSame(classes.lookup(varA), classes.lookup(varB));
+        Assert.assertNotSame(classes.lookup(and(varA, varB)), classes.lookup(or(varA, varB)));
+        Assert.assertEquals(4, classes.getClassCount());
+        Assert.assertEquals(0, classes.getMatches());
+    }
+    
+    /**
+     * Tests that the detailed classification does not change if equivalent feature effects share their results.
+     */
+    @Test
+    public void testDetailedResultsUnchanged() {
+        // ALPHA => BETA
+        Cnf model = new Cnf();
+        model.addRow(new CnfVariable(true, "ALPHA"), new CnfVariable("BETA"));
+        
+        VarModelSolver plain = new VarModelSolver(model, CONVERTER);
+        VarModelSolver deduplicated = new VarModelSolver(model, CONVERTER);
+        deduplicated.useEffectClasses(4);
+        
+        Formula[] effects = {
+            varB, not(not(varB)), and(varB, or(varB, varG)),
+            varA, or(and(varA, varB), and(varA, not(varB))),
+            and(varA, varG), not(or(not(varA), not(varG))),
+        };
+        for (String variable : new String[] {"ALPHA", "BETA", "GAMMA"}) {
+            for (Formula effect : effects) {
+                plain.startVariable(variable);
+                deduplicated.startVariable(variable);
+                Assert.assertEquals(variable + " with " + effect,
+                        DetailedConfigMismatchDetector.checkWithSat(plain, variable, effect),
+                        DetailedConfigMismatchDetector.checkWithSat(deduplicated, variable, effect));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.logic.Conjunction;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Negation;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link EquivalenceReduction}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class EquivalenceReductionTest {
+
+    /**
+     * Creates a model, in which ALPHA is equivalent to NOT BETA, and at least one of BETA, GAMMA, DELTA is selected.
+     * @return The model.
+     */
+    private static Cnf createModel() {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable("ALPHA"), new CnfVariable("BETA"));
+        cnf.addRow(new CnfVariable(true, "ALPHA"), new CnfVariable(true, "BETA"));
+        cnf.addRow(new CnfVariable("BETA"), new CnfVariable("GAMMA"), new CnfVariable("DELTA"));
+        return cnf;
+    }
+    
+    /**
+     * Tests the detection of equivalent variables.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    @Test
+    public void testEquivalentVariables() throws IOException, FormatException {
+        Map<String, CnfVariable> equivalences = new ImplicationGraph(DimacsIO.read(new File("testdata",
+                "AEqualsB.cnf")).getCnf()).getEquivalentVariables();
+        Assert.assertEquals(1, equivalences.size());
+        Assert.assertEquals("ALPHA", equivalences.get("BETA").getName());
+        Assert.assertFalse(equivalences.get("BETA").isNegation());
+        
+        equivalences = new ImplicationGraph(createModel()).getEquivalentVariables();
+        Assert.assertEquals(1, equivalences.size());
+        Assert.assertEquals("ALPHA", equivalences.get("BETA").getName());
+        Assert.assertTrue(equivalences.get("BETA").isNegation());
+        
+        // only an implication, no equivalence
+        Assert.assertTrue(new ImplicationGraph(DimacsIO.read(new File("testdata", "ANestedInB.cnf")).getCnf())
+                .getEquivalentVariables().isEmpty());
+    }
+    
+    /**
+     * Tests the reduction of the model and of formulas.
+     */
+    @Test
+    public void testReduce() {
+        EquivalenceReduction reduction = EquivalenceReduction.compute(createModel());
+        Assert.assertNotNull(reduction);
+        
+        // the equivalence clauses become tautologies, BETA is replaced by NOT ALPHA
+        Cnf reduced = reduction.reduce(createModel());
+        Assert.assertEquals(1, reduced.getRowCount());
+        Assert.assertFalse(reduced.getAllVarNames().contains("BETA"));
+        
+        Formula formula = and("BETA", "GAMMA");
+        Assert.assertEquals(and(not("ALPHA"), "GAMMA").toString(), reduction.reduce(formula).toString());
+        
+        // unchanged formulas are not copied
+        Formula unchanged = or("ALPHA", "GAMMA");
+        Assert.assertSame(unchanged, reduction.reduce(unchanged));
+    }
+    
+    /**
+     * Tests that sub-formulas shared by several formulas stay shared after the reduction, if a cache is used.
+     */
+    @Test
+    public void testSharedSubFormulas() {
+        EquivalenceReduction reduction = EquivalenceReduction.compute(createModel());
+        Formula shared = or("BETA", "GAMMA");
+        Formula first = and("DELTA", shared);
+        Formula second = and("DELTA", not(shared));
+        
+        Map<Formula, Formula> cache = new IdentityHashMap<>();
+        Formula reducedFirst = reduction.reduce(first, cache);
+        Formula reducedSecond = reduction.reduce(second, cache);
+        Assert.assertSame(((Conjunction) reducedFirst).getRight(),
+                ((Negation) ((Conjunction) reducedSecond).getRight()).getFormula());
+        Assert.assertSame(reducedFirst, reduction.reduce(first, cache));
+    }
+    
+    /**
+     * Tests that collapsing equivalences does not change any result of the {@link VarModelSolver}.
+     * @throws SolverException Must not happen.
+     * @throws ConverterException Must not happen.
+     */
+    @Test
+    public void testSameResults() throws SolverException, ConverterException {
+        VarModelSolver plain = new VarModelSolver(createModel(),
+                FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING));
+        VarModelSolver collapsed = new VarModelSolver(createModel(),
+                FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING));
+        collapsed.collapseEquivalences();
+        
+        Formula[] queries = {
+            new Variable("ALPHA"),
+            and("ALPHA", "BETA"),
+            and("ALPHA", not("BETA")),
+            and(not("ALPHA"), not("BETA")),
+            and(and("ALPHA", not("BETA")), and(not("GAMMA"), not("DELTA"))),
+            and(and(not("ALPHA"), "BETA"), and(not("GAMMA"), not("DELTA"))),
+            or(not("BETA"), "GAMMA"),
+            and("GAMMA", "DELTA"),
+        };
+        for (Formula query : queries) {
+            Assert.assertEquals(query.toString(), plain.isSatisfiable(query), collapsed.isSatisfiable(query));
+            Assert.assertEquals(query.toString(), plain.isSatisfiableWithNegatedModel(query),
+                    collapsed.isSatisfiableWithNegatedModel(query));
+        }
+    }
+
+}
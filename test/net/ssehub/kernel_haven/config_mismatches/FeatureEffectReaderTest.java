@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+
+/**
+ * Tests the {@link FeatureEffectReader}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class FeatureEffectReaderTest {
+
+    /**
+     * Writes the given content into a temporary file and reads it with the {@link FeatureEffectReader}.
+     * @param content The content of the CSV file.
+     * @param windowSize The size of the mapped windows.
+     * @return The read feature effects.
+     * @throws IOException If writing the file fails.
+     * @throws SetUpException If creating the configuration fails.
+     */
+    private static List<VariableWithFeatureEffect> read(String content, int windowSize)
+            throws IOException, SetUpException {
+        
+        File file = File.createTempFile("feature_effects", ".csv");
+        try {
+            Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            FeatureEffectReader reader = new FeatureEffectReader(new TestConfiguration(new Properties()), file,
+                    windowSize);
+            List<VariableWithFeatureEffect> result = new ArrayList<>();
+            VariableWithFeatureEffect fe;
+            while ((fe = reader.getNextResult()) != null) {
+                result.add(fe);
+            }
+            return result;
+        } finally {
+            file.delete();
+        }
+    }
+    
+    /**
+     * Tests reading a file, which spans several mapped windows.
+     * @throws IOException Must not happen.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testWindows() throws IOException, SetUpException {
+        List<VariableWithFeatureEffect> result = read("Variable;Feature Effect\n"
+                + "ALPHA;BETA && GAMMA\n"
+                + "BETA;1\r\n"
+                + "\n"
+                + "GAMMA;!ALPHA || (BETA && DELTA)", 32);
+        
+        Assert.assertEquals(3, result.size());
+        Assert.assertEquals("ALPHA", result.get(0).getVariable());
+        Assert.assertEquals("BETA && GAMMA", result.get(0).getFeatureEffect().toString());
+        Assert.assertEquals("BETA", result.get(1).getVariable());
+        Assert.assertEquals("1", result.get(1).getFeatureEffect().toString());
+        Assert.assertEquals("GAMMA", result.get(2).getVariable());
+        Assert.assertEquals("!ALPHA || (BETA && DELTA)", result.get(2).getFeatureEffect().toString());
+    }
+    
+    /**
+     * Tests quoted fields, other column orders and the comma as separator.
+     * @throws IOException Must not happen.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testQuotesAndColumns() throws IOException, SetUpException {
+        List<VariableWithFeatureEffect> result = read("Feature Effect,\"Variable\",Resolution\n"
+                + "\"BETA || GAMMA\",ALPHA,\"Consistent, really\"\n", FeatureEffectReader.WINDOW_SIZE);
+        
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("ALPHA", result.get(0).getVariable());
+        Assert.assertEquals("BETA || GAMMA", result.get(0).getFeatureEffect().toString());
+    }
+    
+    /**
+     * Tests that each formula is parsed once, i.e., the same formula is returned on each request.
+     * @throws IOException Must not happen.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testParsedOnce() throws IOException, SetUpException {
+        List<VariableWithFeatureEffect> result = read("Variable;Feature Effect\nALPHA;BETA && !GAMMA\n",
+                FeatureEffectReader.WINDOW_SIZE);
+        
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("BETA && !GAMMA", result.get(0).getFeatureEffect().toString());
+        Assert.assertSame(result.get(0).getFeatureEffect(), result.get(0).getFeatureEffect());
+    }
+    
+    /**
+     * Tests that malformed formulas are skipped.
+     * @throws IOException Must not happen.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testMalformedFormula() throws IOException, SetUpException {
+        List<VariableWithFeatureEffect> result = read("Variable;Feature Effect\nALPHA;BETA &&\nBETA;GAMMA\n",
+                FeatureEffectReader.WINDOW_SIZE);
+        
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("BETA", result.get(0).getVariable());
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.logic.Formula;
+
+/**
+ * Tests the {@link ImplicationGraph}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class ImplicationGraphTest {
+
+    /**
+     * Converts the formula into cubes for the graph.
+     * @param formula The formula to convert.
+     * @return The cubes of the formula.
+     */
+    private static List<Map<String, Boolean>> cubes(Formula formula) {
+        List<Map<String, Boolean>> result = FormulaUtils.toCubes(formula, 64);
+        Assert.assertNotNull(result);
+        return result;
+    }
+    
+    /**
+     * Loads an implication graph from the test data.
+     * @param name The name of the DIMACS file in <code>testdata/</code>.
+     * @return The implication graph of the model.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    private static ImplicationGraph load(String name) throws IOException, FormatException {
+        return new ImplicationGraph(DimacsIO.read(new File("testdata", name)).getCnf());
+    }
+    
+    /**
+     * Tests queries against a model, in which ALPHA depends on BETA.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    @Test
+    public void testNesting() throws IOException, FormatException {
+        ImplicationGraph graph = load("ANestedInB.cnf");
+        
+        Assert.assertEquals(Boolean.FALSE, graph.isSatisfiable(cubes(and("ALPHA", not("BETA")))));
+        Assert.assertEquals(Boolean.TRUE, graph.isSatisfiable(cubes(and("BETA", not("ALPHA")))));
+        Assert.assertEquals(Boolean.TRUE, graph.isSatisfiable(cubes(or(and("ALPHA", not("BETA")), "GAMMA"))));
+        
+        Assert.assertTrue(graph.isSatisfiableWithNegatedModel(cubes(and("ALPHA", not("BETA")))));
+        Assert.assertFalse(graph.isSatisfiableWithNegatedModel(cubes(and("BETA", "GAMMA"))));
+        Assert.assertFalse(graph.isSatisfiableWithNegatedModel(cubes(not("ALPHA"))));
+    }
+    
+    /**
+     * Tests that equivalent variables end up in one strongly connected component.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    @Test
+    public void testEquivalence() throws IOException, FormatException {
+        ImplicationGraph graph = load("AEqualsB.cnf");
+        
+        // ALPHA, BETA, !ALPHA, !BETA -> 2 components
+        Assert.assertEquals(2, graph.getComponentCount());
+        Assert.assertEquals(Boolean.FALSE, graph.isSatisfiable(cubes(and("ALPHA", not("BETA")))));
+        Assert.assertEquals(Boolean.FALSE, graph.isSatisfiable(cubes(and(not("ALPHA"), "BETA"))));
+        Assert.assertEquals(Boolean.TRUE, graph.isSatisfiable(cubes(and("ALPHA", "BETA"))));
+    }
+    
+    /**
+     * Tests unit clauses and variables, which are not part of the model.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    @Test
+    public void testUnitClauses() throws IOException, FormatException {
+        ImplicationGraph graph = load("NotAAndB.cnf");
+        
+        Assert.assertEquals(Boolean.FALSE, graph.isSatisfiable(cubes(or("ALPHA", not("BETA")))));
+        Assert.assertEquals(Boolean.TRUE, graph.isSatisfiable(cubes(and("GAMMA", "BETA"))));
+        Assert.assertFalse(graph.isSatisfiableWithNegatedModel(cubes(and(not("ALPHA"), "BETA"))));
+        Assert.assertTrue(graph.isSatisfiableWithNegatedModel(cubes(not("BETA"))));
+    }
+    
+    /**
+     * Tests that queries touching non-binary clauses are only decided, if a conflict is found in the binary part.
+     */
+    @Test
+    public void testWideClauses() {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable("A"), new CnfVariable("B"), new CnfVariable("C"));
+        cnf.addRow(new CnfVariable(true, "A"), new CnfVariable("B"));
+        cnf.addRow(new CnfVariable(true, "D"), new CnfVariable("E"));
+        ImplicationGraph graph = new ImplicationGraph(cnf);
+        graph.setModelSatisfiable(true);
+        
+        Assert.assertTrue(graph.hasWideClauses());
+        Assert.assertNull(graph.isSatisfiable(cubes(not("B"))));
+        Assert.assertEquals(Boolean.FALSE, graph.isSatisfiable(cubes(and("A", not("B")))));
+        Assert.assertEquals(Boolean.TRUE, graph.isSatisfiable(cubes(and("D", "E"))));
+        Assert.assertEquals(Boolean.FALSE, graph.isSatisfiable(cubes(and("D", not("E")))));
+        
+        Assert.assertTrue(graph.isSatisfiableWithNegatedModel(cubes(and(not("A"), not("B")))));
+        Assert.assertFalse(graph.isSatisfiableWithNegatedModel(cubes(and("B", "E"))));
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
+import net.ssehub.kernel_haven.cnf.SolverException;
+
+/**
+ * Tests the {@link LearnedClauses}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class LearnedClausesTest {
+
+    /**
+     * Creates the test model <code>(!ALPHA || BETA) &amp;&amp; (!BETA || GAMMA)</code>.
+     * @return The test model.
+     */
+    private static Cnf createModel() {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable(true, "ALPHA"), new CnfVariable("BETA"));
+        cnf.addRow(new CnfVariable(true, "BETA"), new CnfVariable("GAMMA"));
+        return cnf;
+    }
+    
+    /**
+     * Creates a query of unit clauses.
+     * @param literals The literals of the unit clauses.
+     * @return The query.
+     */
+    private static Cnf units(CnfVariable... literals) {
+        Cnf query = new Cnf();
+        for (CnfVariable literal : literals) {
+            query.addRow(literal);
+        }
+        return query;
+    }
+    
+    /**
+     * Tests which queries are learned from.
+     * @throws IOException Must not happen.
+     */
+    @Test
+    public void testLearn() throws IOException {
+        File dir = Files.createTempDirectory("learned").toFile();
+        try {
+            LearnedClauses learned = new LearnedClauses(createModel(), dir);
+            Assert.assertEquals(0, learned.getLoaded().getRowCount());
+            
+            // ALPHA -> GAMMA
+            learned.learnFromUnsatisfiable(units(new CnfVariable("ALPHA"), new CnfVariable(true, "GAMMA")));
+            Assert.assertEquals(1, learned.getCount());
+            // duplicate
+            learned.learnFromUnsatisfiable(units(new CnfVariable(true, "GAMMA"), new CnfVariable("ALPHA")));
+            // clause of the model
+            learned.learnFromUnsatisfiable(units(new CnfVariable("ALPHA"), new CnfVariable(true, "BETA")));
+            // tautology
+            learned.learnFromUnsatisfiable(units(new CnfVariable("ALPHA"), new CnfVariable(true, "ALPHA")));
+            // unknown variable
+            learned.learnFromUnsatisfiable(units(new CnfVariable("DELTA")));
+            // not only unit clauses
+            Cnf query = new Cnf();
+            query.addRow(new CnfVariable("ALPHA"), new CnfVariable("BETA"));
+            learned.learnFromUnsatisfiable(query);
+            // too long
+            learned.learnFromUnsatisfiable(units(new CnfVariable("ALPHA"), new CnfVariable("BETA"),
+                    new CnfVariable("GAMMA"), new CnfVariable(true, "GAMMA")));
+            Assert.assertEquals(1, learned.getCount());
+        } finally {
+            deleteAll(dir);
+        }
+    }
+    
+    /**
+     * Tests that stored clauses are only loaded for the same model.
+     * @throws IOException Must not happen.
+     */
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File dir = Files.createTempDirectory("learned").toFile();
+        try {
+            LearnedClauses learned = new LearnedClauses(createModel(), dir);
+            learned.learnFromUnsatisfiable(units(new CnfVariable("ALPHA"), new CnfVariable(true, "GAMMA")));
+            learned.save();
+            
+            LearnedClauses loaded = new LearnedClauses(createModel(), dir);
+            Assert.assertEquals(1, loaded.getLoaded().getRowCount());
+            Assert.assertEquals(1, loaded.getCount());
+            
+            Cnf otherModel = createModel();
+            otherModel.addRow(new CnfVariable("ALPHA"));
+            Assert.assertEquals(0, new LearnedClauses(otherModel, dir).getLoaded().getRowCount());
+        } finally {
+            deleteAll(dir);
+        }
+    }
+    
+    /**
+     * Tests that a second run of the {@link VarModelSolver} starts with the clauses learned in the first run and
+     * gives the same results.
+     * @throws IOException Must not happen.
+     * @throws SolverException Must not happen.
+     */
+    @Test
+    public void testWarmStart() throws IOException, SolverException {
+        File dir = Files.createTempDirectory("learned").toFile();
+        try {
+            Cnf unsat = units(new CnfVariable("ALPHA"), new CnfVariable(true, "GAMMA"));
+            Cnf sat = units(new CnfVariable("GAMMA"), new CnfVariable(true, "ALPHA"));
+            
+            VarModelSolver first = new VarModelSolver(createModel(),
+                    FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING));
+            first.useLearnedClauses(dir);
+            Assert.assertFalse(first.isSatisfiable(unsat));
+            Assert.assertTrue(first.isSatisfiable(sat));
+            first.saveLearnedClauses();
+            
+            VarModelSolver second = new VarModelSolver(createModel(),
+                    FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING));
+            second.useLearnedClauses(dir);
+            Assert.assertFalse(second.isSatisfiable(unsat));
+            Assert.assertTrue(second.isSatisfiable(sat));
+            Assert.assertTrue(second.isSatisfiable(new Cnf()));
+        } finally {
+            deleteAll(dir);
+        }
+    }
+    
+    /**
+     * Tests that the {@link VarModelSolver} learns from unsatisfiable formula queries, which are a single cube, also
+     * if the queries are converted with the {@link SelectorEncoding} or decided by the {@link ImplicationGraph}.
+     * @throws IOException Must not happen.
+     * @throws SolverException Must not happen.
+     * @throws ConverterException Must not happen.
+     */
+    @Test
+    public void testLearnWithSelectorEncoding() throws IOException, SolverException, ConverterException {
+        File dir = Files.createTempDirectory("learned").toFile();
+        try {
+            VarModelSolver solver = new VarModelSolver(createModel(),
+                    FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING));
+            solver.useSelectorEncoding(true);
+            solver.useLearnedClauses(dir);
+            Assert.assertFalse(solver.isSatisfiable(and("ALPHA", not("GAMMA"))));
+            // satisfiable and not a single cube: nothing to learn
+            Assert.assertTrue(solver.isSatisfiable(and("GAMMA", not("ALPHA"))));
+            Assert.assertFalse(solver.isSatisfiable(or(and("ALPHA", not("BETA")), and("BETA", not("GAMMA")))));
+            
+            solver.useImplicationGraph();
+            Assert.assertFalse(solver.isSatisfiable(and(and("ALPHA", "BETA"), not("GAMMA"))));
+            solver.saveLearnedClauses();
+            
+            Assert.assertEquals(2, new LearnedClauses(createModel(), dir).getLoaded().getRowCount());
+        } finally {
+            deleteAll(dir);
+        }
+    }
+    
+    /**
+     * Deletes a directory with its files.
+     * @param dir The directory to delete.
+     */
+    private static void deleteAll(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.FormatException;
+
+/**
+ * Tests the {@link MismatchDaemon}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class MismatchDaemonTest {
+
+    /**
+     * Writes a model with the implication <code>ALPHA =&gt; BETA</code> and optionally <code>BETA =&gt; ALPHA</code>.
+     * @param file The file to write.
+     * @param equivalence Whether to add the second implication.
+     * @throws IOException If writing fails.
+     */
+    private static void writeModel(File file, boolean equivalence) throws IOException {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable(true, "ALPHA"), new CnfVariable("BETA"));
+        cnf.addRow(new CnfVariable("GAMMA"), new CnfVariable("DELTA"));
+        if (equivalence) {
+            cnf.addRow(new CnfVariable(true, "BETA"), new CnfVariable("ALPHA"));
+        }
+        DimacsIO.write(cnf, new HashMap<>(), file);
+    }
+    
+    /**
+     * Sends a batch of requests to the daemon.
+     * @param daemon The daemon.
+     * @param requests The request lines.
+     * @return The answer lines.
+     * @throws IOException Must not happen.
+     */
+    private static String[] serve(MismatchDaemon daemon, String... requests) throws IOException {
+        StringWriter out = new StringWriter();
+        daemon.serve(new StringReader(String.join("\n", requests) + "\n"), out);
+        return out.toString().split("\n");
+    }
+    
+    /**
+     * Tests answering requests and reloading a changed model.
+     * @throws IOException Must not happen.
+     * @throws FormatException Must not happen.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testRequests() throws IOException, FormatException, SetUpException {
+        File modelFile = File.createTempFile("daemon_model", ".dimacs");
+        modelFile.deleteOnExit();
+        writeModel(modelFile, false);
+        
+        MismatchDaemon daemon = new MismatchDaemon(modelFile, null);
+        String[] answers = serve(daemon, "ALPHA\tBETA", "BETA\tALPHA", "EPSILON\tALPHA", "malformed", "!quit",
+                "ALPHA\tBETA");
+        
+        Assert.assertEquals(4, answers.length);
+        Assert.assertEquals("ALPHA", answers[0].split("\t")[0]);
+        Assert.assertEquals(MismatchResultType.CONSISTENT.getDescription(), answers[0].split("\t")[1]);
+        Assert.assertEquals(MismatchResultType.CONFLICT_WITH_VARMODEL.getDescription(), answers[1].split("\t")[1]);
+        Assert.assertEquals(MismatchResultType.VARIABLE_NOT_DEFINED.getDescription(), answers[2].split("\t")[1]);
+        Assert.assertEquals(DetailedMismatchResultType.VARIABLE_NOT_DEFINED.getDescription(),
+                answers[2].split("\t")[2]);
+        Assert.assertTrue(answers[3].startsWith("!error"));
+        
+        // changed model file is reloaded before the next batch
+        writeModel(modelFile, true);
+        modelFile.setLastModified(modelFile.lastModified() + 2000);
+        answers = serve(daemon, "BETA\tALPHA");
+        Assert.assertEquals(MismatchResultType.CONSISTENT.getDescription(), answers[0].split("\t")[1]);
+        
+        answers = serve(daemon, "!reload");
+        Assert.assertEquals("!reloaded", answers[0]);
+    }
+
+}
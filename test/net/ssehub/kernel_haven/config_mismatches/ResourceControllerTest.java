@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ResourceController}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class ResourceControllerTest {
+
+    /**
+     * Tests that high heap occupancy or GC time halves the scale down to the minimum and low pressure restores it.
+     */
+    @Test
+    public void testAdapt() {
+        ResourceController controller = new ResourceController(80, 20);
+        Assert.assertEquals(1.0, controller.getScale(), 0);
+        
+        // no pressure: stays at full scale
+        Assert.assertFalse(controller.adapt(10, 0));
+        
+        Assert.assertTrue(controller.adapt(90, 0));
+        Assert.assertEquals(0.5, controller.getScale(), 0);
+        Assert.assertTrue(controller.adapt(50, 30));
+        Assert.assertEquals(0.25, controller.getScale(), 0);
+        
+        // between the thresholds: keep the scale
+        Assert.assertFalse(controller.adapt(70, 0));
+        Assert.assertFalse(controller.adapt(10, 15));
+        Assert.assertEquals(0.25, controller.getScale(), 0);
+        
+        for (int i = 0; i < 20; i++) {
+            controller.adapt(95, 50);
+        }
+        Assert.assertEquals(ResourceController.MIN_SCALE, controller.getScale(), 0);
+        
+        while (controller.adapt(10, 0)) {
+            // scale up until full size
+        }
+        Assert.assertEquals(1.0, controller.getScale(), 0);
+    }
+    
+    /**
+     * Tests scaling of sizes.
+     */
+    @Test
+    public void testScale() {
+        ResourceController controller = new ResourceController(80, 20);
+        Assert.assertEquals(1024, controller.scale(1024));
+        controller.adapt(90, 0);
+        Assert.assertEquals(512, controller.scale(1024));
+        Assert.assertEquals(1, controller.scale(1));
+        Assert.assertEquals(0, controller.scale(0));
+    }
+    
+    /**
+     * Tests that the sampling interval is respected.
+     */
+    @Test
+    public void testUpdateInterval() {
+        ResourceController controller = new ResourceController(100, 100);
+        // created just now, so no sample is taken
+        Assert.assertFalse(controller.update());
+        Assert.assertEquals(1.0, controller.getScale(), 0);
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.ConverterException;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory;
+import net.ssehub.kernel_haven.cnf.FormulaToCnfConverterFactory.Strategy;
+import net.ssehub.kernel_haven.cnf.SatSolverFactory;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link SelectorEncoding}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class SelectorEncodingTest {
+
+    /**
+     * Checks whether the encoded formula is satisfiable.
+     * @param encoding The encoding to use.
+     * @param formula The formula to encode and check.
+     * @return Whether the encoded formula is satisfiable.
+     * @throws ConverterException Must not happen.
+     * @throws SolverException Must not happen.
+     */
+    private static boolean isSatisfiable(SelectorEncoding encoding, Formula formula)
+            throws ConverterException, SolverException {
+        
+        return SatSolverFactory.createSolver(encoding.encode(formula), false).isSatisfiable(new Cnf());
+    }
+    
+    /**
+     * Tests that the encoding preserves satisfiability.
+     * @throws ConverterException Must not happen.
+     * @throws SolverException Must not happen.
+     */
+    @Test
+    public void testSatisfiability() throws ConverterException, SolverException {
+        SelectorEncoding encoding = new SelectorEncoding();
+        Assert.assertTrue(isSatisfiable(encoding, new Variable("ALPHA")));
+        Assert.assertTrue(isSatisfiable(encoding, or("ALPHA", not("BETA"))));
+        Assert.assertFalse(isSatisfiable(encoding, and("ALPHA", not("ALPHA"))));
+        Assert.assertFalse(isSatisfiable(encoding, and("ALPHA", or(not("ALPHA"), False.INSTANCE))));
+        Assert.assertTrue(isSatisfiable(encoding, or(False.INSTANCE, True.INSTANCE)));
+        Assert.assertFalse(isSatisfiable(encoding, not(True.INSTANCE)));
+        Assert.assertFalse(isSatisfiable(encoding, not(or(not("ALPHA"), "ALPHA"))));
+    }
+    
+    /**
+     * Tests that shared sub-formulas are only defined once.
+     * @throws ConverterException Must not happen.
+     */
+    @Test
+    public void testSharedDefinitions() throws ConverterException {
+        SelectorEncoding encoding = new SelectorEncoding();
+        Variable var = new Variable("ALPHA");
+        Formula featureEffect = or("BETA", and("GAMMA", "DELTA"));
+        
+        encoding.encode(or(not(var), featureEffect));
+        // ALPHA, NOT, BETA, GAMMA, DELTA, AND, OR (FE), OR (query)
+        Assert.assertEquals(8, encoding.getDefinitionCount());
+        
+        Cnf violation = encoding.encode(and(var, not(featureEffect)));
+        // only NOT and AND are new
+        Assert.assertEquals(10, encoding.getDefinitionCount());
+        // 3 clauses each for the three binary operators, plus the unit clause
+        Assert.assertEquals(10, violation.getRowCount());
+        
+        encoding.clear();
+        Assert.assertEquals(0, encoding.getDefinitionCount());
+    }
+    
+    /**
+     * Tests that structurally equal sub-formulas of different feature effects share their definitions.
+     * @throws ConverterException Must not happen.
+     * @throws SolverException Must not happen.
+     */
+    @Test
+    public void testStructuralCache() throws ConverterException, SolverException {
+        SelectorEncoding encoding = new SelectorEncoding(100);
+        encoding.encode(and("ALPHA", or("BETA", "GAMMA")));
+        Assert.assertEquals(2, encoding.getSelectorCount());
+        
+        // new instances, commuted operands
+        encoding.clear();
+        encoding.encode(and(or("GAMMA", "BETA"), "DELTA"));
+        Assert.assertEquals(3, encoding.getSelectorCount());
+        Assert.assertEquals(3, encoding.getCachedCount());
+        Assert.assertTrue(isSatisfiable(encoding, and(or("GAMMA", "BETA"), not("BETA"))));
+        Assert.assertFalse(isSatisfiable(encoding, and(or("GAMMA", "BETA"), and(not("BETA"), not("GAMMA")))));
+        
+        // bounded cache
+        encoding = new SelectorEncoding(1);
+        encoding.encode(and("ALPHA", or("BETA", "GAMMA")));
+        Assert.assertEquals(1, encoding.getCachedCount());
+        
+        // without cache, only instances are shared
+        encoding = new SelectorEncoding();
+        encoding.encode(or("BETA", "GAMMA"));
+        encoding.encode(or("BETA", "GAMMA"));
+        Assert.assertEquals(2, encoding.getSelectorCount());
+        Assert.assertEquals(0, encoding.getCachedCount());
+    }
+    
+    /**
+     * Tests that the {@link VarModelSolver} gives the same results with the selector encoding.
+     * @throws ConverterException Must not happen.
+     * @throws SolverException Must not happen.
+     */
+    @Test
+    public void testSameResults() throws ConverterException, SolverException {
+        Cnf model = new Cnf();
+        model.addRow(new CnfVariable(true, "ALPHA"), new CnfVariable("BETA"));
+        model.addRow(new CnfVariable("BETA"), new CnfVariable("GAMMA"), new CnfVariable("DELTA"));
+        
+        VarModelSolver plain = new VarModelSolver(model,
+                FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING));
+        VarModelSolver selectors = new VarModelSolver(model,
+                FormulaToCnfConverterFactory.create(Strategy.RECURISVE_REPLACING));
+        selectors.useSelectorEncoding(true);
+        
+        Formula featureEffect = or("BETA", and(not("GAMMA"), "DELTA"));
+        Formula[] queries = {
+            or(not("ALPHA"), featureEffect),
+            and("ALPHA", not(featureEffect)),
+            and(and("ALPHA", not("BETA")), featureEffect),
+            and(not("BETA"), and(not("GAMMA"), not("DELTA"))),
+            new Variable("EPSILON"),
+        };
+        for (Formula query : queries) {
+            Assert.assertEquals(query.toString(), plain.isSatisfiable(query), selectors.isSatisfiable(query));
+            Assert.assertEquals(query.toString(), plain.isSatisfiableWithNegatedModel(query),
+                    selectors.isSatisfiableWithNegatedModel(query));
+        }
+    }
+
+}
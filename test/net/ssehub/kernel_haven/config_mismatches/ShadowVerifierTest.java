@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link ShadowVerifier}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class ShadowVerifierTest {
+
+    /**
+     * Creates the test model <code>!ALPHA || BETA</code>.
+     * @return The test model.
+     */
+    private static Cnf createModel() {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable(true, "ALPHA"), new CnfVariable("BETA"));
+        return cnf;
+    }
+    
+    /**
+     * Tests that disagreements with the reference algorithm are detected.
+     */
+    @Test
+    public void testDisagreements() {
+        ShadowVerifier<MismatchResultType> shadow = new ShadowVerifier<>(createModel(),
+                ConfigMismatchDetector::checkWithSat, 100);
+        Formula fe = new Variable("BETA");
+        
+        shadow.submit("ALPHA", fe, MismatchResultType.CONSISTENT);
+        shadow.submit("BETA", new Variable("ALPHA"), MismatchResultType.CONSISTENT);
+        shadow.close();
+        
+        Assert.assertEquals(2, shadow.getCheckedCount());
+        // BETA can be selected without ALPHA
+        Assert.assertEquals(1, shadow.getDisagreementCount());
+    }
+    
+    /**
+     * Tests that samples are dropped and counted, if too many are waiting for the reference algorithm.
+     * @throws InterruptedException Must not happen.
+     */
+    @Test(timeout = 10000)
+    public void testDropWhenBehind() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ShadowVerifier<MismatchResultType> shadow = new ShadowVerifier<>(createModel(), (solver, varName, fe) -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return MismatchResultType.CONSISTENT;
+        }, 100, 1);
+        
+        shadow.submit("ALPHA", new Variable("BETA"), MismatchResultType.CONSISTENT);
+        running.await();
+        // the first one is checked right now, one can wait
+        shadow.submit("BETA", new Variable("ALPHA"), MismatchResultType.CONSISTENT);
+        shadow.submit("GAMMA", new Variable("ALPHA"), MismatchResultType.CONSISTENT);
+        release.countDown();
+        shadow.close();
+        
+        Assert.assertEquals(2, shadow.getCheckedCount());
+        Assert.assertEquals(1, shadow.getDroppedCount());
+        Assert.assertEquals(0, shadow.getDisagreementCount());
+    }
+    
+    /**
+     * Tests that nothing is re-checked with a rate of 0.
+     */
+    @Test
+    public void testRate() {
+        ShadowVerifier<DetailedMismatchResultType> shadow = new ShadowVerifier<>(createModel(),
+                DetailedConfigMismatchDetector::checkWithSat, 0);
+        shadow.submit("ALPHA", new Variable("BETA"), DetailedMismatchResultType.ERROR);
+        shadow.close();
+        
+        Assert.assertEquals(0, shadow.getCheckedCount());
+        Assert.assertEquals(0, shadow.getDisagreementCount());
+    }
+
+}
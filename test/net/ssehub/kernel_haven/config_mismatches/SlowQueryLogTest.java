@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.config_mismatches.SlowQueryLog.SlowQuery;
+
+/**
+ * Tests the {@link SlowQueryLog}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class SlowQueryLogTest {
+    
+    /**
+     * Creates an entry with the given time in milliseconds.
+     * 
+     * @param variable The name of the variable.
+     * @param millis The time in milliseconds.
+     * @param satCalls The number of SAT calls.
+     * 
+     * @return The entry.
+     */
+    private static SlowQuery query(String variable, long millis, int satCalls) {
+        return new SlowQuery(variable, millis * 1000000, satCalls, 3, 4, 5, "Consistent");
+    }
+    
+    /**
+     * Tests that only the N slowest entries are kept, and that the fastest one is evicted first.
+     */
+    @Test
+    public void testEvictsFastest() {
+        SlowQueryLog log = new SlowQueryLog(2);
+        log.record(query("A", 5, 1));
+        log.record(query("B", 1, 1));
+        Assert.assertTrue(log.isCandidate(2000000));
+        log.record(query("C", 3, 1));
+        
+        // B was evicted, a new entry must be slower than C
+        Assert.assertFalse(log.isCandidate(2000000));
+        Assert.assertTrue(log.isCandidate(4000000));
+        
+        log.record(query("D", 2, 1));
+        log.record(query("E", 4, 1));
+        
+        List<SlowQuery> slowest = log.getSlowestQueries();
+        Assert.assertEquals(2, slowest.size());
+        Assert.assertEquals("A", slowest.get(0).getVariable());
+        Assert.assertEquals("E", slowest.get(1).getVariable());
+    }
+    
+    /**
+     * Tests the average time per SAT call.
+     */
+    @Test
+    public void testNanosPerSatCall() {
+        Assert.assertEquals(2000000, query("A", 6, 3).getNanosPerSatCall());
+        // no SAT call at all: the total time
+        Assert.assertEquals(6000000, query("A", 6, 0).getNanosPerSatCall());
+    }
+    
+    /**
+     * Tests the columns of the written CSV file, and that the slowest entry is written first.
+     * 
+     * @throws IOException If writing or reading the file fails.
+     */
+    @Test
+    public void testWrite() throws IOException {
+        SlowQueryLog log = new SlowQueryLog(3);
+        log.record(query("FAST", 1, 1));
+        log.record(query("SLOW", 8, 4));
+        
+        File file = File.createTempFile("slow_queries", ".csv");
+        try {
+            log.write(file);
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            
+            Assert.assertEquals(3, lines.size());
+            Assert.assertArrayEquals(new String[] {"Variable", "Total Time (ms)", "SAT Calls",
+                "Time per SAT Call (ms)", "Feature Effect Nodes", "CNF Clauses", "CNF Variables", "Resolution"},
+                lines.get(0).split(";"));
+            
+            String[] slow = lines.get(1).split(";");
+            Assert.assertEquals(8, slow.length);
+            Assert.assertEquals("SLOW", slow[0]);
+            Assert.assertEquals(8.0, Double.parseDouble(slow[1]), 0.001);
+            Assert.assertEquals("4", slow[2]);
+            Assert.assertEquals(2.0, Double.parseDouble(slow[3]), 0.001);
+            Assert.assertEquals("3", slow[4]);
+            Assert.assertEquals("4", slow[5]);
+            Assert.assertEquals("5", slow[6]);
+            Assert.assertEquals("Consistent", slow[7]);
+            
+            Assert.assertEquals("FAST", lines.get(2).split(";")[0]);
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link SolutionPool}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class SolutionPoolTest {
+
+    /**
+     * Samples a pool for a model from the test data.
+     * @param name The name of the DIMACS file in <code>testdata/</code>.
+     * @param samples The number of configurations to sample.
+     * @return The sampled pool.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    private static SolutionPool sample(String name, int samples) throws IOException, FormatException {
+        return SolutionPool.sample(DimacsIO.read(new File("testdata", name)).getCnf(), samples, 1000, 42);
+    }
+    
+    /**
+     * Tests that only valid configurations are sampled.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    @Test
+    public void testValidConfigurations() throws IOException, FormatException {
+        SolutionPool pool = sample("AConflictsB.cnf", 100);
+        Assert.assertEquals(100, pool.getSize());
+        
+        // no configuration violates the model
+        Assert.assertFalse(pool.hasWitness(and("ALPHA", "BETA")));
+        // diverse configurations
+        Assert.assertTrue(pool.hasWitness(and("ALPHA", not("BETA"))));
+        Assert.assertTrue(pool.hasWitness(and(not("ALPHA"), "BETA")));
+        Assert.assertTrue(pool.hasWitness(or("ALPHA", not("ALPHA"))));
+        
+        pool = sample("NotAAndB.cnf", 64);
+        Assert.assertFalse(pool.hasWitness(new Variable("ALPHA")));
+        Assert.assertFalse(pool.hasWitness(not("BETA")));
+        Assert.assertTrue(pool.hasWitness(and(not("ALPHA"), "BETA")));
+    }
+    
+    /**
+     * Tests that variables, which are not part of the model, are unconstrained.
+     * @throws IOException If reading the file fails.
+     * @throws FormatException If the file is malformed.
+     */
+    @Test
+    public void testFreeVariables() throws IOException, FormatException {
+        SolutionPool pool = sample("NotAAndB.cnf", 64);
+        Assert.assertTrue(pool.hasWitness(new Variable("UNKNOWN")));
+        Assert.assertTrue(pool.hasWitness(not("UNKNOWN")));
+        Assert.assertFalse(pool.hasWitness(and("UNKNOWN", not("UNKNOWN"))));
+    }
+    
+    /**
+     * Tests that no configurations are sampled for an unsatisfiable model.
+     */
+    @Test
+    public void testUnsatisfiableModel() {
+        Cnf cnf = new Cnf();
+        cnf.addRow(new CnfVariable("ALPHA"));
+        cnf.addRow(new CnfVariable(true, "ALPHA"));
+        
+        SolutionPool pool = SolutionPool.sample(cnf, 64, 1000, 42);
+        Assert.assertEquals(0, pool.getSize());
+        Assert.assertFalse(pool.hasWitness(or("ALPHA", not("ALPHA"))));
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.analysis.AnalysisComponent;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.test_utils.TestAnalysisComponentProvider;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.util.logic.False;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link SpillingBuffer}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class SpillingBufferTest {
+    
+    /**
+     * Creates feature effects with all kinds of operators.
+     * @param count The number of feature effects to create.
+     * @return The feature effects.
+     */
+    private static VariableWithFeatureEffect[] createFeatureEffects(int count) {
+        VariableWithFeatureEffect[] result = new VariableWithFeatureEffect[count];
+        for (int i = 0; i < count; i++) {
+            Formula featureEffect;
+            switch (i % 4) {
+            case 0:
+                featureEffect = True.INSTANCE;
+                break;
+            case 1:
+                featureEffect = and(new Variable("A" + i), not(new Variable("B")));
+                break;
+            case 2:
+                featureEffect = or(and(new Variable("A" + i), False.INSTANCE), not(not(new Variable("A" + i))));
+                break;
+            default:
+                featureEffect = new Variable("B");
+                break;
+            }
+            result[i] = new VariableWithFeatureEffect("VAR_" + i, featureEffect);
+        }
+        return result;
+    }
+    
+    /**
+     * Takes all remaining feature effects of the buffer.
+     * @param buffer The buffer to read.
+     * @return The feature effects in the order of the buffer.
+     */
+    private static List<VariableWithFeatureEffect> takeAll(SpillingBuffer buffer) {
+        List<VariableWithFeatureEffect> result = new ArrayList<>();
+        VariableWithFeatureEffect featureEffect;
+        while ((featureEffect = buffer.take()) != null) {
+            result.add(featureEffect);
+        }
+        return result;
+    }
+    
+    /**
+     * Asserts that the feature effects are equal to the expected ones, in the same order.
+     * @param expected The expected feature effects.
+     * @param actual The actual feature effects.
+     */
+    private static void assertSameFeatureEffects(VariableWithFeatureEffect[] expected,
+            List<VariableWithFeatureEffect> actual) {
+        
+        Assert.assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i].getVariable(), actual.get(i).getVariable());
+            Assert.assertEquals(expected[i].getFeatureEffect().toString(), actual.get(i).getFeatureEffect().toString());
+        }
+    }
+    
+    /**
+     * Tests that feature effects beyond the threshold are spilled and read back in order.
+     * @throws SetUpException Must not happen.
+     * @throws IOException Must not happen.
+     */
+    @Test
+    public void testSpillInOrder() throws SetUpException, IOException {
+        File dir = Files.createTempDirectory("spill").toFile();
+        try {
+            SpillingBuffer buffer = new SpillingBuffer(new TestAnalysisComponentProvider<VariableWithFeatureEffect>(),
+                    5, dir);
+            VariableWithFeatureEffect[] featureEffects = createFeatureEffects(50);
+            List<VariableWithFeatureEffect> taken = new ArrayList<>();
+            
+            for (int i = 0; i < 20; i++) {
+                buffer.put(featureEffects[i]);
+            }
+            Assert.assertEquals(15, buffer.getSpilledCount());
+            for (int i = 0; i < 10; i++) {
+                taken.add(buffer.take());
+            }
+            // still spilled feature effects pending, so the new ones must go to disk as well
+            for (int i = 20; i < 50; i++) {
+                buffer.put(featureEffects[i]);
+            }
+            Assert.assertEquals(45, buffer.getSpilledCount());
+            buffer.finish();
+            taken.addAll(takeAll(buffer));
+            
+            assertSameFeatureEffects(featureEffects, taken);
+            // the segment files are deleted
+            Assert.assertArrayEquals(new File[0], dir.listFiles());
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+    
+    /**
+     * Tests that the memory is used again after all spilled feature effects are read.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testMemoryReusedAfterSpill() throws SetUpException {
+        SpillingBuffer buffer = new SpillingBuffer(new TestAnalysisComponentProvider<VariableWithFeatureEffect>(),
+                2, null);
+        VariableWithFeatureEffect[] featureEffects = createFeatureEffects(6);
+        List<VariableWithFeatureEffect> taken = new ArrayList<>();
+        
+        for (int i = 0; i < 3; i++) {
+            buffer.put(featureEffects[i]);
+        }
+        Assert.assertEquals(1, buffer.getSpilledCount());
+        for (int i = 0; i < 3; i++) {
+            taken.add(buffer.take());
+        }
+        for (int i = 3; i < 5; i++) {
+            buffer.put(featureEffects[i]);
+        }
+        Assert.assertEquals(1, buffer.getSpilledCount());
+        buffer.put(featureEffects[5]);
+        Assert.assertEquals(2, buffer.getSpilledCount());
+        buffer.finish();
+        taken.addAll(takeAll(buffer));
+        
+        assertSameFeatureEffects(featureEffects, taken);
+    }
+    
+    /**
+     * Tests that an interrupt while waiting ends the buffer and keeps the interrupt flag.
+     * @throws SetUpException Must not happen.
+     */
+    @Test(timeout = 10000)
+    public void testInterrupted() throws SetUpException {
+        // a source, which does not provide anything within the test
+        AnalysisComponent<VariableWithFeatureEffect> source
+            = new AnalysisComponent<VariableWithFeatureEffect>(new TestConfiguration(new Properties())) {
+                
+                @Override
+                protected void execute() {
+                    try {
+                        Thread.sleep(60000);
+                    } catch (InterruptedException e) {
+                        // end the source
+                    }
+                }
+                
+                @Override
+                public String getResultName() {
+                    return "Blocking Source";
+                }
+            };
+        SpillingBuffer buffer = new SpillingBuffer(source, 3, null);
+        
+        Thread.currentThread().interrupt();
+        Assert.assertNull(buffer.take());
+        Assert.assertTrue(Thread.interrupted());
+        
+        // further feature effects are dropped
+        buffer.put(createFeatureEffects(1)[0]);
+        Assert.assertNull(buffer.take());
+    }
+    
+    /**
+     * Tests that the feature effects of the source component are passed through.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testDrainSource() throws SetUpException {
+        VariableWithFeatureEffect[] featureEffects = createFeatureEffects(100);
+        SpillingBuffer buffer = new SpillingBuffer(new TestAnalysisComponentProvider<>(featureEffects), 3, null);
+        
+        assertSameFeatureEffects(featureEffects, takeAll(buffer));
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.or;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.test_utils.TestAnalysisComponentProvider;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.True;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link StratifiedSample}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class StratifiedSampleTest {
+    
+    private static final String CONSISTENT = MismatchResultType.CONSISTENT.getDescription();
+    
+    private static final String CONFLICT = MismatchResultType.CONFLICT_WITH_VARMODEL.getDescription();
+    
+    private static final String ERROR = MismatchResultType.ERROR.getDescription();
+    
+    /**
+     * Creates 100 trivial feature effects and 100 small feature effects.
+     * @return The selection of the feature effects.
+     * @throws SetUpException If creating the test component fails.
+     */
+    private static VariableSelection createSelection() throws SetUpException {
+        VariableWithFeatureEffect[] variables = new VariableWithFeatureEffect[200];
+        for (int i = 0; i < variables.length; i++) {
+            Formula featureEffect = i % 2 == 0 ? True.INSTANCE : and("A" + i, "B" + i);
+            variables[i] = new VariableWithFeatureEffect("VAR_" + i, featureEffect);
+        }
+        return new VariableSelection(new TestAnalysisComponentProvider<>(variables), null, null, null);
+    }
+    
+    /**
+     * Draws the sample and records the trivial feature effects as consistent and the others as conflicts.
+     * @param sample The sample to draw.
+     * @return The number of drawn feature effects.
+     * @throws SetUpException If creating the test component fails.
+     */
+    private static int drawAndRecord(StratifiedSample sample) throws SetUpException {
+        VariableSelection selection = createSelection();
+        int drawn = 0;
+        VariableWithFeatureEffect variable;
+        while ((variable = sample.next(selection)) != null) {
+            boolean trivial = variable.getFeatureEffect() == True.INSTANCE;
+            sample.record(variable.getFeatureEffect(), trivial ? CONSISTENT : CONFLICT);
+            drawn++;
+        }
+        return drawn;
+    }
+    
+    /**
+     * Checks the estimates of a sample drawn with {@link #drawAndRecord(StratifiedSample)}.
+     * @param sample The sample.
+     */
+    private static void assertEstimates(StratifiedSample sample) {
+        Assert.assertEquals(200, sample.getPopulation());
+        Assert.assertEquals(20, sample.getSampledCount());
+        
+        List<SampleEstimate> estimates = sample.getEstimates(CONSISTENT, CONFLICT, ERROR);
+        Assert.assertEquals(3, estimates.size());
+        
+        // the results are constant within each stratum, so the estimates are exact
+        Assert.assertEquals(CONSISTENT, estimates.get(0).getResult());
+        Assert.assertEquals(10, estimates.get(0).getSampled());
+        Assert.assertEquals(100, estimates.get(0).getEstimate());
+        Assert.assertEquals(100, estimates.get(0).getLower());
+        Assert.assertEquals(100, estimates.get(0).getUpper());
+        Assert.assertEquals(100, estimates.get(1).getEstimate());
+        
+        // never sampled: rule of three
+        Assert.assertEquals(0, estimates.get(2).getSampled());
+        Assert.assertEquals(0, estimates.get(2).getEstimate());
+        Assert.assertEquals(0, estimates.get(2).getLower());
+        Assert.assertEquals(30, estimates.get(2).getUpper());
+    }
+    
+    /**
+     * Tests the strata of feature effects of different sizes.
+     */
+    @Test
+    public void testStratumOf() {
+        Assert.assertEquals(0, StratifiedSample.stratumOf(True.INSTANCE));
+        Assert.assertEquals(0, StratifiedSample.stratumOf(new Variable("A")));
+        Assert.assertEquals(1, StratifiedSample.stratumOf(and("A", "B")));
+        Assert.assertEquals(2, StratifiedSample.stratumOf(or(and("A", "B"), new Variable("C"))));
+        
+        Formula large = new Variable("V0");
+        for (int i = 1; i < 10; i++) {
+            large = and(large, new Variable("V" + i));
+        }
+        Assert.assertEquals(3, StratifiedSample.stratumOf(large));
+    }
+    
+    /**
+     * Tests the allocation of the sample size to the strata.
+     */
+    @Test
+    public void testAllocate() {
+        Assert.assertArrayEquals(new int[] {10, 0, 5, 85}, StratifiedSample.allocate(new int[] {10, 0, 5, 85}, 200));
+        Assert.assertArrayEquals(new int[] {1, 0, 1, 8}, StratifiedSample.allocate(new int[] {10, 0, 5, 85}, 10));
+        Assert.assertArrayEquals(new int[] {3, 0, 2, 25}, StratifiedSample.allocate(new int[] {10, 0, 5, 85}, 30));
+    }
+    
+    /**
+     * Tests the sampling with a rate.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testRate() throws SetUpException {
+        StratifiedSample sample = new StratifiedSample(10, 0);
+        Assert.assertEquals(20, drawAndRecord(sample));
+        assertEstimates(sample);
+    }
+    
+    /**
+     * Tests the sampling with a sample size.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testSize() throws SetUpException {
+        StratifiedSample sample = new StratifiedSample(100, 20);
+        Assert.assertEquals(20, drawAndRecord(sample));
+        assertEstimates(sample);
+    }
+    
+    /**
+     * Tests that nothing is estimated without recorded results.
+     */
+    @Test
+    public void testNoResults() {
+        Assert.assertTrue(new StratifiedSample(10, 0).getEstimates(CONSISTENT).isEmpty());
+    }
+
+}
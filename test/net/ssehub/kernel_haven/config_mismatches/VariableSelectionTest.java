@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.test_utils.TestAnalysisComponentProvider;
+import net.ssehub.kernel_haven.util.logic.True;
+
+/**
+ * Tests the {@link VariableSelection}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class VariableSelectionTest {
+
+    /**
+     * Runs the selection on feature effects for the given variables.
+     * @param include The include pattern, may be <code>null</code>.
+     * @param exclude The exclude pattern, may be <code>null</code>.
+     * @param priorities The priority list, may be <code>null</code>.
+     * @return The names of the selected variables in the order of the selection.
+     * @throws SetUpException If creating the test component fails.
+     */
+    private static List<String> select(String include, String exclude, List<String> priorities)
+            throws SetUpException {
+        
+        VariableSelection selection = new VariableSelection(new TestAnalysisComponentProvider<>(
+                new VariableWithFeatureEffect("DRIVERS_A", True.INSTANCE),
+                new VariableWithFeatureEffect("NET_B", True.INSTANCE),
+                new VariableWithFeatureEffect("DRIVERS_C", True.INSTANCE),
+                new VariableWithFeatureEffect("NET_D", True.INSTANCE)),
+                include != null ? Pattern.compile(include) : null, exclude != null ? Pattern.compile(exclude) : null,
+                priorities);
+        
+        List<String> result = new ArrayList<>();
+        VariableWithFeatureEffect variable;
+        while ((variable = selection.next()) != null) {
+            result.add(variable.getVariable());
+        }
+        Assert.assertEquals(4 - result.size(), selection.getSkippedCount());
+        return result;
+    }
+    
+    /**
+     * Tests that all variables are passed in order without any settings.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testNoFilter() throws SetUpException {
+        Assert.assertEquals(Arrays.asList("DRIVERS_A", "NET_B", "DRIVERS_C", "NET_D"), select(null, null, null));
+    }
+    
+    /**
+     * Tests the include and exclude patterns.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testIncludeExclude() throws SetUpException {
+        Assert.assertEquals(Arrays.asList("DRIVERS_A", "DRIVERS_C"), select("DRIVERS_.*", null, null));
+        Assert.assertEquals(Arrays.asList("NET_B", "NET_D"), select(null, "DRIVERS_.*", null));
+        Assert.assertEquals(Arrays.asList("DRIVERS_C"), select("DRIVERS_.*", ".*_A", null));
+    }
+    
+    /**
+     * Tests that priority variables are passed first, in the order of the priority list.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testPriorities() throws SetUpException {
+        Assert.assertEquals(Arrays.asList("NET_D", "DRIVERS_C", "DRIVERS_A", "NET_B"),
+                select(null, null, Arrays.asList("NET_D", "UNKNOWN", "DRIVERS_C")));
+        // excluded variables are skipped, even if they are prioritized
+        Assert.assertEquals(Arrays.asList("DRIVERS_C", "DRIVERS_A"),
+                select("DRIVERS_.*", null, Arrays.asList("NET_D", "DRIVERS_C")));
+    }
+
+}
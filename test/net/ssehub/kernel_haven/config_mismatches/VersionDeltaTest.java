@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.and;
+import static net.ssehub.kernel_haven.util.logic.FormulaBuilder.not;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.util.FormatException;
+import net.ssehub.kernel_haven.util.logic.Formula;
+import net.ssehub.kernel_haven.util.logic.Variable;
+
+/**
+ * Tests the {@link VersionDelta}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class VersionDeltaTest {
+
+    /**
+     * Creates a clause store from the given clauses.
+     * @param clauses The clauses, literals starting with <tt>!</tt> are negated.
+     * @return The clause store.
+     */
+    private static ClauseStore model(String[]... clauses) {
+        Cnf cnf = new Cnf();
+        for (String[] clause : clauses) {
+            CnfVariable[] row = new CnfVariable[clause.length];
+            for (int i = 0; i < clause.length; i++) {
+                boolean negated = clause[i].startsWith("!");
+                row[i] = new CnfVariable(negated, negated ? clause[i].substring(1) : clause[i]);
+            }
+            cnf.addRow(row);
+        }
+        return ClauseStore.of(cnf, false);
+    }
+    
+    /**
+     * Tests that only feature effects connected to changed clauses are affected.
+     */
+    @Test
+    public void testAffectedComponents() {
+        VersionDelta delta = new VersionDelta(
+                model(new String[] {"!A", "B"}, new String[] {"C", "D"}, new String[] {"F", "G"}),
+                model(new String[] {"B", "!A"}, new String[] {"C", "D", "E"}, new String[] {"F", "G"}));
+        
+        Assert.assertEquals(1, delta.getAddedCount());
+        Assert.assertEquals(1, delta.getRemovedCount());
+        Assert.assertFalse(delta.isAffected("A", new Variable("B")));
+        Assert.assertFalse(delta.isAffected("X", and("A", not("G"))));
+        Assert.assertTrue(delta.isAffected("C", new Variable("A")));
+        Assert.assertTrue(delta.isAffected("A", new Variable("E")));
+    }
+    
+    /**
+     * Tests that a removed component affects queries against the negated model, if no other component can be
+     * violated.
+     */
+    @Test
+    public void testNegatedModel() {
+        VersionDelta delta = new VersionDelta(
+                model(new String[] {"!A", "B"}, new String[] {"C"}),
+                model(new String[] {"!A", "B"}));
+        
+        // NOT(model) AND A AND B was satisfiable by violating C, but isn't anymore
+        Assert.assertTrue(delta.isAffected("A", new Variable("B")));
+        
+        delta = new VersionDelta(
+                model(new String[] {"!A", "B"}, new String[] {"C"}, new String[] {"D"}),
+                model(new String[] {"!A", "B"}, new String[] {"D"}));
+        
+        // D can still be violated
+        Assert.assertFalse(delta.isAffected("A", new Variable("B")));
+        Assert.assertTrue(delta.isAffected("A", new Variable("D")));
+    }
+    
+    /**
+     * Tests that previous results are reused only for unaffected, unchanged feature effects.
+     * @throws IOException Must not happen.
+     * @throws FormatException Must not happen.
+     */
+    @Test
+    public void testReuse() throws IOException, FormatException {
+        Formula feA = new Variable("B");
+        Formula feC = new Variable("D");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryResultWriter writer = BinaryResultWriter.forDetailedResults(out)) {
+            writer.write(new DetailedConfigMismatchResult("A", feA, DetailedMismatchResultType.VM_MORE_GENERAL));
+            writer.write(new DetailedConfigMismatchResult("C", feC, DetailedMismatchResultType.CONSISTENT));
+            writer.write(new DetailedConfigMismatchResult("F", feA, DetailedMismatchResultType.FORMULA_NOT_SUPPORTED));
+        }
+        
+        VersionDelta delta = new VersionDelta(
+                model(new String[] {"!A", "B"}, new String[] {"C", "D"}),
+                model(new String[] {"!A", "B"}, new String[] {"C", "!D"}));
+        try (BinaryResultReader reader = new BinaryResultReader(new ByteArrayInputStream(out.toByteArray()))) {
+            delta.readPreviousResults(reader);
+        }
+        
+        Assert.assertEquals(DetailedMismatchResultType.VM_MORE_GENERAL, delta.reuseDetailed("A", feA));
+        Assert.assertEquals(MismatchResultType.CONFLICT_WITH_VARMODEL, delta.reuseBasic("A", feA));
+        // different feature effect
+        Assert.assertNull(delta.reuseDetailed("A", feC));
+        // affected by the changed clause
+        Assert.assertNull(delta.reuseDetailed("C", feC));
+        // not the result of a SAT check
+        Assert.assertNull(delta.reuseDetailed("F", feA));
+        // not checked before
+        Assert.assertNull(delta.reuseBasic("G", feA));
+        
+        Assert.assertEquals(2, delta.getReusedCount());
+    }
+    
+    /**
+     * Tests that a single-column file with basic results is not used for detailed results.
+     * @throws IOException Must not happen.
+     * @throws FormatException Must not happen.
+     */
+    @Test
+    public void testBasicResultsOnly() throws IOException, FormatException {
+        Formula fe = new Variable("B");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryResultWriter writer = BinaryResultWriter.forBasicResults(out)) {
+            writer.write(new ConfigMismatchResult("A", fe, MismatchResultType.CONSISTENT));
+        }
+        
+        VersionDelta delta = new VersionDelta(model(new String[] {"!A", "B"}), model(new String[] {"!A", "B"}));
+        try (BinaryResultReader reader = new BinaryResultReader(new ByteArrayInputStream(out.toByteArray()))) {
+            delta.readPreviousResults(reader);
+        }
+        
+        Assert.assertNull(delta.reuseDetailed("A", fe));
+        Assert.assertEquals(MismatchResultType.CONSISTENT, delta.reuseBasic("A", fe));
+    }
+
+}
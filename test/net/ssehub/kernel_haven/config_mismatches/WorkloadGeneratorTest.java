@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017-2019 University of Hildesheim, Software Systems Engineering
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.ssehub.kernel_haven.config_mismatches;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.ssehub.kernel_haven.SetUpException;
+import net.ssehub.kernel_haven.cnf.Cnf;
+import net.ssehub.kernel_haven.cnf.CnfVariable;
+import net.ssehub.kernel_haven.cnf.SatSolverFactory;
+import net.ssehub.kernel_haven.cnf.SolverException;
+import net.ssehub.kernel_haven.config_mismatches.DimacsIO.DimacsFile;
+import net.ssehub.kernel_haven.config_mismatches.WorkloadGenerator.Workload;
+import net.ssehub.kernel_haven.fe_analysis.fes.FeatureEffectFinder.VariableWithFeatureEffect;
+import net.ssehub.kernel_haven.test_utils.TestConfiguration;
+import net.ssehub.kernel_haven.util.FormatException;
+
+/**
+ * Tests the {@link WorkloadGenerator}.
+ * @author agent
+ *
+ */
+@SuppressWarnings("null")
+public class WorkloadGeneratorTest {
+
+    /**
+     * Tests that the generated model is satisfiable, Kconfig-like and reproducible.
+     * @throws SolverException Must not happen.
+     */
+    @Test
+    public void testModel() throws SolverException {
+        Workload workload = new WorkloadGenerator(42).generate(2000, 1000);
+        Assert.assertEquals(2000, workload.getVariables().size());
+        Assert.assertTrue(SatSolverFactory.createSolver(workload.getModel(), false).isSatisfiable(new Cnf()));
+        
+        int binary = 0;
+        int wide = 0;
+        for (int i = 0; i < workload.getModel().getRowCount(); i++) {
+            int length = 0;
+            for (@SuppressWarnings("unused") CnfVariable literal : workload.getModel().getRow(i)) {
+                length++;
+            }
+            if (length == 2) {
+                binary++;
+            } else if (length > 2) {
+                wide++;
+            }
+        }
+        Assert.assertTrue("Too few wide clauses: " + wide, wide > 0);
+        Assert.assertTrue("Mostly binary clauses expected: " + binary + " vs. " + wide, binary > 5 * wide);
+        
+        Workload again = new WorkloadGenerator(42).generate(2000, 1000);
+        Assert.assertEquals(workload.getModel().getRowCount(), again.getModel().getRowCount());
+        Assert.assertEquals(workload.getFeatureEffects().get(0).getFeatureEffect(),
+                again.getFeatureEffects().get(0).getFeatureEffect());
+    }
+    
+    /**
+     * Tests the number and variables of the generated feature effects.
+     */
+    @Test
+    public void testFeatureEffects() {
+        Workload workload = new WorkloadGenerator(7).generate(100, 150);
+        Assert.assertEquals(150, workload.getFeatureEffects().size());
+        
+        Set<String> defined = new HashSet<>(workload.getVariables());
+        Set<String> seen = new HashSet<>();
+        int undefined = 0;
+        for (VariableWithFeatureEffect fe : workload.getFeatureEffects()) {
+            Assert.assertTrue("Duplicate variable " + fe.getVariable(), seen.add(fe.getVariable()));
+            if (!defined.contains(fe.getVariable())) {
+                undefined++;
+            }
+        }
+        // at most one feature effect per model variable, the rest is undefined
+        Assert.assertTrue(undefined >= 50);
+    }
+    
+    /**
+     * Returns a row of the given CNF as string.
+     * @param cnf The CNF.
+     * @param row The index of the row.
+     * @return The literals of the row, separated by spaces.
+     */
+    private static String toString(Cnf cnf, int row) {
+        StringBuilder result = new StringBuilder();
+        for (CnfVariable literal : cnf.getRow(row)) {
+            result.append(literal.isNegation() ? "!" : "").append(literal.getName()).append(' ');
+        }
+        return result.toString();
+    }
+    
+    /**
+     * Tests that the written files can be read by {@link DimacsIO} and the {@link FeatureEffectReader}.
+     * @throws IOException Must not happen.
+     * @throws FormatException Must not happen.
+     * @throws SetUpException Must not happen.
+     */
+    @Test
+    public void testWrite() throws IOException, FormatException, SetUpException {
+        Workload workload = new WorkloadGenerator(3).generate(300, 200);
+        File dir = Files.createTempDirectory("workload").toFile();
+        File modelFile = new File(dir, WorkloadGenerator.MODEL_FILE);
+        File feFile = new File(dir, WorkloadGenerator.FEATURE_EFFECT_FILE);
+        try {
+            WorkloadGenerator.writeModel(workload, modelFile);
+            WorkloadGenerator.writeFeatureEffects(workload, feFile);
+            
+            DimacsFile model = DimacsIO.read(modelFile);
+            Assert.assertEquals(workload.getModel().getRowCount(), model.getCnf().getRowCount());
+            for (int i = 0; i < model.getCnf().getRowCount(); i++) {
+                Assert.assertEquals(toString(workload.getModel(), i), toString(model.getCnf(), i));
+            }
+            
+            FeatureEffectReader reader = new FeatureEffectReader(new TestConfiguration(new Properties()), feFile,
+                    FeatureEffectReader.WINDOW_SIZE);
+            List<VariableWithFeatureEffect> read = new ArrayList<>();
+            VariableWithFeatureEffect fe;
+            while ((fe = reader.getNextResult()) != null) {
+                read.add(fe);
+            }
+            Assert.assertEquals(workload.getFeatureEffects().size(), read.size());
+            for (int i = 0; i < read.size(); i++) {
+                Assert.assertEquals(workload.getFeatureEffects().get(i).getVariable(), read.get(i).getVariable());
+                Assert.assertEquals(workload.getFeatureEffects().get(i).getFeatureEffect().toString(),
+                        read.get(i).getFeatureEffect().toString());
+            }
+        } finally {
+            modelFile.delete();
+            feFile.delete();
+            dir.delete();
+        }
+    }
+
+}